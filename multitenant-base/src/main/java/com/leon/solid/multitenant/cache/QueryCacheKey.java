@@ -0,0 +1,60 @@
+package com.leon.solid.multitenant.cache;
+
+import java.util.Arrays;
+
+/**
+ * The key of a cached query result in a tenant partition of {@link TenantQueryCache}: the bound SQL statement, the
+ * row type and the parameter values in placeholder order, so named and positional calls of the same statement
+ * share their entries.
+ *
+ * @author Leon.Tang
+ */
+public final class QueryCacheKey {
+
+    private final String sql;
+
+    private final Class<?> resultType;
+
+    private final Object[] values;
+
+    private final int hash;
+
+    public QueryCacheKey(String sql, Class<?> resultType, Object[] values) {
+        this.sql = sql;
+        this.resultType = resultType;
+        this.values = values;
+        this.hash = 31 * (31 * sql.hashCode() + resultType.hashCode()) + Arrays.deepHashCode(values);
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public Class<?> getResultType() {
+        return resultType;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof QueryCacheKey)) {
+            return false;
+        }
+        QueryCacheKey other = (QueryCacheKey)obj;
+        return hash == other.hash && sql.equals(other.sql) && resultType == other.resultType
+            && Arrays.deepEquals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryCacheKey [sql=" + sql + ", resultType=" + resultType.getName() + ", values="
+            + Arrays.deepToString(values) + "]";
+    }
+}
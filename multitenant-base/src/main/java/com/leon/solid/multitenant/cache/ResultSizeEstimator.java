@@ -0,0 +1,129 @@
+package com.leon.solid.multitenant.cache;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates the heap size of a cached result list, for the per-tenant memory quota of {@link TenantQueryCache}.
+ * <p>
+ * The first rows are measured (the row object and the values of its fields, one level deep) and the average is
+ * taken for the whole list, since the rows of a query have the same shape.
+ *
+ * @author Leon.Tang
+ */
+final class ResultSizeEstimator {
+
+    private static final int SAMPLE_ROWS = 8;
+
+    private static final int OBJECT_HEADER = 16;
+
+    private static final int REFERENCE = 8;
+
+    private static final Map<Class<?>, Field[]> FIELDS = new ConcurrentHashMap<>();
+
+    private ResultSizeEstimator() {
+    }
+
+    /**
+     * Estimate the size of the list and its rows.
+     *
+     * @param rows the rows
+     * @return the estimated size in bytes
+     */
+    static long estimate(List<?> rows) {
+        long size = OBJECT_HEADER * 2L + (long)REFERENCE * rows.size();
+        int samples = Math.min(SAMPLE_ROWS, rows.size());
+        if (samples == 0) {
+            return size;
+        }
+        long sampled = 0;
+        for (int i = 0; i < samples; i++) {
+            sampled += sizeOfRow(rows.get(i));
+        }
+        return size + sampled * rows.size() / samples;
+    }
+
+    private static long sizeOfRow(Object row) {
+        if (row == null) {
+            return 0;
+        }
+        if (row instanceof Object[]) {
+            Object[] tuple = (Object[])row;
+            long size = OBJECT_HEADER + (long)REFERENCE * tuple.length;
+            for (Object value : tuple) {
+                size += sizeOfValue(value);
+            }
+            return size;
+        }
+        long value = sizeOfValue(row);
+        if (value >= 0) {
+            return value;
+        }
+        Field[] fields = FIELDS.computeIfAbsent(row.getClass(), ResultSizeEstimator::instanceFields);
+        long size = OBJECT_HEADER + (long)REFERENCE * fields.length;
+        for (Field field : fields) {
+            if (!field.getType().isPrimitive()) {
+                try {
+                    size += Math.max(0, sizeOfValue(field.get(row)));
+                } catch (IllegalAccessException ex) {
+                    size += OBJECT_HEADER;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get the size of a simple value, or -1 if the value is a bean.
+     */
+    private static long sizeOfValue(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof CharSequence) {
+            return OBJECT_HEADER * 2L + 4 + 2L * ((CharSequence)value).length();
+        }
+        if (value instanceof BigDecimal || value instanceof BigInteger) {
+            return OBJECT_HEADER * 3L;
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return OBJECT_HEADER + REFERENCE;
+        }
+        if (value instanceof Date || value instanceof Temporal || value instanceof Enum) {
+            return OBJECT_HEADER * 2L;
+        }
+        if (value instanceof byte[]) {
+            return OBJECT_HEADER + ((byte[])value).length;
+        }
+        if (value instanceof char[]) {
+            return OBJECT_HEADER + 2L * ((char[])value).length;
+        }
+        return -1;
+    }
+
+    private static Field[] instanceFields(Class<?> type) {
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> current = type; current != null && current != Object.class;
+            current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    try {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    } catch (RuntimeException ex) {
+                        // inaccessible fields are counted as references only
+                    }
+                }
+            }
+        }
+        return fields.toArray(new Field[0]);
+    }
+}
@@ -0,0 +1,100 @@
+package com.leon.solid.multitenant.cache;
+
+/**
+ * A snapshot of the statistics of one tenant partition of {@link TenantQueryCache}.
+ *
+ * @author Leon.Tang
+ */
+public class TenantCacheStatistics {
+
+    private final String tenantId;
+
+    private final long hitCount;
+
+    private final long missCount;
+
+    private final long invalidatedCount;
+
+    private final long evictionCount;
+
+    private final long entryCount;
+
+    private final long weightedSize;
+
+    public TenantCacheStatistics(String tenantId, long hitCount, long missCount, long invalidatedCount,
+        long evictionCount, long entryCount, long weightedSize) {
+        this.tenantId = tenantId;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.invalidatedCount = invalidatedCount;
+        this.evictionCount = evictionCount;
+        this.entryCount = entryCount;
+        this.weightedSize = weightedSize;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Get the number of lookups that loaded the result from the database, including the ones that found an
+     * invalidated entry.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Get the number of lookups that found an entry invalidated by a write to one of its tables.
+     *
+     * @return the invalidated count
+     */
+    public long getInvalidatedCount() {
+        return invalidatedCount;
+    }
+
+    /**
+     * Get the number of entries evicted by the size quota or the time to live.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Get the estimated heap size of the cached results.
+     *
+     * @return the size in bytes
+     */
+    public long getWeightedSize() {
+        return weightedSize;
+    }
+
+    /**
+     * Get the ratio of lookups served from the cache.
+     *
+     * @return the hit rate, 1.0 if there is no lookup yet
+     */
+    public double getHitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 1.0 : (double)hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return "TenantCacheStatistics [tenantId=" + tenantId + ", hitCount=" + hitCount + ", missCount=" + missCount
+            + ", invalidatedCount=" + invalidatedCount + ", evictionCount=" + evictionCount + ", entryCount="
+            + entryCount + ", weightedSize=" + weightedSize + "]";
+    }
+}
@@ -0,0 +1,319 @@
+package com.leon.solid.multitenant.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.leon.solid.multitenant.config.MultiTenantProperties;
+import com.leon.solid.multitenant.config.TenantHolder;
+
+/**
+ * The result cache of read-mostly native queries, partitioned by tenant. It is enabled with
+ * {@code multitenant.queryCache.enabled=true} and used by the <code>cachedQueryFor...</code> methods of
+ * {@link com.leon.solid.multitenant.repository.JpaNativeQuerySupportRepository}.
+ * <p>
+ * Each tenant has its own Caffeine cache (W-TinyLFU eviction), bounded by the estimated heap size of its results
+ * ({@code multitenant.queryCache.maximumBytesPerTenant}) and a time to live, so a busy tenant cannot evict the
+ * entries of the others. Caffeine is an optional dependency, the application adds
+ * <code>com.github.ben-manes.caffeine:caffeine</code> to use the cache.
+ * <p>
+ * Entries are invalidated by table: every entry remembers the generation of the tables its query reads, and a write
+ * through the repository's update and batch methods increments the generation of the tables it writes (again when
+ * its transaction completes). Inside a transaction that has written, the cache is bypassed, so uncommitted rows
+ * are never cached. Writes that do not go through the repository (JPA entities, other applications) are not seen,
+ * the time to live bounds their staleness.
+ * <p>
+ * Cached lists are unmodifiable and shared between callers, their rows must not be modified.
+ *
+ * @author Leon.Tang
+ */
+@Component
+@ConditionalOnClass(name = "com.github.benmanes.caffeine.cache.Caffeine")
+@ConditionalOnProperty(prefix = MultiTenantProperties.MULTITENANT_PREFIX + ".queryCache", name = "enabled",
+    havingValue = "true")
+public class TenantQueryCache {
+
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    private final List<Consumer<String>> partitionListeners = new CopyOnWriteArrayList<>();
+
+    private final long maximumBytesPerTenant;
+
+    private final Duration timeToLive;
+
+    private final String defaultTenantId;
+
+    /**
+     * The transaction resource key that marks a transaction that has written through the repository.
+     */
+    private final Object writeMarker = new Object();
+
+    @Autowired
+    public TenantQueryCache(MultiTenantProperties multiTenantProperties) {
+        MultiTenantProperties.QueryCache properties = multiTenantProperties.getQueryCache();
+        Assert.isTrue(properties.getMaximumBytesPerTenant() != null
+            && properties.getMaximumBytesPerTenant().toBytes() > 0,
+            "multitenant.queryCache.maximumBytesPerTenant must be positive!");
+        Assert.isTrue(properties.getTimeToLive() != null && !properties.getTimeToLive().isNegative()
+            && !properties.getTimeToLive().isZero(), "multitenant.queryCache.timeToLive must be positive!");
+        this.maximumBytesPerTenant = properties.getMaximumBytesPerTenant().toBytes();
+        this.timeToLive = properties.getTimeToLive();
+        String defaultTenant = multiTenantProperties.resolveDefaultTenantId();
+        this.defaultTenantId = defaultTenant != null ? defaultTenant : "";
+    }
+
+    /**
+     * Get the cached result of the current tenant, or load and cache it.
+     *
+     * @param <T> the row type
+     * @param key the key of the query
+     * @param tables the tables the query reads
+     * @param loader the query execution
+     * @return the unmodifiable result
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> get(QueryCacheKey key, Set<String> tables, Supplier<List<T>> loader) {
+        if (TransactionSynchronizationManager.hasResource(this.writeMarker)) {
+            return loader.get();
+        }
+        Partition partition = partition(currentTenant());
+        Entry entry = partition.cache.asMap().get(key);
+        if (entry != null) {
+            if (partition.isValid(entry)) {
+                partition.hits.increment();
+                return (List<T>)entry.rows;
+            }
+            partition.invalidated.increment();
+            partition.cache.asMap().remove(key, entry);
+        }
+        partition.misses.increment();
+        String[] tableNames = tables.toArray(new String[0]);
+        long[] generations = new long[tableNames.length];
+        long allGeneration = partition.all.get();
+        for (int i = 0; i < tableNames.length; i++) {
+            generations[i] = partition.generation(tableNames[i]).get();
+        }
+        List<T> rows = Collections.unmodifiableList(loader.get());
+        long weight = ResultSizeEstimator.estimate(rows) + key.getSql().length() * 2L;
+        if (weight <= this.maximumBytesPerTenant) {
+            partition.cache.put(key,
+                new Entry(rows, tableNames, generations, allGeneration, (int)Math.min(Integer.MAX_VALUE, weight)));
+        }
+        return rows;
+    }
+
+    /**
+     * Invalidate the entries of the current tenant that read the <code>tables</code>. Inside a transaction, the
+     * cache is bypassed for the rest of the transaction, and the tables are invalidated again when it completes.
+     *
+     * @param tables the written tables, or null to invalidate all entries of the current tenant
+     */
+    public void invalidateTables(Collection<String> tables) {
+        final String tenantId = currentTenant();
+        invalidate(tenantId, tables);
+        if (TransactionSynchronizationManager.isSynchronizationActive()
+            && !TransactionSynchronizationManager.hasResource(this.writeMarker)) {
+            final Set<String> written = Collections.synchronizedSet(new TreeSet<>());
+            TransactionSynchronizationManager.bindResource(this.writeMarker, written);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(writeMarker);
+                    invalidate(tenantId, written.contains(null) ? null : written);
+                }
+            });
+        }
+        @SuppressWarnings("unchecked")
+        Set<String> written = (Set<String>)TransactionSynchronizationManager.getResource(this.writeMarker);
+        if (written != null) {
+            if (tables == null) {
+                written.add(null);
+            } else {
+                written.addAll(tables);
+            }
+        }
+    }
+
+    /**
+     * Invalidate all entries of a tenant.
+     *
+     * @param tenantId the tenant
+     */
+    public void invalidateTenant(String tenantId) {
+        invalidate(tenantId, null);
+    }
+
+    /**
+     * Remove the cache partition of a tenant with its entries and statistics, when the tenant is destroyed. A
+     * partition is created again if the tenant is queried later.
+     *
+     * @param tenantId the tenant
+     */
+    public void removeTenant(String tenantId) {
+        Partition partition = this.partitions.remove(tenantId);
+        if (partition != null) {
+            partition.cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Invalidate all entries of all tenants.
+     */
+    public void invalidateAll() {
+        for (String tenantId : this.partitions.keySet()) {
+            invalidate(tenantId, null);
+        }
+    }
+
+    /**
+     * Get the tenants that have a cache partition.
+     *
+     * @return the tenant ids in natural order
+     */
+    public Set<String> getTenantIds() {
+        return new TreeSet<>(this.partitions.keySet());
+    }
+
+    /**
+     * Get the statistics of a tenant.
+     *
+     * @param tenantId the tenant
+     * @return the statistics, or null if the tenant has no cache partition
+     */
+    public TenantCacheStatistics getStatistics(String tenantId) {
+        Partition partition = this.partitions.get(tenantId);
+        if (partition == null) {
+            return null;
+        }
+        partition.cache.cleanUp();
+        return new TenantCacheStatistics(tenantId, partition.hits.sum(), partition.misses.sum(),
+            partition.invalidated.sum(), partition.cache.stats().evictionCount(), partition.cache.estimatedSize(),
+            partition.cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L));
+    }
+
+    /**
+     * Get the statistics of all tenants.
+     *
+     * @return the statistics by tenant id in natural order
+     */
+    public Map<String, TenantCacheStatistics> getStatistics() {
+        Map<String, TenantCacheStatistics> statistics = new LinkedHashMap<>();
+        for (String tenantId : getTenantIds()) {
+            statistics.put(tenantId, getStatistics(tenantId));
+        }
+        return statistics;
+    }
+
+    /**
+     * Register a listener that is called with the tenant id when a tenant's cache partition is created.
+     *
+     * @param listener the listener
+     */
+    public void addPartitionListener(Consumer<String> listener) {
+        this.partitionListeners.add(listener);
+    }
+
+    private String currentTenant() {
+        String tenantId = TenantHolder.getCurrentTenant();
+        return tenantId != null ? tenantId : this.defaultTenantId;
+    }
+
+    private void invalidate(String tenantId, Collection<String> tables) {
+        Partition partition = this.partitions.get(tenantId);
+        if (partition == null) {
+            return;
+        }
+        if (tables == null) {
+            partition.all.incrementAndGet();
+        } else {
+            for (String table : tables) {
+                partition.generation(table).incrementAndGet();
+            }
+        }
+    }
+
+    private Partition partition(String tenantId) {
+        Partition partition = this.partitions.get(tenantId);
+        if (partition == null) {
+            Partition created = new Partition(this.maximumBytesPerTenant, this.timeToLive);
+            partition = this.partitions.putIfAbsent(tenantId, created);
+            if (partition == null) {
+                partition = created;
+                for (Consumer<String> listener : new ArrayList<>(this.partitionListeners)) {
+                    listener.accept(tenantId);
+                }
+            }
+        }
+        return partition;
+    }
+
+    private static final class Partition {
+        private final Cache<QueryCacheKey, Entry> cache;
+        private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+        private final AtomicLong all = new AtomicLong();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder invalidated = new LongAdder();
+
+        Partition(long maximumBytes, Duration timeToLive) {
+            this.cache = Caffeine.newBuilder().maximumWeight(maximumBytes)
+                .weigher((QueryCacheKey key, Entry entry) -> entry.weight)
+                .expireAfterWrite(timeToLive.toNanos(), TimeUnit.NANOSECONDS).recordStats().build();
+        }
+
+        AtomicLong generation(String table) {
+            return this.generations.computeIfAbsent(table, t -> new AtomicLong());
+        }
+
+        boolean isValid(Entry entry) {
+            if (entry.allGeneration != this.all.get()) {
+                return false;
+            }
+            for (int i = 0; i < entry.tables.length; i++) {
+                if (entry.generations[i] != generation(entry.tables[i]).get()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class Entry {
+        private final List<?> rows;
+        private final String[] tables;
+        private final long[] generations;
+        private final long allGeneration;
+        private final int weight;
+
+        Entry(List<?> rows, String[] tables, long[] generations, long allGeneration, int weight) {
+            this.rows = rows;
+            this.tables = tables;
+            this.generations = generations;
+            this.allGeneration = allGeneration;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.leon.solid.multitenant.cache;
+
+import java.util.function.ToDoubleFunction;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.leon.solid.multitenant.config.MultiTenantProperties;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Exports the statistics of {@link TenantQueryCache} to Micrometer, tagged by tenant: the
+ * <code>multitenant.query.cache.gets</code> counter (tagged hit or miss), the
+ * <code>multitenant.query.cache.invalidations</code> and <code>multitenant.query.cache.evictions</code> counters, and
+ * the <code>multitenant.query.cache.size</code> and <code>multitenant.query.cache.weight</code> gauges. Tenants
+ * cached after the binding are registered when their partition is created.
+ *
+ * @author Leon.Tang
+ */
+@Component
+@ConditionalOnClass(name = {"io.micrometer.core.instrument.binder.MeterBinder",
+    "com.github.benmanes.caffeine.cache.Caffeine"})
+@ConditionalOnProperty(prefix = MultiTenantProperties.MULTITENANT_PREFIX + ".queryCache", name = "enabled",
+    havingValue = "true")
+public class TenantQueryCacheMetrics implements MeterBinder {
+
+    private static final String METRIC_PREFIX = "multitenant.query.cache.";
+
+    private final TenantQueryCache queryCache;
+
+    @Autowired
+    public TenantQueryCacheMetrics(TenantQueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.queryCache.addPartitionListener(tenantId -> bindTenant(registry, tenantId));
+        for (String tenantId : this.queryCache.getTenantIds()) {
+            bindTenant(registry, tenantId);
+        }
+    }
+
+    private void bindTenant(MeterRegistry registry, String tenantId) {
+        Tags tags = Tags.of("tenant", tenantId);
+        counter(registry, "gets", tags.and("result", "hit"), tenantId, TenantCacheStatistics::getHitCount);
+        counter(registry, "gets", tags.and("result", "miss"), tenantId, TenantCacheStatistics::getMissCount);
+        counter(registry, "invalidations", tags, tenantId, TenantCacheStatistics::getInvalidatedCount);
+        counter(registry, "evictions", tags, tenantId, TenantCacheStatistics::getEvictionCount);
+        Gauge.builder(METRIC_PREFIX + "size", this.queryCache,
+            cache -> statistic(cache, tenantId, TenantCacheStatistics::getEntryCount)).tags(tags)
+            .description("The number of cached query results").register(registry);
+        Gauge.builder(METRIC_PREFIX + "weight", this.queryCache,
+            cache -> statistic(cache, tenantId, TenantCacheStatistics::getWeightedSize)).tags(tags)
+            .description("The estimated heap size of the cached query results").baseUnit("bytes").register(registry);
+    }
+
+    private void counter(MeterRegistry registry, String name, Tags tags, String tenantId,
+        ToDoubleFunction<TenantCacheStatistics> statistic) {
+        FunctionCounter.builder(METRIC_PREFIX + name, this.queryCache,
+            cache -> statistic(cache, tenantId, statistic)).tags(tags).register(registry);
+    }
+
+    private static double statistic(TenantQueryCache cache, String tenantId,
+        ToDoubleFunction<TenantCacheStatistics> statistic) {
+        TenantCacheStatistics statistics = cache.getStatistics(tenantId);
+        return statistics == null ? 0 : statistic.applyAsDouble(statistics);
+    }
+}
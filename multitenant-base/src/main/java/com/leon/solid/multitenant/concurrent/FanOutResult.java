@@ -0,0 +1,71 @@
+package com.leon.solid.multitenant.concurrent;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of a fan-out query, together with the tenants it is read from and the tenants that failed.
+ * <p>
+ * A failed or timed out tenant does not fail the whole query, its rows are missing from the result and its error
+ * is reported in {@link #getFailures()}.
+ *
+ * @param <R> the result type
+ * @author Leon.Tang
+ */
+public class FanOutResult<R> {
+
+    private final R result;
+
+    private final List<String> succeededTenants;
+
+    private final Map<String, Throwable> failures;
+
+    public FanOutResult(R result, List<String> succeededTenants, Map<String, Throwable> failures) {
+        this.result = result;
+        this.succeededTenants = Collections.unmodifiableList(succeededTenants);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Get the merged result of the succeeded tenants.
+     *
+     * @return the result
+     */
+    public R getResult() {
+        return result;
+    }
+
+    /**
+     * Get the tenants whose rows are in the result.
+     *
+     * @return the tenant ids in the requested order
+     */
+    public List<String> getSucceededTenants() {
+        return succeededTenants;
+    }
+
+    /**
+     * Get the errors of the failed tenants, a timed out tenant has a
+     * {@link java.util.concurrent.TimeoutException}.
+     *
+     * @return the errors by tenant id in the requested order
+     */
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Check if the result misses some tenants.
+     *
+     * @return {@code true} if at least one tenant failed
+     */
+    public boolean isPartial() {
+        return !failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "FanOutResult [succeeded=" + succeededTenants + ", failed=" + failures.keySet() + "]";
+    }
+}
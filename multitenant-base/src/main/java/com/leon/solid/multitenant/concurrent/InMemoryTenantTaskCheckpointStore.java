@@ -0,0 +1,41 @@
+package com.leon.solid.multitenant.concurrent;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The default {@link TenantTaskCheckpointStore}, it keeps the checkpoints in memory. A failed run can be resumed in
+ * the same process, use {@link JdbcTenantTaskCheckpointStore} to resume after a restart.
+ *
+ * @author Leon.Tang
+ */
+public class InMemoryTenantTaskCheckpointStore implements TenantTaskCheckpointStore {
+
+    private final Map<String, Set<String>> completed = new ConcurrentHashMap<>();
+
+    @Override
+    public Set<String> findCompleted(String jobName, String runKey) {
+        Set<String> tenants = this.completed.get(key(jobName, runKey));
+        return tenants == null ? Collections.emptySet() : new HashSet<>(tenants);
+    }
+
+    @Override
+    public void markCompleted(String jobName, String runKey, String tenantId) {
+        this.completed.computeIfAbsent(key(jobName, runKey), k -> ConcurrentHashMap.newKeySet()).add(tenantId);
+    }
+
+    @Override
+    public void markFailed(String jobName, String runKey, String tenantId, Throwable error) {
+        Set<String> tenants = this.completed.get(key(jobName, runKey));
+        if (tenants != null) {
+            tenants.remove(tenantId);
+        }
+    }
+
+    private static String key(String jobName, String runKey) {
+        return jobName + '\u0000' + runKey;
+    }
+}
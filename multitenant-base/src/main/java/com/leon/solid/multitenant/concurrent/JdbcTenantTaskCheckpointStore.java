@@ -0,0 +1,100 @@
+package com.leon.solid.multitenant.concurrent;
+
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import com.leon.solid.multitenant.config.MultiTenantProperties;
+
+/**
+ * A {@link TenantTaskCheckpointStore} in the {@code sys_tenant_task_checkpoint} table of the control tenant (see
+ * {@code db/tenant_ddl.sql}), so a run can be resumed after a restart. It is enabled with
+ * {@code multitenant.task.checkpointStore=jdbc}.
+ * <p>
+ * Each call runs in a transaction of its own, the XA pools of the tenants do not run statements outside of a
+ * transaction.
+ *
+ * @author Leon.Tang
+ */
+@Component
+@ConditionalOnProperty(prefix = MultiTenantProperties.MULTITENANT_PREFIX + ".task", name = "checkpointStore",
+    havingValue = "jdbc")
+public class JdbcTenantTaskCheckpointStore implements TenantTaskCheckpointStore {
+    private static final String SQL_FIND_COMPLETED = "select tenant_id from sys_tenant_task_checkpoint"
+        + " where job_name = ? and run_key = ? and status = '1'";
+
+    private static final String SQL_UPDATE_CHECKPOINT = "update sys_tenant_task_checkpoint"
+        + " set status = ?, message = ?, updated_at = ? where job_name = ? and run_key = ? and tenant_id = ?";
+
+    private static final String SQL_INSERT_CHECKPOINT = "insert into sys_tenant_task_checkpoint"
+        + " (status, message, updated_at, job_name, run_key, tenant_id) values (?,?,?,?,?,?)";
+
+    private static final String STATUS_COMPLETED = "1";
+
+    private static final String STATUS_FAILED = "0";
+
+    private static final int MESSAGE_LENGTH = 255;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public JdbcTenantTaskCheckpointStore(MultiTenantProperties multiTenantProperties,
+        @Qualifier("multiTenantDataSources") Map<String, DataSource> multiTenantDataSources,
+        ObjectProvider<PlatformTransactionManager> transactionManager) {
+        String controlTenantId = multiTenantProperties.resolveControlTenantId();
+        DataSource controlDataSource = controlTenantId == null ? null : multiTenantDataSources.get(controlTenantId);
+        Assert.state(controlDataSource != null, "No control datasource for task checkpoints (controlTenantId: "
+            + controlTenantId + "), configure 'multitenant.controlTenantId' or a default tenant");
+        this.jdbcTemplate = new JdbcTemplate(controlDataSource);
+        PlatformTransactionManager txManager = transactionManager.getIfUnique();
+        Assert.state(txManager != null, "No unique transaction manager for task checkpoints");
+        this.transactionTemplate = new TransactionTemplate(txManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Override
+    public Set<String> findCompleted(String jobName, String runKey) {
+        return this.transactionTemplate.execute(status -> new HashSet<>(
+            this.jdbcTemplate.queryForList(SQL_FIND_COMPLETED, String.class, jobName, runKey)));
+    }
+
+    @Override
+    public void markCompleted(String jobName, String runKey, String tenantId) {
+        save(jobName, runKey, tenantId, STATUS_COMPLETED, null);
+    }
+
+    @Override
+    public void markFailed(String jobName, String runKey, String tenantId, Throwable error) {
+        String message = error == null ? null : String.valueOf(error);
+        if (message != null && message.length() > MESSAGE_LENGTH) {
+            message = message.substring(0, MESSAGE_LENGTH);
+        }
+        save(jobName, runKey, tenantId, STATUS_FAILED, message);
+    }
+
+    private void save(String jobName, String runKey, String tenantId, String status, String message) {
+        Object[] args = {status, message, new Timestamp(System.currentTimeMillis()), jobName, runKey, tenantId};
+        this.transactionTemplate.execute(txStatus -> {
+            if (this.jdbcTemplate.update(SQL_UPDATE_CHECKPOINT, args) == 0) {
+                this.jdbcTemplate.update(SQL_INSERT_CHECKPOINT, args);
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,416 @@
+package com.leon.solid.multitenant.concurrent;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import com.leon.solid.multitenant.config.MultiTenantProperties;
+import com.leon.solid.multitenant.config.TenantHolder;
+
+/**
+ * Runs the same query on many tenants in parallel and merges the rows of all tenants into one result.
+ * <p>
+ * Each tenant is queried on a bounded worker pool ({@code multitenant.fanOut.parallelism}) with the tenant as the
+ * current tenant, inside its own read-only transaction. A tenant query that runs longer than
+ * {@code multitenant.fanOut.timeout} is abandoned (its worker is interrupted) and reported as a failure, the other
+ * tenants are not affected. The rows of the succeeded tenants are merged by:
+ * <ul>
+ * <li>{@link #concat(Collection, TenantQuery)}: tenant after tenant, in the requested order;</li>
+ * <li>{@link #merge(Collection, TenantQuery, Comparator)}: a k-way merge of rows that each tenant returns sorted;</li>
+ * <li>{@link #aggregate(Collection, TenantQuery, Collector)}: a partial aggregation per tenant on the worker,
+ * combined into the final result.</li>
+ * </ul>
+ * For {@link #concat(Collection, TenantQuery) concat} and {@link #merge(Collection, TenantQuery, Comparator) merge},
+ * each worker reads the rows of its tenant into a list inside the tenant's transaction, so all rows of the succeeded
+ * tenants are in memory when the result is returned. Only the returned {@link Stream} of {@link TenantRow} over those
+ * lists is lazy. The per-tenant cursors are not kept open while the caller consumes the stream: a merge needs the head
+ * row of every tenant at once, which a worker pool smaller than the number of tenants could not provide. Use
+ * {@link #aggregate(Collection, TenantQuery, Collector) aggregate} to reduce large results on the workers.
+ *
+ * @author Leon.Tang
+ */
+@Component
+public class TenantFanOutExecutor implements DisposableBean {
+    private final Log log = LogFactory.getLog(TenantFanOutExecutor.class);
+
+    private final Map<String, DataSource> multiTenantDataSources;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final Duration timeout;
+
+    private final ThreadPoolExecutor workers;
+
+    private final ScheduledThreadPoolExecutor watchdog;
+
+    @Autowired
+    public TenantFanOutExecutor(MultiTenantProperties multiTenantProperties,
+        @Qualifier("multiTenantDataSources") Map<String, DataSource> multiTenantDataSources,
+        ObjectProvider<PlatformTransactionManager> transactionManager) {
+        MultiTenantProperties.FanOut fanOut = multiTenantProperties.getFanOut();
+        Assert.isTrue(fanOut.getParallelism() > 0, "multitenant.fanOut.parallelism must be positive!");
+        Assert.isTrue(fanOut.getTimeout() != null && !fanOut.getTimeout().isNegative() && !fanOut.getTimeout().isZero(),
+            "multitenant.fanOut.timeout must be positive!");
+        this.multiTenantDataSources = multiTenantDataSources;
+        this.timeout = fanOut.getTimeout();
+
+        PlatformTransactionManager txManager = transactionManager.getIfUnique();
+        if (txManager != null) {
+            this.transactionTemplate = new TransactionTemplate(txManager);
+            this.transactionTemplate.setReadOnly(true);
+            this.transactionTemplate.setTimeout((int)Math.max(1L, (this.timeout.toMillis() + 999L) / 1000L));
+        } else {
+            this.transactionTemplate = null;
+        }
+
+        CustomizableThreadFactory workerFactory = new CustomizableThreadFactory("tenant-fanout-");
+        workerFactory.setDaemon(true);
+        this.workers = new ThreadPoolExecutor(fanOut.getParallelism(), fanOut.getParallelism(), 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), workerFactory);
+        this.workers.allowCoreThreadTimeOut(true);
+
+        CustomizableThreadFactory watchdogFactory = new CustomizableThreadFactory("tenant-fanout-watchdog-");
+        watchdogFactory.setDaemon(true);
+        this.watchdog = new ScheduledThreadPoolExecutor(1, watchdogFactory);
+        this.watchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Get the ids of all tenants that have a datasource.
+     *
+     * @return the tenant ids in natural order
+     */
+    public List<String> getTenantIds() {
+        List<String> tenantIds = new ArrayList<>(this.multiTenantDataSources.keySet());
+        Collections.sort(tenantIds);
+        return tenantIds;
+    }
+
+    /**
+     * Query all tenants and concatenate their rows, see {@link #concat(Collection, TenantQuery)}.
+     *
+     * @param <T> the row type
+     * @param query the query of each tenant
+     * @return the rows of the succeeded tenants and the failures
+     */
+    public <T> FanOutResult<Stream<TenantRow<T>>> concat(TenantQuery<T> query) {
+        return concat(null, query);
+    }
+
+    /**
+     * Query the tenants in parallel and concatenate their rows tenant after tenant, in the requested order. The rows
+     * of each tenant are read into a list first.
+     *
+     * @param <T> the row type
+     * @param tenantIds the tenants to query, or null for all tenants
+     * @param query the query of each tenant
+     * @return the rows of the succeeded tenants and the failures
+     */
+    public <T> FanOutResult<Stream<TenantRow<T>>> concat(Collection<String> tenantIds, TenantQuery<T> query) {
+        FanOutResult<Map<String, List<T>>> lists = execute(tenantIds, query, rows -> rows.collect(Collectors.toList()));
+        Stream<TenantRow<T>> rows = lists.getResult().entrySet().stream()
+            .flatMap(entry -> entry.getValue().stream().map(row -> new TenantRow<>(entry.getKey(), row)));
+        return new FanOutResult<>(rows, lists.getSucceededTenants(), lists.getFailures());
+    }
+
+    /**
+     * Query all tenants and merge their sorted rows, see {@link #merge(Collection, TenantQuery, Comparator)}.
+     *
+     * @param <T> the row type
+     * @param query the query of each tenant, it returns rows sorted by <code>order</code>
+     * @param order the order of the rows
+     * @return the rows of the succeeded tenants in order and the failures
+     */
+    public <T> FanOutResult<Stream<TenantRow<T>>> merge(TenantQuery<T> query, Comparator<? super T> order) {
+        return merge(null, query, order);
+    }
+
+    /**
+     * Query the tenants in parallel and k-way merge their rows, which each tenant returns sorted by
+     * <code>order</code>. Rows that are equal by <code>order</code> keep the requested tenant order. The rows of each
+     * tenant are read into a list first, the merge runs while the returned stream is consumed.
+     *
+     * @param <T> the row type
+     * @param tenantIds the tenants to query, or null for all tenants
+     * @param query the query of each tenant, it returns rows sorted by <code>order</code>
+     * @param order the order of the rows
+     * @return the rows of the succeeded tenants in order and the failures
+     */
+    public <T> FanOutResult<Stream<TenantRow<T>>> merge(Collection<String> tenantIds, TenantQuery<T> query,
+        Comparator<? super T> order) {
+        Assert.notNull(order, "The order of rows is required!");
+        FanOutResult<Map<String, List<T>>> lists = execute(tenantIds, query, rows -> rows.collect(Collectors.toList()));
+        Iterator<TenantRow<T>> merged = new MergingIterator<>(lists.getResult(), order);
+        Stream<TenantRow<T>> rows = StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(merged, Spliterator.ORDERED | Spliterator.NONNULL), false);
+        return new FanOutResult<>(rows, lists.getSucceededTenants(), lists.getFailures());
+    }
+
+    /**
+     * Query all tenants and aggregate their rows, see {@link #aggregate(Collection, TenantQuery, Collector)}.
+     *
+     * @param <T> the row type
+     * @param <A> the partial result type
+     * @param <R> the final result type
+     * @param query the query of each tenant
+     * @param collector the aggregation
+     * @return the aggregate of the succeeded tenants and the failures
+     */
+    public <T, A, R> FanOutResult<R> aggregate(TenantQuery<T> query, Collector<? super T, A, R> collector) {
+        return aggregate(null, query, collector);
+    }
+
+    /**
+     * Query the tenants in parallel and aggregate their rows. The rows of each tenant are accumulated into a partial
+     * result on the worker, while the query stream is read, the partial results are combined in the requested
+     * tenant order and finished into the final result.
+     *
+     * @param <T> the row type
+     * @param <A> the partial result type
+     * @param <R> the final result type
+     * @param tenantIds the tenants to query, or null for all tenants
+     * @param query the query of each tenant
+     * @param collector the aggregation, e.g. <code>Collectors.summingLong(...)</code>
+     * @return the aggregate of the succeeded tenants and the failures
+     */
+    public <T, A, R> FanOutResult<R> aggregate(Collection<String> tenantIds, TenantQuery<T> query,
+        Collector<? super T, A, R> collector) {
+        Assert.notNull(collector, "The collector is required!");
+        FanOutResult<Map<String, A>> partials = execute(tenantIds, query, rows -> {
+            A container = collector.supplier().get();
+            rows.forEach(row -> collector.accumulator().accept(container, row));
+            return container;
+        });
+        A combined = null;
+        for (A partial : partials.getResult().values()) {
+            combined = combined == null ? partial : collector.combiner().apply(combined, partial);
+        }
+        if (combined == null) {
+            combined = collector.supplier().get();
+        }
+        return new FanOutResult<>(collector.finisher().apply(combined), partials.getSucceededTenants(),
+            partials.getFailures());
+    }
+
+    /**
+     * Run <code>query</code> on every tenant and reduce each tenant's rows with <code>reducer</code> on the worker.
+     *
+     * @return the reduced result of each succeeded tenant in the requested order, and the failures
+     */
+    private <T, P> FanOutResult<Map<String, P>> execute(Collection<String> tenantIds, TenantQuery<T> query,
+        Function<Stream<T>, P> reducer) {
+        Assert.notNull(query, "The tenant query is required!");
+        Collection<String> tenants = tenantIds == null ? getTenantIds() : new LinkedHashSet<>(tenantIds);
+        Map<String, CompletableFuture<P>> futures = new LinkedHashMap<>(tenants.size() * 2);
+        for (String tenantId : tenants) {
+            CompletableFuture<P> future = new CompletableFuture<>();
+            futures.put(tenantId, future);
+            if (!this.multiTenantDataSources.containsKey(tenantId)) {
+                future.completeExceptionally(new IllegalArgumentException("Unknown tenant: " + tenantId));
+                continue;
+            }
+            try {
+                this.workers.execute(new TenantTask<>(tenantId, query, reducer, future));
+            } catch (RejectedExecutionException ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+
+        Map<String, P> results = new LinkedHashMap<>(futures.size() * 2);
+        List<String> succeeded = new ArrayList<>(futures.size());
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        boolean interrupted = false;
+        for (Map.Entry<String, CompletableFuture<P>> entry : futures.entrySet()) {
+            if (interrupted) {
+                entry.getValue().cancel(true);
+            }
+            try {
+                results.put(entry.getKey(), entry.getValue().get());
+                succeeded.add(entry.getKey());
+            } catch (ExecutionException ex) {
+                failures.put(entry.getKey(), ex.getCause());
+            } catch (CancellationException ex) {
+                failures.put(entry.getKey(), ex);
+            } catch (InterruptedException ex) {
+                interrupted = true;
+                entry.getValue().cancel(true);
+                failures.put(entry.getKey(), ex);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (!failures.isEmpty() && log.isWarnEnabled()) {
+            log.warn("Fan-out query failed on " + failures.size() + " of " + futures.size() + " tenants: "
+                + failures.keySet());
+        }
+        return new FanOutResult<>(results, succeeded, failures);
+    }
+
+    @Override
+    public void destroy() {
+        this.workers.shutdownNow();
+        this.watchdog.shutdownNow();
+    }
+
+    /**
+     * The query of one tenant on a worker thread. The watchdog completes the future with a
+     * {@link TimeoutException} and interrupts the worker when the query runs longer than the timeout, the worker
+     * clears the interrupt before it returns to the pool.
+     */
+    private final class TenantTask<T, P> implements Runnable {
+        private final String tenantId;
+        private final TenantQuery<T> query;
+        private final Function<Stream<T>, P> reducer;
+        private final CompletableFuture<P> future;
+        private Thread worker;
+
+        TenantTask(String tenantId, TenantQuery<T> query, Function<Stream<T>, P> reducer,
+            CompletableFuture<P> future) {
+            this.tenantId = tenantId;
+            this.query = query;
+            this.reducer = reducer;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            if (this.future.isDone()) {
+                return;
+            }
+            synchronized (this) {
+                this.worker = Thread.currentThread();
+            }
+            ScheduledFuture<?> timer = watchdog.schedule(this::timeout, timeout.toMillis(), TimeUnit.MILLISECONDS);
+            try {
+                this.future.complete(TenantHolder.callWithTenant(this.tenantId, this::queryInTransaction));
+            } catch (Exception ex) {
+                this.future.completeExceptionally(ex);
+            } finally {
+                timer.cancel(false);
+                synchronized (this) {
+                    this.worker = null;
+                    Thread.interrupted();
+                }
+            }
+        }
+
+        private P queryInTransaction() {
+            if (transactionTemplate == null) {
+                return reduce();
+            }
+            return transactionTemplate.execute(status -> reduce());
+        }
+
+        private P reduce() {
+            try (Stream<T> rows = this.query.query(this.tenantId)) {
+                return this.reducer.apply(rows);
+            }
+        }
+
+        private synchronized void timeout() {
+            if (this.worker != null && this.future.completeExceptionally(new TimeoutException(
+                "Query of tenant " + this.tenantId + " timed out after " + timeout.toMillis() + " ms"))) {
+                this.worker.interrupt();
+            }
+        }
+    }
+
+    /**
+     * The k-way merge of sorted per-tenant rows, with a heap of the head row of each tenant.
+     */
+    private static final class MergingIterator<T> implements Iterator<TenantRow<T>> {
+        private final PriorityQueue<Head<T>> heads;
+
+        MergingIterator(Map<String, List<T>> rows, Comparator<? super T> order) {
+            Comparator<Head<T>> byRow = (a, b) -> order.compare(a.row, b.row);
+            this.heads = new PriorityQueue<>(Math.max(1, rows.size()), byRow.thenComparingInt(head -> head.rank));
+            int rank = 0;
+            for (Map.Entry<String, List<T>> entry : rows.entrySet()) {
+                Head<T> head = new Head<>(entry.getKey(), rank++, entry.getValue().iterator());
+                if (head.advance()) {
+                    this.heads.add(head);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !this.heads.isEmpty();
+        }
+
+        @Override
+        public TenantRow<T> next() {
+            Head<T> head = this.heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            TenantRow<T> next = new TenantRow<>(head.tenantId, head.row);
+            if (head.advance()) {
+                this.heads.add(head);
+            }
+            return next;
+        }
+    }
+
+    private static final class Head<T> {
+        private final String tenantId;
+        private final int rank;
+        private final Iterator<T> rows;
+        private T row;
+
+        Head(String tenantId, int rank, Iterator<T> rows) {
+            this.tenantId = tenantId;
+            this.rank = rank;
+            this.rows = rows;
+        }
+
+        boolean advance() {
+            if (!this.rows.hasNext()) {
+                return false;
+            }
+            this.row = this.rows.next();
+            return true;
+        }
+    }
+}
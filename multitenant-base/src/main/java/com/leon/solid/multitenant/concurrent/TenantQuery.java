@@ -0,0 +1,25 @@
+package com.leon.solid.multitenant.concurrent;
+
+import java.util.stream.Stream;
+
+/**
+ * The query that {@link TenantFanOutExecutor} runs once per tenant.
+ * <p>
+ * It is called on a worker thread with the tenant as the current tenant and inside a read-only transaction, so the
+ * repositories route to the tenant's datasource. The returned {@link Stream} is consumed and closed before the
+ * transaction ends, so both <code>repository.queryForStream(...)</code> and <code>list.stream()</code> work.
+ *
+ * @param <T> the row type
+ * @author Leon.Tang
+ */
+@FunctionalInterface
+public interface TenantQuery<T> {
+
+    /**
+     * Query the rows of one tenant.
+     *
+     * @param tenantId the tenant, it is also the current tenant of the thread
+     * @return the rows, never null
+     */
+    Stream<T> query(String tenantId);
+}
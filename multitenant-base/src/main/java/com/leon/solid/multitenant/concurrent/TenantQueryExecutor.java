@@ -0,0 +1,143 @@
+package com.leon.solid.multitenant.concurrent;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+
+import com.leon.solid.multitenant.config.MultiTenantProperties;
+import com.leon.solid.multitenant.config.TenantHolder;
+
+/**
+ * Runs queries of the current tenant on a bounded worker pool, for the <code>...Async</code> methods of
+ * {@link com.leon.solid.multitenant.repository.JpaNativeQuerySupportRepository}.
+ * <p>
+ * The tenant of the submitting thread is captured at submission and is the current tenant of the worker while the
+ * query runs. Each query runs in its own read-only transaction, so it gets its own entity manager and connection and
+ * independent queries of one request can run at the same time. The pool has {@code multitenant.asyncQuery.poolSize}
+ * threads and queues up to {@code multitenant.asyncQuery.queueCapacity} queries, further queries are rejected: the
+ * returned future fails with a {@link RejectedExecutionException} instead of blocking the caller.
+ *
+ * @author Leon.Tang
+ */
+@Component("tenantQueryExecutor")
+public class TenantQueryExecutor implements DisposableBean {
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ThreadPoolExecutor workers;
+
+    @Autowired
+    public TenantQueryExecutor(MultiTenantProperties multiTenantProperties,
+        ObjectProvider<PlatformTransactionManager> transactionManager) {
+        MultiTenantProperties.AsyncQuery asyncQuery = multiTenantProperties.getAsyncQuery();
+        Assert.isTrue(asyncQuery.getPoolSize() > 0, "multitenant.asyncQuery.poolSize must be positive!");
+        Assert.isTrue(asyncQuery.getQueueCapacity() > 0, "multitenant.asyncQuery.queueCapacity must be positive!");
+
+        PlatformTransactionManager txManager = transactionManager.getIfUnique();
+        if (txManager != null) {
+            this.transactionTemplate = new TransactionTemplate(txManager);
+            this.transactionTemplate.setReadOnly(true);
+        } else {
+            this.transactionTemplate = null;
+        }
+
+        CustomizableThreadFactory workerFactory = new CustomizableThreadFactory("tenant-query-");
+        workerFactory.setDaemon(true);
+        this.workers = new ThreadPoolExecutor(asyncQuery.getPoolSize(), asyncQuery.getPoolSize(), 60L,
+            TimeUnit.SECONDS, new ArrayBlockingQueue<>(asyncQuery.getQueueCapacity()), workerFactory);
+        this.workers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Run <code>query</code> for the current tenant on a worker thread.
+     *
+     * @param <T> the result type
+     * @param query the query
+     * @return the future of the query result, completed exceptionally if the query fails or is rejected
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> query) {
+        Assert.notNull(query, "The query is required!");
+        final String tenantId = TenantHolder.getCurrentTenant();
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            this.workers.execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                try {
+                    future.complete(TenantHolder.callWithTenant(tenantId, () -> queryInTransaction(query)));
+                } catch (Exception ex) {
+                    future.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Get the number of queries waiting for a worker.
+     *
+     * @return the queue size
+     */
+    public int getQueueSize() {
+        return this.workers.getQueue().size();
+    }
+
+    /**
+     * Get the number of queries running.
+     *
+     * @return the number of busy workers
+     */
+    public int getActiveCount() {
+        return this.workers.getActiveCount();
+    }
+
+    @Override
+    public void destroy() {
+        this.workers.shutdownNow();
+    }
+
+    private <T> T queryInTransaction(Callable<T> query) throws Exception {
+        if (this.transactionTemplate == null) {
+            return query.call();
+        }
+        try {
+            return this.transactionTemplate.execute(status -> {
+                try {
+                    return query.call();
+                } catch (RuntimeException ex) {
+                    throw ex;
+                } catch (Exception ex) {
+                    throw new QueryFailure(ex);
+                }
+            });
+        } catch (QueryFailure failure) {
+            throw (Exception)failure.getCause();
+        }
+    }
+
+    /**
+     * Carries a checked exception of the query through the transaction template.
+     */
+    private static final class QueryFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        QueryFailure(Exception cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.leon.solid.multitenant.concurrent;
+
+/**
+ * A row of a fan-out query, tagged with the tenant it is read from.
+ *
+ * @param <T> the row type
+ * @author Leon.Tang
+ */
+public class TenantRow<T> {
+
+    private final String tenantId;
+
+    private final T row;
+
+    public TenantRow(String tenantId, T row) {
+        this.tenantId = tenantId;
+        this.row = row;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public T getRow() {
+        return row;
+    }
+
+    @Override
+    public String toString() {
+        return tenantId + ":" + row;
+    }
+}
@@ -0,0 +1,22 @@
+package com.leon.solid.multitenant.concurrent;
+
+/**
+ * A maintenance task that {@link TenantTaskExecutor} runs once per tenant, e.g. a purge or a recalculation.
+ * <p>
+ * It is called on a worker thread with the tenant as the current tenant, so the repositories route to the tenant's
+ * datasource. It is not wrapped in a transaction, long tasks should commit in chunks through
+ * {@code @Transactional} services.
+ *
+ * @author Leon.Tang
+ */
+@FunctionalInterface
+public interface TenantTask {
+
+    /**
+     * Run the task for one tenant.
+     *
+     * @param tenantId the tenant, it is also the current tenant of the thread
+     * @throws Exception if the task fails, the other tenants are not affected
+     */
+    void run(String tenantId) throws Exception;
+}
@@ -0,0 +1,44 @@
+package com.leon.solid.multitenant.concurrent;
+
+import java.util.Set;
+
+/**
+ * Records the tenants a run of a {@link TenantTaskExecutor} job has completed, so that the run can be resumed after
+ * a crash or a failure without repeating them.
+ * <p>
+ * A run is identified by the job name and a run key chosen by the caller, e.g. the business date of a nightly job.
+ *
+ * @author Leon.Tang
+ * @see InMemoryTenantTaskCheckpointStore
+ * @see JdbcTenantTaskCheckpointStore
+ */
+public interface TenantTaskCheckpointStore {
+
+    /**
+     * Find the tenants the run has completed.
+     *
+     * @param jobName the job name
+     * @param runKey the run key
+     * @return the completed tenant ids, never null
+     */
+    Set<String> findCompleted(String jobName, String runKey);
+
+    /**
+     * Record that the run has completed a tenant.
+     *
+     * @param jobName the job name
+     * @param runKey the run key
+     * @param tenantId the tenant
+     */
+    void markCompleted(String jobName, String runKey, String tenantId);
+
+    /**
+     * Record that the task failed for a tenant, it is run again when the run is resumed.
+     *
+     * @param jobName the job name
+     * @param runKey the run key
+     * @param tenantId the tenant
+     * @param error the error of the task
+     */
+    void markFailed(String jobName, String runKey, String tenantId, Throwable error);
+}
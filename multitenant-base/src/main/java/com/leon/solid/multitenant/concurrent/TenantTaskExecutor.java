@@ -0,0 +1,193 @@
+package com.leon.solid.multitenant.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import com.leon.solid.multitenant.config.MultiTenantProperties;
+import com.leon.solid.multitenant.config.TenantHolder;
+
+/**
+ * Runs a maintenance {@link TenantTask} once for each active tenant, e.g. a nightly purge.
+ * <p>
+ * The tenants are processed by {@code multitenant.task.parallelism} worker threads, each task call has its tenant as
+ * the current tenant and a failing tenant does not stop the others. Every completed tenant is recorded in the
+ * {@link TenantTaskCheckpointStore} under the job name and run key, executing the same run again (after a failure or
+ * a crash) skips the completed tenants and retries the rest. The progress of a running job is available from
+ * {@link #getProgress(String)}.
+ *
+ * @author Leon.Tang
+ */
+@Component
+public class TenantTaskExecutor {
+    private final Log log = LogFactory.getLog(TenantTaskExecutor.class);
+
+    private final Map<String, DataSource> multiTenantDataSources;
+
+    private final TenantTaskCheckpointStore checkpointStore;
+
+    private final int parallelism;
+
+    private final Map<String, TenantTaskProgress> runningJobs = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TenantTaskExecutor(MultiTenantProperties multiTenantProperties,
+        @Qualifier("multiTenantDataSources") Map<String, DataSource> multiTenantDataSources,
+        ObjectProvider<TenantTaskCheckpointStore> checkpointStore) {
+        this.multiTenantDataSources = multiTenantDataSources;
+        this.checkpointStore = checkpointStore.getIfAvailable(InMemoryTenantTaskCheckpointStore::new);
+        this.parallelism = multiTenantProperties.getTask().getParallelism();
+        Assert.isTrue(this.parallelism > 0, "multitenant.task.parallelism must be positive!");
+    }
+
+    /**
+     * Get the ids of the active tenants, the tenants whose datasource is built from the configuration or the tenant
+     * registry.
+     *
+     * @return the tenant ids in natural order
+     */
+    public List<String> getActiveTenantIds() {
+        List<String> tenantIds = new ArrayList<>(this.multiTenantDataSources.keySet());
+        Collections.sort(tenantIds);
+        return tenantIds;
+    }
+
+    /**
+     * Run <code>task</code> for every active tenant with the configured parallelism, and wait until all tenants are
+     * processed.
+     *
+     * @param jobName the job name
+     * @param runKey the key of this run, e.g. the business date, the tenants completed by an earlier attempt of the
+     *        same run are skipped
+     * @param task the task
+     * @return the report of the run
+     */
+    public TenantTaskProgress execute(String jobName, String runKey, TenantTask task) {
+        return execute(jobName, runKey, null, this.parallelism, task);
+    }
+
+    /**
+     * Run <code>task</code> for the <code>tenantIds</code>, and wait until all tenants are processed.
+     *
+     * @param jobName the job name
+     * @param runKey the key of this run, e.g. the business date, the tenants completed by an earlier attempt of the
+     *        same run are skipped
+     * @param tenantIds the tenants, or null for all active tenants
+     * @param parallelism the number of tenants processed at the same time
+     * @param task the task
+     * @return the report of the run
+     * @throws IllegalStateException if the job is already running
+     */
+    public TenantTaskProgress execute(String jobName, String runKey, Collection<String> tenantIds, int parallelism,
+        TenantTask task) {
+        Assert.hasText(jobName, "The job name is required!");
+        Assert.hasText(runKey, "The run key is required!");
+        Assert.isTrue(parallelism > 0, "The parallelism must be positive!");
+        Assert.notNull(task, "The task is required!");
+        Collection<String> tenants = tenantIds == null ? getActiveTenantIds() : new LinkedHashSet<>(tenantIds);
+        TenantTaskProgress progress = new TenantTaskProgress(jobName, runKey, tenants.size());
+        if (this.runningJobs.putIfAbsent(jobName, progress) != null) {
+            throw new IllegalStateException("The job " + jobName + " is already running");
+        }
+        try {
+            Set<String> completed = this.checkpointStore.findCompleted(jobName, runKey);
+            List<String> pending = new ArrayList<>(tenants.size());
+            for (String tenantId : tenants) {
+                if (completed.contains(tenantId)) {
+                    progress.skipped(tenantId);
+                } else {
+                    pending.add(tenantId);
+                }
+            }
+            if (log.isInfoEnabled()) {
+                log.info("Start job " + jobName + " (run: " + runKey + ") on " + pending.size() + " tenants, "
+                    + progress.getSkippedTenants().size() + " already completed");
+            }
+            if (!pending.isEmpty()) {
+                runAll(progress, pending, Math.min(parallelism, pending.size()), task);
+            }
+        } finally {
+            progress.finished();
+            this.runningJobs.remove(jobName, progress);
+        }
+        if (log.isInfoEnabled()) {
+            log.info("Finish job " + jobName + " (run: " + runKey + "): " + progress);
+        }
+        return progress;
+    }
+
+    /**
+     * Get the progress of a running job.
+     *
+     * @param jobName the job name
+     * @return the progress, or null if the job is not running
+     */
+    public TenantTaskProgress getProgress(String jobName) {
+        return this.runningJobs.get(jobName);
+    }
+
+    private void runAll(TenantTaskProgress progress, List<String> tenantIds, int threads, TenantTask task) {
+        CustomizableThreadFactory threadFactory =
+            new CustomizableThreadFactory("tenant-task-" + progress.getJobName() + "-");
+        ExecutorService workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), threadFactory);
+        try {
+            for (String tenantId : tenantIds) {
+                workers.execute(() -> runTenant(progress, tenantId, task));
+            }
+            workers.shutdown();
+            while (!workers.awaitTermination(1L, TimeUnit.MINUTES)) {
+                if (log.isInfoEnabled()) {
+                    log.info("Job " + progress.getJobName() + " in progress: " + progress);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void runTenant(TenantTaskProgress progress, String tenantId, TenantTask task) {
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        progress.started(tenantId);
+        try {
+            TenantHolder.callWithTenant(tenantId, () -> {
+                task.run(tenantId);
+                return null;
+            });
+            this.checkpointStore.markCompleted(progress.getJobName(), progress.getRunKey(), tenantId);
+            progress.completed(tenantId);
+        } catch (Exception ex) {
+            progress.failed(tenantId, ex);
+            log.warn("Job " + progress.getJobName() + " failed on tenant " + tenantId, ex);
+            try {
+                this.checkpointStore.markFailed(progress.getJobName(), progress.getRunKey(), tenantId, ex);
+            } catch (RuntimeException storeEx) {
+                log.warn("Could not record the failure of tenant " + tenantId, storeEx);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.leon.solid.multitenant.concurrent;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The progress of a run of a {@link TenantTaskExecutor} job. It is updated by the workers while the run is going,
+ * and is the report of the run when it is {@link #isFinished() finished}.
+ *
+ * @author Leon.Tang
+ */
+public class TenantTaskProgress {
+
+    private final String jobName;
+
+    private final String runKey;
+
+    private final int total;
+
+    private final Instant startTime = Instant.now();
+
+    private volatile Instant finishTime;
+
+    private final List<String> skipped = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<String> completed = Collections.synchronizedList(new ArrayList<>());
+
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Throwable> failures = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    public TenantTaskProgress(String jobName, String runKey, int total) {
+        this.jobName = jobName;
+        this.runKey = runKey;
+        this.total = total;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public String getRunKey() {
+        return runKey;
+    }
+
+    /**
+     * Get the number of tenants of the run, including the skipped ones.
+     *
+     * @return the number of tenants
+     */
+    public int getTotal() {
+        return total;
+    }
+
+    public Instant getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Get the time the run finished.
+     *
+     * @return the finish time, or null while the run is going
+     */
+    public Instant getFinishTime() {
+        return finishTime;
+    }
+
+    public boolean isFinished() {
+        return finishTime != null;
+    }
+
+    /**
+     * Get the tenants that an earlier attempt of the run has completed.
+     *
+     * @return the skipped tenant ids
+     */
+    public List<String> getSkippedTenants() {
+        synchronized (skipped) {
+            return new ArrayList<>(skipped);
+        }
+    }
+
+    /**
+     * Get the tenants completed by this attempt, in completion order.
+     *
+     * @return the completed tenant ids
+     */
+    public List<String> getCompletedTenants() {
+        synchronized (completed) {
+            return new ArrayList<>(completed);
+        }
+    }
+
+    public Set<String> getRunningTenants() {
+        return Collections.unmodifiableSet(new HashSet<>(running));
+    }
+
+    /**
+     * Get the errors of the failed tenants.
+     *
+     * @return the errors by tenant id, in failure order
+     */
+    public Map<String, Throwable> getFailures() {
+        synchronized (failures) {
+            return new LinkedHashMap<>(failures);
+        }
+    }
+
+    /**
+     * Get the number of tenants that are skipped, completed or failed.
+     *
+     * @return the number of processed tenants
+     */
+    public int getProcessedCount() {
+        return skipped.size() + completed.size() + failures.size();
+    }
+
+    /**
+     * Check if every tenant is completed, by this or an earlier attempt.
+     *
+     * @return {@code true} if the run is finished without failures
+     */
+    public boolean isSuccessful() {
+        return isFinished() && failures.isEmpty() && skipped.size() + completed.size() == total;
+    }
+
+    void skipped(String tenantId) {
+        skipped.add(tenantId);
+    }
+
+    void started(String tenantId) {
+        running.add(tenantId);
+    }
+
+    void completed(String tenantId) {
+        completed.add(tenantId);
+        running.remove(tenantId);
+    }
+
+    void failed(String tenantId, Throwable error) {
+        failures.put(tenantId, error);
+        running.remove(tenantId);
+    }
+
+    void finished() {
+        finishTime = Instant.now();
+    }
+
+    @Override
+    public String toString() {
+        return "TenantTaskProgress [job=" + jobName + ", run=" + runKey + ", total=" + total + ", skipped="
+            + skipped.size() + ", completed=" + completed.size() + ", failed=" + failures.size() + ", running="
+            + running.size() + ", finished=" + isFinished() + "]";
+    }
+}
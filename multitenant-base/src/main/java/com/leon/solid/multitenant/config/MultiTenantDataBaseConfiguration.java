@@ -14,9 +14,7 @@ import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 
 import com.leon.solid.multitenant.model.TenantDataSourceModel;
-import com.leon.solid.multitenant.model.TenantRelationModel;
 import com.leon.solid.multitenant.service.TenantDataSourceService;
-import com.leon.solid.multitenant.utils.CollectionUtils;
 import com.leon.solid.multitenant.utils.StringUtils;
 
 /**
@@ -28,6 +26,11 @@ import com.leon.solid.multitenant.utils.StringUtils;
 @Configuration
 @ComponentScan(basePackages = {"com.leon.solid.multitenant"})
 public class MultiTenantDataBaseConfiguration {
+    /**
+     * The number of registry datasources read at a time while the tenants are built.
+     */
+    private static final int REGISTRY_PAGE_SIZE = 100;
+
     private final Log log = LogFactory.getLog(MultiTenantDataBaseConfiguration.class);
     @Autowired
     private TenantDataSourceService tenantDataSourceService;
@@ -36,33 +39,34 @@ public class MultiTenantDataBaseConfiguration {
     @Qualifier("tenantBuilder")
     private TenantBuilder tenantBuilder;
 
+    /**
+     * Build the tenants of the registry as their rows arrive. The enabled datasources are read in keyset pages by
+     * tenant id, each page on a short-lived control connection, and the tenants of a page are built before the next
+     * page is read, so no connection is held while the tenants open their pools and entity manager factories.
+     */
     @PostConstruct
     public void init() {
         Map<String, HashMap<String, String>> tenantPackageRelation = new HashMap<String, HashMap<String, String>>(16);
-        List<TenantRelationModel> list = tenantDataSourceService.findAllTenantRelation();
-        if (CollectionUtils.isNotEmpty(list)) {
-            list.forEach(relation -> {
-                if (StringUtils.isNotEmpty(relation.getPackageName())) {
-                    if (tenantPackageRelation.containsKey(relation.getRelationId())) {
-                        tenantPackageRelation.get(relation.getRelationId()).put(relation.getPackageName(),
-                            relation.getTenantId());
-                    } else {
-                        HashMap<String, String> packageMap = new HashMap<String, String>(16);
-                        packageMap.put(relation.getPackageName(), relation.getTenantId());
-                        tenantPackageRelation.put(relation.getRelationId(), packageMap);
-                    }
-                }
-            });
-        }
+        tenantDataSourceService.forEachTenantPackageRelation(relation -> {
+            tenantPackageRelation.computeIfAbsent(relation.getRelationId(), key -> new HashMap<String, String>(16))
+                .put(relation.getPackageName(), relation.getTenantId());
+        });
 
         tenantBuilder.setTenantPackageRelation(tenantPackageRelation);
-        List<TenantDataSourceModel> datasourceList = tenantDataSourceService.getAllTenantDataSources();
-        if (CollectionUtils.isNotEmpty(datasourceList)) {
-            datasourceList.forEach(dsModel -> {
-                tenantBuilder.build(dsModel);
-            });
+        int size = 0;
+        String lastTenantId = null;
+        List<TenantDataSourceModel> page;
+        do {
+            page = tenantDataSourceService.findEnabledTenantDataSourcePage(lastTenantId, REGISTRY_PAGE_SIZE);
+            for (TenantDataSourceModel model : page) {
+                tenantBuilder.build(model);
+                lastTenantId = model.getTenantId();
+            }
+            size += page.size();
+        } while (page.size() == REGISTRY_PAGE_SIZE);
+        if (size > 0) {
             log.info("Create extended tenants from database configuration finished (size: "
-                + StringUtils.asString(datasourceList.size()) + ")");
+                + StringUtils.asString(size) + ")");
         }
     }
 }
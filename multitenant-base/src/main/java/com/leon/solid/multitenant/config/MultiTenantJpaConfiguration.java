@@ -1,9 +1,10 @@
 package com.leon.solid.multitenant.config;
 
 import java.lang.reflect.Proxy;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
 
@@ -21,6 +22,9 @@ import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.transaction.jta.JtaTransactionManager;
 
 import com.leon.solid.multitenant.config.MultiTenantProperties.DataSourceProperties;
+import com.leon.solid.multitenant.monitor.TenantEvent;
+import com.leon.solid.multitenant.monitor.TenantEvents;
+import com.leon.solid.multitenant.monitor.TenantUsageMeter;
 import com.leon.solid.multitenant.utils.StringUtils;
 
 /**
@@ -48,7 +52,7 @@ public class MultiTenantJpaConfiguration {
 
     @Bean(name = "multiTenantDataSources")
     public Map<String, DataSource> multiTenantDataSources(@Qualifier("tenantBuilder") TenantBuilder tenantBuilder) {
-        Map<String, DataSource> result = new HashMap<String, DataSource>(16);
+        Map<String, DataSource> result = new ConcurrentHashMap<String, DataSource>(16);
 
         for (DataSourceProperties dsProperties : this.multiTenantProperties.getDataSources()) {
             DataSource ds = tenantBuilder.buildDataSourceBean(dsProperties);
@@ -75,13 +79,18 @@ public class MultiTenantJpaConfiguration {
     public Map<String, LocalContainerEntityManagerFactoryBean> entityManagerFactories(
         @Qualifier("tenantBuilder") TenantBuilder tenantBuilder,
         @Qualifier("multiTenantDataSources") Map<String, DataSource> multiTenantDataSources) {
-        Map<String, LocalContainerEntityManagerFactoryBean> entityManagerFactories = new HashMap<>(16);
+        Map<String, LocalContainerEntityManagerFactoryBean> entityManagerFactories = new ConcurrentHashMap<>(16);
 
         multiTenantDataSources.entrySet().forEach(entry -> {
+            long start = System.nanoTime();
             String beanName = tenantBuilder.buildEntityManagerFactoryBean(entry.getKey(), entry.getValue());
             if (StringUtils.isNotEmpty(beanName)) {
+                TenantEvent build =
+                    TenantEvents.beginBuild(entry.getKey(), TenantEvents.PHASE_ENTITY_MANAGER_FACTORY);
                 entityManagerFactories.put(entry.getKey(),
                     (LocalContainerEntityManagerFactoryBean)applicationContext.getBean(beanName));
+                build.commit();
+                tenantBuilder.recordBuild(entry.getKey(), System.nanoTime() - start);
             }
         });
         tenantBuilder.setEntityFacotryMap(entityManagerFactories);
@@ -93,20 +102,37 @@ public class MultiTenantJpaConfiguration {
     @Bean(name = "entityManagerFactory")
     @Primary
     public EntityManagerFactory entityManagerFactory(@Qualifier("tenantEntityManagerFactories") Map<String,
-        LocalContainerEntityManagerFactoryBean> tenantEntityManagerFactories) {
+        LocalContainerEntityManagerFactoryBean> tenantEntityManagerFactories,
+        @Qualifier("tenantBuilder") TenantBuilder tenantBuilder, ObjectProvider<TenantUsageMeter> usageMeter) {
         return (EntityManagerFactory)Proxy.newProxyInstance(this.getClass().getClassLoader(),
-            new Class<?>[] {EntityManagerFactory.class},
-            (proxy, method, args) -> method.invoke(getCurrentEntityManagerFacotry(tenantEntityManagerFactories), args));
+            new Class<?>[] {EntityManagerFactory.class}, (proxy, method, args) -> {
+                Object result =
+                    method.invoke(getCurrentEntityManagerFacotry(tenantEntityManagerFactories, tenantBuilder), args);
+                if (result instanceof EntityManager) {
+                    TenantUsageMeter meter = usageMeter.getIfAvailable();
+                    if (meter != null) {
+                        meter.attach((EntityManager)result);
+                    }
+                }
+                return result;
+            });
     }
 
     public EntityManagerFactory
     getCurrentEntityManagerFacotry(Map<String, LocalContainerEntityManagerFactoryBean> map) {
+        return getCurrentEntityManagerFacotry(map, null);
+    }
+
+    private EntityManagerFactory getCurrentEntityManagerFacotry(Map<String, LocalContainerEntityManagerFactoryBean> map,
+        TenantBuilder tenantBuilder) {
         final String currentTenant = TenantHolder.getCurrentTenant();
-        LocalContainerEntityManagerFactoryBean emb = null;
-        if (currentTenant != null) {
-            emb = map.get(currentTenant);
-        } else {
-            emb = map.get(this.defaultTenantId);
+        final String tenantId = currentTenant != null ? currentTenant : this.defaultTenantId;
+        TenantEvent routing = TenantEvents.beginRouting(currentTenant);
+        LocalContainerEntityManagerFactoryBean emb = map.get(tenantId);
+        routing.setTenantId(tenantId);
+        routing.commit();
+        if (tenantBuilder != null) {
+            tenantBuilder.recordRouting(tenantId);
         }
         return emb.getObject();
     }
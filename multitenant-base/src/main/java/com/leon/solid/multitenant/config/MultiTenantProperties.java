@@ -1,7 +1,11 @@
 package com.leon.solid.multitenant.config;
 
+import java.time.Duration;
 import java.util.List;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import com.leon.solid.multitenant.datasource.PoolingDataSourceFactory;
 
 /**
  * The Class MultiTenantProperties.
@@ -16,8 +20,30 @@ public class MultiTenantProperties {
 
     private String[] entityScanPackages;
 
+    private String controlTenantId;
+
     private List<DataSourceProperties> dataSourcesProps;
 
+    private final Pool pool = new Pool();
+
+    private final FanOut fanOut = new FanOut();
+
+    private final Task task = new Task();
+
+    private final QueryCache queryCache = new QueryCache();
+
+    private final Monitor monitor = new Monitor();
+
+    private final AsyncQuery asyncQuery = new AsyncQuery();
+
+    private final RegistrySearch registrySearch = new RegistrySearch();
+
+    private final Footprint footprint = new Footprint();
+
+    private final Tagging tagging = new Tagging();
+
+    private final Metering metering = new Metering();
+
     public List<DataSourceProperties> getDataSources() {
         return this.dataSourcesProps;
     }
@@ -34,6 +60,84 @@ public class MultiTenantProperties {
         this.entityScanPackages = entityScanPackages;
     }
 
+    public String getControlTenantId() {
+        return controlTenantId;
+    }
+
+    public void setControlTenantId(String controlTenantId) {
+        this.controlTenantId = controlTenantId;
+    }
+
+    public Pool getPool() {
+        return pool;
+    }
+
+    public FanOut getFanOut() {
+        return fanOut;
+    }
+
+    public Task getTask() {
+        return task;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    public Monitor getMonitor() {
+        return monitor;
+    }
+
+    public AsyncQuery getAsyncQuery() {
+        return asyncQuery;
+    }
+
+    public RegistrySearch getRegistrySearch() {
+        return registrySearch;
+    }
+
+    public Footprint getFootprint() {
+        return footprint;
+    }
+
+    public Tagging getTagging() {
+        return tagging;
+    }
+
+    public Metering getMetering() {
+        return metering;
+    }
+
+    /**
+     * Resolve the tenant whose datasource holds the tenant registry tables ({@code sys_tenant_datasource},
+     * {@code sys_tenant_relation}). The explicit {@code multitenant.controlTenantId} wins, otherwise the default
+     * tenant is used.
+     *
+     * @return the control tenant id, or {@code null} if neither is configured
+     */
+    public String resolveControlTenantId() {
+        if (this.controlTenantId != null && !this.controlTenantId.isEmpty()) {
+            return this.controlTenantId;
+        }
+        return resolveDefaultTenantId();
+    }
+
+    /**
+     * Resolve the tenant of the datasource marked as {@code defaultTenant}.
+     *
+     * @return the default tenant id, or {@code null} if none is configured
+     */
+    public String resolveDefaultTenantId() {
+        if (this.dataSourcesProps != null) {
+            for (DataSourceProperties dsProperties : this.dataSourcesProps) {
+                if (dsProperties.isDefaultTenant()) {
+                    return dsProperties.getTenantId();
+                }
+            }
+        }
+        return null;
+    }
+
     /**
      * The Class DataSourceProperties.
      *
@@ -62,4 +166,433 @@ public class MultiTenantProperties {
             this.defaultTenant = defaultTenant;
         }
     }
+
+    /**
+     * The settings of the connection pools of the tenants.
+     *
+     * @author Leon.Tang
+     */
+    public static class Pool {
+
+        /**
+         * The number of prepared statements cached by each pooled connection, 0 disables the cache.
+         */
+        private int preparedStatementCacheSize = PoolingDataSourceFactory.DEFAULT_PREPARED_STATEMENT_CACHE_SIZE;
+
+        /**
+         * Whether the pools of the tenants run statements outside of a JTA transaction on a local connection. The pool
+         * of the control tenant always does.
+         */
+        private boolean allowLocalTransactions;
+
+        public int getPreparedStatementCacheSize() {
+            return preparedStatementCacheSize;
+        }
+
+        public void setPreparedStatementCacheSize(int preparedStatementCacheSize) {
+            this.preparedStatementCacheSize = preparedStatementCacheSize;
+        }
+
+        public boolean isAllowLocalTransactions() {
+            return allowLocalTransactions;
+        }
+
+        public void setAllowLocalTransactions(boolean allowLocalTransactions) {
+            this.allowLocalTransactions = allowLocalTransactions;
+        }
+    }
+
+    /**
+     * The settings of queries run on many tenants in parallel.
+     *
+     * @author Leon.Tang
+     */
+    public static class FanOut {
+
+        /**
+         * The number of tenants queried at the same time.
+         */
+        private int parallelism = 8;
+
+        /**
+         * The time a tenant query may run, counted from its start.
+         */
+        private Duration timeout = Duration.ofSeconds(30);
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+    }
+
+    /**
+     * The settings of maintenance tasks run once per tenant.
+     *
+     * @author Leon.Tang
+     */
+    public static class Task {
+
+        /**
+         * The number of tenants processed at the same time.
+         */
+        private int parallelism = 4;
+
+        /**
+         * The store of the completed tenants of a run: memory or jdbc.
+         */
+        private String checkpointStore = "memory";
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+
+        public String getCheckpointStore() {
+            return checkpointStore;
+        }
+
+        public void setCheckpointStore(String checkpointStore) {
+            this.checkpointStore = checkpointStore;
+        }
+    }
+
+    /**
+     * The settings of the tenant-partitioned cache of native query results.
+     *
+     * @author Leon.Tang
+     */
+    public static class QueryCache {
+
+        /**
+         * Whether the cachedQueryFor... repository methods cache their results.
+         */
+        private boolean enabled;
+
+        /**
+         * The estimated heap size of the results cached for one tenant.
+         */
+        private DataSize maximumBytesPerTenant = DataSize.ofMegabytes(16);
+
+        /**
+         * The time a result is cached, it bounds the staleness of writes not made through the repository.
+         */
+        private Duration timeToLive = Duration.ofMinutes(10);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public DataSize getMaximumBytesPerTenant() {
+            return maximumBytesPerTenant;
+        }
+
+        public void setMaximumBytesPerTenant(DataSize maximumBytesPerTenant) {
+            this.maximumBytesPerTenant = maximumBytesPerTenant;
+        }
+
+        public Duration getTimeToLive() {
+            return timeToLive;
+        }
+
+        public void setTimeToLive(Duration timeToLive) {
+            this.timeToLive = timeToLive;
+        }
+    }
+
+    /**
+     * The settings of the per-tenant statistics and slow query log of SQL statements.
+     *
+     * @author Leon.Tang
+     */
+    public static class Monitor {
+
+        /**
+         * Whether SQL statements are timed.
+         */
+        private boolean enabled = true;
+
+        /**
+         * The execution time above which a statement is logged, zero disables the log.
+         */
+        private Duration slowQueryThreshold = Duration.ofSeconds(1);
+
+        /**
+         * The number of distinct statements kept per tenant.
+         */
+        private int maxFingerprintsPerTenant = 200;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getSlowQueryThreshold() {
+            return slowQueryThreshold;
+        }
+
+        public void setSlowQueryThreshold(Duration slowQueryThreshold) {
+            this.slowQueryThreshold = slowQueryThreshold;
+        }
+
+        public int getMaxFingerprintsPerTenant() {
+            return maxFingerprintsPerTenant;
+        }
+
+        public void setMaxFingerprintsPerTenant(int maxFingerprintsPerTenant) {
+            this.maxFingerprintsPerTenant = maxFingerprintsPerTenant;
+        }
+    }
+
+    /**
+     * The settings of the worker pool of asynchronous repository queries.
+     *
+     * @author Leon.Tang
+     */
+    public static class AsyncQuery {
+
+        /**
+         * The number of queries run at the same time.
+         */
+        private int poolSize = 8;
+
+        /**
+         * The number of queries waiting for a worker, further queries are rejected.
+         */
+        private int queueCapacity = 256;
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    /**
+     * The settings of the in-memory search index of the tenant registry.
+     *
+     * @author Leon.Tang
+     */
+    public static class RegistrySearch {
+
+        /**
+         * The maximum age of the indexed registry, it is reloaded on the next search after that. Changes made through
+         * this application are indexed on the next search anyway.
+         */
+        private Duration refreshInterval = Duration.ofMinutes(1);
+
+        public Duration getRefreshInterval() {
+            return refreshInterval;
+        }
+
+        public void setRefreshInterval(Duration refreshInterval) {
+            this.refreshInterval = refreshInterval;
+        }
+    }
+
+    /**
+     * The settings of the sampled heap footprint of each tenant.
+     *
+     * @author Leon.Tang
+     */
+    public static class Footprint {
+
+        /**
+         * Whether the footprint of the tenants is sampled.
+         */
+        private boolean enabled;
+
+        /**
+         * The time between two samples.
+         */
+        private Duration sampleInterval = Duration.ofMinutes(10);
+
+        /**
+         * The maximum number of objects walked per tenant and sample, a larger tenant is reported as truncated.
+         */
+        private int maxObjectsPerTenant = 1000000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getSampleInterval() {
+            return sampleInterval;
+        }
+
+        public void setSampleInterval(Duration sampleInterval) {
+            this.sampleInterval = sampleInterval;
+        }
+
+        public int getMaxObjectsPerTenant() {
+            return maxObjectsPerTenant;
+        }
+
+        public void setMaxObjectsPerTenant(int maxObjectsPerTenant) {
+            this.maxObjectsPerTenant = maxObjectsPerTenant;
+        }
+    }
+
+    /**
+     * The settings of the tenant attribution of the SQL statements on the database side.
+     *
+     * @author Leon.Tang
+     */
+    public static class Tagging {
+
+        /**
+         * Whether the statements and connections of the tenants are tagged with the tenant id.
+         */
+        private boolean enabled;
+
+        /**
+         * When the statements are prefixed with a comment holding the tenant id: <code>auto</code> when the
+         * connections of the tenant do not carry the application name, <code>always</code> or <code>never</code>.
+         */
+        private SqlComment sqlComment = SqlComment.AUTO;
+
+        /**
+         * Whether the connection pools of the PostgreSQL tenants set the application name of their sessions to the
+         * application and tenant.
+         */
+        private boolean applicationName = true;
+
+        /**
+         * The logging MDC key that holds the current tenant, empty to leave the MDC unchanged.
+         */
+        private String mdcKey = "tenantId";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public SqlComment getSqlComment() {
+            return sqlComment;
+        }
+
+        public void setSqlComment(SqlComment sqlComment) {
+            this.sqlComment = sqlComment;
+        }
+
+        public boolean isApplicationName() {
+            return applicationName;
+        }
+
+        public void setApplicationName(boolean applicationName) {
+            this.applicationName = applicationName;
+        }
+
+        public String getMdcKey() {
+            return mdcKey;
+        }
+
+        public void setMdcKey(String mdcKey) {
+            this.mdcKey = mdcKey;
+        }
+
+        /**
+         * When the statements are prefixed with the tenant comment.
+         */
+        public enum SqlComment {
+            AUTO, ALWAYS, NEVER
+        }
+    }
+
+    /**
+     * The settings of the resource usage metering of each tenant.
+     *
+     * @author Leon.Tang
+     */
+    public static class Metering {
+
+        /**
+         * Whether the resource usage of the tenants is metered.
+         */
+        private boolean enabled;
+
+        /**
+         * The length of a usage window.
+         */
+        private Duration window = Duration.ofMinutes(1);
+
+        /**
+         * The number of closed windows kept for the rolling usage of the tenants.
+         */
+        private int windows = 60;
+
+        /**
+         * The store the closed windows are saved to: memory (kept until they are flushed) or jdbc.
+         */
+        private String store = "memory";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public int getWindows() {
+            return windows;
+        }
+
+        public void setWindows(int windows) {
+            this.windows = windows;
+        }
+
+        public String getStore() {
+            return store;
+        }
+
+        public void setStore(String store) {
+            this.store = store;
+        }
+    }
 }
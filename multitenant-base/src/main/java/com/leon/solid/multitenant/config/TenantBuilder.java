@@ -1,7 +1,10 @@
 package com.leon.solid.multitenant.config;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
@@ -16,9 +19,14 @@ import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 import org.springframework.transaction.jta.JtaTransactionManager;
 
+import com.leon.solid.multitenant.cache.TenantQueryCache;
 import com.leon.solid.multitenant.config.MultiTenantProperties.DataSourceProperties;
 import com.leon.solid.multitenant.datasource.PoolingDataSourceFactory;
 import com.leon.solid.multitenant.model.TenantDataSourceModel;
+import com.leon.solid.multitenant.monitor.TenantEvent;
+import com.leon.solid.multitenant.monitor.TenantEvents;
+import com.leon.solid.multitenant.monitor.TenantQueryMonitor;
+import com.leon.solid.multitenant.monitor.TenantSqlTagger;
 import com.leon.solid.multitenant.utils.StringUtils;
 
 /**
@@ -48,10 +56,14 @@ public class TenantBuilder {
 
     private JpaProperties jpaProperties;
 
-    private final PoolingDataSourceFactory poolingDataSourceFactory = new PoolingDataSourceFactory();
+    private PoolingDataSourceFactory poolingDataSourceFactory = new PoolingDataSourceFactory();
 
     private DefaultListableBeanFactory defaultListableBeanFactory;
 
+    private final Map<String, TenantRuntime> tenantRuntimes = new ConcurrentHashMap<>(16);
+
+    private final AtomicLong generations = new AtomicLong();
+
     public TenantBuilder(ObjectProvider<JtaTransactionManager> jtaTxManager,
         MultiTenantProperties multiTenantProperties, JpaProperties jpaProperties,
         ApplicationContext applicationContext) {
@@ -71,7 +83,13 @@ public class TenantBuilder {
         setTenantPackageRelation(tenantPackageRelation);
     }
 
-    public void build(TenantDataSourceModel model) {
+    /**
+     * Build a tenant from its registry row. Tenants are built and removed one at a time, as registering an entity
+     * manager factory bean looks up the other ones.
+     *
+     * @param model the tenant
+     */
+    public synchronized void build(TenantDataSourceModel model) {
         if (this.multiTenantProperties == null || this.jtaTxManager == null || this.jpaProperties == null) {
             return;
         }
@@ -81,7 +99,9 @@ public class TenantBuilder {
         if (model == null || model.getStatus() == false) {
             return;
         }
+        long start = System.nanoTime();
         if (!this.tenantDataSources.containsKey(model.getTenantId())) {
+            TenantEvent build = TenantEvents.beginBuild(model.getTenantId(), TenantEvents.PHASE_DATASOURCE);
             switch (model.getDbType()) {
                 case DB_TYPE_JDBC:
                     DataSourceProperties dsProperties = new DataSourceProperties();
@@ -108,16 +128,74 @@ public class TenantBuilder {
                 default:
                     break;
             }
+            build.commit();
             definitionEntityFactoryBean(model);
+            if (this.entityFacotryMap.containsKey(model.getTenantId())) {
+                recordBuild(model.getTenantId(), System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Record that a tenant was built, for its {@link TenantRuntime}.
+     *
+     * @param tenantId the tenant id
+     * @param buildNanos the time it took to build the datasource and the entity manager factory
+     */
+    public void recordBuild(String tenantId, long buildNanos) {
+        this.tenantRuntimes.put(tenantId,
+            new TenantRuntime(tenantId, this.generations.incrementAndGet(), System.currentTimeMillis(), buildNanos));
+    }
+
+    /**
+     * Record a call routed to the entity manager factory of a tenant.
+     *
+     * @param tenantId the tenant id
+     */
+    public void recordRouting(String tenantId) {
+        TenantRuntime runtime = this.tenantRuntimes.get(tenantId);
+        if (runtime != null) {
+            runtime.routed();
         }
     }
 
+    /**
+     * Get the runtime state of a tenant built on this node.
+     *
+     * @param tenantId the tenant id
+     * @return the runtime state, or null if the tenant is not built
+     */
+    public TenantRuntime getTenantRuntime(String tenantId) {
+        return this.tenantRuntimes.get(tenantId);
+    }
+
+    /**
+     * Get the runtime state of all tenants built on this node.
+     *
+     * @return the runtime states by tenant id
+     */
+    public Map<String, TenantRuntime> getTenantRuntimes() {
+        return Collections.unmodifiableMap(this.tenantRuntimes);
+    }
+
     public PoolingDataSourceBean buildDataSourceBean(DataSourceProperties dsProperties) {
         if (dsProperties == null) {
             return null;
         }
         PoolingDataSourceBean ds = this.poolingDataSourceFactory.build(dsProperties);
         ds.setUniqueName(dsProperties.getTenantId());
+        if (this.multiTenantProperties != null) {
+            // The registry and the other control-plane stores read the control tenant outside of a transaction
+            ds.setAllowLocalTransactions(this.multiTenantProperties.getPool().isAllowLocalTransactions()
+                || dsProperties.getTenantId().equals(this.multiTenantProperties.resolveControlTenantId()));
+        }
+        if (this.applicationContext != null) {
+            TenantSqlTagger sqlTagger =
+                this.applicationContext.getBeanProvider(TenantSqlTagger.class).getIfAvailable();
+            if (sqlTagger != null) {
+                sqlTagger.configure(dsProperties.getTenantId(), ds);
+            }
+        }
         return ds;
     }
 
@@ -128,6 +206,7 @@ public class TenantBuilder {
         if (StringUtils.isEmpty(tenantId) || targetDataSource == null) {
             return null;
         }
+        TenantEvent build = TenantEvents.beginBuild(tenantId, TenantEvents.PHASE_DEFINITION);
         BeanDefinitionBuilder beanDefinitionBuilder =
             BeanDefinitionBuilder.genericBeanDefinition(LocalContainerEntityManagerFactoryBean.class);
         beanDefinitionBuilder.addPropertyValue("packagesToScan", this.multiTenantProperties.getEntityScanPackages());
@@ -139,15 +218,31 @@ public class TenantBuilder {
         } else {
             beanDefinitionBuilder.addPropertyValue("dataSource", targetDataSource);
         }
-        beanDefinitionBuilder.addPropertyValue("jpaPropertyMap", this.jpaProperties.getProperties());
+        beanDefinitionBuilder.addPropertyValue("jpaPropertyMap", buildJpaPropertyMap(tenantId, targetDataSource));
         beanDefinitionBuilder.addPropertyValue("mappingResources", this.jpaProperties.getMappingResources()
             .toArray(new String[this.jpaProperties.getMappingResources().size()]));
 
         defaultListableBeanFactory.registerBeanDefinition(buildEntityManagerBeanName(tenantId),
             beanDefinitionBuilder.getBeanDefinition());
+        build.commit();
         return ENTITY_MANAGER_FACTORY_PREFIX + buildEntityManagerBeanName(tenantId);
     }
 
+    private Map<String, Object> buildJpaPropertyMap(String tenantId, DataSource targetDataSource) {
+        Map<String, Object> jpaPropertyMap = new HashMap<>(this.jpaProperties.getProperties());
+        TenantQueryMonitor queryMonitor =
+            this.applicationContext.getBeanProvider(TenantQueryMonitor.class).getIfAvailable();
+        if (queryMonitor != null) {
+            queryMonitor.instrument(tenantId, jpaPropertyMap);
+        }
+        // After the monitor, the timing inspector sees the statements without the tenant comment
+        TenantSqlTagger sqlTagger = this.applicationContext.getBeanProvider(TenantSqlTagger.class).getIfAvailable();
+        if (sqlTagger != null) {
+            sqlTagger.instrument(tenantId, targetDataSource, jpaPropertyMap);
+        }
+        return jpaPropertyMap;
+    }
+
     public TenantBuilder setApplicationContext(ApplicationContext applicationContext) {
         this.applicationContext = applicationContext;
         if (this.applicationContext != null) {
@@ -168,6 +263,8 @@ public class TenantBuilder {
 
     public TenantBuilder setMultiTenantProperties(MultiTenantProperties multiTenantProperties) {
         this.multiTenantProperties = multiTenantProperties;
+        this.poolingDataSourceFactory = multiTenantProperties == null ? new PoolingDataSourceFactory()
+            : new PoolingDataSourceFactory(multiTenantProperties.getPool().getPreparedStatementCacheSize());
         return this;
     }
 
@@ -206,15 +303,40 @@ public class TenantBuilder {
         String beanName =
             buildEntityManagerFactoryBean(model.getTenantId(), this.tenantDataSources.get(model.getTenantId()));
         if (StringUtils.isNotEmpty(beanName)) {
+            TenantEvent build =
+                TenantEvents.beginBuild(model.getTenantId(), TenantEvents.PHASE_ENTITY_MANAGER_FACTORY);
             this.entityFacotryMap.put(model.getTenantId(),
                 (LocalContainerEntityManagerFactoryBean)this.applicationContext.getBean(beanName));
+            build.commit();
         }
     }
 
-    public void destory(TenantDataSourceModel tenantDataSourceModel) {
-        entityFacotryMap.remove(tenantDataSourceModel.getTenantId());
-        if (DB_TYPE_JDBC.equals(tenantDataSourceModel.getDbType())) {
-            defaultListableBeanFactory.destroyBean(buildEntityManagerBeanName(tenantDataSourceModel.getTenantId()));
+    /**
+     * Remove a tenant: its entity manager factory bean is removed and closed, so the tenant can be published again,
+     * and the connection pool of a jdbc tenant is closed.
+     *
+     * @param tenantDataSourceModel the tenant
+     */
+    public synchronized void destory(TenantDataSourceModel tenantDataSourceModel) {
+        String tenantId = tenantDataSourceModel.getTenantId();
+        TenantEvent build = TenantEvents.beginBuild(tenantId, TenantEvents.PHASE_DESTROY);
+        tenantRuntimes.remove(tenantId);
+        entityFacotryMap.remove(tenantId);
+        String beanName = buildEntityManagerBeanName(tenantId);
+        if (defaultListableBeanFactory.containsBeanDefinition(beanName)) {
+            defaultListableBeanFactory.removeBeanDefinition(beanName);
+        }
+        build.commit();
+        if (this.applicationContext != null) {
+            TenantQueryCache queryCache =
+                this.applicationContext.getBeanProvider(TenantQueryCache.class).getIfAvailable();
+            if (queryCache != null) {
+                queryCache.removeTenant(tenantId);
+            }
+        }
+        DataSource dataSource = tenantDataSources.remove(tenantId);
+        if (DB_TYPE_JDBC.equals(tenantDataSourceModel.getDbType()) && dataSource instanceof PoolingDataSourceBean) {
+            ((PoolingDataSourceBean)dataSource).close();
         }
     }
 }
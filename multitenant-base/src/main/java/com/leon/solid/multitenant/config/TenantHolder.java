@@ -1,8 +1,16 @@
 package com.leon.solid.multitenant.config;
 
+import java.util.concurrent.Callable;
+
+import org.slf4j.MDC;
+
+import com.leon.solid.multitenant.monitor.TenantEvents;
+
 /**
  * Thread local storage of the tenant name. This is the only place, where the tenant name is available across all calls
  * and beans.
+ * <p>
+ * When an MDC key is set, see {@link #setMdcKey(String)}, the logging MDC of the thread follows the current tenant.
  *
  * @author Leon.Tang
  * @date Aug 28, 2019
@@ -11,15 +19,70 @@ public class TenantHolder {
 
     private static final InheritableThreadLocal<String> CURRENT_TENANT_NAME = new InheritableThreadLocal<>();
 
+    private static volatile String mdcKey;
+
     public static String getCurrentTenant() {
         return CURRENT_TENANT_NAME.get();
     }
 
     public static void setTenant(final String tenantName) {
+        TenantEvents.tenantSwitch(tenantName);
         CURRENT_TENANT_NAME.set(tenantName);
+        updateMdc(tenantName);
     }
 
     public static void cleanupTenant() {
         CURRENT_TENANT_NAME.remove();
+        updateMdc(null);
+    }
+
+    /**
+     * Set the logging MDC key that holds the current tenant of each thread from now on, it is kept in sync by the
+     * methods of this class. The MDC of threads that inherit their tenant is not set until they switch tenant.
+     *
+     * @param key the MDC key, or null to leave the MDC unchanged
+     */
+    public static void setMdcKey(final String key) {
+        mdcKey = key;
+    }
+
+    /**
+     * Call <code>task</code> with <code>tenantName</code> as the current tenant, and restore the previous tenant of
+     * the thread afterwards. Pooled threads should always use it instead of {@link #setTenant(String)}, as the
+     * inheritable tenant of a pooled thread is the one of the thread that happened to create it.
+     *
+     * @param <T> the result type
+     * @param tenantName the tenant to call the task for
+     * @param task the task
+     * @return the result of the task
+     * @throws Exception if the task fails
+     */
+    public static <T> T callWithTenant(final String tenantName, Callable<T> task) throws Exception {
+        final String previous = CURRENT_TENANT_NAME.get();
+        TenantEvents.tenantSwitch(tenantName);
+        CURRENT_TENANT_NAME.set(tenantName);
+        updateMdc(tenantName);
+        try {
+            return task.call();
+        } finally {
+            if (previous == null) {
+                CURRENT_TENANT_NAME.remove();
+            } else {
+                CURRENT_TENANT_NAME.set(previous);
+            }
+            updateMdc(previous);
+        }
+    }
+
+    private static void updateMdc(final String tenantName) {
+        final String key = mdcKey;
+        if (key == null) {
+            return;
+        }
+        if (tenantName == null) {
+            MDC.remove(key);
+        } else {
+            MDC.put(key, tenantName);
+        }
     }
 }
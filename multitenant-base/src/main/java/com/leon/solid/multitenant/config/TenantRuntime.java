@@ -0,0 +1,95 @@
+package com.leon.solid.multitenant.config;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The runtime state of a tenant built on this node, kept by {@link TenantBuilder} from the build of the tenant until
+ * it is removed: when and how long it was built, and how often its entity manager factory was routed to.
+ *
+ * @author Leon.Tang
+ */
+public class TenantRuntime {
+
+    /**
+     * The last access time is updated at most once per interval, so routing does not write it on every call.
+     */
+    private static final long ACCESS_RESOLUTION_MILLIS = 1000L;
+
+    private final String tenantId;
+
+    private final long generation;
+
+    private final long builtAt;
+
+    private final long buildNanos;
+
+    private final LongAdder routingCount = new LongAdder();
+
+    private volatile long lastAccessedAt;
+
+    TenantRuntime(String tenantId, long generation, long builtAt, long buildNanos) {
+        this.tenantId = tenantId;
+        this.generation = generation;
+        this.builtAt = builtAt;
+        this.buildNanos = buildNanos;
+    }
+
+    void routed() {
+        this.routingCount.increment();
+        long now = System.currentTimeMillis();
+        if (now - this.lastAccessedAt >= ACCESS_RESOLUTION_MILLIS) {
+            this.lastAccessedAt = now;
+        }
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * Get the generation of the build, it increases with every tenant built on this node, so a rebuilt tenant has a
+     * higher generation than before.
+     *
+     * @return the generation
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Get the time the build completed.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+    /**
+     * Get the time it took to build the datasource and the entity manager factory.
+     *
+     * @return the build duration
+     */
+    public Duration getBuildDuration() {
+        return Duration.ofNanos(buildNanos);
+    }
+
+    /**
+     * Get the number of calls routed to the entity manager factory of the tenant.
+     *
+     * @return the routing count
+     */
+    public long getRoutingCount() {
+        return routingCount.sum();
+    }
+
+    /**
+     * Get the time of the last call routed to the tenant, with a resolution of a second.
+     *
+     * @return the time in milliseconds since the epoch, or 0 if the tenant was never accessed
+     */
+    public long getLastAccessedAt() {
+        return lastAccessedAt;
+    }
+}
@@ -15,8 +15,17 @@ import bitronix.tm.resource.jdbc.PoolingDataSource;
  * This is a support class for building Bitronix Transaction Manager compatible data sources easily.
  */
 public class PoolingDataSourceFactory {
+    /**
+     * The default number of prepared statements cached by each pooled connection.
+     */
+    public static final int DEFAULT_PREPARED_STATEMENT_CACHE_SIZE = 20;
+
+    private static final int DEFAULT_MIN_POOL_SIZE = 10;
+    private static final int DEFAULT_MAX_POOL_SIZE = 15;
+
     private final int minPoolSize;
     private final int maxPoolSize;
+    private final int preparedStatementCacheSize;
     private static final Map<String, String> URL_PROPERTIES_NAMES;
 
     static {
@@ -29,18 +38,43 @@ public class PoolingDataSourceFactory {
      * Creates a new instance of this class with the default pool size.
      */
     public PoolingDataSourceFactory() {
-        this(10, 15);
+        this(DEFAULT_MIN_POOL_SIZE, DEFAULT_MAX_POOL_SIZE);
+    }
+
+    /**
+     * Create a new instance of this class with the default pool size, specifying the size of the per-connection
+     * prepared statement cache.
+     *
+     * @param preparedStatementCacheSize number of prepared statements cached by each pooled connection, 0 disables it
+     */
+    public PoolingDataSourceFactory(final int preparedStatementCacheSize) {
+        this(DEFAULT_MIN_POOL_SIZE, DEFAULT_MAX_POOL_SIZE, preparedStatementCacheSize);
     }
 
     /**
-     * Create a new instance of this class, specifying the pool's maximum / minimum values.
+     * Create a new instance of this class, specifying the pool's maximum / minimum values. Pooled connections cache
+     * {@link #DEFAULT_PREPARED_STATEMENT_CACHE_SIZE} prepared statements.
      *
      * @param minPoolSize minimum of pool size
      * @param maxPoolSize maximum of pool size
      */
     public PoolingDataSourceFactory(final int minPoolSize, final int maxPoolSize) {
+        this(minPoolSize, maxPoolSize, DEFAULT_PREPARED_STATEMENT_CACHE_SIZE);
+    }
+
+    /**
+     * Create a new instance of this class, specifying the pool's maximum / minimum values and the size of the
+     * per-connection prepared statement cache.
+     *
+     * @param minPoolSize minimum of pool size
+     * @param maxPoolSize maximum of pool size
+     * @param preparedStatementCacheSize number of prepared statements cached by each pooled connection, 0 disables it
+     */
+    public PoolingDataSourceFactory(final int minPoolSize, final int maxPoolSize,
+        final int preparedStatementCacheSize) {
         this.minPoolSize = minPoolSize;
         this.maxPoolSize = maxPoolSize;
+        this.preparedStatementCacheSize = preparedStatementCacheSize;
     }
 
     /**
@@ -51,9 +85,10 @@ public class PoolingDataSourceFactory {
      */
     public PoolingDataSourceBean build(final DataSourceProperties datasourceProperties) {
         final String dataSourceClassName = datasourceProperties.getXa().getDataSourceClassName();
-        final PoolingDataSourceBean ds = new PoolingDataSourceBean();
+        final PoolingDataSourceBean ds = new TenantPoolingDataSourceBean();
         ds.setMinPoolSize(minPoolSize);
         ds.setMaxPoolSize(maxPoolSize);
+        ds.setPreparedStatementCacheSize(preparedStatementCacheSize);
         ds.setClassName(dataSourceClassName);
 
         final Map<String, String> xaProperties = datasourceProperties.getXa().getProperties();
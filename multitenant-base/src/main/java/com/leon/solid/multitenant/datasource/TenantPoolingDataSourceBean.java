@@ -0,0 +1,63 @@
+package com.leon.solid.multitenant.datasource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.springframework.boot.jta.bitronix.PoolingDataSourceBean;
+
+import com.leon.solid.multitenant.monitor.TenantEvent;
+import com.leon.solid.multitenant.monitor.TenantEvents;
+
+/**
+ * The {@link PoolingDataSourceBean} of a tenant, built by {@link PoolingDataSourceFactory}. It records the
+ * {@link TenantEvents Flight Recorder events} of its pool: the pool is created on the first connection request and
+ * closed when the tenant is removed. Each connection request records the wait for a connection, including the
+ * opening of a new physical connection. The unique name of the pool is the tenant id.
+ *
+ * @author Leon.Tang
+ */
+public class TenantPoolingDataSourceBean extends PoolingDataSourceBean {
+
+    private static final long serialVersionUID = 1L;
+
+    private volatile boolean poolCreated;
+
+    @Override
+    public synchronized void init() {
+        if (this.poolCreated) {
+            super.init();
+            return;
+        }
+        TenantEvent event = TenantEvents.beginPool(getUniqueName(), true, getMinPoolSize(), getMaxPoolSize());
+        super.init();
+        this.poolCreated = true;
+        event.commit();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        TenantEvent event = TenantEvents.beginConnectionAcquisition(getUniqueName());
+        try {
+            return super.getConnection();
+        } finally {
+            event.commit();
+        }
+    }
+
+    /**
+     * Check if the pool was created, the pool statistics of {@link PoolingDataSourceBean} fail before.
+     *
+     * @return true if the pool is open
+     */
+    public boolean isPoolCreated() {
+        return this.poolCreated;
+    }
+
+    @Override
+    public void close() {
+        TenantEvent event = TenantEvents.beginPool(getUniqueName(), false, getMinPoolSize(), getMaxPoolSize());
+        super.close();
+        this.poolCreated = false;
+        event.commit();
+    }
+}
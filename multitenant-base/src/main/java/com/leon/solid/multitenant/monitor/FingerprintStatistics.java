@@ -0,0 +1,45 @@
+package com.leon.solid.multitenant.monitor;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The running statistics of one SQL fingerprint of one tenant, updated without locks by concurrent executions.
+ *
+ * @author Leon.Tang
+ */
+final class FingerprintStatistics {
+
+    private final LongAdder executions = new LongAdder();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+    private final LongAdder rowsReturned = new LongAdder();
+
+    private final LongAdder rowsMapped = new LongAdder();
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    void record(long elapsedNanos, long returned, long mapped) {
+        this.executions.increment();
+        this.totalNanos.add(elapsedNanos);
+        this.maxNanos.accumulate(elapsedNanos);
+        this.histogram.record(elapsedNanos);
+        if (returned < 0) {
+            this.errors.increment();
+            return;
+        }
+        this.rowsReturned.add(returned);
+        this.rowsMapped.add(mapped);
+    }
+
+    QueryStatistics snapshot(String tenantId, String fingerprint) {
+        return new QueryStatistics(tenantId, fingerprint, this.executions.sum(), this.errors.sum(),
+            this.totalNanos.sum(), this.maxNanos.get(), this.rowsReturned.sum(), this.rowsMapped.sum(),
+            this.histogram.snapshot());
+    }
+}
@@ -0,0 +1,60 @@
+package com.leon.solid.multitenant.monitor;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import com.leon.solid.multitenant.config.MultiTenantProperties;
+
+/**
+ * A {@link TenantUsageStore} in the {@code sys_tenant_usage} table of the control tenant (see
+ * {@code db/tenant_ddl.sql}). Each node saves its own usage, the usage of a tenant in a window is the sum of the rows
+ * of the nodes. It is enabled with {@code multitenant.metering.store=jdbc}.
+ *
+ * @author Leon.Tang
+ */
+@Component
+@ConditionalOnProperty(prefix = MultiTenantProperties.MULTITENANT_PREFIX + ".metering", name = "store",
+    havingValue = "jdbc")
+public class JdbcTenantUsageStore implements TenantUsageStore {
+    private static final String SQL_INSERT_USAGE = "insert into sys_tenant_usage"
+        + " (tenant_id, window_start, window_end, db_time_ms, statements, rows_read, rows_written,"
+        + " connection_hold_ms, transactions) values (?,?,?,?,?,?,?,?,?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public JdbcTenantUsageStore(MultiTenantProperties multiTenantProperties,
+        @Qualifier("multiTenantDataSources") Map<String, DataSource> multiTenantDataSources) {
+        String controlTenantId = multiTenantProperties.resolveControlTenantId();
+        DataSource controlDataSource = controlTenantId == null ? null : multiTenantDataSources.get(controlTenantId);
+        Assert.state(controlDataSource != null, "No control datasource for tenant usage (controlTenantId: "
+            + controlTenantId + "), configure 'multitenant.controlTenantId' or a default tenant");
+        this.jdbcTemplate = new JdbcTemplate(controlDataSource);
+    }
+
+    @Override
+    public void save(List<TenantUsageSnapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>(snapshots.size());
+        for (TenantUsageSnapshot snapshot : snapshots) {
+            rows.add(new Object[] {snapshot.getTenantId(), new Timestamp(snapshot.getStart()),
+                new Timestamp(snapshot.getEnd()), snapshot.getDbTime().toMillis(), snapshot.getStatementCount(),
+                snapshot.getRowsRead(), snapshot.getRowsWritten(), snapshot.getConnectionHoldTime().toMillis(),
+                snapshot.getTransactionCount()});
+        }
+        this.jdbcTemplate.batchUpdate(SQL_INSERT_USAGE, rows);
+    }
+}
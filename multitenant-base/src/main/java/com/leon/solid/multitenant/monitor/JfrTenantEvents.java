@@ -0,0 +1,229 @@
+package com.leon.solid.multitenant.monitor;
+
+import com.leon.solid.multitenant.config.TenantHolder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The Flight Recorder events of {@link TenantEvents}, in their own class so <code>jdk.jfr</code> is only loaded when
+ * it is present. Each event type keeps an instance to check if the type is recorded, before an event is allocated.
+ * <p>
+ * Compiling it needs the <code>jdk.jfr</code> API of the build JDK, JDK 8u262 or later. It is compiled with
+ * <code>-source 1.8 -target 1.8</code>, the Java 8 platform signatures of <code>--release 8</code> do not include
+ * <code>jdk.jfr</code>.
+ *
+ * @author Leon.Tang
+ */
+final class JfrTenantEvents {
+
+    private static final String CATEGORY = "Multitenant";
+
+    private static final String PREFIX = "com.leon.solid.multitenant.";
+
+    private static final TenantSwitchEvent SWITCH = new TenantSwitchEvent();
+
+    private static final TenantRoutingEvent ROUTING = new TenantRoutingEvent();
+
+    private static final TenantBuildEvent BUILD = new TenantBuildEvent();
+
+    private static final TenantPoolEvent POOL = new TenantPoolEvent();
+
+    private static final ConnectionAcquisitionEvent CONNECTION_ACQUISITION = new ConnectionAcquisitionEvent();
+
+    private static final NativeQueryEvent NATIVE_QUERY = new NativeQueryEvent();
+
+    private JfrTenantEvents() {
+    }
+
+    static void tenantSwitch(String tenantId) {
+        if (SWITCH.isEnabled()) {
+            TenantSwitchEvent event = new TenantSwitchEvent();
+            event.previousTenantId = TenantHolder.getCurrentTenant();
+            event.tenantId = tenantId;
+            event.commit();
+        }
+    }
+
+    static TenantEvent beginRouting(String tenantId) {
+        if (!ROUTING.isEnabled()) {
+            return TenantEvent.NONE;
+        }
+        TenantRoutingEvent event = new TenantRoutingEvent();
+        event.requestedTenantId = tenantId;
+        event.begin();
+        return event;
+    }
+
+    static TenantEvent beginBuild(String tenantId, String phase) {
+        if (!BUILD.isEnabled()) {
+            return TenantEvent.NONE;
+        }
+        TenantBuildEvent event = new TenantBuildEvent();
+        event.tenantId = tenantId;
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+
+    static TenantEvent beginPool(String tenantId, boolean created, int minPoolSize, int maxPoolSize) {
+        if (!POOL.isEnabled()) {
+            return TenantEvent.NONE;
+        }
+        TenantPoolEvent event = new TenantPoolEvent();
+        event.tenantId = tenantId;
+        event.action = created ? "create" : "close";
+        event.minPoolSize = minPoolSize;
+        event.maxPoolSize = maxPoolSize;
+        event.begin();
+        return event;
+    }
+
+    static TenantEvent beginConnectionAcquisition(String tenantId) {
+        if (!CONNECTION_ACQUISITION.isEnabled()) {
+            return TenantEvent.NONE;
+        }
+        ConnectionAcquisitionEvent event = new ConnectionAcquisitionEvent();
+        event.tenantId = tenantId;
+        event.begin();
+        return event;
+    }
+
+    static TenantEvent beginNativeQuery(String tenantId, String sql) {
+        if (!NATIVE_QUERY.isEnabled()) {
+            return TenantEvent.NONE;
+        }
+        NativeQueryEvent event = new NativeQueryEvent();
+        event.tenantId = tenantId;
+        event.fingerprint = SqlFingerprint.of(sql);
+        event.begin();
+        return event;
+    }
+
+    /**
+     * The base of the events with a duration, it has no fields of its own.
+     */
+    abstract static class DurationEvent extends Event implements TenantEvent {
+
+        @Override
+        public void setTenantId(String tenantId) {
+        }
+
+        @Override
+        public void setRows(long rows) {
+        }
+    }
+
+    @Name(PREFIX + "TenantSwitch")
+    @Label("Tenant Switch")
+    @Description("The current tenant of a thread is set")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static final class TenantSwitchEvent extends Event {
+
+        @Label("Tenant")
+        String tenantId;
+
+        @Label("Previous Tenant")
+        String previousTenantId;
+    }
+
+    @Name(PREFIX + "TenantRouting")
+    @Label("Tenant Routing")
+    @Description("A call to the entity manager factory is routed to the one of the current tenant")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @Threshold("0 ms")
+    @StackTrace(false)
+    static final class TenantRoutingEvent extends DurationEvent {
+
+        @Label("Current Tenant")
+        @Description("The current tenant of the thread, none for the default tenant")
+        String requestedTenantId;
+
+        @Label("Tenant")
+        @Description("The tenant whose entity manager factory is used")
+        String tenantId;
+
+        @Override
+        public void setTenantId(String tenantId) {
+            this.tenantId = tenantId;
+        }
+    }
+
+    @Name(PREFIX + "TenantBuild")
+    @Label("Tenant Build")
+    @Description("A phase of building or removing a tenant")
+    @Category(CATEGORY)
+    @Threshold("0 ms")
+    static final class TenantBuildEvent extends DurationEvent {
+
+        @Label("Tenant")
+        String tenantId;
+
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name(PREFIX + "TenantPool")
+    @Label("Tenant Connection Pool")
+    @Description("The connection pool of a tenant is created or closed")
+    @Category(CATEGORY)
+    @Threshold("0 ms")
+    static final class TenantPoolEvent extends DurationEvent {
+
+        @Label("Tenant")
+        String tenantId;
+
+        @Label("Action")
+        String action;
+
+        @Label("Minimum Pool Size")
+        int minPoolSize;
+
+        @Label("Maximum Pool Size")
+        int maxPoolSize;
+    }
+
+    @Name(PREFIX + "ConnectionAcquisition")
+    @Label("Tenant Connection Acquisition")
+    @Description("A thread waits for a connection from the pool of a tenant")
+    @Category(CATEGORY)
+    @Threshold("10 ms")
+    static final class ConnectionAcquisitionEvent extends DurationEvent {
+
+        @Label("Tenant")
+        String tenantId;
+    }
+
+    @Name(PREFIX + "NativeQuery")
+    @Label("Tenant Native Query")
+    @Description("A native query of a JpaNativeQuerySupportRepository is executed")
+    @Category(CATEGORY)
+    @Threshold("20 ms")
+    static final class NativeQueryEvent extends DurationEvent {
+
+        @Label("Tenant")
+        String tenantId;
+
+        @Label("Fingerprint")
+        @Description("The statement without its literals")
+        String fingerprint;
+
+        @Label("Rows")
+        @Description("The rows read or affected, -1 if the execution failed")
+        long rows;
+
+        @Override
+        public void setRows(long rows) {
+            this.rows = rows;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.leon.solid.multitenant.monitor;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with power of two buckets in microseconds: bucket 0 counts executions under 1 us,
+ * bucket <code>i</code> those from <code>2^(i-1)</code> to <code>2^i</code> us, the last bucket everything above. Its
+ * size is fixed, recording is one array increment.
+ *
+ * @author Leon.Tang
+ */
+final class LatencyHistogram {
+
+    static final int BUCKETS = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(long nanos) {
+        long micros = nanos / 1000L;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        this.counts.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+    }
+
+    long[] snapshot() {
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = this.counts.get(i);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get the upper bound of the bucket that holds the <code>quantile</code> of the recorded executions.
+     *
+     * @param counts a snapshot of the bucket counts
+     * @param quantile the quantile, from 0 to 1
+     * @return the upper bound in nanoseconds, 0 if nothing is recorded
+     */
+    static long quantile(long[] counts, double quantile) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1L, (long)Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(counts.length - 1);
+    }
+
+    static long upperBound(int bucket) {
+        return (1L << bucket) * 1000L;
+    }
+}
@@ -0,0 +1,263 @@
+package com.leon.solid.multitenant.monitor;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates the heap size of object graphs by walking their instance fields, for {@link TenantFootprintEstimator}.
+ * <p>
+ * Objects are counted once across all walks of a sizer, and objects in the boundary (shared beans, other tenants)
+ * are neither counted nor followed. Classes, class loaders, threads and enum constants are never followed. The
+ * layout is the 64-bit one without compressed references, so the estimate is an upper bound. The fields of JDK
+ * classes that are not open to reflection are not read, collections and maps among them are walked through their
+ * public API instead, strings are sized by their length. A sizer is not thread-safe.
+ *
+ * @author Leon.Tang
+ */
+final class ObjectGraphSizer {
+
+    private static final int OBJECT_HEADER = 16;
+
+    private static final int REFERENCE = 8;
+
+    private static final Field[] NO_FIELDS = new Field[0];
+
+    private static final Map<Class<?>, Layout> LAYOUTS = new ConcurrentHashMap<>();
+
+    private final Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private final Collection<Class<?>> stopTypes;
+
+    private final Collection<String> deferredTypeNames;
+
+    private final Set<Object> deferred = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private final int maxObjects;
+
+    private int objectCount;
+
+    private boolean truncated;
+
+    /**
+     * Create a sizer.
+     *
+     * @param boundary the objects that are not counted and not followed
+     * @param stopTypes the types whose instances are not counted and not followed
+     * @param deferredTypeNames the class names whose instances are not walked but collected for
+     *     {@link #drainDeferred()}, to size them separately
+     * @param maxObjects the maximum number of objects counted, further objects are skipped
+     */
+    ObjectGraphSizer(Collection<?> boundary, Collection<Class<?>> stopTypes, Collection<String> deferredTypeNames,
+        int maxObjects) {
+        this.visited.addAll(boundary);
+        this.stopTypes = stopTypes;
+        this.deferredTypeNames = deferredTypeNames;
+        this.maxObjects = maxObjects;
+    }
+
+    /**
+     * Estimate the size of the objects reachable from <code>root</code> that were not counted by a previous walk.
+     *
+     * @param root the root object
+     * @return the estimated size in bytes
+     */
+    long sizeOf(Object root) {
+        if (root == null) {
+            return 0;
+        }
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        long size = 0;
+        while (!pending.isEmpty()) {
+            Object object = pending.pop();
+            if (!this.visited.add(object)) {
+                continue;
+            }
+            if (this.objectCount == this.maxObjects) {
+                this.truncated = true;
+                break;
+            }
+            this.objectCount++;
+            size += visit(object, pending);
+        }
+        return size;
+    }
+
+    /**
+     * Stop the walks at an object until {@link #include(Object)}, to size the objects it references separately.
+     *
+     * @param object the object
+     */
+    void exclude(Object object) {
+        this.visited.add(object);
+    }
+
+    /**
+     * Walk an object excluded with {@link #exclude(Object)} again.
+     *
+     * @param object the object
+     */
+    void include(Object object) {
+        this.visited.remove(object);
+    }
+
+    /**
+     * Get the objects of the deferred types met by the walks since the last call, they are not counted yet.
+     *
+     * @return the deferred objects
+     */
+    List<Object> drainDeferred() {
+        List<Object> objects = new ArrayList<>(this.deferred);
+        this.deferred.clear();
+        return objects;
+    }
+
+    /**
+     * Check if a walk stopped at the maximum number of objects.
+     *
+     * @return true if the estimates are incomplete
+     */
+    boolean isTruncated() {
+        return this.truncated;
+    }
+
+    private long visit(Object object, Deque<Object> pending) {
+        Class<?> type = object.getClass();
+        if (type.isArray()) {
+            return visitArray(object, type.getComponentType(), pending);
+        }
+        if (object instanceof String) {
+            return align(OBJECT_HEADER + REFERENCE + 8L) + align(OBJECT_HEADER + 2L * ((String)object).length());
+        }
+        Layout layout = LAYOUTS.computeIfAbsent(type, Layout::new);
+        if (layout.opaque) {
+            if (object instanceof Collection) {
+                walkAll((Collection<?>)object, pending);
+                return layout.shallowSize + (long)REFERENCE * ((Collection<?>)object).size();
+            }
+            if (object instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>)object;
+                walkAll(map.keySet(), pending);
+                walkAll(map.values(), pending);
+                return layout.shallowSize + (long)(OBJECT_HEADER + 4 * REFERENCE) * map.size();
+            }
+            return layout.shallowSize;
+        }
+        for (Field field : layout.references) {
+            try {
+                push(field.get(object), pending);
+            } catch (IllegalAccessException ex) {
+                // the layout only holds accessible fields
+            }
+        }
+        return layout.shallowSize;
+    }
+
+    private long visitArray(Object array, Class<?> componentType, Deque<Object> pending) {
+        int length = Array.getLength(array);
+        if (componentType.isPrimitive()) {
+            return align(OBJECT_HEADER + (long)primitiveSize(componentType) * length);
+        }
+        for (Object element : (Object[])array) {
+            push(element, pending);
+        }
+        return align(OBJECT_HEADER + (long)REFERENCE * length);
+    }
+
+    private void walkAll(Collection<?> values, Deque<Object> pending) {
+        try {
+            for (Object value : values) {
+                push(value, pending);
+            }
+        } catch (ConcurrentModificationException ex) {
+            // a collection changed while it was walked, the rest of it is skipped
+        }
+    }
+
+    private void push(Object value, Deque<Object> pending) {
+        if (value == null || this.visited.contains(value)) {
+            return;
+        }
+        Class<?> type = value.getClass();
+        if (type.isEnum() || value instanceof Enum) {
+            return;
+        }
+        for (Class<?> stopType : this.stopTypes) {
+            if (stopType.isInstance(value)) {
+                return;
+            }
+        }
+        if (this.deferredTypeNames.contains(type.getName())) {
+            this.deferred.add(value);
+            return;
+        }
+        pending.push(value);
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    /**
+     * The shallow size and the followed reference fields of a class.
+     */
+    private static final class Layout {
+        private final long shallowSize;
+        private final Field[] references;
+        private final boolean opaque;
+
+        Layout(Class<?> type) {
+            long size = OBJECT_HEADER;
+            List<Field> fields = new ArrayList<>();
+            boolean inaccessible = false;
+            for (Class<?> current = type; current != null && current != Object.class;
+                current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    Class<?> fieldType = field.getType();
+                    size += fieldType.isPrimitive() ? primitiveSize(fieldType) : REFERENCE;
+                    if (fieldType.isPrimitive() || current == Reference.class) {
+                        continue;
+                    }
+                    try {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    } catch (RuntimeException ex) {
+                        inaccessible = true;
+                    }
+                }
+            }
+            this.shallowSize = align(size);
+            this.opaque = inaccessible;
+            this.references = inaccessible ? NO_FIELDS : fields.toArray(NO_FIELDS);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.leon.solid.multitenant.monitor;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of the statistics of one SQL fingerprint of one tenant, see {@link TenantQueryMonitor}.
+ * <p>
+ * Percentiles are read from a histogram with power of two buckets, they are the upper bound of their bucket and
+ * overestimate the real value by up to a factor of two.
+ *
+ * @author Leon.Tang
+ */
+public class QueryStatistics {
+
+    private final String tenantId;
+
+    private final String fingerprint;
+
+    private final long executions;
+
+    private final long errors;
+
+    private final long totalNanos;
+
+    private final long maxNanos;
+
+    private final long rowsReturned;
+
+    private final long rowsMapped;
+
+    private final long[] histogram;
+
+    QueryStatistics(String tenantId, String fingerprint, long executions, long errors, long totalNanos,
+        long maxNanos, long rowsReturned, long rowsMapped, long[] histogram) {
+        this.tenantId = tenantId;
+        this.fingerprint = fingerprint;
+        this.executions = executions;
+        this.errors = errors;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.rowsReturned = rowsReturned;
+        this.rowsMapped = rowsMapped;
+        this.histogram = histogram;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * Get the normalized SQL statement, see {@link SqlFingerprint}.
+     *
+     * @return the fingerprint
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public long getExecutions() {
+        return executions;
+    }
+
+    /**
+     * Get the number of executions that failed, they are included in the executions and times.
+     *
+     * @return the number of errors
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    public Duration getTotalTime() {
+        return Duration.ofNanos(totalNanos);
+    }
+
+    public Duration getMeanTime() {
+        return executions == 0 ? Duration.ZERO : Duration.ofNanos(totalNanos / executions);
+    }
+
+    public Duration getMaxTime() {
+        return Duration.ofNanos(maxNanos);
+    }
+
+    /**
+     * Get a percentile of the execution time.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the upper bound of the histogram bucket holding the percentile, at most the maximum time
+     */
+    public Duration getPercentile(double percentile) {
+        return Duration.ofNanos(Math.min(LatencyHistogram.quantile(histogram, percentile / 100d), maxNanos));
+    }
+
+    /**
+     * Get the number of rows read by the queries, or affected by the updates.
+     *
+     * @return the number of rows
+     */
+    public long getRowsReturned() {
+        return rowsReturned;
+    }
+
+    /**
+     * Get the number of rows mapped to a result type by the repository.
+     *
+     * @return the number of mapped rows
+     */
+    public long getRowsMapped() {
+        return rowsMapped;
+    }
+
+    /**
+     * Get the bucket counts of the latency histogram, bucket <code>i</code> counts the executions that took up to
+     * <code>2^i</code> microseconds.
+     *
+     * @return a copy of the bucket counts
+     */
+    public long[] getHistogram() {
+        return histogram.clone();
+    }
+
+    @Override
+    public String toString() {
+        return "QueryStatistics [tenantId=" + tenantId + ", fingerprint=" + fingerprint + ", executions="
+            + executions + ", errors=" + errors + ", totalMs=" + getTotalTime().toMillis() + ", meanMs="
+            + getMeanTime().toMillis() + ", p95Ms=" + getPercentile(95).toMillis() + ", maxMs="
+            + getMaxTime().toMillis() + ", rowsReturned=" + rowsReturned + ", rowsMapped=" + rowsMapped + "]";
+    }
+}
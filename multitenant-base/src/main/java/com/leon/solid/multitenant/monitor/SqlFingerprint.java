@@ -0,0 +1,184 @@
+package com.leon.solid.multitenant.monitor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Normalizes a SQL statement to its fingerprint, so executions of the same statement with different literals and
+ * parameters are counted together.
+ * <p>
+ * Comments are removed, white space is collapsed, words are lower cased (quoted identifiers are kept), string and
+ * number literals and all parameter markers (<code>?</code>, <code>?1</code>, <code>:name</code>) become
+ * <code>?</code>, and lists of two or more markers, e.g. expanded IN-lists, become <code>(?+)</code>. The fingerprint
+ * contains no parameter values, so it can be logged.
+ *
+ * @author Leon.Tang
+ */
+public final class SqlFingerprint {
+
+    private static final int CACHE_LIMIT = 4096;
+
+    private static final Map<String, String> CACHE = new ConcurrentHashMap<>(256);
+
+    private SqlFingerprint() {
+    }
+
+    /**
+     * Get the fingerprint of a statement.
+     *
+     * @param sql the SQL statement
+     * @return the fingerprint
+     */
+    public static String of(String sql) {
+        String fingerprint = CACHE.get(sql);
+        if (fingerprint == null) {
+            fingerprint = normalize(sql);
+            if (CACHE.size() < CACHE_LIMIT) {
+                CACHE.putIfAbsent(sql, fingerprint);
+            }
+        }
+        return fingerprint;
+    }
+
+    private static String normalize(String sql) {
+        StringBuilder out = new StringBuilder(sql.length());
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                space(out);
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i + 2);
+                i = end < 0 ? length : end + 1;
+                space(out);
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                space(out);
+            } else if (c == '\'') {
+                i = skipQuoted(sql, i, '\'');
+                marker(out);
+            } else if (c == '"' || c == '`') {
+                int end = skipQuoted(sql, i, c);
+                out.append(sql, i, end);
+                i = end;
+            } else if (c == '?') {
+                i++;
+                while (i < length && Character.isDigit(sql.charAt(i))) {
+                    i++;
+                }
+                marker(out);
+            } else if (c == ':' && i + 1 < length && sql.charAt(i + 1) == ':') {
+                out.append("::");
+                i += 2;
+            } else if (c == ':' && i + 1 < length && Character.isJavaIdentifierStart(sql.charAt(i + 1))) {
+                i += 2;
+                while (i < length && Character.isJavaIdentifierPart(sql.charAt(i))) {
+                    i++;
+                }
+                marker(out);
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < length && Character.isDigit(sql.charAt(i + 1)))) {
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                marker(out);
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < length && Character.isJavaIdentifierPart(sql.charAt(i))) {
+                    i++;
+                }
+                for (int j = start; j < i; j++) {
+                    out.append(Character.toLowerCase(sql.charAt(j)));
+                }
+            } else if (c == ',') {
+                trimSpace(out);
+                out.append(", ");
+                i++;
+            } else if (c == ')') {
+                trimSpace(out);
+                if (!collapseList(out)) {
+                    out.append(')');
+                }
+                i++;
+            } else {
+                if (c == '(') {
+                    space(out);
+                }
+                out.append(c);
+                i++;
+            }
+        }
+        trimSpace(out);
+        if (out.length() > 0 && out.charAt(out.length() - 1) == ';') {
+            out.setLength(out.length() - 1);
+            trimSpace(out);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Replace a trailing <code>(?, ?, ...</code> of two or more markers by <code>(?+)</code>.
+     *
+     * @return true if the list was collapsed, the closing parenthesis is appended then
+     */
+    private static boolean collapseList(StringBuilder out) {
+        int i = out.length() - 1;
+        int markers = 0;
+        while (i > 0 && out.charAt(i) == '?') {
+            markers++;
+            i--;
+            if (out.charAt(i) == '(') {
+                break;
+            }
+            if (out.charAt(i) == ' ') {
+                i--;
+            }
+            if (i < 0 || out.charAt(i) != ',') {
+                return false;
+            }
+            i--;
+        }
+        if (markers < 2 || i < 0 || out.charAt(i) != '(') {
+            return false;
+        }
+        out.setLength(i + 1);
+        out.append("?+)");
+        return true;
+    }
+
+    private static void marker(StringBuilder out) {
+        out.append('?');
+    }
+
+    private static void space(StringBuilder out) {
+        int last = out.length() - 1;
+        if (last >= 0 && out.charAt(last) != ' ' && out.charAt(last) != '(') {
+            out.append(' ');
+        }
+    }
+
+    private static void trimSpace(StringBuilder out) {
+        int length = out.length();
+        while (length > 0 && out.charAt(length - 1) == ' ') {
+            length--;
+        }
+        out.setLength(length);
+    }
+
+    private static int skipQuoted(String sql, int start, char quote) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            if (sql.charAt(i) == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return i;
+    }
+}
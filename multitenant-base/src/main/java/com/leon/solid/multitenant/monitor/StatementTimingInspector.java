@@ -0,0 +1,31 @@
+package com.leon.solid.multitenant.monitor;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * The Hibernate statement inspector of a tenant entity manager factory that hands the SQL of the statement about to
+ * be executed to {@link StatementTimingListener}. The SQL is not changed.
+ *
+ * @author Leon.Tang
+ */
+class StatementTimingInspector implements StatementInspector {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient TenantQueryMonitor monitor;
+
+    private final String tenantId;
+
+    StatementTimingInspector(TenantQueryMonitor monitor, String tenantId) {
+        this.monitor = monitor;
+        this.tenantId = tenantId;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        if (!this.monitor.isInRepository()) {
+            StatementTimingListener.prepared(this.monitor, this.tenantId, sql);
+        }
+        return sql;
+    }
+}
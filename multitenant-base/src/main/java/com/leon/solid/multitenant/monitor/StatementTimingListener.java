@@ -0,0 +1,63 @@
+package com.leon.solid.multitenant.monitor;
+
+import org.hibernate.BaseSessionEventListener;
+
+/**
+ * The Hibernate session events listener that times the JDBC executions of the statements prepared through
+ * {@link StatementTimingInspector} and records them in {@link TenantQueryMonitor}. Hibernate creates one listener
+ * per session.
+ *
+ * @author Leon.Tang
+ */
+public class StatementTimingListener extends BaseSessionEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final ThreadLocal<PreparedStatementInfo> PREPARED = new ThreadLocal<>();
+
+    private long start;
+
+    static void prepared(TenantQueryMonitor monitor, String tenantId, String sql) {
+        PREPARED.set(new PreparedStatementInfo(monitor, tenantId, sql));
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        this.start = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        record();
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        this.start = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        record();
+    }
+
+    private void record() {
+        PreparedStatementInfo statement = PREPARED.get();
+        if (statement != null) {
+            PREPARED.remove();
+            statement.monitor.record(statement.tenantId, statement.sql, System.nanoTime() - this.start, 0, 0);
+        }
+    }
+
+    private static final class PreparedStatementInfo {
+        private final TenantQueryMonitor monitor;
+        private final String tenantId;
+        private final String sql;
+
+        PreparedStatementInfo(TenantQueryMonitor monitor, String tenantId, String sql) {
+            this.monitor = monitor;
+            this.tenantId = tenantId;
+            this.sql = sql;
+        }
+    }
+}
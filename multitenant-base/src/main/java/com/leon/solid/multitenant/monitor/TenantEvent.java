@@ -0,0 +1,46 @@
+package com.leon.solid.multitenant.monitor;
+
+/**
+ * A Java Flight Recorder event of a tenant that is in progress, begun by {@link TenantEvents}. When the event is
+ * not recorded, the calls do nothing.
+ *
+ * @author Leon.Tang
+ */
+public interface TenantEvent {
+
+    /**
+     * The event returned while the event type is not recorded.
+     */
+    TenantEvent NONE = new TenantEvent() {
+        @Override
+        public void setTenantId(String tenantId) {
+        }
+
+        @Override
+        public void setRows(long rows) {
+        }
+
+        @Override
+        public void commit() {
+        }
+    };
+
+    /**
+     * Set the tenant the work was done for, when it is only known at the end.
+     *
+     * @param tenantId the tenant id
+     */
+    void setTenantId(String tenantId);
+
+    /**
+     * Set the rows read or affected by a statement, -1 if it failed. Events without rows ignore it.
+     *
+     * @param rows the row count
+     */
+    void setRows(long rows);
+
+    /**
+     * End the event and record it if it lasted longer than the threshold of its type.
+     */
+    void commit();
+}
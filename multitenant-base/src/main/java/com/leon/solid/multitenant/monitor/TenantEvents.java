@@ -0,0 +1,119 @@
+package com.leon.solid.multitenant.monitor;
+
+import org.springframework.util.ClassUtils;
+
+import com.leon.solid.multitenant.config.TenantHolder;
+
+/**
+ * Emits Java Flight Recorder events for the multitenant work, in the <code>Multitenant</code> category of a
+ * recording: tenant switches, entity manager factory routing, the build phases of a tenant, the creation and closing
+ * of its connection pool, the wait for a pooled connection, and native query executions. Each event carries the
+ * tenant id.
+ * <p>
+ * The events are recorded like the JDK's own: they are enabled and given thresholds in the recording settings
+ * (<code>.jfc</code>) by their names, <code>com.leon.solid.multitenant.*</code>. Tenant switches and routings happen
+ * on every call, they are disabled by default. While an event type is not recorded, or on a JVM without Flight
+ * Recorder, beginning an event only reads a flag and allocates nothing.
+ *
+ * @author Leon.Tang
+ */
+public final class TenantEvents {
+
+    private static final boolean JFR_PRESENT =
+        ClassUtils.isPresent("jdk.jfr.Event", TenantEvents.class.getClassLoader());
+
+    /**
+     * The build phase that creates the datasource of a tenant.
+     */
+    public static final String PHASE_DATASOURCE = "dataSource";
+
+    /**
+     * The build phase that registers the entity manager factory bean definition of a tenant.
+     */
+    public static final String PHASE_DEFINITION = "definition";
+
+    /**
+     * The build phase that creates the entity manager factory of a tenant: the persistence unit scan, the metamodel
+     * and the session factory.
+     */
+    public static final String PHASE_ENTITY_MANAGER_FACTORY = "entityManagerFactory";
+
+    /**
+     * The build phase that removes a tenant and closes its entity manager factory.
+     */
+    public static final String PHASE_DESTROY = "destroy";
+
+    private TenantEvents() {
+    }
+
+    /**
+     * Record that the current thread switches from its current tenant to <code>tenantId</code>. Call it before the
+     * switch.
+     *
+     * @param tenantId the new tenant, or null if the tenant is cleared
+     */
+    public static void tenantSwitch(String tenantId) {
+        if (JFR_PRESENT) {
+            JfrTenantEvents.tenantSwitch(tenantId);
+        }
+    }
+
+    /**
+     * Begin the routing of a call to the entity manager factory of the current tenant, the resolved tenant is set
+     * when it is known.
+     *
+     * @param currentTenant the current tenant of the thread, or null for the default tenant
+     * @return the event
+     */
+    public static TenantEvent beginRouting(String currentTenant) {
+        return JFR_PRESENT ? JfrTenantEvents.beginRouting(currentTenant) : TenantEvent.NONE;
+    }
+
+    /**
+     * Begin a build phase of a tenant.
+     *
+     * @param tenantId the tenant id
+     * @param phase the phase, one of the <code>PHASE_</code> constants
+     * @return the event
+     */
+    public static TenantEvent beginBuild(String tenantId, String phase) {
+        return JFR_PRESENT ? JfrTenantEvents.beginBuild(tenantId, phase) : TenantEvent.NONE;
+    }
+
+    /**
+     * Begin the creation or closing of the connection pool of a tenant.
+     *
+     * @param tenantId the tenant id
+     * @param created true if the pool is created, false if it is closed
+     * @param minPoolSize the minimum size of the pool
+     * @param maxPoolSize the maximum size of the pool
+     * @return the event
+     */
+    public static TenantEvent beginPool(String tenantId, boolean created, int minPoolSize, int maxPoolSize) {
+        return JFR_PRESENT ? JfrTenantEvents.beginPool(tenantId, created, minPoolSize, maxPoolSize)
+            : TenantEvent.NONE;
+    }
+
+    /**
+     * Begin the wait for a connection from the pool of a tenant, including the opening of a new physical connection
+     * when the pool grows.
+     *
+     * @param tenantId the tenant id
+     * @return the event
+     */
+    public static TenantEvent beginConnectionAcquisition(String tenantId) {
+        return JFR_PRESENT ? JfrTenantEvents.beginConnectionAcquisition(tenantId) : TenantEvent.NONE;
+    }
+
+    /**
+     * Begin the execution of a native query for the current tenant, the event carries the fingerprint of the
+     * statement, not its literals.
+     *
+     * @param sql the SQL statement
+     * @return the event
+     */
+    public static TenantEvent beginNativeQuery(String sql) {
+        return JFR_PRESENT ? JfrTenantEvents.beginNativeQuery(TenantHolder.getCurrentTenant(), sql)
+            : TenantEvent.NONE;
+    }
+}
@@ -0,0 +1,153 @@
+package com.leon.solid.multitenant.monitor;
+
+/**
+ * The estimated heap footprint of one tenant, sampled by {@link TenantFootprintEstimator}. The components do not
+ * overlap, an object reachable from several of them is counted in the first one sampled: the connections, the
+ * statement caches of the connections, the query plan cache, the second-level cache, the metamodel, and the rest of
+ * the entity manager factory.
+ *
+ * @author Leon.Tang
+ */
+public class TenantFootprint {
+
+    private final String tenantId;
+
+    private final long connectionBytes;
+
+    private final long statementCacheBytes;
+
+    private final long queryPlanCacheBytes;
+
+    private final long secondLevelCacheBytes;
+
+    private final long metamodelBytes;
+
+    private final long entityManagerFactoryBytes;
+
+    private final int connectionCount;
+
+    private final boolean truncated;
+
+    private final long sampledAt;
+
+    public TenantFootprint(String tenantId, long connectionBytes, long statementCacheBytes, long queryPlanCacheBytes,
+        long secondLevelCacheBytes, long metamodelBytes, long entityManagerFactoryBytes, int connectionCount,
+        boolean truncated, long sampledAt) {
+        this.tenantId = tenantId;
+        this.connectionBytes = connectionBytes;
+        this.statementCacheBytes = statementCacheBytes;
+        this.queryPlanCacheBytes = queryPlanCacheBytes;
+        this.secondLevelCacheBytes = secondLevelCacheBytes;
+        this.metamodelBytes = metamodelBytes;
+        this.entityManagerFactoryBytes = entityManagerFactoryBytes;
+        this.connectionCount = connectionCount;
+        this.truncated = truncated;
+        this.sampledAt = sampledAt;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * Get the size of the datasource and its pooled connections, including the driver's connection state.
+     *
+     * @return the size in bytes
+     */
+    public long getConnectionBytes() {
+        return connectionBytes;
+    }
+
+    /**
+     * Get the size of the prepared statement caches of the pooled connections.
+     *
+     * @return the size in bytes
+     */
+    public long getStatementCacheBytes() {
+        return statementCacheBytes;
+    }
+
+    /**
+     * Get the size of the HQL and native query plans cached by Hibernate.
+     *
+     * @return the size in bytes
+     */
+    public long getQueryPlanCacheBytes() {
+        return queryPlanCacheBytes;
+    }
+
+    /**
+     * Get the size of the second-level cache regions, as reported by the cache provider when Hibernate statistics
+     * are enabled, otherwise estimated like the other components.
+     *
+     * @return the size in bytes
+     */
+    public long getSecondLevelCacheBytes() {
+        return secondLevelCacheBytes;
+    }
+
+    /**
+     * Get the size of the entity and collection persisters and the JPA metamodel.
+     *
+     * @return the size in bytes
+     */
+    public long getMetamodelBytes() {
+        return metamodelBytes;
+    }
+
+    /**
+     * Get the size of the rest of the entity manager factory: its settings, services and named queries.
+     *
+     * @return the size in bytes
+     */
+    public long getEntityManagerFactoryBytes() {
+        return entityManagerFactoryBytes;
+    }
+
+    /**
+     * Get the number of physical connections of the pool, idle or in use.
+     *
+     * @return the connection count, or -1 if the datasource is not a pool
+     */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * Check if the sample stopped at {@code multitenant.footprint.maxObjectsPerTenant} objects, the sizes are then
+     * lower than the actual footprint.
+     *
+     * @return true if the sample is incomplete
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * Get the time the sample was taken.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getSampledAt() {
+        return sampledAt;
+    }
+
+    /**
+     * Get the size of all components.
+     *
+     * @return the size in bytes
+     */
+    public long getTotalBytes() {
+        return connectionBytes + statementCacheBytes + queryPlanCacheBytes + secondLevelCacheBytes + metamodelBytes
+            + entityManagerFactoryBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "TenantFootprint [tenantId=" + tenantId + ", totalBytes=" + getTotalBytes() + ", connectionBytes="
+            + connectionBytes + ", statementCacheBytes=" + statementCacheBytes + ", queryPlanCacheBytes="
+            + queryPlanCacheBytes + ", secondLevelCacheBytes=" + secondLevelCacheBytes + ", metamodelBytes="
+            + metamodelBytes + ", entityManagerFactoryBytes=" + entityManagerFactoryBytes + ", connectionCount="
+            + connectionCount + ", truncated=" + truncated + "]";
+    }
+}
@@ -0,0 +1,308 @@
+package com.leon.solid.multitenant.monitor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import com.leon.solid.multitenant.config.MultiTenantProperties;
+import com.leon.solid.multitenant.datasource.TenantPoolingDataSourceBean;
+
+/**
+ * Estimates the heap footprint of each tenant, to pick eviction candidates and size the number of tenants per node.
+ * The footprint is the entity manager factory (metamodel, query plan cache, second-level cache regions) and the
+ * datasource with its pooled connections and their statement caches, see {@link TenantFootprint}.
+ * <p>
+ * The tenants are sampled every {@code multitenant.footprint.sampleInterval} on a background thread, by walking the
+ * object graphs from the tenant's entity manager factory and datasource. The singleton beans and the other tenants
+ * are not walked, so shared objects are not counted. A walk visits at most
+ * {@code multitenant.footprint.maxObjectsPerTenant} objects, which bounds the cost of a sample of a large tenant.
+ * The sizes are estimates: objects the tenant shares with code other than the singleton beans (interned strings,
+ * a cache manager shared by the entity manager factories) are counted in the tenant, and the layout assumes
+ * uncompressed references.
+ * <p>
+ * The sampling is disabled by default, it is enabled with {@code multitenant.footprint.enabled=true}.
+ *
+ * @author Leon.Tang
+ */
+@Component
+@ConditionalOnProperty(prefix = MultiTenantProperties.MULTITENANT_PREFIX + ".footprint", name = "enabled",
+    havingValue = "true")
+public class TenantFootprintEstimator implements DisposableBean {
+    private final Log log = LogFactory.getLog(TenantFootprintEstimator.class);
+
+    private static final String STATEMENT_CACHE_CLASS = "bitronix.tm.resource.jdbc.LruStatementCache";
+
+    private static final String[] STOP_TYPE_NAMES = {"java.lang.Class", "java.lang.ClassLoader", "java.lang.Thread",
+        "java.lang.ThreadGroup", "java.lang.Module", "java.security.ProtectionDomain",
+        "org.springframework.beans.factory.BeanFactory", "javax.transaction.TransactionManager",
+        "javax.management.MBeanServer", "org.apache.commons.logging.Log", "org.slf4j.Logger",
+        "org.jboss.logging.Logger", "java.util.logging.Logger"};
+
+    private static final Comparator<TenantFootprint> LARGEST_FIRST =
+        Comparator.comparingLong(TenantFootprint::getTotalBytes).reversed().thenComparing(TenantFootprint::getTenantId);
+
+    private final Map<String, LocalContainerEntityManagerFactoryBean> tenantEntityManagerFactories;
+
+    private final Map<String, DataSource> multiTenantDataSources;
+
+    private final BeanFactory beanFactory;
+
+    private final int maxObjectsPerTenant;
+
+    private final Collection<Class<?>> stopTypes;
+
+    private final List<Consumer<String>> tenantListeners = new CopyOnWriteArrayList<>();
+
+    private final ScheduledThreadPoolExecutor sampler;
+
+    private volatile Map<String, TenantFootprint> footprints = Collections.emptyMap();
+
+    @Autowired
+    public TenantFootprintEstimator(MultiTenantProperties multiTenantProperties,
+        @Qualifier("tenantEntityManagerFactories") Map<String,
+            LocalContainerEntityManagerFactoryBean> tenantEntityManagerFactories,
+        @Qualifier("multiTenantDataSources") Map<String, DataSource> multiTenantDataSources, BeanFactory beanFactory) {
+        MultiTenantProperties.Footprint footprint = multiTenantProperties.getFootprint();
+        Duration sampleInterval = footprint.getSampleInterval();
+        Assert.isTrue(sampleInterval != null && !sampleInterval.isNegative() && !sampleInterval.isZero(),
+            "multitenant.footprint.sampleInterval must be positive!");
+        Assert.isTrue(footprint.getMaxObjectsPerTenant() > 0,
+            "multitenant.footprint.maxObjectsPerTenant must be positive!");
+        this.tenantEntityManagerFactories = tenantEntityManagerFactories;
+        this.multiTenantDataSources = multiTenantDataSources;
+        this.beanFactory = beanFactory;
+        this.maxObjectsPerTenant = footprint.getMaxObjectsPerTenant();
+        this.stopTypes = new ArrayList<>();
+        ClassLoader classLoader = TenantFootprintEstimator.class.getClassLoader();
+        for (String typeName : STOP_TYPE_NAMES) {
+            if (ClassUtils.isPresent(typeName, classLoader)) {
+                this.stopTypes.add(ClassUtils.resolveClassName(typeName, classLoader));
+            }
+        }
+
+        CustomizableThreadFactory samplerFactory = new CustomizableThreadFactory("tenant-footprint-");
+        samplerFactory.setDaemon(true);
+        this.sampler = new ScheduledThreadPoolExecutor(1, samplerFactory);
+        this.sampler.scheduleWithFixedDelay(this::sampleQuietly, sampleInterval.toMillis(),
+            sampleInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the footprints of the last sample.
+     *
+     * @return the footprints, largest first, empty before the first sample
+     */
+    public List<TenantFootprint> getFootprints() {
+        List<TenantFootprint> result = new ArrayList<>(this.footprints.values());
+        result.sort(LARGEST_FIRST);
+        return result;
+    }
+
+    /**
+     * Get the footprint of a tenant in the last sample.
+     *
+     * @param tenantId the tenant id
+     * @return the footprint, or null if the tenant was not sampled
+     */
+    public TenantFootprint getFootprint(String tenantId) {
+        return this.footprints.get(tenantId);
+    }
+
+    /**
+     * Sample all tenants now, instead of waiting for the next periodic sample.
+     *
+     * @return the footprints, largest first
+     */
+    public synchronized List<TenantFootprint> sample() {
+        Map<String, DataSource> dataSources = new HashMap<>(this.multiTenantDataSources);
+        Map<String, LocalContainerEntityManagerFactoryBean> factoryBeans =
+            new HashMap<>(this.tenantEntityManagerFactories);
+        Map<String, List<Object>> roots = new HashMap<>();
+        dataSources.forEach((tenantId, dataSource) -> roots(roots, tenantId).add(dataSource));
+        factoryBeans.forEach((tenantId, factoryBean) -> {
+            roots(roots, tenantId).add(factoryBean);
+            if (factoryBean.getNativeEntityManagerFactory() != null) {
+                roots(roots, tenantId).add(factoryBean.getNativeEntityManagerFactory());
+            }
+        });
+        Set<Object> boundary = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (this.beanFactory instanceof ConfigurableListableBeanFactory) {
+            ConfigurableListableBeanFactory listableBeanFactory = (ConfigurableListableBeanFactory)this.beanFactory;
+            for (String beanName : listableBeanFactory.getSingletonNames()) {
+                Object bean = listableBeanFactory.getSingleton(beanName);
+                if (bean != null) {
+                    boundary.add(bean);
+                }
+            }
+        }
+        roots.values().forEach(boundary::addAll);
+
+        Map<String, TenantFootprint> sampled = new HashMap<>();
+        for (Map.Entry<String, List<Object>> entry : roots.entrySet()) {
+            String tenantId = entry.getKey();
+            Set<Object> tenantBoundary = Collections.newSetFromMap(new IdentityHashMap<>());
+            tenantBoundary.addAll(boundary);
+            entry.getValue().forEach(tenantBoundary::remove);
+            try {
+                sampled.put(tenantId, sample(tenantId, dataSources.get(tenantId), factoryBeans.get(tenantId),
+                    tenantBoundary));
+            } catch (RuntimeException ex) {
+                // the tenant is being destroyed or its entity manager factory is not built yet
+                if (log.isDebugEnabled()) {
+                    log.debug("Footprint of tenant " + tenantId + " not sampled", ex);
+                }
+            }
+        }
+        Set<String> added = new HashSet<>(sampled.keySet());
+        added.removeAll(this.footprints.keySet());
+        this.footprints = sampled;
+        for (String tenantId : added) {
+            for (Consumer<String> listener : this.tenantListeners) {
+                listener.accept(tenantId);
+            }
+        }
+        return getFootprints();
+    }
+
+    /**
+     * Get the ids of the tenants of the last sample.
+     *
+     * @return the tenant ids
+     */
+    public Set<String> getTenantIds() {
+        return Collections.unmodifiableSet(this.footprints.keySet());
+    }
+
+    /**
+     * Register a listener that is called with the tenant id when a tenant is sampled for the first time.
+     *
+     * @param listener the listener
+     */
+    public void addTenantListener(Consumer<String> listener) {
+        this.tenantListeners.add(listener);
+    }
+
+    @Override
+    public void destroy() {
+        this.sampler.shutdownNow();
+    }
+
+    private TenantFootprint sample(String tenantId, DataSource dataSource,
+        LocalContainerEntityManagerFactoryBean factoryBean, Set<Object> boundary) {
+        ObjectGraphSizer sizer = new ObjectGraphSizer(boundary, this.stopTypes,
+            Collections.singleton(STATEMENT_CACHE_CLASS), this.maxObjectsPerTenant);
+        long connectionBytes = sizer.sizeOf(dataSource);
+        long statementCacheBytes = 0;
+        for (Object statementCache : sizer.drainDeferred()) {
+            statementCacheBytes += sizer.sizeOf(statementCache);
+        }
+        int connectionCount = -1;
+        if (dataSource instanceof TenantPoolingDataSourceBean) {
+            TenantPoolingDataSourceBean pooling = (TenantPoolingDataSourceBean)dataSource;
+            connectionCount = pooling.isPoolCreated() ? (int)pooling.getTotalPoolSize() : 0;
+        }
+
+        long queryPlanCacheBytes = 0;
+        long secondLevelCacheBytes = 0;
+        long metamodelBytes = 0;
+        long entityManagerFactoryBytes = 0;
+        if (factoryBean != null) {
+            EntityManagerFactory emf = factoryBean.getNativeEntityManagerFactory();
+            if (emf instanceof SessionFactoryImplementor) {
+                // the components reference the session factory, it is sized after them
+                SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor)emf;
+                sizer.exclude(factoryBean);
+                sizer.exclude(sessionFactory);
+                // deprecated in Hibernate 5.3 without a replacement, it is the only reference to the cache
+                @SuppressWarnings("deprecation")
+                Object queryPlanCache = sessionFactory.getQueryPlanCache();
+                queryPlanCacheBytes = sizer.sizeOf(queryPlanCache);
+                secondLevelCacheBytes = sizer.sizeOf(sessionFactory.getCache());
+                long reported = reportedCacheSize(sessionFactory);
+                if (reported >= 0) {
+                    secondLevelCacheBytes = reported;
+                }
+                metamodelBytes = sizer.sizeOf(sessionFactory.getMetamodel());
+                sizer.include(sessionFactory);
+                sizer.include(factoryBean);
+            }
+            entityManagerFactoryBytes = sizer.sizeOf(emf) + sizer.sizeOf(factoryBean);
+            for (Object statementCache : sizer.drainDeferred()) {
+                statementCacheBytes += sizer.sizeOf(statementCache);
+            }
+        }
+        return new TenantFootprint(tenantId, connectionBytes, statementCacheBytes, queryPlanCacheBytes,
+            secondLevelCacheBytes, metamodelBytes, entityManagerFactoryBytes, connectionCount, sizer.isTruncated(),
+            System.currentTimeMillis());
+    }
+
+    /**
+     * Get the size of the second-level cache reported by the cache provider, when Hibernate statistics are enabled.
+     *
+     * @return the size in bytes, or -1 if the statistics are disabled or a region does not report its size
+     */
+    private static long reportedCacheSize(SessionFactoryImplementor sessionFactory) {
+        Statistics statistics = sessionFactory.getStatistics();
+        if (statistics == null || !statistics.isStatisticsEnabled()) {
+            return -1;
+        }
+        long size = 0;
+        for (String regionName : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics region = statistics.getCacheRegionStatistics(regionName);
+            if (region == null || region.getSizeInMemory() < 0) {
+                return -1;
+            }
+            size += region.getSizeInMemory();
+        }
+        return size;
+    }
+
+    private void sampleQuietly() {
+        try {
+            long start = System.nanoTime();
+            List<TenantFootprint> sampled = sample();
+            if (log.isDebugEnabled()) {
+                log.debug("Sampled the footprint of " + sampled.size() + " tenants in "
+                    + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Tenant footprint sample failed", ex);
+        }
+    }
+
+    private static List<Object> roots(Map<String, List<Object>> roots, String tenantId) {
+        return roots.computeIfAbsent(tenantId, key -> new ArrayList<>());
+    }
+}
@@ -0,0 +1,77 @@
+package com.leon.solid.multitenant.monitor;
+
+import java.util.function.ToDoubleFunction;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.leon.solid.multitenant.config.MultiTenantProperties;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Exports the last sample of {@link TenantFootprintEstimator} to Micrometer, tagged by tenant: the
+ * <code>multitenant.tenant.footprint</code> gauge (tagged by component) and the
+ * <code>multitenant.tenant.connections</code> gauge. Tenants sampled after the binding are registered with their
+ * first sample, tenants that are gone report zero.
+ *
+ * @author Leon.Tang
+ */
+@Component
+@ConditionalOnClass(name = "io.micrometer.core.instrument.binder.MeterBinder")
+@ConditionalOnProperty(prefix = MultiTenantProperties.MULTITENANT_PREFIX + ".footprint", name = "enabled",
+    havingValue = "true")
+public class TenantFootprintMetrics implements MeterBinder {
+
+    private static final String METRIC_PREFIX = "multitenant.tenant.";
+
+    private final TenantFootprintEstimator footprintEstimator;
+
+    @Autowired
+    public TenantFootprintMetrics(TenantFootprintEstimator footprintEstimator) {
+        this.footprintEstimator = footprintEstimator;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.footprintEstimator.addTenantListener(tenantId -> bindTenant(registry, tenantId));
+        for (String tenantId : this.footprintEstimator.getTenantIds()) {
+            bindTenant(registry, tenantId);
+        }
+    }
+
+    private void bindTenant(MeterRegistry registry, String tenantId) {
+        Tags tags = Tags.of("tenant", tenantId);
+        footprint(registry, tags.and("component", "connections"), tenantId, TenantFootprint::getConnectionBytes);
+        footprint(registry, tags.and("component", "statementCache"), tenantId,
+            TenantFootprint::getStatementCacheBytes);
+        footprint(registry, tags.and("component", "queryPlanCache"), tenantId,
+            TenantFootprint::getQueryPlanCacheBytes);
+        footprint(registry, tags.and("component", "secondLevelCache"), tenantId,
+            TenantFootprint::getSecondLevelCacheBytes);
+        footprint(registry, tags.and("component", "metamodel"), tenantId, TenantFootprint::getMetamodelBytes);
+        footprint(registry, tags.and("component", "entityManagerFactory"), tenantId,
+            TenantFootprint::getEntityManagerFactoryBytes);
+        Gauge.builder(METRIC_PREFIX + "connections", this.footprintEstimator,
+            estimator -> statistic(estimator, tenantId, TenantFootprint::getConnectionCount)).tags(tags)
+            .description("The number of pooled connections of the tenant").register(registry);
+    }
+
+    private void footprint(MeterRegistry registry, Tags tags, String tenantId,
+        ToDoubleFunction<TenantFootprint> statistic) {
+        Gauge.builder(METRIC_PREFIX + "footprint", this.footprintEstimator,
+            estimator -> statistic(estimator, tenantId, statistic)).tags(tags)
+            .description("The estimated heap size of the tenant").baseUnit("bytes").register(registry);
+    }
+
+    private static double statistic(TenantFootprintEstimator estimator, String tenantId,
+        ToDoubleFunction<TenantFootprint> statistic) {
+        TenantFootprint footprint = estimator.getFootprint(tenantId);
+        return footprint == null ? 0 : statistic.applyAsDouble(footprint);
+    }
+}
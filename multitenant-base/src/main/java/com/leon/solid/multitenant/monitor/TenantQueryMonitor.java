@@ -0,0 +1,217 @@
+package com.leon.solid.multitenant.monitor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import com.leon.solid.multitenant.config.MultiTenantProperties;
+import com.leon.solid.multitenant.config.TenantHolder;
+
+/**
+ * Times the SQL statements of each tenant and keeps their statistics in memory, grouped by
+ * {@link SqlFingerprint fingerprint}: executions, errors, total and maximum time, a latency histogram, and the rows
+ * returned and mapped. Statements that take longer than {@code multitenant.monitor.slowQueryThreshold} are logged
+ * with their tenant and fingerprint.
+ * <p>
+ * The statements of {@link com.leon.solid.multitenant.repository.JpaNativeQuerySupportRepository} are timed by the
+ * repository, including the row mapping. All other statements of the tenant entity manager factories (Spring Data
+ * repositories, entity loads and flushes) are timed by Hibernate, without row counts. Recording is lock-free, it is
+ * enabled by default and can be turned off with {@code multitenant.monitor.enabled=false}.
+ * <p>
+ * Each tenant keeps at most {@code multitenant.monitor.maxFingerprintsPerTenant} fingerprints, further statements
+ * are counted under the fingerprint <code>&lt;other&gt;</code>.
+ *
+ * @author Leon.Tang
+ */
+@Component
+@ConditionalOnProperty(prefix = MultiTenantProperties.MULTITENANT_PREFIX + ".monitor", name = "enabled",
+    havingValue = "true", matchIfMissing = true)
+public class TenantQueryMonitor {
+    private final Log log = LogFactory.getLog(TenantQueryMonitor.class);
+
+    /**
+     * The fingerprint that collects the statements of a tenant beyond its maximum number of fingerprints.
+     */
+    public static final String OTHER_FINGERPRINT = "<other>";
+
+    private final Map<String, Map<String, FingerprintStatistics>> tenants = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<int[]> repositoryCalls = ThreadLocal.withInitial(() -> new int[1]);
+
+    private final long slowQueryThresholdNanos;
+
+    private final int maxFingerprintsPerTenant;
+
+    private final String defaultTenantId;
+
+    @Autowired
+    public TenantQueryMonitor(MultiTenantProperties multiTenantProperties) {
+        MultiTenantProperties.Monitor properties = multiTenantProperties.getMonitor();
+        Assert.isTrue(properties.getMaxFingerprintsPerTenant() > 0,
+            "multitenant.monitor.maxFingerprintsPerTenant must be positive!");
+        Duration threshold = properties.getSlowQueryThreshold();
+        this.slowQueryThresholdNanos = threshold == null || threshold.isZero() ? Long.MAX_VALUE : threshold.toNanos();
+        this.maxFingerprintsPerTenant = properties.getMaxFingerprintsPerTenant();
+        String defaultTenant = multiTenantProperties.resolveDefaultTenantId();
+        this.defaultTenantId = defaultTenant != null ? defaultTenant : "";
+    }
+
+    /**
+     * Add the Hibernate settings that time the statements of a tenant entity manager factory. Settings configured
+     * by the application under {@code spring.jpa.properties} are kept, the statements are not timed then.
+     *
+     * @param tenantId the tenant of the entity manager factory
+     * @param jpaPropertyMap the JPA properties of the entity manager factory
+     */
+    public void instrument(String tenantId, Map<String, Object> jpaPropertyMap) {
+        if (jpaPropertyMap.containsKey(AvailableSettings.STATEMENT_INSPECTOR)
+            || jpaPropertyMap.containsKey(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER)) {
+            log.info("Statements of tenant " + tenantId + " are not timed, a statement inspector or session events"
+                + " listener is configured");
+            return;
+        }
+        jpaPropertyMap.put(AvailableSettings.STATEMENT_INSPECTOR, new StatementTimingInspector(this, tenantId));
+        jpaPropertyMap.put(AvailableSettings.AUTO_SESSION_EVENTS_LISTENER, StatementTimingListener.class.getName());
+    }
+
+    /**
+     * Mark the start of a statement timed by a repository, the statements Hibernate executes on this thread until
+     * {@link #exit()} are not timed again.
+     *
+     * @return the start time for {@link #record(String, long, long, long)}
+     */
+    public long enter() {
+        this.repositoryCalls.get()[0]++;
+        return System.nanoTime();
+    }
+
+    /**
+     * Mark the end of a statement timed by a repository.
+     */
+    public void exit() {
+        this.repositoryCalls.get()[0]--;
+    }
+
+    /**
+     * Record an execution of <code>sql</code> for the current tenant.
+     *
+     * @param sql the SQL statement
+     * @param elapsedNanos the execution time
+     * @param rowsReturned the rows read or affected, or -1 if the execution failed
+     * @param rowsMapped the rows mapped to a result type
+     */
+    public void record(String sql, long elapsedNanos, long rowsReturned, long rowsMapped) {
+        String tenantId = TenantHolder.getCurrentTenant();
+        record(tenantId != null ? tenantId : this.defaultTenantId, sql, elapsedNanos, rowsReturned, rowsMapped);
+    }
+
+    /**
+     * Record an execution of <code>sql</code>.
+     *
+     * @param tenantId the tenant
+     * @param sql the SQL statement
+     * @param elapsedNanos the execution time
+     * @param rowsReturned the rows read or affected, or -1 if the execution failed
+     * @param rowsMapped the rows mapped to a result type
+     */
+    public void record(String tenantId, String sql, long elapsedNanos, long rowsReturned, long rowsMapped) {
+        String fingerprint = SqlFingerprint.of(sql);
+        Map<String, FingerprintStatistics> fingerprints =
+            this.tenants.computeIfAbsent(tenantId, t -> new ConcurrentHashMap<>());
+        FingerprintStatistics statistics = fingerprints.get(fingerprint);
+        if (statistics == null) {
+            String key = fingerprints.size() < this.maxFingerprintsPerTenant ? fingerprint : OTHER_FINGERPRINT;
+            statistics = fingerprints.computeIfAbsent(key, f -> new FingerprintStatistics());
+        }
+        statistics.record(elapsedNanos, rowsReturned, rowsMapped);
+        if (elapsedNanos >= this.slowQueryThresholdNanos && log.isWarnEnabled()) {
+            log.warn("Slow query on tenant " + tenantId + ": " + elapsedNanos / 1000000L + " ms"
+                + (rowsReturned < 0 ? ", failed" : ", " + rowsReturned + " rows") + ": " + fingerprint);
+        }
+    }
+
+    /**
+     * Get the fingerprints of a tenant with the highest total execution time.
+     *
+     * @param tenantId the tenant
+     * @param limit the maximum number of fingerprints
+     * @return the statistics, by total time descending
+     */
+    public List<QueryStatistics> getTopQueries(String tenantId, int limit) {
+        List<QueryStatistics> statistics = new ArrayList<>();
+        collect(tenantId, statistics);
+        return top(statistics, limit);
+    }
+
+    /**
+     * Get the fingerprints of all tenants with the highest total execution time.
+     *
+     * @param limit the maximum number of fingerprints
+     * @return the statistics, by total time descending
+     */
+    public List<QueryStatistics> getTopQueries(int limit) {
+        List<QueryStatistics> statistics = new ArrayList<>();
+        for (String tenantId : this.tenants.keySet()) {
+            collect(tenantId, statistics);
+        }
+        return top(statistics, limit);
+    }
+
+    /**
+     * Get the tenants that have executed statements since the last reset.
+     *
+     * @return the tenant ids in natural order
+     */
+    public Set<String> getTenantIds() {
+        return new TreeSet<>(this.tenants.keySet());
+    }
+
+    /**
+     * Clear the statistics of a tenant.
+     *
+     * @param tenantId the tenant
+     */
+    public void reset(String tenantId) {
+        this.tenants.remove(tenantId);
+    }
+
+    /**
+     * Clear the statistics of all tenants.
+     */
+    public void reset() {
+        this.tenants.clear();
+    }
+
+    boolean isInRepository() {
+        return this.repositoryCalls.get()[0] > 0;
+    }
+
+    private void collect(String tenantId, List<QueryStatistics> statistics) {
+        Map<String, FingerprintStatistics> fingerprints = this.tenants.get(tenantId);
+        if (fingerprints != null) {
+            for (Map.Entry<String, FingerprintStatistics> entry : fingerprints.entrySet()) {
+                statistics.add(entry.getValue().snapshot(tenantId, entry.getKey()));
+            }
+        }
+    }
+
+    private static List<QueryStatistics> top(List<QueryStatistics> statistics, int limit) {
+        Assert.isTrue(limit > 0, "The limit must be positive!");
+        Collections.sort(statistics, Comparator.comparing(QueryStatistics::getTotalTime).reversed());
+        return statistics.size() <= limit ? statistics : new ArrayList<>(statistics.subList(0, limit));
+    }
+}
@@ -0,0 +1,190 @@
+package com.leon.solid.multitenant.monitor;
+
+import java.util.Map;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.hibernate.Session;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.jta.bitronix.PoolingDataSourceBean;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import com.leon.solid.multitenant.config.MultiTenantProperties;
+import com.leon.solid.multitenant.config.MultiTenantProperties.Tagging.SqlComment;
+import com.leon.solid.multitenant.config.TenantHolder;
+import com.leon.solid.multitenant.utils.StringUtils;
+
+/**
+ * Tags the work of each tenant with its tenant id, so the database side (<code>pg_stat_activity</code>, slow query
+ * logs) can tell the tenants apart although they share the same database user and SQL text:
+ * <ul>
+ * <li>The connection pools of the PostgreSQL tenants set the <code>application_name</code> of their sessions to
+ * <code>{spring.application.name}:{tenantId}</code>, once per physical connection. It is shown by the
+ * <code>%a</code> escape of <code>log_line_prefix</code>.</li>
+ * <li>The statements of the other tenants are prefixed with <code>/&#42; tenant=... &#42;/</code> by a Hibernate
+ * statement inspector, and by {@link com.leon.solid.multitenant.repository.JpaNativeQuerySupportRepository} for the
+ * statements it executes on the JDBC connection. See {@code multitenant.tagging.sqlComment}.</li>
+ * <li>The logging MDC holds the current tenant of {@link TenantHolder}.</li>
+ * </ul>
+ * The comment holds the tenant only, it is the same for every statement of the tenant, so the prepared statement
+ * caches of its pooled connections and the query plan cache still match. Request ids belong in the MDC, not in the
+ * SQL. An inspector configured with {@code spring.jpa.properties.hibernate.session_factory.statement_inspector} runs
+ * before the comment is added.
+ * <p>
+ * It is enabled with {@code multitenant.tagging.enabled=true}.
+ *
+ * @author Leon.Tang
+ */
+@Component
+@ConditionalOnProperty(prefix = MultiTenantProperties.MULTITENANT_PREFIX + ".tagging", name = "enabled",
+    havingValue = "true")
+public class TenantSqlTagger implements DisposableBean {
+
+    /**
+     * The driver property of the PostgreSQL datasources that sets the application name of their sessions.
+     */
+    public static final String APPLICATION_NAME_PROPERTY = "applicationName";
+
+    private static final String POSTGRESQL_PACKAGE = "org.postgresql.";
+
+    private static final int MAX_APPLICATION_NAME_LENGTH = 63;
+
+    private final SqlComment sqlComment;
+
+    private final boolean applicationName;
+
+    private final String applicationNamePrefix;
+
+    private final String mdcKey;
+
+    @Autowired
+    public TenantSqlTagger(MultiTenantProperties multiTenantProperties, Environment environment) {
+        MultiTenantProperties.Tagging properties = multiTenantProperties.getTagging();
+        this.sqlComment = properties.getSqlComment() != null ? properties.getSqlComment() : SqlComment.AUTO;
+        this.applicationName = properties.isApplicationName();
+        this.applicationNamePrefix = environment.getProperty("spring.application.name", "multitenant");
+        this.mdcKey = StringUtils.isEmpty(properties.getMdcKey()) ? null : properties.getMdcKey();
+        if (this.mdcKey != null) {
+            TenantHolder.setMdcKey(this.mdcKey);
+        }
+    }
+
+    /**
+     * Set the application name of the sessions of a PostgreSQL tenant pool, unless its driver properties already
+     * set one.
+     *
+     * @param tenantId the tenant of the pool
+     * @param dataSource the pool, before it is initialized
+     */
+    public void configure(String tenantId, PoolingDataSourceBean dataSource) {
+        String className = dataSource.getClassName();
+        if (!this.applicationName || className == null || !className.startsWith(POSTGRESQL_PACKAGE)) {
+            return;
+        }
+        Properties driverProperties = dataSource.getDriverProperties();
+        if (!driverProperties.containsKey(APPLICATION_NAME_PROPERTY)) {
+            driverProperties.setProperty(APPLICATION_NAME_PROPERTY, applicationName(tenantId));
+        }
+    }
+
+    /**
+     * Add the Hibernate statement inspector that prefixes the statements of a tenant entity manager factory with the
+     * tenant comment, after the inspector configured before.
+     *
+     * @param tenantId the tenant of the entity manager factory
+     * @param dataSource the datasource of the tenant
+     * @param jpaPropertyMap the JPA properties of the entity manager factory
+     */
+    public void instrument(String tenantId, DataSource dataSource, Map<String, Object> jpaPropertyMap) {
+        if (!isCommented(dataSource)) {
+            return;
+        }
+        StatementInspector delegate = resolveInspector(jpaPropertyMap.get(AvailableSettings.STATEMENT_INSPECTOR));
+        jpaPropertyMap.put(AvailableSettings.STATEMENT_INSPECTOR, new TenantTaggingInspector(delegate,
+            comment(tenantId)));
+    }
+
+    /**
+     * Prefix a statement executed on the JDBC connection of a session with the comment of its tenant, if the
+     * statements of the tenant are commented.
+     *
+     * @param session the session of a tenant entity manager factory
+     * @param sql the SQL statement
+     * @return the tagged statement
+     */
+    public String tag(Session session, String sql) {
+        StatementInspector inspector = ((SessionFactoryImplementor)session.getSessionFactory())
+            .getSessionFactoryOptions().getStatementInspector();
+        return inspector instanceof TenantTaggingInspector ? ((TenantTaggingInspector)inspector).tag(sql) : sql;
+    }
+
+    /**
+     * Get the application name of the sessions of a tenant, the application name is shortened to keep it within
+     * the 63 characters of PostgreSQL.
+     *
+     * @param tenantId the tenant id
+     * @return the application name
+     */
+    public String applicationName(String tenantId) {
+        if (tenantId.length() + 1 >= MAX_APPLICATION_NAME_LENGTH) {
+            return tenantId.substring(0, Math.min(tenantId.length(), MAX_APPLICATION_NAME_LENGTH));
+        }
+        String prefix = this.applicationNamePrefix;
+        int prefixLength = Math.min(prefix.length(), MAX_APPLICATION_NAME_LENGTH - tenantId.length() - 1);
+        return prefix.substring(0, prefixLength) + ":" + tenantId;
+    }
+
+    /**
+     * Get the comment that prefixes the statements of a tenant. Characters of the tenant id other than letters,
+     * digits, <code>_</code>, <code>-</code> and <code>.</code> are replaced, so the comment cannot be closed early.
+     *
+     * @param tenantId the tenant id
+     * @return the comment, followed by a space
+     */
+    public static String comment(String tenantId) {
+        StringBuilder comment = new StringBuilder(tenantId.length() + 16).append("/* tenant=");
+        for (int i = 0; i < tenantId.length(); i++) {
+            char c = tenantId.charAt(i);
+            boolean plain = c < 128 && (Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.');
+            comment.append(plain ? c : '_');
+        }
+        return comment.append(" */ ").toString();
+    }
+
+    @Override
+    public void destroy() {
+        if (this.mdcKey != null) {
+            TenantHolder.setMdcKey(null);
+        }
+    }
+
+    private boolean isCommented(DataSource dataSource) {
+        switch (this.sqlComment) {
+            case ALWAYS:
+                return true;
+            case NEVER:
+                return false;
+            default:
+                return !(dataSource instanceof PoolingDataSourceBean) || !((PoolingDataSourceBean)dataSource)
+                    .getDriverProperties().containsKey(APPLICATION_NAME_PROPERTY);
+        }
+    }
+
+    private static StatementInspector resolveInspector(Object inspector) {
+        if (inspector == null || inspector instanceof StatementInspector) {
+            return (StatementInspector)inspector;
+        }
+        Class<?> type = inspector instanceof Class ? (Class<?>)inspector
+            : ClassUtils.resolveClassName(inspector.toString(), TenantSqlTagger.class.getClassLoader());
+        return BeanUtils.instantiateClass(type, StatementInspector.class);
+    }
+}
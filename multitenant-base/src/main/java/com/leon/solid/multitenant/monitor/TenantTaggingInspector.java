@@ -0,0 +1,45 @@
+package com.leon.solid.multitenant.monitor;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * The Hibernate statement inspector of a tenant entity manager factory that prefixes the statements with the comment
+ * of the tenant, after the inspector configured before it. The comment is the same for all statements of the tenant,
+ * so the statement caches of its pooled connections still match.
+ *
+ * @author Leon.Tang
+ */
+class TenantTaggingInspector implements StatementInspector {
+
+    private static final long serialVersionUID = 1L;
+
+    private final StatementInspector delegate;
+
+    private final String comment;
+
+    TenantTaggingInspector(StatementInspector delegate, String comment) {
+        this.delegate = delegate;
+        this.comment = comment;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        if (this.delegate != null) {
+            String inspected = this.delegate.inspect(sql);
+            if (inspected != null) {
+                sql = inspected;
+            }
+        }
+        return tag(sql);
+    }
+
+    /**
+     * Prefix a statement executed on a connection of the tenant outside of Hibernate.
+     *
+     * @param sql the SQL statement
+     * @return the tagged statement
+     */
+    String tag(String sql) {
+        return this.comment != null ? this.comment + sql : sql;
+    }
+}
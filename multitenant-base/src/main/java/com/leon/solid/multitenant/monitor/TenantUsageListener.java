@@ -0,0 +1,89 @@
+package com.leon.solid.multitenant.monitor;
+
+import org.hibernate.BaseSessionEventListener;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * The Hibernate session events listener that meters the work of a session of a tenant in {@link TenantUsageMeter}:
+ * the time of its JDBC executions, the time it holds a connection and its transactions. It is added to each session
+ * the routing entity manager factory opens.
+ * <p>
+ * A connection is held from its acquisition until the transaction completes, even if Hibernate releases it after
+ * each statement (the JTA datasource keeps it enlisted), or until it is released outside a transaction.
+ *
+ * @author Leon.Tang
+ */
+final class TenantUsageListener extends BaseSessionEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient TenantUsageMeter meter;
+
+    private final String tenantId;
+
+    private long executionStart;
+
+    private long holdStart;
+
+    private int connections;
+
+    TenantUsageListener(TenantUsageMeter meter, String tenantId) {
+        this.meter = meter;
+        this.tenantId = tenantId;
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        this.executionStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        this.meter.recordStatement(this.tenantId, System.nanoTime() - this.executionStart);
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        this.executionStart = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        this.meter.recordStatement(this.tenantId, System.nanoTime() - this.executionStart);
+    }
+
+    @Override
+    public void jdbcConnectionAcquisitionEnd() {
+        if (this.connections++ == 0 && this.holdStart == 0L) {
+            this.holdStart = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void jdbcConnectionReleaseEnd() {
+        if (--this.connections == 0 && !TransactionSynchronizationManager.isActualTransactionActive()) {
+            endHold();
+        }
+    }
+
+    @Override
+    public void transactionCompletion(boolean successful) {
+        this.meter.recordTransaction(this.tenantId);
+        endHold();
+        if (this.connections > 0) {
+            this.holdStart = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void end() {
+        endHold();
+    }
+
+    private void endHold() {
+        if (this.holdStart != 0L) {
+            this.meter.recordConnectionHold(this.tenantId, System.nanoTime() - this.holdStart);
+            this.holdStart = 0L;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package com.leon.solid.multitenant.monitor;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.persistence.EntityManager;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.Session;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import com.leon.solid.multitenant.config.MultiTenantProperties;
+import com.leon.solid.multitenant.config.TenantHolder;
+
+/**
+ * Meters the resources each tenant uses on this node, to bill and throttle by real usage (see {@link UsageMetric}):
+ * the DB time and statements, connection hold time and transactions of the sessions the routing entity manager
+ * factory opens, and the rows read and written and JDBC work of
+ * {@link com.leon.solid.multitenant.repository.JpaNativeQuerySupportRepository}.
+ * <p>
+ * The usage is counted in windows of {@code multitenant.metering.window}, recording only adds to the striped
+ * counters of the current window and takes no lock. At the end of a window a new one is started, the closed window
+ * is summed up one window later, when the writers that raced the switch are done. The last
+ * {@code multitenant.metering.windows} windows are kept for the rolling usage of {@link #getUsage(String)} and
+ * {@link #getNoisiestTenants(UsageMetric, int)}.
+ * <p>
+ * The closed windows are kept until {@link #flush()} takes them, or saved to the {@link TenantUsageStore} when one
+ * is configured ({@code multitenant.metering.store=jdbc}). At most {@value #MAX_UNFLUSHED_SNAPSHOTS} windows are
+ * kept, the oldest are dropped. It is enabled with {@code multitenant.metering.enabled=true}.
+ *
+ * @author Leon.Tang
+ */
+@Component
+@ConditionalOnProperty(prefix = MultiTenantProperties.MULTITENANT_PREFIX + ".metering", name = "enabled",
+    havingValue = "true")
+public class TenantUsageMeter implements DisposableBean {
+    private final Log log = LogFactory.getLog(TenantUsageMeter.class);
+
+    /**
+     * The maximum number of closed windows kept until they are flushed.
+     */
+    public static final int MAX_UNFLUSHED_SNAPSHOTS = 100000;
+
+    private static final UsageMetric[] METRICS = UsageMetric.values();
+
+    private final Map<String, TenantUsage> tenants = new ConcurrentHashMap<>();
+
+    private final Deque<TenantUsageSnapshot> unflushed = new ArrayDeque<>();
+
+    private final String defaultTenantId;
+
+    private final long windowMillis;
+
+    private final int windows;
+
+    private final TenantUsageStore store;
+
+    private final ScheduledThreadPoolExecutor rotator;
+
+    @Autowired
+    public TenantUsageMeter(MultiTenantProperties multiTenantProperties, ObjectProvider<TenantUsageStore> store) {
+        MultiTenantProperties.Metering metering = multiTenantProperties.getMetering();
+        Duration window = metering.getWindow();
+        Assert.isTrue(window != null && !window.isNegative() && !window.isZero(),
+            "multitenant.metering.window must be positive!");
+        Assert.isTrue(metering.getWindows() > 0, "multitenant.metering.windows must be positive!");
+        String defaultTenant = multiTenantProperties.resolveDefaultTenantId();
+        this.defaultTenantId = defaultTenant != null ? defaultTenant : "";
+        this.windowMillis = window.toMillis();
+        this.windows = metering.getWindows();
+        this.store = store.getIfAvailable();
+
+        CustomizableThreadFactory rotatorFactory = new CustomizableThreadFactory("tenant-usage-");
+        rotatorFactory.setDaemon(true);
+        this.rotator = new ScheduledThreadPoolExecutor(1, rotatorFactory);
+        this.rotator.scheduleAtFixedRate(this::rotateQuietly, this.windowMillis, this.windowMillis,
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Meter the work of an entity manager of the current tenant.
+     *
+     * @param entityManager the entity manager, just created
+     */
+    public void attach(EntityManager entityManager) {
+        entityManager.unwrap(Session.class).addEventListeners(new TenantUsageListener(this, currentTenantId()));
+    }
+
+    /**
+     * Record a statement of the current tenant.
+     *
+     * @param elapsedNanos the execution time
+     */
+    public void recordStatement(long elapsedNanos) {
+        recordStatement(currentTenantId(), elapsedNanos);
+    }
+
+    /**
+     * Record a statement.
+     *
+     * @param tenantId the tenant
+     * @param elapsedNanos the execution time
+     */
+    public void recordStatement(String tenantId, long elapsedNanos) {
+        UsageWindow window = current(tenantId);
+        window.add(UsageMetric.STATEMENTS, 1L);
+        window.add(UsageMetric.DB_TIME, elapsedNanos);
+    }
+
+    /**
+     * Record the rows of a statement of the current tenant, as read for a query and as written otherwise.
+     *
+     * @param sql the SQL statement
+     * @param rows the rows returned or affected
+     */
+    public void recordRows(String sql, long rows) {
+        recordRows(currentTenantId(), sql, rows);
+    }
+
+    /**
+     * Record the rows of a statement, as read for a query and as written otherwise.
+     *
+     * @param tenantId the tenant
+     * @param sql the SQL statement
+     * @param rows the rows returned or affected
+     */
+    public void recordRows(String tenantId, String sql, long rows) {
+        if (rows > 0) {
+            current(tenantId).add(isQuery(sql) ? UsageMetric.ROWS_READ : UsageMetric.ROWS_WRITTEN, rows);
+        }
+    }
+
+    /**
+     * Record the time a session held a connection.
+     *
+     * @param tenantId the tenant
+     * @param heldNanos the hold time
+     */
+    public void recordConnectionHold(String tenantId, long heldNanos) {
+        current(tenantId).add(UsageMetric.CONNECTION_HOLD_TIME, heldNanos);
+    }
+
+    /**
+     * Record a completed transaction.
+     *
+     * @param tenantId the tenant
+     */
+    public void recordTransaction(String tenantId) {
+        current(tenantId).add(UsageMetric.TRANSACTIONS, 1L);
+    }
+
+    /**
+     * Get the usage of a tenant in the kept windows and the current window.
+     *
+     * @param tenantId the tenant
+     * @return the rolling usage, or null if the tenant has not used any resource in the kept windows
+     */
+    public TenantUsageSnapshot getUsage(String tenantId) {
+        TenantUsage usage = this.tenants.get(tenantId);
+        return usage != null ? usage.rolling(tenantId, System.currentTimeMillis()) : null;
+    }
+
+    /**
+     * Get the tenants that used the most of a resource in the kept windows and the current window.
+     *
+     * @param metric the resource
+     * @param limit the maximum number of tenants
+     * @return the rolling usage of the tenants, the noisiest first
+     */
+    public List<TenantUsageSnapshot> getNoisiestTenants(UsageMetric metric, int limit) {
+        Assert.isTrue(limit > 0, "The limit must be positive!");
+        long now = System.currentTimeMillis();
+        List<TenantUsageSnapshot> usages = new ArrayList<>(this.tenants.size());
+        for (Map.Entry<String, TenantUsage> entry : this.tenants.entrySet()) {
+            usages.add(entry.getValue().rolling(entry.getKey(), now));
+        }
+        usages.sort(Comparator.comparingLong((TenantUsageSnapshot usage) -> usage.get(metric)).reversed());
+        return usages.size() <= limit ? usages : new ArrayList<>(usages.subList(0, limit));
+    }
+
+    /**
+     * Take the closed windows that were not flushed yet, in the order they were closed. Windows without usage are
+     * left out.
+     *
+     * @return the usage of the tenants in their windows
+     */
+    public List<TenantUsageSnapshot> flush() {
+        synchronized (this.unflushed) {
+            List<TenantUsageSnapshot> snapshots = new ArrayList<>(this.unflushed);
+            this.unflushed.clear();
+            return snapshots;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        this.rotator.shutdownNow();
+        rotate(true);
+    }
+
+    private void rotateQuietly() {
+        try {
+            rotate(false);
+        } catch (RuntimeException ex) {
+            log.warn("Failed to rotate the tenant usage windows", ex);
+        }
+    }
+
+    /**
+     * Start a new window for each tenant and sum up the windows closed the last time, or all windows if the meter
+     * is closing.
+     */
+    private synchronized void rotate(boolean closing) {
+        long now = System.currentTimeMillis();
+        long oldest = now - this.windowMillis * this.windows;
+        List<TenantUsageSnapshot> settled = new ArrayList<>();
+        for (Iterator<Map.Entry<String, TenantUsage>> it = this.tenants.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, TenantUsage> entry = it.next();
+            TenantUsage usage = entry.getValue();
+            UsageWindow closed = usage.current;
+            closed.end = now;
+            usage.current = new UsageWindow(now);
+            usage.settle(entry.getKey(), usage.closed, oldest, settled);
+            usage.closed = closed;
+            if (closing) {
+                usage.settle(entry.getKey(), closed, oldest, settled);
+                usage.closed = null;
+            }
+            if (usage.isIdle()) {
+                it.remove();
+                if (!usage.current.isEmpty()) {
+                    // a writer raced the removal
+                    this.tenants.putIfAbsent(entry.getKey(), usage);
+                }
+            }
+        }
+        if (settled.isEmpty()) {
+            return;
+        }
+        synchronized (this.unflushed) {
+            this.unflushed.addAll(settled);
+            trimUnflushed();
+        }
+        if (this.store != null) {
+            save();
+        }
+    }
+
+    private void save() {
+        List<TenantUsageSnapshot> snapshots = flush();
+        try {
+            this.store.save(snapshots);
+        } catch (RuntimeException ex) {
+            log.warn("Failed to save " + snapshots.size() + " tenant usage windows, retrying with the next window",
+                ex);
+            synchronized (this.unflushed) {
+                for (int i = snapshots.size() - 1; i >= 0; i--) {
+                    this.unflushed.addFirst(snapshots.get(i));
+                }
+                trimUnflushed();
+            }
+        }
+    }
+
+    private void trimUnflushed() {
+        int dropped = 0;
+        while (this.unflushed.size() > MAX_UNFLUSHED_SNAPSHOTS) {
+            this.unflushed.removeFirst();
+            dropped++;
+        }
+        if (dropped > 0) {
+            log.warn("Dropped the " + dropped + " oldest tenant usage windows, they were not flushed");
+        }
+    }
+
+    private UsageWindow current(String tenantId) {
+        TenantUsage usage = this.tenants.get(tenantId);
+        if (usage == null) {
+            usage = this.tenants.computeIfAbsent(tenantId, t -> new TenantUsage(System.currentTimeMillis()));
+        }
+        return usage.current;
+    }
+
+    private String currentTenantId() {
+        String tenantId = TenantHolder.getCurrentTenant();
+        return tenantId != null ? tenantId : this.defaultTenantId;
+    }
+
+    /**
+     * Check if a statement is a query, its rows are read.
+     */
+    static boolean isQuery(String sql) {
+        int i = 0;
+        while (i < sql.length() && (Character.isWhitespace(sql.charAt(i)) || sql.charAt(i) == '(')) {
+            i++;
+        }
+        return sql.regionMatches(true, i, "select", 0, 6) || sql.regionMatches(true, i, "with", 0, 4)
+            || sql.regionMatches(true, i, "values", 0, 6);
+    }
+
+    /**
+     * The windows of a tenant: the current window, the window closed the last time, and the summed up windows.
+     */
+    private static final class TenantUsage {
+
+        private volatile UsageWindow current;
+
+        private volatile UsageWindow closed;
+
+        private final Deque<TenantUsageSnapshot> history = new ArrayDeque<>();
+
+        TenantUsage(long start) {
+            this.current = new UsageWindow(start);
+        }
+
+        void settle(String tenantId, UsageWindow window, long oldest, List<TenantUsageSnapshot> settled) {
+            synchronized (this) {
+                if (window != null && !window.isEmpty()) {
+                    TenantUsageSnapshot snapshot = window.snapshot(tenantId);
+                    this.history.addLast(snapshot);
+                    settled.add(snapshot);
+                }
+                while (!this.history.isEmpty() && this.history.peekFirst().getEnd() <= oldest) {
+                    this.history.removeFirst();
+                }
+            }
+        }
+
+        boolean isIdle() {
+            synchronized (this) {
+                return this.history.isEmpty() && (this.closed == null || this.closed.isEmpty())
+                    && this.current.isEmpty();
+            }
+        }
+
+        TenantUsageSnapshot rolling(String tenantId, long now) {
+            long[] values = new long[METRICS.length];
+            long start;
+            synchronized (this) {
+                for (TenantUsageSnapshot snapshot : this.history) {
+                    for (UsageMetric metric : METRICS) {
+                        values[metric.ordinal()] += snapshot.get(metric);
+                    }
+                }
+                UsageWindow closedWindow = this.closed;
+                if (closedWindow != null) {
+                    closedWindow.sumTo(values);
+                }
+                this.current.sumTo(values);
+                start = !this.history.isEmpty() ? this.history.peekFirst().getStart()
+                    : closedWindow != null ? closedWindow.start : this.current.start;
+            }
+            return new TenantUsageSnapshot(tenantId, start, now, values);
+        }
+    }
+
+    /**
+     * The counters of a tenant during a window, striped so concurrent writers do not contend.
+     */
+    private static final class UsageWindow {
+
+        private final long start;
+
+        private volatile long end;
+
+        private final LongAdder[] counters = new LongAdder[METRICS.length];
+
+        UsageWindow(long start) {
+            this.start = start;
+            for (int i = 0; i < this.counters.length; i++) {
+                this.counters[i] = new LongAdder();
+            }
+        }
+
+        void add(UsageMetric metric, long value) {
+            this.counters[metric.ordinal()].add(value);
+        }
+
+        boolean isEmpty() {
+            for (LongAdder counter : this.counters) {
+                if (counter.sum() != 0L) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void sumTo(long[] values) {
+            for (int i = 0; i < this.counters.length; i++) {
+                values[i] += this.counters[i].sum();
+            }
+        }
+
+        TenantUsageSnapshot snapshot(String tenantId) {
+            long[] values = new long[this.counters.length];
+            sumTo(values);
+            return new TenantUsageSnapshot(tenantId, this.start, this.end, values);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.leon.solid.multitenant.monitor;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * The resource usage of a tenant during a time window, see {@link TenantUsageMeter}.
+ *
+ * @author Leon.Tang
+ */
+public final class TenantUsageSnapshot {
+
+    private final String tenantId;
+
+    private final long start;
+
+    private final long end;
+
+    private final long[] values;
+
+    TenantUsageSnapshot(String tenantId, long start, long end, long[] values) {
+        this.tenantId = tenantId;
+        this.start = start;
+        this.end = end;
+        this.values = values;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    /**
+     * Get the start of the window.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Get the end of the window, exclusive.
+     *
+     * @return the time in milliseconds since the epoch
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Get the usage of a resource, the times are in nanoseconds.
+     *
+     * @param metric the resource
+     * @return the usage
+     */
+    public long get(UsageMetric metric) {
+        return values[metric.ordinal()];
+    }
+
+    public Duration getDbTime() {
+        return Duration.ofNanos(get(UsageMetric.DB_TIME));
+    }
+
+    public long getStatementCount() {
+        return get(UsageMetric.STATEMENTS);
+    }
+
+    public long getRowsRead() {
+        return get(UsageMetric.ROWS_READ);
+    }
+
+    public long getRowsWritten() {
+        return get(UsageMetric.ROWS_WRITTEN);
+    }
+
+    public Duration getConnectionHoldTime() {
+        return Duration.ofNanos(get(UsageMetric.CONNECTION_HOLD_TIME));
+    }
+
+    public long getTransactionCount() {
+        return get(UsageMetric.TRANSACTIONS);
+    }
+
+    @Override
+    public String toString() {
+        return tenantId + " [" + Instant.ofEpochMilli(start) + ", " + Instant.ofEpochMilli(end) + "): dbTime "
+            + getDbTime().toMillis() + " ms, " + getStatementCount() + " statements, " + getRowsRead()
+            + " rows read, " + getRowsWritten() + " rows written, connections held "
+            + getConnectionHoldTime().toMillis() + " ms, " + getTransactionCount() + " transactions";
+    }
+}
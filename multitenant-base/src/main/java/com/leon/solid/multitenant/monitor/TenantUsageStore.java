@@ -0,0 +1,19 @@
+package com.leon.solid.multitenant.monitor;
+
+import java.util.List;
+
+/**
+ * The store the closed usage windows of {@link TenantUsageMeter} are saved to, for chargeback.
+ *
+ * @author Leon.Tang
+ * @see JdbcTenantUsageStore
+ */
+public interface TenantUsageStore {
+
+    /**
+     * Save closed usage windows, a window is saved once.
+     *
+     * @param snapshots the usage of the tenants in their windows
+     */
+    void save(List<TenantUsageSnapshot> snapshots);
+}
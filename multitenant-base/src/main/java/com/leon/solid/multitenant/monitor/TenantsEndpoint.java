@@ -0,0 +1,388 @@
+package com.leon.solid.multitenant.monitor;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.lang.Nullable;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.stereotype.Component;
+
+import com.leon.solid.multitenant.config.MultiTenantProperties;
+import com.leon.solid.multitenant.config.MultiTenantProperties.DataSourceProperties;
+import com.leon.solid.multitenant.config.TenantBuilder;
+import com.leon.solid.multitenant.config.TenantRuntime;
+import com.leon.solid.multitenant.datasource.TenantPoolingDataSourceBean;
+import com.leon.solid.multitenant.model.TenantDataSourceModel;
+import com.leon.solid.multitenant.service.TenantDataSourceService;
+import com.leon.solid.multitenant.utils.StringUtils;
+
+/**
+ * The <code>tenants</code> actuator endpoint, it shows the tenants built on this node without a heap dump: their
+ * build generation and duration, last access time and routing count, the statistics of their connection pool and
+ * entity manager factory, and their estimated footprint when {@link TenantFootprintEstimator} is enabled.
+ * <p>
+ * <code>GET /actuator/tenants</code> lists the tenants a page at a time, filtered by the text their tenant id
+ * contains and sorted by <code>tenantId</code>, <code>lastAccessedAt</code> (least recent first),
+ * <code>routingCount</code> or <code>buildDuration</code> (largest first). <code>GET /actuator/tenants/{tenantId}</code>
+ * shows one tenant. <code>POST /actuator/tenants/{tenantId}</code> with an <code>action</code> changes a tenant of
+ * the registry on this node only:
+ * <ul>
+ * <li><code>warm</code>: build the tenant if it is not built, and open its connection pool and a session.</li>
+ * <li><code>evict</code>: remove the tenant and close its pool, its requests fail on this node until it is warmed or
+ * rebuilt.</li>
+ * <li><code>rebuild</code>: remove the tenant and build it again from the registry, its requests fail on this node
+ * meanwhile.</li>
+ * </ul>
+ * The tenants configured under {@code multitenant.dataSources} are not in the registry, they cannot be changed.
+ * The endpoint is exposed like the other actuator endpoints, e.g. with
+ * {@code management.endpoints.web.exposure.include=tenants}.
+ *
+ * @author Leon.Tang
+ */
+@Component
+@ConditionalOnClass(name = "org.springframework.boot.actuate.endpoint.annotation.Endpoint")
+@Endpoint(id = "tenants")
+public class TenantsEndpoint {
+    private final Log log = LogFactory.getLog(TenantsEndpoint.class);
+
+    /**
+     * The action that builds a tenant and opens its connection pool.
+     */
+    public static final String ACTION_WARM = "warm";
+
+    /**
+     * The action that removes a tenant from this node.
+     */
+    public static final String ACTION_EVICT = "evict";
+
+    /**
+     * The action that removes a tenant and builds it again.
+     */
+    public static final String ACTION_REBUILD = "rebuild";
+
+    private static final int DEFAULT_PAGE_SIZE = 20;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final TenantBuilder tenantBuilder;
+
+    private final Map<String, LocalContainerEntityManagerFactoryBean> tenantEntityManagerFactories;
+
+    private final Map<String, DataSource> multiTenantDataSources;
+
+    private final TenantDataSourceService tenantDataSourceService;
+
+    private final ObjectProvider<TenantFootprintEstimator> footprintEstimator;
+
+    private final Set<String> configuredTenantIds = new HashSet<>();
+
+    @Autowired
+    public TenantsEndpoint(@Qualifier("tenantBuilder") TenantBuilder tenantBuilder,
+        @Qualifier("tenantEntityManagerFactories") Map<String,
+            LocalContainerEntityManagerFactoryBean> tenantEntityManagerFactories,
+        @Qualifier("multiTenantDataSources") Map<String, DataSource> multiTenantDataSources,
+        TenantDataSourceService tenantDataSourceService, MultiTenantProperties multiTenantProperties,
+        ObjectProvider<TenantFootprintEstimator> footprintEstimator) {
+        this.tenantBuilder = tenantBuilder;
+        this.tenantEntityManagerFactories = tenantEntityManagerFactories;
+        this.multiTenantDataSources = multiTenantDataSources;
+        this.tenantDataSourceService = tenantDataSourceService;
+        this.footprintEstimator = footprintEstimator;
+        if (multiTenantProperties.getDataSources() != null) {
+            for (DataSourceProperties dsProperties : multiTenantProperties.getDataSources()) {
+                this.configuredTenantIds.add(dsProperties.getTenantId());
+            }
+        }
+    }
+
+    /**
+     * List the tenants built on this node.
+     *
+     * @param tenantId the text the tenant ids contain, or null for all
+     * @param sort the order of the tenants, <code>tenantId</code> by default
+     * @param page the page number, from 0
+     * @param size the page size, 20 by default
+     * @return the page of tenants
+     */
+    @ReadOperation
+    public TenantPage tenants(@Nullable String tenantId, @Nullable String sort, @Nullable Integer page,
+        @Nullable Integer size) {
+        int pageNumber = page != null ? page : 0;
+        int pageSize = size != null ? size : DEFAULT_PAGE_SIZE;
+        if (pageNumber < 0 || pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new InvalidEndpointRequestException("Invalid page " + pageNumber + " of size " + pageSize,
+                "The page must not be negative and the size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        List<TenantRuntime> runtimes = new ArrayList<>();
+        for (TenantRuntime runtime : this.tenantBuilder.getTenantRuntimes().values()) {
+            if (StringUtils.isEmpty(tenantId) || runtime.getTenantId().contains(tenantId)) {
+                runtimes.add(runtime);
+            }
+        }
+        runtimes.sort(comparator(sort));
+        List<TenantDescriptor> tenants = new ArrayList<>();
+        long from = (long)pageNumber * pageSize;
+        for (int i = (int)Math.min(from, runtimes.size()); i < runtimes.size() && tenants.size() < pageSize; i++) {
+            tenants.add(describe(runtimes.get(i)));
+        }
+        return new TenantPage(runtimes.size(), pageNumber, pageSize, tenants);
+    }
+
+    /**
+     * Show a tenant built on this node.
+     *
+     * @param tenantId the tenant id
+     * @return the tenant, or null if it is not built
+     */
+    @ReadOperation
+    public TenantDescriptor tenant(@Selector String tenantId) {
+        TenantRuntime runtime = this.tenantBuilder.getTenantRuntime(tenantId);
+        return runtime != null ? describe(runtime) : null;
+    }
+
+    /**
+     * Warm, evict or rebuild a tenant of the registry on this node.
+     *
+     * @param tenantId the tenant id
+     * @param action <code>warm</code>, <code>evict</code> or <code>rebuild</code>
+     * @return the tenant after the action, or null if it was evicted
+     */
+    @WriteOperation
+    public TenantDescriptor change(@Selector String tenantId, String action) {
+        if (!ACTION_WARM.equals(action) && !ACTION_EVICT.equals(action) && !ACTION_REBUILD.equals(action)) {
+            throw new InvalidEndpointRequestException("Unknown action " + action,
+                "The action must be warm, evict or rebuild");
+        }
+        if (this.configuredTenantIds.contains(tenantId)) {
+            throw new InvalidEndpointRequestException("Tenant " + tenantId + " is configured in the application",
+                "Only the tenants of the registry can be changed");
+        }
+        TenantDataSourceModel model = this.tenantDataSourceService.findByTenantId(tenantId);
+        if (model == null) {
+            throw new InvalidEndpointRequestException("Tenant " + tenantId + " is not in the registry",
+                "Unknown tenant");
+        }
+        if (!ACTION_EVICT.equals(action) && !Boolean.TRUE.equals(model.getStatus())) {
+            throw new InvalidEndpointRequestException("Tenant " + tenantId + " is disabled", "Disabled tenant");
+        }
+        log.info("Tenant " + tenantId + ": " + action);
+        synchronized (this.tenantBuilder) {
+            if (!ACTION_WARM.equals(action)) {
+                this.tenantBuilder.destory(model);
+            }
+            if (!ACTION_EVICT.equals(action) && this.tenantBuilder.getTenantRuntime(tenantId) == null) {
+                this.tenantBuilder.build(model);
+            }
+        }
+        if (ACTION_EVICT.equals(action)) {
+            return null;
+        }
+        warm(tenantId);
+        return tenant(tenantId);
+    }
+
+    private void warm(String tenantId) {
+        DataSource dataSource = this.multiTenantDataSources.get(tenantId);
+        if (dataSource != null) {
+            DataSourceUtils.releaseConnection(DataSourceUtils.getConnection(dataSource), dataSource);
+        }
+        LocalContainerEntityManagerFactoryBean factoryBean = this.tenantEntityManagerFactories.get(tenantId);
+        EntityManagerFactory emf = factoryBean != null ? factoryBean.getNativeEntityManagerFactory() : null;
+        if (emf != null) {
+            EntityManager entityManager = emf.createEntityManager();
+            entityManager.close();
+        }
+    }
+
+    private TenantDescriptor describe(TenantRuntime runtime) {
+        String tenantId = runtime.getTenantId();
+        TenantFootprintEstimator estimator = this.footprintEstimator.getIfAvailable();
+        TenantFootprint footprint = estimator != null ? estimator.getFootprint(tenantId) : null;
+        return new TenantDescriptor(runtime, pool(this.multiTenantDataSources.get(tenantId)),
+            entityManagerFactory(this.tenantEntityManagerFactories.get(tenantId)),
+            footprint != null ? footprint.getTotalBytes() : null);
+    }
+
+    private static Map<String, Object> pool(DataSource dataSource) {
+        if (!(dataSource instanceof TenantPoolingDataSourceBean)) {
+            return null;
+        }
+        TenantPoolingDataSourceBean pooling = (TenantPoolingDataSourceBean)dataSource;
+        Map<String, Object> pool = new LinkedHashMap<>();
+        pool.put("created", pooling.isPoolCreated());
+        pool.put("minPoolSize", pooling.getMinPoolSize());
+        pool.put("maxPoolSize", pooling.getMaxPoolSize());
+        if (pooling.isPoolCreated()) {
+            long total = pooling.getTotalPoolSize();
+            long idle = pooling.getInPoolSize();
+            pool.put("totalConnections", total);
+            pool.put("idleConnections", idle);
+            pool.put("activeConnections", total - idle);
+        }
+        return pool;
+    }
+
+    private static Map<String, Object> entityManagerFactory(LocalContainerEntityManagerFactoryBean factoryBean) {
+        EntityManagerFactory emf = factoryBean != null ? factoryBean.getNativeEntityManagerFactory() : null;
+        if (!(emf instanceof SessionFactory)) {
+            return null;
+        }
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("open", emf.isOpen());
+        Statistics hibernate = ((SessionFactory)emf).getStatistics();
+        statistics.put("statisticsEnabled", hibernate.isStatisticsEnabled());
+        if (hibernate.isStatisticsEnabled()) {
+            statistics.put("sessionOpenCount", hibernate.getSessionOpenCount());
+            statistics.put("transactionCount", hibernate.getTransactionCount());
+            statistics.put("queryExecutionCount", hibernate.getQueryExecutionCount());
+            statistics.put("queryExecutionMaxTime", Duration.ofMillis(hibernate.getQueryExecutionMaxTime()));
+            statistics.put("entityLoadCount", hibernate.getEntityLoadCount());
+            statistics.put("secondLevelCacheHitCount", hibernate.getSecondLevelCacheHitCount());
+            statistics.put("secondLevelCacheMissCount", hibernate.getSecondLevelCacheMissCount());
+            statistics.put("prepareStatementCount", hibernate.getPrepareStatementCount());
+        }
+        return statistics;
+    }
+
+    private static Comparator<TenantRuntime> comparator(String sort) {
+        Comparator<TenantRuntime> byTenantId = Comparator.comparing(TenantRuntime::getTenantId);
+        if (StringUtils.isEmpty(sort) || "tenantId".equals(sort)) {
+            return byTenantId;
+        }
+        if ("lastAccessedAt".equals(sort)) {
+            return Comparator.comparingLong(TenantRuntime::getLastAccessedAt).thenComparing(byTenantId);
+        }
+        if ("routingCount".equals(sort)) {
+            return Comparator.comparingLong(TenantRuntime::getRoutingCount).reversed().thenComparing(byTenantId);
+        }
+        if ("buildDuration".equals(sort)) {
+            return Comparator.comparing(TenantRuntime::getBuildDuration).reversed().thenComparing(byTenantId);
+        }
+        throw new InvalidEndpointRequestException("Unknown sort " + sort,
+            "The sort must be tenantId, lastAccessedAt, routingCount or buildDuration");
+    }
+
+    /**
+     * A page of tenants.
+     */
+    public static final class TenantPage {
+        private final int total;
+        private final int page;
+        private final int size;
+        private final Collection<TenantDescriptor> tenants;
+
+        TenantPage(int total, int page, int size, Collection<TenantDescriptor> tenants) {
+            this.total = total;
+            this.page = page;
+            this.size = size;
+            this.tenants = tenants;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getPage() {
+            return page;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        public Collection<TenantDescriptor> getTenants() {
+            return tenants;
+        }
+    }
+
+    /**
+     * The runtime state of a tenant.
+     */
+    public static final class TenantDescriptor {
+        private final String tenantId;
+        private final long generation;
+        private final Instant builtAt;
+        private final Duration buildDuration;
+        private final Instant lastAccessedAt;
+        private final long routingCount;
+        private final Map<String, Object> pool;
+        private final Map<String, Object> entityManagerFactory;
+        private final Long footprintBytes;
+
+        TenantDescriptor(TenantRuntime runtime, Map<String, Object> pool, Map<String, Object> entityManagerFactory,
+            Long footprintBytes) {
+            this.tenantId = runtime.getTenantId();
+            this.generation = runtime.getGeneration();
+            this.builtAt = Instant.ofEpochMilli(runtime.getBuiltAt());
+            this.buildDuration = runtime.getBuildDuration();
+            this.lastAccessedAt = runtime.getLastAccessedAt() > 0 ? Instant.ofEpochMilli(runtime.getLastAccessedAt())
+                : null;
+            this.routingCount = runtime.getRoutingCount();
+            this.pool = pool;
+            this.entityManagerFactory = entityManagerFactory;
+            this.footprintBytes = footprintBytes;
+        }
+
+        public String getTenantId() {
+            return tenantId;
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        public Instant getBuiltAt() {
+            return builtAt;
+        }
+
+        public Duration getBuildDuration() {
+            return buildDuration;
+        }
+
+        public Instant getLastAccessedAt() {
+            return lastAccessedAt;
+        }
+
+        public long getRoutingCount() {
+            return routingCount;
+        }
+
+        public Map<String, Object> getPool() {
+            return pool;
+        }
+
+        public Map<String, Object> getEntityManagerFactory() {
+            return entityManagerFactory;
+        }
+
+        public Long getFootprintBytes() {
+            return footprintBytes;
+        }
+    }
+}
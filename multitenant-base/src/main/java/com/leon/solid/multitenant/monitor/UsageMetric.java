@@ -0,0 +1,41 @@
+package com.leon.solid.multitenant.monitor;
+
+/**
+ * The resources metered per tenant by {@link TenantUsageMeter}.
+ *
+ * @author Leon.Tang
+ */
+public enum UsageMetric {
+
+    /**
+     * The time the statements of the tenant took to execute, in nanoseconds.
+     */
+    DB_TIME,
+
+    /**
+     * The number of statements executed.
+     */
+    STATEMENTS,
+
+    /**
+     * The rows returned by the queries of
+     * {@link com.leon.solid.multitenant.repository.JpaNativeQuerySupportRepository}.
+     */
+    ROWS_READ,
+
+    /**
+     * The rows inserted, updated or deleted by the statements of
+     * {@link com.leon.solid.multitenant.repository.JpaNativeQuerySupportRepository}.
+     */
+    ROWS_WRITTEN,
+
+    /**
+     * The time the sessions of the tenant held a connection, in nanoseconds.
+     */
+    CONNECTION_HOLD_TIME,
+
+    /**
+     * The number of transactions completed.
+     */
+    TRANSACTIONS
+}
@@ -1,18 +1,87 @@
 package com.leon.solid.multitenant.repository;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 
+import org.hibernate.FlushMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.NamedSQLQueryDefinition;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.jdbc.ReturningWork;
 import org.hibernate.query.NativeQuery;
-import org.hibernate.transform.Transformers;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.IncorrectResultSetColumnCountException;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapperResultSetExtractor;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 
+import com.leon.solid.multitenant.cache.QueryCacheKey;
+import com.leon.solid.multitenant.cache.TenantQueryCache;
+import com.leon.solid.multitenant.concurrent.TenantQueryExecutor;
+import com.leon.solid.multitenant.monitor.TenantEvent;
+import com.leon.solid.multitenant.monitor.TenantEvents;
+import com.leon.solid.multitenant.monitor.TenantQueryMonitor;
+import com.leon.solid.multitenant.monitor.TenantSqlTagger;
+import com.leon.solid.multitenant.monitor.TenantUsageMeter;
+import com.leon.solid.multitenant.repository.support.BulkLoadListener;
+import com.leon.solid.multitenant.repository.support.CsvBulkLoader;
+import com.leon.solid.multitenant.repository.support.CsvResultSetExporter;
+import com.leon.solid.multitenant.repository.support.KeysetPage;
+import com.leon.solid.multitenant.repository.support.KeysetToken;
+import com.leon.solid.multitenant.repository.support.ParsedNativeSql;
+import com.leon.solid.multitenant.repository.support.ParsedNativeSql.BoundSql;
+import com.leon.solid.multitenant.repository.support.ResultSetExporter;
+import com.leon.solid.multitenant.repository.support.SqlTables;
+import com.leon.solid.multitenant.repository.support.TupleMapperResultTransformer;
+import com.leon.solid.multitenant.repository.support.TupleMappers;
+import com.leon.solid.multitenant.repository.support.TypeCoercions;
+
 /**
  *    The template class for convenient approaches to use  native SQL query in JPA. It contains the common operations in native query.
  *    <p>
@@ -32,6 +101,24 @@ import org.springframework.util.Assert;
  *   
  *   <p>
 *   The input parameters can be positional or {@link Map name and value}, just like {@link JdbcTemplate}.
+*   Collection values are expanded into IN-lists. SQL clauses are parsed once and cached, see {@link ParsedNativeSql}.
+*   <p>
+*   Large results can be streamed, exported to a file without loading them (see {@link ResultSetExporter}), or paged
+*   by key with {@link #queryForKeysetPage(String, Map, Class, Sort, int, String)} instead of <code>OFFSET</code>.
+*   Large imports are bulk loaded from CSV, see {@link CsvBulkLoader}.
+*   <p>
+*   Rows are mapped by alias to the <code>elementType</code> (setters, fields or a constructor) with mappers that are
+*   built once per result shape and cached, see {@link TupleMappers}.
+*   <p>
+*   Results of read-mostly queries can be cached per tenant with the <code>cachedQueryFor...</code> methods, see
+*   {@link TenantQueryCache}. The time and rows of the executed statements are recorded per tenant, see
+*   {@link TenantQueryMonitor}.
+*   <p>
+*   Independent queries can run at the same time with the <code>...Async</code> methods, which keep the current
+*   tenant, see {@link TenantQueryExecutor}.
+*   <p>
+*   Inside a <code>@Transactional(readOnly = true)</code> method, and in {@link #readOnly(Supplier)}, queries are
+*   read-only: the persistence context is not flushed before them and their entities are not dirty checked.
 *   
  * @author Leon.Tang
  * @version 1.0
@@ -40,12 +127,78 @@ import org.springframework.util.Assert;
 public abstract class JpaNativeQuerySupportRepository {
 
     private static final String ERR_MSG_EM_REQUIRE = "The entity manager is required!";
+
+    private static final String ERR_MSG_STREAM_TX_REQUIRE = "Streaming query requires a surrounding transaction that"
+        + " keeps the connection open while the Stream is consumed, declare @Transactional on the caller!";
+
+    private static final String ERR_MSG_EXPORT_TX_REQUIRE = "Export requires a surrounding transaction that keeps"
+        + " the cursor open while the rows are written, declare @Transactional on the caller!";
+
+    private static final String ERR_MSG_BULK_LOAD_TX_REQUIRE = "Bulk load requires a surrounding transaction,"
+        + " declare @Transactional on the caller!";
+
+    private static final String ERR_MSG_JDBC_TX_REQUIRE = "Primitive array query requires a surrounding transaction,"
+        + " declare @Transactional on the caller!";
+
+    private static final int INITIAL_ARRAY_CAPACITY = 256;
+
+    private static final String KEYSET_PARAMETER_PREFIX = "_keyset";
+
+    private static final Pattern KEYSET_KEY = Pattern.compile("[A-Za-z_][A-Za-z0-9_$]*");
+
+    private static final String ERR_MSG_BATCH_TX_REQUIRE = "Batch update requires a surrounding transaction,"
+        + " declare @Transactional on the caller!";
+
+    /**
+     *  The default JDBC fetch size of streaming queries.
+     */
+    public static final int DEFAULT_FETCH_SIZE = 500;
+
+    /**
+     *  The JDBC fetch size applied to streaming queries, unless the named query defines its own.
+     */
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
+    /**
+     *  The default number of rows sent to the database in one JDBC batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     *  The number of rows sent to the database in one JDBC batch.
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
     /**
      *  The instance of {@link EntityManager  JPA entity manager}  
      *  which supplies many persistence operations
      */
     private EntityManager entityManager;
 
+    /**
+     *  The tenant-partitioned result cache, null if it is not enabled.
+     */
+    private TenantQueryCache queryCache;
+
+    /**
+     *  The statistics of the executed statements, null if monitoring is disabled.
+     */
+    private TenantQueryMonitor queryMonitor;
+
+    /**
+     *  The worker pool of the <code>...Async</code> methods.
+     */
+    private TenantQueryExecutor queryExecutor;
+
+    /**
+     *  The tagger of the statements executed on the JDBC connection, null if tagging is disabled.
+     */
+    private TenantSqlTagger sqlTagger;
+
+    /**
+     *  The resource usage of the tenants, null if metering is disabled.
+     */
+    private TenantUsageMeter usageMeter;
+
     /**
      *   Get not null {@link EntityManager } instance 
      *   It will be no-null checked before return. When it's null ,  a {@link IllegalArgumentException} exception will be thrown.
@@ -67,6 +220,175 @@ public abstract class JpaNativeQuerySupportRepository {
         this.entityManager = em;
     }
 
+    /**
+     *  Get the result cache of the <code>cachedQueryFor...</code> methods.
+     *
+     * @return the cache, or null if the query cache is not enabled
+     */
+    public TenantQueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     *  Set the result cache of the <code>cachedQueryFor...</code> methods. It is injected when
+     *  {@code multitenant.queryCache.enabled=true}, without it the methods query the database every time.
+     *
+     * @param queryCache the cache
+     */
+    @Autowired(required = false)
+    public void setQueryCache(TenantQueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    /**
+     *  Get the monitor that records the time and rows of the executed statements.
+     *
+     * @return the monitor, or null if monitoring is disabled
+     */
+    public TenantQueryMonitor getQueryMonitor() {
+        return queryMonitor;
+    }
+
+    /**
+     *  Set the monitor that records the time and rows of the executed statements. It is injected unless
+     *  {@code multitenant.monitor.enabled=false}.
+     *
+     * @param queryMonitor the monitor
+     */
+    @Autowired(required = false)
+    public void setQueryMonitor(TenantQueryMonitor queryMonitor) {
+        this.queryMonitor = queryMonitor;
+    }
+
+    /**
+     *  Get the tagger that prefixes the statements executed on the JDBC connection with the tenant comment.
+     *
+     * @return the tagger, or null if tagging is disabled
+     */
+    public TenantSqlTagger getSqlTagger() {
+        return sqlTagger;
+    }
+
+    /**
+     *  Set the tagger that prefixes the statements executed on the JDBC connection with the tenant comment, like
+     *  the statements executed by Hibernate. It is injected when {@code multitenant.tagging.enabled=true}.
+     *
+     * @param sqlTagger the tagger
+     */
+    @Autowired(required = false)
+    public void setSqlTagger(TenantSqlTagger sqlTagger) {
+        this.sqlTagger = sqlTagger;
+    }
+
+    /**
+     *  Get the meter of the rows read and written, and of the statements executed on the JDBC connection.
+     *
+     * @return the meter, or null if metering is disabled
+     */
+    public TenantUsageMeter getUsageMeter() {
+        return usageMeter;
+    }
+
+    /**
+     *  Set the meter of the rows read and written, and of the statements executed on the JDBC connection. The
+     *  statements executed by Hibernate are metered by the session. It is injected when
+     *  {@code multitenant.metering.enabled=true}.
+     *
+     * @param usageMeter the meter
+     */
+    @Autowired(required = false)
+    public void setUsageMeter(TenantUsageMeter usageMeter) {
+        this.usageMeter = usageMeter;
+    }
+
+    /**
+     *  Get the worker pool of the <code>...Async</code> methods.
+     *
+     * @return the executor
+     */
+    public TenantQueryExecutor getQueryExecutor() {
+        return queryExecutor;
+    }
+
+    /**
+     *  Set the worker pool of the <code>...Async</code> methods, the <code>tenantQueryExecutor</code> bean is
+     *  injected by default.
+     *
+     * @param queryExecutor the executor
+     */
+    @Autowired(required = false)
+    public void setQueryExecutor(TenantQueryExecutor queryExecutor) {
+        this.queryExecutor = queryExecutor;
+    }
+
+    /**
+     *  Get the JDBC fetch size applied to streaming queries.
+     *
+     * @return the fetch size
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     *  Set the JDBC fetch size applied to streaming queries, which is the number of rows the driver holds in memory
+     *  at a time. Note that some drivers (e.g. PostgreSQL) only use a cursor when auto-commit is off.
+     *
+     * @param fetchSize the positive fetch size
+     */
+    public void setFetchSize(int fetchSize) {
+        Assert.isTrue(fetchSize > 0, "The fetch size must be positive!");
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     *  Get the number of rows sent to the database in one JDBC batch.
+     *
+     * @return the batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     *  Set the number of rows sent to the database in one JDBC batch.
+     *
+     * @param batchSize the positive batch size
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "The batch size must be positive!");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     *  Run the <code>queries</code> in read-only mode. The native query helpers do so by themselves inside a
+     *  <code>@Transactional(readOnly = true)</code> method, this is for reads inside a read-write transaction.
+     *  <p>
+     *  The session of the current transaction is switched to {@link FlushMode#MANUAL} and default read-only while the
+     *  queries run: pending changes are not flushed (the queries do not see them), and entities loaded by the
+     *  queries keep no snapshot for dirty checking. The previous modes are restored afterwards.
+     *
+     * @param <R> the type of the result
+     * @param queries the queries
+     * @return the result of the queries
+     */
+    protected <R> R readOnly(Supplier<R> queries) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return queries.get();
+        }
+        Session session = this.getEntityManager().unwrap(Session.class);
+        FlushMode flushMode = session.getHibernateFlushMode();
+        boolean defaultReadOnly = session.isDefaultReadOnly();
+        session.setHibernateFlushMode(FlushMode.MANUAL);
+        session.setDefaultReadOnly(true);
+        try {
+            return queries.get();
+        } finally {
+            session.setDefaultReadOnly(defaultReadOnly);
+            session.setHibernateFlushMode(flushMode);
+        }
+    }
+
     /**
      *  Create the {@link javax.persistence.Query} instance with <code>sql</code> and parameters in {@link Map} type 
      *  
@@ -101,7 +423,7 @@ public abstract class JpaNativeQuerySupportRepository {
      */
     @SuppressWarnings("unchecked")
     protected <T> List<T> queryForList(String sql, Map<String, Object> parameters, Class<T> elementType) {
-        return createNativeQuery(sql, parameters, elementType).getResultList();
+        return getResultList(createNativeQuery(sql, parameters, elementType), true);
     }
 
     /**
@@ -157,7 +479,7 @@ public abstract class JpaNativeQuerySupportRepository {
      */
     @SuppressWarnings("unchecked")
     protected <T> List<T> namedQueryForList(String queryName, Map<String, Object> parameters, Class<T> elementType) {
-        return createNamedQuery(queryName, parameters, elementType).getResultList();
+        return getResultList(createNamedQuery(queryName, parameters, elementType), true);
     }
  
     /**
@@ -175,101 +497,1439 @@ public abstract class JpaNativeQuerySupportRepository {
         return  getFirstRowIfPresent(result);
     }
     
-    //TODO: Support positional parameters.
-    //TODO: Support query single column as Object(eg. Long/Integer/String ...)
-
-   
-   
     /**
-     *  Create a  {@link javax.persistence.Query} instance with SQL clause and parameters in {@link Map} type. 
-     *  It also binds {@link org.hibernate.transform.AliasToBeanResultTransformer.AliasToBeanResultTransformer(Class)}  for row mapping from result set.
-     *  
+     *   Execute SQL clause and return the result as a {@link Stream} of <code>elementType</code> rows, which are read
+     *   from a forward-only cursor and mapped lazily while the stream is consumed.
+     *   <p>
+     *   It must be called inside a transaction, and the stream must be closed (e.g. with try-with-resources) to
+     *   release the cursor.
+     *
      * @param <T> the target model type that row mapping to 
      * @param sql the SQL clause to execute
-     * @param parameters the parameters in {@link Map} type
+     * @param parameters the parameters in  {@link Map} type
      * @param elementType the type for row mapping to
-     * @return  the {@link javax.persistence.Query} instance
+     * @return the {@link Stream} of <code>elementType</code> rows
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
      */
-    private <T> Query createNativeQuery(String sql, Map<String, Object> parameters, Class<T> elementType) {
-        return this.createNativeQuery(sql, parameters, elementType, true);
+    protected <T> Stream<T> queryForStream(String sql, Map<String, Object> parameters, Class<T> elementType) {
+        return stream(createNativeQuery(sql, parameters, elementType));
     }
-    
+
     /**
-     *  Create a  {@link javax.persistence.Query} instance with SQL clause and parameters in {@link Map} type. 
-     *  It also binds {@link org.hibernate.transform.AliasToBeanResultTransformer.AliasToBeanResultTransformer(Class)}  for row mapping from result set.
-     *  
+     *  Find the SQL clause by input <code>queryName</code> in <code>orm.xml</code>, and return the result as a
+     *  {@link Stream} of <code>elementType</code> rows, see {@link #queryForStream(String, Map, Class)}.
+     *
+     * @param <T> the target model type that row mapping to 
+     * @param queryName the attribute name of  <code>named-native-query</code> element to search SQL clause in <code>orm.xml</code>
+     * @param parameters the parameters in  {@link Map} type
+     * @param elementType the type for row mapping to
+     * @return the {@link Stream} of <code>elementType</code> rows
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
+     */
+    protected <T> Stream<T> namedQueryForStream(String queryName, Map<String, Object> parameters, Class<T> elementType) {
+        return stream(createNamedQuery(queryName, parameters, elementType));
+    }
+
+    /**
+     *   Execute SQL clause and pass each <code>elementType</code> row to <code>action</code> as it is read, the
+     *   cursor is released when all rows are processed or the action fails.
+     *
      * @param <T> the target model type that row mapping to 
      * @param sql the SQL clause to execute
-     * @param parameters the parameters in {@link Map} type
+     * @param parameters the parameters in  {@link Map} type
      * @param elementType the type for row mapping to
-     * @param isQuery true presents it's query execution at this time, otherwise false
-     * @return  the {@link javax.persistence.Query} instance
+     * @param action the callback for each row
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
      */
-    @SuppressWarnings("deprecation")
-    private <T> Query createNativeQuery(String sql, Map<String, Object> parameters, Class<T> elementType, boolean isQuery) {
-        Query nativeQuery = this.getEntityManager().createNativeQuery(sql);
-        prepareParameters(parameters, nativeQuery);
-        if(isQuery) {
-            nativeQuery.unwrap(NativeQuery.class).setResultTransformer(Transformers.aliasToBean(elementType));
+    protected <T> void queryForEach(String sql, Map<String, Object> parameters, Class<T> elementType,
+        Consumer<? super T> action) {
+        try (Stream<T> rows = queryForStream(sql, parameters, elementType)) {
+            rows.forEach(action);
         }
-        return nativeQuery;
     }
 
     /**
-     *  Create the {@link javax.persistence.Query} instance with <code>sql</code> and parameters in {@link Map} type 
-     *  
-     *  @param <T> the target model type that row mapping to 
+     *  Find the SQL clause by input <code>queryName</code> in <code>orm.xml</code>, and pass each
+     *  <code>elementType</code> row to <code>action</code> as it is read.
+     *
+     * @param <T> the target model type that row mapping to 
      * @param queryName the attribute name of  <code>named-native-query</code> element to search SQL clause in <code>orm.xml</code>
      * @param parameters the parameters in  {@link Map} type
      * @param elementType the type for row mapping to
-    * @param isQuery true presents it's query execution at this time, otherwise false
-     * @return  the {@link javax.persistence.Query} instance
+     * @param action the callback for each row
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
      */
-    private <T> Query createNamedQuery(String queryName, Map<String, Object> parameters, Class<T> elementType) { 
-        return this.createNamedQuery(queryName, parameters, elementType, true);
+    protected <T> void namedQueryForEach(String queryName, Map<String, Object> parameters, Class<T> elementType,
+        Consumer<? super T> action) {
+        try (Stream<T> rows = namedQueryForStream(queryName, parameters, elementType)) {
+            rows.forEach(action);
+        }
     }
-    
+
     /**
-     *  Create the {@link javax.persistence.Query} instance with <code>sql</code> and parameters in {@link Map} type 
+     *   Execute the SQL statement with named parameters once per element of <code>batchArgs</code>, sending the rows
+     *   to the database in JDBC batches of {@link #getBatchSize()}.
+     *   <p>
+     *   It runs on the connection of the current tenant's transaction, pending changes of the persistence context are
+     *   flushed first.
+     *
+     * @param sql the SQL statement to execute
+     * @param batchArgs the parameters of each row in {@link Map} type
+     * @return the update counts of each batch, as returned by {@link Statement#executeBatch()}
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
+     */
+    protected int[][] batchUpdate(String sql, List<Map<String, Object>> batchArgs) {
+        return batchUpdate(sql, batchArgs, this.batchSize);
+    }
+
+    /**
+     *   Execute the SQL statement with named parameters once per element of <code>batchArgs</code>, sending the rows
+     *   to the database in JDBC batches of <code>batchSize</code>.
+     *
+     * @param sql the SQL statement to execute
+     * @param batchArgs the parameters of each row in {@link Map} type
+     * @param batchSize the number of rows per JDBC batch
+     * @return the update counts of each batch, as returned by {@link Statement#executeBatch()}
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
+     */
+    protected int[][] batchUpdate(String sql, List<Map<String, Object>> batchArgs, int batchSize) {
+        return executeBatch(sql, batchArgs, batchSize, null, null);
+    }
+
+    /**
+     *   Execute the SQL statement with named parameters once per element of <code>batchArgs</code>, and collect the
+     *   keys generated by the database for the inserted rows into <code>keyHolder</code>.
+     *
+     * @param sql the SQL statement to execute
+     * @param batchArgs the parameters of each row in {@link Map} type
+     * @param keyHolder the holder the generated keys are added to, one {@link Map} per row
+     * @param keyColumnNames the names of the key columns, or none to let the driver decide
+     * @return the update counts of each batch, as returned by {@link Statement#executeBatch()}
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
+     */
+    protected int[][] batchUpdate(String sql, List<Map<String, Object>> batchArgs, KeyHolder keyHolder,
+        String... keyColumnNames) {
+        Assert.notNull(keyHolder, "KeyHolder must not be null");
+        return executeBatch(sql, batchArgs, this.batchSize, keyHolder, keyColumnNames);
+    }
+
+    /**
+     *   Execute the SQL statement with positional (<code>?</code> or <code>?1</code>) parameters once per element of
+     *   <code>batchArgs</code>, sending the rows to the database in JDBC batches of {@link #getBatchSize()}.
+     *
+     * @param sql the SQL statement to execute
+     * @param batchArgs the parameters of each row in statement order
+     * @return the update counts of each batch, as returned by {@link Statement#executeBatch()}
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
+     */
+    protected int[][] batchUpdateByPosition(String sql, List<Object[]> batchArgs) {
+        return batchUpdateByPosition(sql, batchArgs, this.batchSize);
+    }
+
+    /**
+     *   Execute the SQL statement with positional (<code>?</code> or <code>?1</code>) parameters once per element of
+     *   <code>batchArgs</code>, sending the rows to the database in JDBC batches of <code>batchSize</code>.
+     *
+     * @param sql the SQL statement to execute
+     * @param batchArgs the parameters of each row in statement order
+     * @param batchSize the number of rows per JDBC batch
+     * @return the update counts of each batch, as returned by {@link Statement#executeBatch()}
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
+     */
+    protected int[][] batchUpdateByPosition(String sql, List<Object[]> batchArgs, int batchSize) {
+        return executeBatch(sql, batchArgs, batchSize, null, null);
+    }
+
+    /**
+     *   Execute the SQL statement with positional (<code>?</code> or <code>?1</code>) parameters once per element of
+     *   <code>batchArgs</code>, and collect the keys generated by the database into <code>keyHolder</code>.
+     *
+     * @param sql the SQL statement to execute
+     * @param batchArgs the parameters of each row in statement order
+     * @param keyHolder the holder the generated keys are added to, one {@link Map} per row
+     * @param keyColumnNames the names of the key columns, or none to let the driver decide
+     * @return the update counts of each batch, as returned by {@link Statement#executeBatch()}
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
+     */
+    protected int[][] batchUpdateByPosition(String sql, List<Object[]> batchArgs, KeyHolder keyHolder,
+        String... keyColumnNames) {
+        Assert.notNull(keyHolder, "KeyHolder must not be null");
+        return executeBatch(sql, batchArgs, this.batchSize, keyHolder, keyColumnNames);
+    }
+
+    /**
+     *   Execute SQL clause with positional (<code>?</code> or <code>?1</code>) parameters and transform result list
+     *   with input <code>elementType</code> row type
+     *   
+     * @param <T> the target model type that row mapping to 
+     * @param sql the SQL clause to execute
+     * @param elementType the type for row mapping to
+     * @param args the parameters in statement order
+     * @return the {@link List} of result set transformed to, which contains <code>elementType</code> row.
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) {
+        return getResultList(createNativeQuery(sql, args, elementType), true);
+    }
+
+    /**
+     *   Execute SQL clause with positional (<code>?</code> or <code>?1</code>) parameters and return only one row in
+     *   input <code>elementType</code> row type
+     *   
+     * @param <T> the target model type that row mapping to 
+     * @param sql the SQL clause to execute
+     * @param elementType the type for row mapping to
+     * @param args the parameters in statement order
+     * @return the first result if it's present, otherwise null
+     */
+    protected <T> T queryForSingle(String sql, Class<T> elementType, Object... args) {
+        List<T> result = this.queryForList(sql, elementType, args);
+        return getFirstRowIfPresent(result);
+    }
+
+    /**
+     *  Find the SQL clause by input <code>queryName</code> in <code>orm.xml</code>, and execute it with positional
+     *  parameters for transforming the result set to {@link List} which contains <code>elementType</code> row.
      *  
-     *  @param <T> the target model type that row mapping to 
+     * @param <T> the target model type that row mapping to 
      * @param queryName the attribute name of  <code>named-native-query</code> element to search SQL clause in <code>orm.xml</code>
-     * @param parameters the parameters in  {@link Map} type
      * @param elementType the type for row mapping to
-     * @param isQuery true presents it's query execution at this time, otherwise false
-     * @return  the {@link javax.persistence.Query} instance
+     * @param args the parameters in statement order
+     * @return the {@link List} of result set transformed to, which contains <code>elementType</code> row.
      */
-    @SuppressWarnings("deprecation")
-    private <T> Query createNamedQuery(String queryName, Map<String, Object> parameters, Class<T> elementType, boolean isQuery) {
-        Query namedQuery = this.getEntityManager().createNamedQuery(queryName);
-        prepareParameters(parameters, namedQuery);
-        if(isQuery) {
-          namedQuery.unwrap(NativeQuery.class).setResultTransformer(Transformers.aliasToBean(elementType));
-        }
-        return namedQuery;
+    @SuppressWarnings("unchecked")
+    protected <T> List<T> namedQueryForList(String queryName, Class<T> elementType, Object... args) {
+        return getResultList(createNamedQuery(queryName, args, elementType), true);
     }
 
     /**
-     *  Binding the parameters of <code>nativeQuery</code> 
+     *  Find the SQL clause by input <code>queryName</code> in <code>orm.xml</code>, and execute it with positional
+     *  parameters for transform first row of  the result set into  <code>elementType</code> row.
      *  
-     * @param parameters the specified {@link Map} parameters for SQL execution
-     * @param nativeQuery the {@link Query} instance to do query execution
+     * @param <T> the target model type that row mapping to 
+     * @param queryName the attribute name of  <code>named-native-query</code> element to search SQL clause in <code>orm.xml</code>
+     * @param elementType the type for row mapping to
+     * @param args the parameters in statement order
+     * @return the first result if it's present, otherwise null
      */
-    private void prepareParameters(Map<String, Object> parameters, Query nativeQuery) {
-        if (parameters != null) {
-            for (Entry<String, Object> entry : parameters.entrySet()) {
-                nativeQuery.setParameter(entry.getKey(), entry.getValue());
-            }
-        }
+    protected <T> T namedQueryForSingle(String queryName, Class<T> elementType, Object... args) {
+        List<T> result = this.namedQueryForList(queryName, elementType, args);
+        return getFirstRowIfPresent(result);
     }
-    
+
     /**
-     *  Get the first row from <code>result</code> if it's not empty,  otherwise null.
-     * @param <T> the element type of <code>result</code>
-     * @param result the {@link List} type result
+     *   Execute SQL clause with positional (<code>?</code> or <code>?1</code>) parameters and return the result as a
+     *   {@link Stream} of <code>elementType</code> rows, see {@link #queryForStream(String, Map, Class)}.
+     *
+     * @param <T> the target model type that row mapping to 
+     * @param sql the SQL clause to execute
+     * @param elementType the type for row mapping to
+     * @param args the parameters in statement order
+     * @return the {@link Stream} of <code>elementType</code> rows
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
+     */
+    protected <T> Stream<T> queryForStream(String sql, Class<T> elementType, Object... args) {
+        return stream(createNativeQuery(sql, args, elementType));
+    }
+
+    /**
+     *   Execute the SQL statement (<code>insert</code>, <code>update</code>, <code>delete</code> or DDL) with
+     *   parameters in {@link Map} type.
+     *
+     * @param sql the SQL statement to execute
+     * @param parameters the parameters in  {@link Map} type
+     * @return the number of rows affected
+     */
+    protected int update(String sql, Map<String, Object> parameters) {
+        int count = executeUpdate(createNativeQuery(sql, parameters, null));
+        invalidateQueryCache(sql);
+        return count;
+    }
+
+    /**
+     *   Execute the SQL statement (<code>insert</code>, <code>update</code>, <code>delete</code> or DDL) with
+     *   positional (<code>?</code> or <code>?1</code>) parameters.
+     *
+     * @param sql the SQL statement to execute
+     * @param args the parameters in statement order
+     * @return the number of rows affected
+     */
+    protected int update(String sql, Object... args) {
+        int count = executeUpdate(createNativeQuery(sql, args, null));
+        invalidateQueryCache(sql);
+        return count;
+    }
+
+    /**
+     *   Execute SQL clause and transform result list with input <code>elementType</code> row type, the result is
+     *   cached for the current tenant when the {@link TenantQueryCache query cache} is enabled.
+     *   <p>
+     *   The cached result is invalidated when a table it reads is written by the update or batch methods of a
+     *   repository, or when it expires. The returned list is shared between callers and must not be modified.
+     *
+     * @param <T> the target model type that row mapping to 
+     * @param sql the SQL clause to execute
+     * @param parameters the parameters in  {@link Map} type
+     * @param elementType the type for row mapping to
+     * @return the unmodifiable {@link List} of <code>elementType</code> rows
+     */
+    protected <T> List<T> cachedQueryForList(String sql, Map<String, Object> parameters, Class<T> elementType) {
+        return cachedQuery(sql, parameters, elementType, () -> queryForList(sql, parameters, elementType));
+    }
+
+    /**
+     *   Execute SQL clause with positional (<code>?</code> or <code>?1</code>) parameters and transform result list
+     *   with input <code>elementType</code> row type, the result is cached like
+     *   {@link #cachedQueryForList(String, Map, Class)}.
+     *
+     * @param <T> the target model type that row mapping to 
+     * @param sql the SQL clause to execute
+     * @param elementType the type for row mapping to
+     * @param args the parameters in statement order
+     * @return the unmodifiable {@link List} of <code>elementType</code> rows
+     */
+    protected <T> List<T> cachedQueryForList(String sql, Class<T> elementType, Object... args) {
+        return cachedQuery(sql, args, elementType, () -> queryForList(sql, elementType, args));
+    }
+
+    /**
+     *   Execute SQL clause and return only one row in input <code>elementType</code> row type, the result is cached
+     *   like {@link #cachedQueryForList(String, Map, Class)}.
+     *
+     * @param <T> the target model type that row mapping to 
+     * @param sql the SQL clause to execute
+     * @param parameters the parameters in  {@link Map} type
+     * @param elementType the type for row mapping to
      * @return the first result if it's present, otherwise null
      */
-    private <T> T getFirstRowIfPresent(List<T> result) {
-        return (result != null && !result.isEmpty()) ? result.get(0) : null;
+    protected <T> T cachedQueryForSingle(String sql, Map<String, Object> parameters, Class<T> elementType) {
+        return getFirstRowIfPresent(cachedQueryForList(sql, parameters, elementType));
+    }
+
+    /**
+     *   Execute SQL clause on a worker thread for the current tenant and transform result list with input
+     *   <code>elementType</code> row type, see {@link TenantQueryExecutor}. The query runs in its own read-only
+     *   transaction, it does not see the uncommitted changes of the caller. The <code>parameters</code> must not
+     *   be modified until the future completes.
+     *
+     * @param <T> the target model type that row mapping to 
+     * @param sql the SQL clause to execute
+     * @param parameters the parameters in  {@link Map} type
+     * @param elementType the type for row mapping to
+     * @return the future of the {@link List} of <code>elementType</code> rows
+     */
+    protected <T> CompletableFuture<List<T>> queryForListAsync(String sql, Map<String, Object> parameters,
+        Class<T> elementType) {
+        return submit(() -> queryForList(sql, parameters, elementType));
+    }
+
+    /**
+     *   Execute SQL clause with positional (<code>?</code> or <code>?1</code>) parameters on a worker thread for the
+     *   current tenant, see {@link #queryForListAsync(String, Map, Class)}.
+     *
+     * @param <T> the target model type that row mapping to 
+     * @param sql the SQL clause to execute
+     * @param elementType the type for row mapping to
+     * @param args the parameters in statement order
+     * @return the future of the {@link List} of <code>elementType</code> rows
+     */
+    protected <T> CompletableFuture<List<T>> queryForListAsync(String sql, Class<T> elementType, Object... args) {
+        return submit(() -> queryForList(sql, elementType, args));
+    }
+
+    /**
+     *   Execute SQL clause on a worker thread for the current tenant and return only one row in input
+     *   <code>elementType</code> row type, see {@link #queryForListAsync(String, Map, Class)}.
+     *
+     * @param <T> the target model type that row mapping to 
+     * @param sql the SQL clause to execute
+     * @param parameters the parameters in  {@link Map} type
+     * @param elementType the type for row mapping to
+     * @return the future of the first result, which is null if there is none
+     */
+    protected <T> CompletableFuture<T> queryForSingleAsync(String sql, Map<String, Object> parameters,
+        Class<T> elementType) {
+        return submit(() -> queryForSingle(sql, parameters, elementType));
+    }
+
+    /**
+     *  Find the SQL clause by input <code>queryName</code> in <code>orm.xml</code>, and execute it on a worker thread
+     *  for the current tenant, see {@link #queryForListAsync(String, Map, Class)}.
+     *
+     * @param <T> the target model type that row mapping to 
+     * @param queryName the attribute name of  <code>named-native-query</code> element to search SQL clause in <code>orm.xml</code>
+     * @param parameters the parameters in  {@link Map} type
+     * @param elementType the type for row mapping to
+     * @return the future of the {@link List} of <code>elementType</code> rows
+     */
+    protected <T> CompletableFuture<List<T>> namedQueryForListAsync(String queryName, Map<String, Object> parameters,
+        Class<T> elementType) {
+        return submit(() -> namedQueryForList(queryName, parameters, elementType));
+    }
+
+    /**
+     *   Execute SQL clause which selects a single column, and return the value of the only row converted to
+     *   <code>requiredType</code>. No row mapping is done, so it fits <code>count(1)</code>, <code>max(...)</code> and
+     *   similar queries.
+     *
+     * @param <T> the type of the value
+     * @param sql the SQL clause to execute
+     * @param parameters the parameters in  {@link Map} type
+     * @param requiredType the type the column value is converted to (numbers, text, temporal values, ...)
+     * @return the value, or null if there is no row or the value is SQL NULL
+     * @throws IncorrectResultSizeDataAccessException if more than one row is returned
+     */
+    protected <T> T queryForObject(String sql, Map<String, Object> parameters, Class<T> requiredType) {
+        return toScalar(getResultList(createNativeQuery(sql, parameters, null), false), requiredType);
+    }
+
+    /**
+     *   Execute SQL clause with positional (<code>?</code> or <code>?1</code>) parameters which selects a single
+     *   column, and return the value of the only row converted to <code>requiredType</code>.
+     *
+     * @param <T> the type of the value
+     * @param sql the SQL clause to execute
+     * @param requiredType the type the column value is converted to (numbers, text, temporal values, ...)
+     * @param args the parameters in statement order
+     * @return the value, or null if there is no row or the value is SQL NULL
+     * @throws IncorrectResultSizeDataAccessException if more than one row is returned
+     */
+    protected <T> T queryForObject(String sql, Class<T> requiredType, Object... args) {
+        return toScalar(getResultList(createNativeQuery(sql, args, null), false), requiredType);
+    }
+
+    /**
+     *   Execute SQL clause which selects a single numeric column (e.g. an id list), and read the values straight into
+     *   a <code>long[]</code> from the JDBC result set, without boxing or row mapping. SQL NULL is read as 0.
+     *   <p>
+     *   It must be called inside a transaction, it runs on the connection of the current tenant's transaction and
+     *   reads with {@link #getFetchSize()}.
+     *
+     * @param sql the SQL clause to execute
+     * @param parameters the parameters in  {@link Map} type
+     * @return the values of the first column in row order
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
+     */
+    protected long[] queryForLongArray(String sql, Map<String, Object> parameters) {
+        return queryByJdbc(sql, parameters, JpaNativeQuerySupportRepository::readLongs, values -> values.length);
+    }
+
+    /**
+     *   Execute SQL clause with positional (<code>?</code> or <code>?1</code>) parameters which selects a single
+     *   numeric column, and read the values straight into a <code>long[]</code>, see
+     *   {@link #queryForLongArray(String, Map)}.
+     *
+     * @param sql the SQL clause to execute
+     * @param args the parameters in statement order
+     * @return the values of the first column in row order
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
+     */
+    protected long[] queryForLongArray(String sql, Object... args) {
+        return queryByJdbc(sql, args, JpaNativeQuerySupportRepository::readLongs, values -> values.length);
+    }
+
+    /**
+     *   Execute SQL clause which selects a single numeric column, and read the values straight into an
+     *   <code>int[]</code>, see {@link #queryForLongArray(String, Map)}.
+     *
+     * @param sql the SQL clause to execute
+     * @param parameters the parameters in  {@link Map} type
+     * @return the values of the first column in row order
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
+     */
+    protected int[] queryForIntArray(String sql, Map<String, Object> parameters) {
+        return queryByJdbc(sql, parameters, JpaNativeQuerySupportRepository::readInts, values -> values.length);
+    }
+
+    /**
+     *   Execute SQL clause with positional (<code>?</code> or <code>?1</code>) parameters which selects a single
+     *   numeric column, and read the values straight into an <code>int[]</code>, see
+     *   {@link #queryForLongArray(String, Map)}.
+     *
+     * @param sql the SQL clause to execute
+     * @param args the parameters in statement order
+     * @return the values of the first column in row order
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
+     */
+    protected int[] queryForIntArray(String sql, Object... args) {
+        return queryByJdbc(sql, args, JpaNativeQuerySupportRepository::readInts, values -> values.length);
+    }
+
+    /**
+     *   Execute SQL clause and write its rows to <code>channel</code> as CSV with a header line, see
+     *   {@link CsvResultSetExporter}. The rows are written as the cursor advances, so the export runs in constant
+     *   memory whatever the number of rows.
+     *
+     * @param sql the SQL clause to execute
+     * @param parameters the parameters in  {@link Map} type
+     * @param channel the target channel, it is not closed
+     * @return the number of exported rows
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
+     * @throws UncheckedIOException if the channel cannot be written
+     */
+    protected long exportCsv(String sql, Map<String, Object> parameters, WritableByteChannel channel) {
+        return export(sql, parameters, new CsvResultSetExporter(), channel);
+    }
+
+    /**
+     *   Execute SQL clause and write its rows to <code>file</code> as CSV with a header line, see
+     *   {@link #exportCsv(String, Map, WritableByteChannel)}. An existing file is replaced.
+     *
+     * @param sql the SQL clause to execute
+     * @param parameters the parameters in  {@link Map} type
+     * @param file the target file
+     * @return the number of exported rows
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    protected long exportCsv(String sql, Map<String, Object> parameters, Path file) {
+        assertTransactionActive(ERR_MSG_EXPORT_TX_REQUIRE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            return exportCsv(sql, parameters, channel);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     *   Execute SQL clause and write its rows to <code>channel</code> with <code>exporter</code>, on the connection
+     *   of the current transaction with the {@link #getFetchSize() fetch size}. No row is mapped to an object.
+     *
+     * @param sql the SQL clause to execute
+     * @param parameters the parameters in  {@link Map} type
+     * @param exporter the writer of the file format
+     * @param channel the target channel, it is not closed
+     * @return the number of exported rows
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
+     * @throws UncheckedIOException if the channel cannot be written
+     */
+    protected long export(String sql, Map<String, Object> parameters, ResultSetExporter exporter,
+        WritableByteChannel channel) {
+        Assert.notNull(exporter, "The exporter is required!");
+        Assert.notNull(channel, "The channel is required!");
+        assertTransactionActive(ERR_MSG_EXPORT_TX_REQUIRE);
+        return queryByJdbc(sql, parameters, rs -> {
+            try {
+                return exporter.export(rs, channel);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }, Long::longValue);
+    }
+
+    /**
+     *   Load the UTF-8 CSV rows of <code>in</code> into <code>table</code> of the current tenant with the fast-load
+     *   mechanism of the database, see {@link CsvBulkLoader}: <code>COPY ... FROM STDIN</code> on PostgreSQL, JDBC
+     *   batches of {@link #getBatchSize() batch size} rows elsewhere. The input is streamed, the rows are loaded in
+     *   the current transaction and are visible to others when it commits.
+     *
+     * @param table the target table, optionally qualified by its schema
+     * @param columns the target columns in the order of the CSV fields
+     * @param in the CSV rows, it is not closed
+     * @param header true if the first line is a header line to skip
+     * @param listener the progress listener, called every batch size rows, or null
+     * @return the number of loaded rows
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction or a record has the wrong
+     * number of fields
+     * @throws UncheckedIOException if the input cannot be read or is not valid CSV
+     */
+    protected long bulkLoadCsv(String table, String[] columns, InputStream in, boolean header,
+        BulkLoadListener listener) {
+        String insertSql = CsvBulkLoader.insertStatement(table, columns);
+        assertTransactionActive(ERR_MSG_BULK_LOAD_TX_REQUIRE);
+        Session session = this.getEntityManager().unwrap(Session.class);
+        if (session.getHibernateFlushMode() != FlushMode.MANUAL) {
+            session.flush();
+        }
+        long rows = monitored(insertSql, false, Long::longValue, () -> doJdbcWork(session, connection -> {
+            try {
+                return CsvBulkLoader.load(connection, table, columns, in, header, this.batchSize, listener);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }));
+        invalidateQueryCache(insertSql);
+        return rows;
+    }
+
+    /**
+     *   Load the UTF-8 CSV rows of <code>file</code> into <code>table</code> of the current tenant, see
+     *   {@link #bulkLoadCsv(String, String[], InputStream, boolean, BulkLoadListener)}.
+     *
+     * @param table the target table, optionally qualified by its schema
+     * @param columns the target columns in the order of the CSV fields
+     * @param file the CSV file
+     * @param header true if the first line is a header line to skip, as written by
+     * {@link #exportCsv(String, Map, Path)}
+     * @param listener the progress listener, called every batch size rows, or null
+     * @return the number of loaded rows
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction or a record has the wrong
+     * number of fields
+     * @throws UncheckedIOException if the file cannot be read or is not valid CSV
+     */
+    protected long bulkLoadCsv(String table, String[] columns, Path file, boolean header,
+        BulkLoadListener listener) {
+        assertTransactionActive(ERR_MSG_BULK_LOAD_TX_REQUIRE);
+        try (InputStream in = Files.newInputStream(file)) {
+            return bulkLoadCsv(table, columns, in, header, listener);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+   
+   
+    /**
+     *   Execute SQL clause and return one page of <code>elementType</code> rows with keyset (seek) pagination.
+     *   <p>
+     *   The clause is wrapped into <code>select * from (sql) where (keys) &gt; (last keys) order by keys</code>, so a
+     *   page is read by an index seek instead of skipping <code>OFFSET</code> rows, and deep pages cost the same as
+     *   the first one. The <code>keys</code> are column aliases of the select list, they must be NOT NULL and the
+     *   last key must make the ordering unique (e.g. the primary key). The clause itself should not be ordered.
+     *   <p>
+     *   A key is a plain identifier and is written unquoted, so the database folds its case like the unquoted aliases
+     *   of the select list. A key in the quotes of the dialect (e.g. <code>"\"createTime\""</code>) is written quoted,
+     *   for aliases that are quoted in the clause.
+     *
+     * @param <T> the target model type that row mapping to 
+     * @param sql the SQL clause to execute
+     * @param parameters the parameters in  {@link Map} type
+     * @param elementType the type for row mapping to
+     * @param keys the ordering keys with their directions, e.g. <code>Sort.by(Order.desc("createTime"), Order.asc("id"))</code>
+     * @param pageSize the maximum number of rows of the page
+     * @param token the {@link KeysetPage#getNextToken() token} of the previous page, or null for the first page
+     * @return the page
+     * @throws IllegalArgumentException if the token does not belong to this query and ordering keys
+     */
+    protected <T> KeysetPage<T> queryForKeysetPage(String sql, Map<String, Object> parameters, Class<T> elementType,
+        Sort keys, int pageSize, String token) {
+        return keysetPage(sql, null, parameters, elementType, keys, pageSize, token);
+    }
+
+    /**
+     *   Execute SQL clause with positional (<code>?</code> or <code>?1</code>) parameters and return one page of
+     *   <code>elementType</code> rows with keyset (seek) pagination, see
+     *   {@link #queryForKeysetPage(String, Map, Class, Sort, int, String)}.
+     *
+     * @param <T> the target model type that row mapping to 
+     * @param sql the SQL clause to execute
+     * @param elementType the type for row mapping to
+     * @param keys the ordering keys with their directions
+     * @param pageSize the maximum number of rows of the page
+     * @param token the {@link KeysetPage#getNextToken() token} of the previous page, or null for the first page
+     * @param args the parameters in statement order
+     * @return the page
+     * @throws IllegalArgumentException if the token does not belong to this query and ordering keys
+     */
+    protected <T> KeysetPage<T> queryForKeysetPage(String sql, Class<T> elementType, Sort keys, int pageSize,
+        String token, Object... args) {
+        return keysetPage(sql, null, args, elementType, keys, pageSize, token);
+    }
+
+    /**
+     *  Find the SQL clause by input <code>queryName</code> in <code>orm.xml</code>, and return one page of
+     *  <code>elementType</code> rows with keyset (seek) pagination, see
+     *  {@link #queryForKeysetPage(String, Map, Class, Sort, int, String)}.
+     *
+     * @param <T> the target model type that row mapping to 
+     * @param queryName the attribute name of  <code>named-native-query</code> element to search SQL clause in <code>orm.xml</code>
+     * @param parameters the parameters in  {@link Map} type
+     * @param elementType the type for row mapping to
+     * @param keys the ordering keys with their directions
+     * @param pageSize the maximum number of rows of the page
+     * @param token the {@link KeysetPage#getNextToken() token} of the previous page, or null for the first page
+     * @return the page
+     * @throws IllegalArgumentException if the token does not belong to this query and ordering keys
+     */
+    protected <T> KeysetPage<T> namedQueryForKeysetPage(String queryName, Map<String, Object> parameters,
+        Class<T> elementType, Sort keys, int pageSize, String token) {
+        NamedSQLQueryDefinition definition = getNamedNativeQuery(queryName);
+        return keysetPage(definition.getQueryString(), definition, parameters, elementType, keys, pageSize, token);
+    }
+
+    /**
+     *  Create a  {@link javax.persistence.Query} instance with SQL clause and parameters in {@link Map} type or positional array. 
+     *  It also binds {@link TupleMapperResultTransformer}  for row mapping from result set.
+     *  
+     * @param <T> the target model type that row mapping to 
+     * @param sql the SQL clause to execute
+     * @param parameters the parameters in {@link Map} type, or positional parameters in array
+     * @param elementType the type for row mapping to, or null for no row mapping
+     * @return  the {@link javax.persistence.Query} instance
+     */
+    private <T> Query createNativeQuery(String sql, Object parameters, Class<T> elementType) {
+        return this.createNativeQuery(sql, parameters, elementType, elementType != null);
+    }
+    
+    /**
+     *  Create a  {@link javax.persistence.Query} instance with SQL clause and parameters in {@link Map} type or positional array. 
+     *  The SQL clause is parsed once and cached, see {@link ParsedNativeSql}.
+     *  It also binds {@link TupleMapperResultTransformer}  for row mapping from result set.
+     *  
+     * @param <T> the target model type that row mapping to 
+     * @param sql the SQL clause to execute
+     * @param parameters the parameters in {@link Map} type, or positional parameters in array
+     * @param elementType the type for row mapping to
+     * @param isQuery true presents it's query execution at this time, otherwise false
+     * @return  the {@link javax.persistence.Query} instance
+     */
+    @SuppressWarnings("deprecation")
+    private <T> Query createNativeQuery(String sql, Object parameters, Class<T> elementType, boolean isQuery) {
+        BoundSql boundSql = ParsedNativeSql.parse(sql).bind(parameters);
+        Query nativeQuery = this.getEntityManager().createNativeQuery(boundSql.getJpaSql());
+        prepareParameters(boundSql.getValues(), nativeQuery);
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            nativeQuery.unwrap(NativeQuery.class).setHibernateFlushMode(FlushMode.MANUAL).setReadOnly(true);
+        }
+        if(isQuery) {
+            nativeQuery.unwrap(NativeQuery.class).setResultTransformer(new TupleMapperResultTransformer<>(elementType));
+        }
+        return nativeQuery;
+    }
+
+    /**
+     *  Create the {@link javax.persistence.Query} instance with <code>sql</code> and parameters in {@link Map} type or positional array 
+     *  
+     *  @param <T> the target model type that row mapping to 
+     * @param queryName the attribute name of  <code>named-native-query</code> element to search SQL clause in <code>orm.xml</code>
+     * @param parameters the parameters in {@link Map} type, or positional parameters in array
+     * @param elementType the type for row mapping to
+     * @return  the {@link javax.persistence.Query} instance
+     */
+    private <T> Query createNamedQuery(String queryName, Object parameters, Class<T> elementType) { 
+        return this.createNamedQuery(queryName, parameters, elementType, elementType != null);
+    }
+    
+    /**
+     *  Create the {@link javax.persistence.Query} instance with <code>sql</code> and parameters in {@link Map} type or positional array.
+     *  The SQL clause of the <code>named-native-query</code> is executed like an ad-hoc SQL clause, with the hints of the 
+     *  definition, see {@link #applyQueryHints(Query, NamedSQLQueryDefinition)}. The result mappings of the definition
+     *  are not used, rows are mapped to <code>elementType</code>.
+     *  
+     *  @param <T> the target model type that row mapping to 
+     * @param queryName the attribute name of  <code>named-native-query</code> element to search SQL clause in <code>orm.xml</code>
+     * @param parameters the parameters in {@link Map} type, or positional parameters in array
+     * @param elementType the type for row mapping to
+     * @param isQuery true presents it's query execution at this time, otherwise false
+     * @return  the {@link javax.persistence.Query} instance
+     */
+    private <T> Query createNamedQuery(String queryName, Object parameters, Class<T> elementType, boolean isQuery) {
+        NamedSQLQueryDefinition definition = getNamedNativeQuery(queryName);
+        Query namedQuery = this.createNativeQuery(definition.getQueryString(), parameters, elementType, isQuery);
+        applyQueryHints(namedQuery, definition);
+        return namedQuery;
+    }
+
+    /**
+     *  Apply the hints of the <code>named-native-query</code> to <code>query</code>: fetch size, timeout, flush mode,
+     *  read-only, cacheable, cache region, cache mode, comment and query spaces. In a read-only transaction the query
+     *  keeps the <code>MANUAL</code> flush mode and stays read-only whatever the definition says.
+     *
+     * @param query the query created from the SQL clause of the definition
+     * @param definition the query definition
+     */
+    private static void applyQueryHints(Query query, NamedSQLQueryDefinition definition) {
+        NativeQuery<?> nativeQuery = query.unwrap(NativeQuery.class);
+        if (definition.getFetchSize() != null) {
+            nativeQuery.setFetchSize(definition.getFetchSize());
+        }
+        if (definition.getTimeout() != null) {
+            nativeQuery.setTimeout(definition.getTimeout());
+        }
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (definition.getFlushMode() != null) {
+                nativeQuery.setHibernateFlushMode(definition.getFlushMode());
+            }
+            if (definition.isReadOnly()) {
+                nativeQuery.setReadOnly(true);
+            }
+        }
+        if (definition.isCacheable()) {
+            nativeQuery.setCacheable(true);
+            nativeQuery.setCacheRegion(definition.getCacheRegion());
+        }
+        if (definition.getCacheMode() != null) {
+            nativeQuery.setCacheMode(definition.getCacheMode());
+        }
+        if (definition.getComment() != null) {
+            nativeQuery.setComment(definition.getComment());
+        }
+        if (definition.getQuerySpaces() != null) {
+            for (String querySpace : definition.getQuerySpaces()) {
+                nativeQuery.addSynchronizedQuerySpace(querySpace);
+            }
+        }
+    }
+
+    /**
+     *  Find the definition of the <code>named-native-query</code> in the session factory of the current tenant.
+     *
+     * @param queryName the attribute name of  <code>named-native-query</code> element to search SQL clause in <code>orm.xml</code>
+     * @return the query definition
+     * @throws IllegalArgumentException if there is no native query with the name
+     */
+    // The named query repository is deprecated without a replacement that exposes the definition in Hibernate 5.3
+    @SuppressWarnings("deprecation")
+    private NamedSQLQueryDefinition getNamedNativeQuery(String queryName) {
+        SessionFactoryImplementor sessionFactory =
+            this.getEntityManager().getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+        NamedSQLQueryDefinition definition =
+            sessionFactory.getNamedQueryRepository().getNamedSQLQueryDefinition(queryName);
+        if (definition == null) {
+            throw new IllegalArgumentException("No native query is defined with that name [" + queryName + "]");
+        }
+        return definition;
+    }
+
+    /**
+     *  Binding the parameters of <code>nativeQuery</code> by JPA ordinal position
+     *  
+     * @param values the parameter values in placeholder order
+     * @param nativeQuery the {@link Query} instance to do query execution
+     */
+    private void prepareParameters(Object[] values, Query nativeQuery) {
+        for (int i = 0; i < values.length; i++) {
+            nativeQuery.setParameter(i + 1, values[i]);
+        }
+    }
+    
+    /**
+     *  Run <code>query</code> on the worker pool for the current tenant.
+     *
+     * @param <R> the type of the result
+     * @param query the query
+     * @return the future of the result
+     */
+    private <R> CompletableFuture<R> submit(Callable<R> query) {
+        Assert.notNull(this.queryExecutor, "The tenant query executor is required for asynchronous queries!");
+        return this.queryExecutor.submit(query);
+    }
+
+    /**
+     *  Execute the query and record it in the {@link TenantQueryMonitor query monitor}.
+     *
+     * @param query the query
+     * @param mapped true if the rows are mapped to an element type
+     * @return the result list
+     */
+    @SuppressWarnings("rawtypes")
+    private List getResultList(Query query, boolean mapped) {
+        return monitored(queryString(query), mapped, List::size, query::getResultList);
+    }
+
+    /**
+     *  Execute the update and record it in the {@link TenantQueryMonitor query monitor}.
+     *
+     * @param query the update statement
+     * @return the number of rows affected
+     */
+    private int executeUpdate(Query query) {
+        return monitored(queryString(query), false, Integer::longValue, query::executeUpdate);
+    }
+
+    /**
+     *  Run the <code>execution</code> of <code>sql</code> and record its time and rows in the
+     *  {@link TenantQueryMonitor query monitor} of the current tenant, a failed execution is recorded as an error.
+     *  The execution is also recorded as a {@link TenantEvents Flight Recorder event}.
+     *
+     * @param <R> the type of the result
+     * @param sql the executed SQL statement
+     * @param mapped true if the rows are mapped to an element type
+     * @param rowCount the number of rows of the result
+     * @param execution the execution
+     * @return the result of the execution
+     */
+    private <R> R monitored(String sql, boolean mapped, ToLongFunction<? super R> rowCount, Supplier<R> execution) {
+        TenantEvent event = TenantEvents.beginNativeQuery(sql);
+        long start = this.queryMonitor != null ? this.queryMonitor.enter() : 0L;
+        long rows = -1L;
+        try {
+            R result = execution.get();
+            rows = rowCount.applyAsLong(result);
+            return result;
+        } finally {
+            if (this.queryMonitor != null) {
+                this.queryMonitor.exit();
+                this.queryMonitor.record(sql, System.nanoTime() - start, rows, mapped ? rows : 0L);
+            }
+            if (this.usageMeter != null) {
+                this.usageMeter.recordRows(sql, rows);
+            }
+            event.setRows(rows);
+            event.commit();
+        }
+    }
+
+    /**
+     *  Run the JDBC <code>work</code> on the connection of <code>session</code>, the statements it executes are
+     *  metered as one statement of the current tenant.
+     *
+     * @param <R> the type of the result
+     * @param session the current session
+     * @param work the work
+     * @return the result of the work
+     */
+    private <R> R doJdbcWork(Session session, ReturningWork<R> work) {
+        if (this.usageMeter == null) {
+            return session.doReturningWork(work);
+        }
+        long start = System.nanoTime();
+        try {
+            return session.doReturningWork(work);
+        } finally {
+            this.usageMeter.recordStatement(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     *  Prefix a statement executed on the JDBC connection of <code>session</code> with the tenant comment, if the
+     *  statements of the tenant are commented, see {@link TenantSqlTagger}.
+     *
+     * @param session the current session
+     * @param sql the SQL statement
+     * @return the statement to prepare
+     */
+    private String tag(Session session, String sql) {
+        return this.sqlTagger != null ? this.sqlTagger.tag(session, sql) : sql;
+    }
+
+    private static String queryString(Query query) {
+        return query.unwrap(NativeQuery.class).getQueryString();
+    }
+
+    private static long countRows(int[][] batchCounts) {
+        long rows = 0L;
+        for (int[] counts : batchCounts) {
+            for (int count : counts) {
+                rows += Math.max(count, 0);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     *  Look up the result of <code>sql</code> in the query cache of the current tenant, or load it.
+     *
+     * @param <T> the target model type that row mapping to 
+     * @param sql the SQL clause
+     * @param parameters the parameters in {@link Map} type, or positional parameters in array
+     * @param elementType the type for row mapping to
+     * @param loader the uncached query
+     * @return the result
+     */
+    private <T> List<T> cachedQuery(String sql, Object parameters, Class<T> elementType, Supplier<List<T>> loader) {
+        if (this.queryCache == null) {
+            return loader.get();
+        }
+        BoundSql boundSql = ParsedNativeSql.parse(sql).bind(parameters);
+        QueryCacheKey key = new QueryCacheKey(boundSql.getJpaSql(), elementType, boundSql.getValues());
+        return this.queryCache.get(key, SqlTables.readTables(sql), loader);
+    }
+
+    /**
+     *  Invalidate the cached results of the current tenant that read the tables written by <code>sql</code>, or all
+     *  of them when the tables cannot be determined.
+     *
+     * @param sql the executed SQL statement
+     */
+    private void invalidateQueryCache(String sql) {
+        if (this.queryCache != null) {
+            this.queryCache.invalidateTables(SqlTables.writtenTables(sql));
+        }
+    }
+
+    /**
+     *  Execute <code>sql</code> for all rows in JDBC batches on the connection of the current transaction.
+     *  All rows must bind to the same statement shape.
+     *
+     * @param sql the SQL statement
+     * @param rows the parameters of each row, in {@link Map} type or positional array
+     * @param batchSize the number of rows per JDBC batch
+     * @param keyHolder the holder for generated keys, or null
+     * @param keyColumnNames the names of the key columns, may be null or empty
+     * @return the update counts of each batch
+     */
+    private int[][] executeBatch(String sql, List<?> rows, int batchSize, KeyHolder keyHolder,
+        String[] keyColumnNames) {
+        Assert.isTrue(batchSize > 0, "The batch size must be positive!");
+        assertTransactionActive(ERR_MSG_BATCH_TX_REQUIRE);
+        if (rows == null || rows.isEmpty()) {
+            return new int[0][];
+        }
+        ParsedNativeSql parsedSql = ParsedNativeSql.parse(sql);
+        String jdbcSql = parsedSql.bind(rows.get(0)).getJdbcSql();
+        Session session = this.getEntityManager().unwrap(Session.class);
+        if (session.getHibernateFlushMode() != FlushMode.MANUAL) {
+            session.flush();
+        }
+        int[][] updateCounts = monitored(jdbcSql, false, JpaNativeQuerySupportRepository::countRows,
+            () -> doJdbcWork(session, connection -> {
+                try (PreparedStatement ps =
+                    prepareBatchStatement(connection, tag(session, jdbcSql), keyHolder, keyColumnNames)) {
+                    int[][] counts = new int[(rows.size() + batchSize - 1) / batchSize][];
+                    int batch = 0;
+                    int pending = 0;
+                    for (Object args : rows) {
+                        BoundSql boundSql = parsedSql.bind(args);
+                        if (!jdbcSql.equals(boundSql.getJdbcSql())) {
+                            throw new InvalidDataAccessApiUsageException(
+                                "All rows of a batch must bind to the same statement shape: " + sql);
+                        }
+                        Object[] row = boundSql.getValues();
+                        for (int i = 0; i < row.length; i++) {
+                            StatementCreatorUtils.setParameterValue(ps, i + 1, SqlTypeValue.TYPE_UNKNOWN, row[i]);
+                        }
+                        ps.addBatch();
+                        if (++pending == batchSize) {
+                            counts[batch++] = executeBatch(ps, keyHolder);
+                            pending = 0;
+                        }
+                    }
+                    if (pending > 0) {
+                        counts[batch] = executeBatch(ps, keyHolder);
+                    }
+                    return counts;
+                }
+            }));
+        invalidateQueryCache(sql);
+        return updateCounts;
+    }
+
+    private static PreparedStatement prepareBatchStatement(Connection connection, String sql, KeyHolder keyHolder,
+        String[] keyColumnNames) throws SQLException {
+        if (keyHolder == null) {
+            return connection.prepareStatement(sql);
+        }
+        if (keyColumnNames != null && keyColumnNames.length > 0) {
+            return connection.prepareStatement(sql, keyColumnNames);
+        }
+        return connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+    }
+
+    private static int[] executeBatch(PreparedStatement ps, KeyHolder keyHolder) throws SQLException {
+        int[] counts = ps.executeBatch();
+        if (keyHolder != null) {
+            ResultSet keys = ps.getGeneratedKeys();
+            if (keys != null) {
+                try {
+                    keyHolder.getKeyList()
+                        .addAll(new RowMapperResultSetExtractor<>(new ColumnMapRowMapper()).extractData(keys));
+                } finally {
+                    JdbcUtils.closeResultSet(keys);
+                }
+            }
+        }
+        ps.clearBatch();
+        return counts;
+    }
+
+    /**
+     *  Check that the repository runs inside a transaction, either a Spring managed one or one the entity manager has
+     *  joined.
+     *
+     * @param message the exception message
+     * @throws InvalidDataAccessApiUsageException if there is no surrounding transaction
+     */
+    private void assertTransactionActive(String message) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()
+            && !this.getEntityManager().isJoinedToTransaction()) {
+            throw new InvalidDataAccessApiUsageException(message);
+        }
+    }
+
+    /**
+     *  Open a forward-only cursor for the <code>query</code> and expose it as a {@link Stream}. 
+     *  Closing the stream closes the cursor, the query monitor records the time from opening to closing.
+     *
+     * @param <T> the element type of the stream
+     * @param query the query with the row mapping bound
+     * @return the {@link Stream} of mapped rows
+     */
+    private <T> Stream<T> stream(Query query) {
+        assertTransactionActive(ERR_MSG_STREAM_TX_REQUIRE);
+        NativeQuery<?> nativeQuery = query.unwrap(NativeQuery.class);
+        if (nativeQuery.getFetchSize() == null) {
+            nativeQuery.setFetchSize(this.fetchSize);
+        }
+        String sql = nativeQuery.getQueryString();
+        TenantEvent event = TenantEvents.beginNativeQuery(sql);
+        if (this.queryMonitor == null) {
+            ScrollableResults results;
+            try {
+                results = nativeQuery.scroll(ScrollMode.FORWARD_ONLY);
+            } catch (RuntimeException ex) {
+                event.setRows(-1L);
+                event.commit();
+                throw ex;
+            }
+            Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(new ScrollableResultsIterator<T>(results),
+                Spliterator.ORDERED);
+            if (event == TenantEvent.NONE && this.usageMeter == null) {
+                return StreamSupport.stream(spliterator, false).onClose(results::close);
+            }
+            TenantUsageMeter meter = this.usageMeter;
+            long[] rows = new long[1];
+            return StreamSupport.stream(spliterator, false).peek(row -> rows[0]++).onClose(() -> {
+                results.close();
+                if (meter != null) {
+                    meter.recordRows(sql, rows[0]);
+                }
+                event.setRows(rows[0]);
+                event.commit();
+            });
+        }
+        TenantQueryMonitor monitor = this.queryMonitor;
+        TenantUsageMeter meter = this.usageMeter;
+        long start = monitor.enter();
+        ScrollableResults results;
+        try {
+            results = nativeQuery.scroll(ScrollMode.FORWARD_ONLY);
+        } catch (RuntimeException ex) {
+            monitor.record(sql, System.nanoTime() - start, -1L, 0L);
+            event.setRows(-1L);
+            event.commit();
+            throw ex;
+        } finally {
+            monitor.exit();
+        }
+        long[] rows = new long[1];
+        Spliterator<T> spliterator = Spliterators.spliteratorUnknownSize(new ScrollableResultsIterator<T>(results),
+            Spliterator.ORDERED);
+        return StreamSupport.stream(spliterator, false).peek(row -> rows[0]++).onClose(() -> {
+            results.close();
+            monitor.record(sql, System.nanoTime() - start, rows[0], rows[0]);
+            if (meter != null) {
+                meter.recordRows(sql, rows[0]);
+            }
+            event.setRows(rows[0]);
+            event.commit();
+        });
+    }
+
+    /**
+     *  Execute the query on the connection of the current transaction and extract the result set with
+     *  <code>extractor</code>. Pending changes of the persistence context are flushed first, except in a read-only
+     *  transaction. A read-only transaction without a transaction in progress (e.g. <code>SUPPORTS</code>) runs the
+     *  query on a local connection flagged read-only for the statement, which requires
+     *  <code>multitenant.pool.allowLocalTransactions</code> for the pools of the tenants.
+     *
+     * @param <R> the type of the result
+     * @param sql the SQL clause to execute
+     * @param parameters the parameters in {@link Map} type, or positional parameters in array
+     * @param extractor the extractor of the result set
+     * @param rowCount the number of rows of the extracted result
+     * @return the extracted result
+     */
+    private <R> R queryByJdbc(String sql, Object parameters, ResultSetExtractor<R> extractor,
+        ToLongFunction<R> rowCount) {
+        boolean readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        if (!readOnly || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            assertTransactionActive(ERR_MSG_JDBC_TX_REQUIRE);
+        }
+        BoundSql boundSql = ParsedNativeSql.parse(sql).bind(parameters);
+        Session session = this.getEntityManager().unwrap(Session.class);
+        if (!readOnly && session.getHibernateFlushMode() != FlushMode.MANUAL) {
+            session.flush();
+        }
+        return monitored(boundSql.getJdbcSql(), false, rowCount, () -> doJdbcWork(session, connection -> {
+            boolean readOnlyHint = readOnly && connection.getAutoCommit() && !connection.isReadOnly();
+            if (readOnlyHint) {
+                connection.setReadOnly(true);
+            }
+            try (PreparedStatement ps = connection.prepareStatement(tag(session, boundSql.getJdbcSql()))) {
+                ps.setFetchSize(this.fetchSize);
+                Object[] values = boundSql.getValues();
+                for (int i = 0; i < values.length; i++) {
+                    StatementCreatorUtils.setParameterValue(ps, i + 1, SqlTypeValue.TYPE_UNKNOWN, values[i]);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    return extractor.extractData(rs);
+                }
+            } finally {
+                if (readOnlyHint) {
+                    connection.setReadOnly(false);
+                }
+            }
+        }));
+    }
+
+    private static long[] readLongs(ResultSet rs) throws SQLException {
+        long[] values = new long[INITIAL_ARRAY_CAPACITY];
+        int size = 0;
+        while (rs.next()) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+            }
+            values[size++] = rs.getLong(1);
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    private static int[] readInts(ResultSet rs) throws SQLException {
+        int[] values = new int[INITIAL_ARRAY_CAPACITY];
+        int size = 0;
+        while (rs.next()) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+            }
+            values[size++] = rs.getInt(1);
+        }
+        return size == values.length ? values : Arrays.copyOf(values, size);
+    }
+
+    /**
+     *  Convert the single column of the only row in <code>result</code> to <code>requiredType</code>.
+     *
+     * @param <T> the type of the value
+     * @param result the rows returned by a query without row mapping
+     * @param requiredType the type to convert to
+     * @return the converted value, or null
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> T toScalar(List result, Class<T> requiredType) {
+        Object value = DataAccessUtils.singleResult(result);
+        if (value instanceof Object[]) {
+            Object[] tuple = (Object[])value;
+            if (tuple.length != 1) {
+                throw new IncorrectResultSetColumnCountException(1, tuple.length);
+            }
+            value = tuple[0];
+        }
+        return value == null ? null : (T)TypeCoercions.forType(requiredType).apply(value);
+    }
+
+    /**
+     *  Get the first row from <code>result</code> if it's not empty,  otherwise null.
+     * @param <T> the element type of <code>result</code>
+     * @param result the {@link List} type result
+     * @return the first result if it's present, otherwise null
+     */
+    private <T> T getFirstRowIfPresent(List<T> result) {
+        return (result != null && !result.isEmpty()) ? result.get(0) : null;
+    }
+
+    /**
+     *  Read one keyset page: wrap <code>sql</code> with the seek predicate and ordering, read one row more than
+     *  <code>pageSize</code> to detect the next page, and encode the keys of the last row into the next token.
+     */
+    @SuppressWarnings({"unchecked", "deprecation"})
+    private <T> KeysetPage<T> keysetPage(String sql, NamedSQLQueryDefinition definition, Object parameters,
+        Class<T> elementType, Sort keys, int pageSize, String token) {
+        Assert.isTrue(pageSize > 0, "The page size must be positive!");
+        Assert.isTrue(keys != null && keys.isSorted(), "At least one ordering key is required!");
+        List<Sort.Order> orders = new ArrayList<>();
+        keys.forEach(orders::add);
+        int fingerprint = (sql + '|' + keys).hashCode();
+        Object[] seekValues = token == null ? null : KeysetToken.decode(token, fingerprint, orders.size());
+
+        Dialect dialect = this.getEntityManager().getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+            .getJdbcServices().getDialect();
+        boolean positional = parameters instanceof Object[];
+        Object seekParameters = parameters;
+        String[] placeholders = new String[orders.size()];
+        if (seekValues != null) {
+            if (positional) {
+                Object[] args = (Object[])parameters;
+                Object[] seekArgs = Arrays.copyOf(args, args.length + seekValues.length);
+                for (int i = 0; i < seekValues.length; i++) {
+                    seekArgs[args.length + i] = seekValues[i];
+                    placeholders[i] = "?" + (args.length + i + 1);
+                }
+                seekParameters = seekArgs;
+            } else {
+                Map<String, Object> seekMap = parameters == null ? new HashMap<>()
+                    : new HashMap<>((Map<String, Object>)parameters);
+                for (int i = 0; i < seekValues.length; i++) {
+                    seekMap.put(KEYSET_PARAMETER_PREFIX + i, seekValues[i]);
+                    placeholders[i] = ":" + KEYSET_PARAMETER_PREFIX + i;
+                }
+                seekParameters = seekMap;
+            }
+        }
+
+        StringBuilder seekSql = new StringBuilder(sql.length() + 64).append("select * from (")
+            .append(trimStatement(sql)).append(") keyset_q");
+        String[] columns = new String[orders.size()];
+        String[] names = new String[orders.size()];
+        for (int i = 0; i < columns.length; i++) {
+            String key = orders.get(i).getProperty();
+            names[i] = keysetKeyName(key, dialect);
+            columns[i] = key;
+        }
+        if (seekValues != null) {
+            seekSql.append(" where ");
+            appendSeekPredicate(seekSql, orders, columns, placeholders, 0);
+        }
+        seekSql.append(" order by ");
+        for (int i = 0; i < columns.length; i++) {
+            seekSql.append(i > 0 ? ", " : "").append(columns[i]).append(orders.get(i).isAscending() ? " asc" : " desc");
+        }
+
+        Query query = this.createNativeQuery(seekSql.toString(), seekParameters, elementType, false);
+        if (definition != null) {
+            applyQueryHints(query, definition);
+        }
+        KeysetResultTransformer<T> transformer = new KeysetResultTransformer<>(elementType, orders, names);
+        query.unwrap(NativeQuery.class).setResultTransformer(transformer);
+        query.setMaxResults(pageSize + 1);
+        List<T> rows = getResultList(query, true);
+        if (rows.size() <= pageSize) {
+            return new KeysetPage<>(rows, null);
+        }
+        return new KeysetPage<>(new ArrayList<>(rows.subList(0, pageSize)),
+            KeysetToken.encode(fingerprint, transformer.getKeysOfPenultimateRow()));
+    }
+
+    /**
+     *  Validate a keyset ordering key and get the alias it refers to: a plain identifier, or an identifier in the
+     *  quotes of the dialect without the quotes.
+     *
+     * @throws IllegalArgumentException if the key is neither
+     */
+    private static String keysetKeyName(String key, Dialect dialect) {
+        if (KEYSET_KEY.matcher(key).matches()) {
+            return key;
+        }
+        if (key.length() > 2 && key.charAt(0) == dialect.openQuote()
+            && key.charAt(key.length() - 1) == dialect.closeQuote()) {
+            String name = key.substring(1, key.length() - 1);
+            if (name.indexOf(dialect.openQuote()) < 0 && name.indexOf(dialect.closeQuote()) < 0) {
+                return name;
+            }
+        }
+        throw new IllegalArgumentException("Invalid ordering key: " + key);
+    }
+
+    /**
+     *  Append <code>(k1 &gt; ?) or (k1 = ? and ((k2 &gt; ?) ...))</code> for the keys from <code>index</code> on,
+     *  the comparison of each key follows its direction.
+     */
+    private static void appendSeekPredicate(StringBuilder sql, List<Sort.Order> orders, String[] columns,
+        String[] placeholders, int index) {
+        sql.append('(').append(columns[index]).append(orders.get(index).isAscending() ? " > " : " < ")
+            .append(placeholders[index]);
+        if (index + 1 < columns.length) {
+            sql.append(" or (").append(columns[index]).append(" = ").append(placeholders[index]).append(" and ");
+            appendSeekPredicate(sql, orders, columns, placeholders, index + 1);
+            sql.append(')');
+        }
+        sql.append(')');
+    }
+
+    /**
+     *  Remove trailing whitespaces and semicolons, so the SQL clause can be nested as a sub-query.
+     */
+    private static String trimStatement(String sql) {
+        int end = sql.length();
+        while (end > 0 && (Character.isWhitespace(sql.charAt(end - 1)) || sql.charAt(end - 1) == ';')) {
+            end--;
+        }
+        return sql.substring(0, end);
+    }
+
+    /**
+     *  Iterates the rows of a forward-only {@link ScrollableResults}, each row holds the mapped element.
+     *
+     * @param <T> the element type
+     */
+    private static final class ScrollableResultsIterator<T> implements Iterator<T> {
+        private final ScrollableResults results;
+        private Boolean hasNext;
+
+        ScrollableResultsIterator(ScrollableResults results) {
+            this.results = results;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.hasNext == null) {
+                this.hasNext = this.results.next();
+            }
+            return this.hasNext;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            this.hasNext = null;
+            return (T)this.results.get(0);
+        }
+    }
+
+    /**
+     *  The {@link TupleMapperResultTransformer} of keyset pages, it keeps the ordering key values of the last two
+     *  rows, the next page starts after the penultimate row when one row more than the page size is read.
+     */
+    private static final class KeysetResultTransformer<T> extends TupleMapperResultTransformer<T> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Sort.Order> orders;
+
+        private final String[] names;
+
+        private transient String[] aliases;
+
+        private transient int[] keyIndexes;
+
+        private transient Object[] lastKeys;
+
+        private transient Object[] penultimateKeys;
+
+        KeysetResultTransformer(Class<T> resultClass, List<Sort.Order> orders, String[] names) {
+            super(resultClass);
+            this.orders = orders;
+            this.names = names;
+        }
+
+        @Override
+        public Object transformTuple(Object[] tuple, String[] aliases) {
+            if (aliases != this.aliases) {
+                this.keyIndexes = resolveKeyIndexes(aliases);
+                this.aliases = aliases;
+            }
+            Object[] keys = new Object[this.keyIndexes.length];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = tuple[this.keyIndexes[i]];
+                if (keys[i] == null) {
+                    throw new InvalidDataAccessApiUsageException("The ordering key '"
+                        + this.orders.get(i).getProperty() + "' is null, keyset pagination requires NOT NULL keys!");
+                }
+            }
+            this.penultimateKeys = this.lastKeys;
+            this.lastKeys = keys;
+            return super.transformTuple(tuple, aliases);
+        }
+
+        Object[] getKeysOfPenultimateRow() {
+            return this.penultimateKeys;
+        }
+
+        private int[] resolveKeyIndexes(String[] aliases) {
+            int[] indexes = new int[this.orders.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                String key = this.names[i];
+                indexes[i] = -1;
+                for (int j = 0; j < aliases.length && indexes[i] < 0; j++) {
+                    if (key.equals(aliases[j])) {
+                        indexes[i] = j;
+                    }
+                }
+                for (int j = 0; j < aliases.length && indexes[i] < 0; j++) {
+                    if (key.equalsIgnoreCase(aliases[j])) {
+                        indexes[i] = j;
+                    }
+                }
+                if (indexes[i] < 0) {
+                    throw new InvalidDataAccessApiUsageException("The ordering key '" + key
+                        + "' is not a column of the query: " + Arrays.toString(aliases));
+                }
+            }
+            return indexes;
+        }
     }
 }
\ No newline at end of file
@@ -1,218 +1,483 @@
 package com.leon.solid.multitenant.repository;
 
-import java.util.HashMap;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
-import javax.persistence.Query;
+import javax.sql.DataSource;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.repository.support.PageableExecutionUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
+import org.springframework.util.Assert;
 
+import com.leon.solid.multitenant.config.MultiTenantProperties;
 import com.leon.solid.multitenant.model.TenantDataSourceModel;
 import com.leon.solid.multitenant.model.TenantRelationModel;
 import com.leon.solid.multitenant.utils.StringUtils;
 
 /**
  * The Class TenantRepositoryCustom.
+ * <p>
+ * Control-plane access to the tenant registry tables. It works on plain JDBC against the datasource of the control
+ * tenant (see {@link MultiTenantProperties#resolveControlTenantId()}), so it never goes through the routing
+ * {@code entityManagerFactory} and is not affected by {@link com.leon.solid.multitenant.config.TenantHolder}. All
+ * statements are constants, which lets the pooled connections reuse their cached prepared statements.
  *
  * @author Leon.Tang
  * @date Aug 28, 2019
  */
 @Repository
-public class TenantRepositoryCustom extends JpaNativeQuerySupportRepository {
-    public List<TenantRelationModel> findTenantRelation(String relationId) {
+public class TenantRepositoryCustom {
+    private static final String RELATION_COLUMNS =
+        "select id, relation_id, tenant_id, package_name from sys_tenant_relation";
+
+    private static final String DATASOURCE_COLUMNS = "select tenant_id, name, db_type, db_url, db_driver, db_extend,"
+        + " db_username, db_password, remark, status from sys_tenant_datasource";
+
+    /**
+     * The listed datasource columns, without the password.
+     */
+    private static final String DATASOURCE_SUMMARY_COLUMNS = "select tenant_id, name, db_type, db_url, db_driver,"
+        + " db_extend, db_username, remark, status from sys_tenant_datasource";
+
+    /**
+     * The number of rows the driver fetches at a time while the registry is streamed.
+     */
+    private static final int STREAM_FETCH_SIZE = 100;
+
+    private static final String SQL_FIND_RELATION = RELATION_COLUMNS + " where relation_id = ?";
+
+    private static final String SQL_FIND_RELATION_BY_ID = RELATION_COLUMNS + " where id = ?";
+
+    private static final String SQL_FIND_RELATION_WITHOUT_PACKAGE =
+        RELATION_COLUMNS + " where relation_id = ? and (package_name is null or package_name = '')";
+
+    private static final String SQL_FIND_RELATION_BY_PACKAGE =
+        RELATION_COLUMNS + " where relation_id = ? and package_name = ?";
+
+    private static final String SQL_FIND_RELATION_BY_PACKAGE_PREFIX =
+        RELATION_COLUMNS + " where relation_id = ? and package_name like ? escape '!' order by package_name";
+
+    private static final String SQL_FIND_RELATION_LIST =
+        RELATION_COLUMNS + " order by relation_id, package_name, tenant_id";
 
-        Map<String, Object> map = new HashMap<String, Object>(16);
-        StringBuilder sql = new StringBuilder();
+    /**
+     * Relation filters indexed by the optional criteria present: bit 0 tenant id, bit 1 relation id.
+     */
+    private static final String[] SQL_FIND_RELATIONS = {
+        RELATION_COLUMNS + " where package_name like ? order by relation_id, package_name, tenant_id",
+        RELATION_COLUMNS + " where package_name like ? and tenant_id = ?"
+            + " order by relation_id, package_name, tenant_id",
+        RELATION_COLUMNS + " where package_name like ? and relation_id like ?"
+            + " order by relation_id, package_name, tenant_id",
+        RELATION_COLUMNS + " where package_name like ? and tenant_id = ? and relation_id like ?"
+            + " order by relation_id, package_name, tenant_id"};
 
-        sql.append(" select ").append("   str.relation_id as \"relationId\" ")
-        .append("  ,str.tenant_id as \"tenantId\" ").append("  ,str.package_name as \"packageName\" ")
-        .append(" from ").append("   sys_tenant_relation str ").append(" where str.relation_id = :relationId ");
+    private static final String SQL_FIND_DATASOURCE_LIST = DATASOURCE_COLUMNS + " order by tenant_id";
 
-        map.put("relationId", relationId);
+    private static final String SQL_FIND_ENABLED_DATASOURCES_FIRST =
+        DATASOURCE_COLUMNS + " where status = ? order by tenant_id limit ?";
 
-        return this.queryForList(sql.toString(), map, TenantRelationModel.class);
+    private static final String SQL_FIND_ENABLED_DATASOURCES_AFTER =
+        DATASOURCE_COLUMNS + " where status = ? and tenant_id > ? order by tenant_id limit ?";
+
+    private static final String SQL_FIND_PACKAGE_RELATIONS =
+        RELATION_COLUMNS + " where package_name is not null and package_name <> ''";
+
+    /**
+     * Datasource pages and counts indexed by the filters present: bit 0 db type, bit 1 status, bit 2 tenant id
+     * prefix.
+     */
+    private static final String[] SQL_PAGE_DATASOURCES = new String[8];
+
+    private static final String[] SQL_COUNT_DATASOURCES = new String[8];
+
+    /**
+     * Relation pages and counts indexed by the filters present: bit 0 relation id, bit 1 tenant id.
+     */
+    private static final String[] SQL_PAGE_RELATIONS = new String[4];
+
+    private static final String[] SQL_COUNT_RELATIONS = new String[4];
+
+    static {
+        for (int filters = 0; filters < SQL_PAGE_DATASOURCES.length; filters++) {
+            String where = where(filters, "db_type = ?", "status = ?", "tenant_id like ? escape '!'");
+            SQL_PAGE_DATASOURCES[filters] = DATASOURCE_SUMMARY_COLUMNS + where + " order by tenant_id limit ? offset ?";
+            SQL_COUNT_DATASOURCES[filters] = "select count(1) from sys_tenant_datasource" + where;
+        }
+        for (int filters = 0; filters < SQL_PAGE_RELATIONS.length; filters++) {
+            String where = where(filters, "relation_id = ?", "tenant_id = ?");
+            SQL_PAGE_RELATIONS[filters] =
+                RELATION_COLUMNS + where + " order by relation_id, package_name, tenant_id limit ? offset ?";
+            SQL_COUNT_RELATIONS[filters] = "select count(1) from sys_tenant_relation" + where;
+        }
     }
 
-    public TenantRelationModel findTenantRelationById(Integer id) {
+    private static final String SQL_FIND_DATASOURCE_BY_TENANT_ID = DATASOURCE_COLUMNS + " where tenant_id = ?";
 
-        Map<String, Object> map = new HashMap<>(16);
-        StringBuilder sql = new StringBuilder();
+    private static final String SQL_FIND_DATASOURCE_BY_KEYWORD = DATASOURCE_COLUMNS + " where tenant_id like ?";
 
-        sql.append(" select ").append("   str.relation_id as \"relationId\" ")
-        .append("  ,str.tenant_id as \"tenantId\" ").append("  ,str.package_name as \"packageName\" ")
-        .append(" from ").append("   sys_tenant_relation str ").append(" where str.id = :id ");
+    private static final String SQL_FIND_DATASOURCE_BY_TYPE_AND_KEYWORD =
+        DATASOURCE_COLUMNS + " where tenant_id like ? and db_type = ?";
 
-        map.put("id", id);
+    private static final String SQL_EXISTS_TENANT_ID = "select count(1) from sys_tenant_datasource where tenant_id = ?";
 
-        return this.queryForSingle(sql.toString(), map, TenantRelationModel.class);
+    private static final String SQL_INSERT_DATASOURCE = "insert into sys_tenant_datasource"
+        + " (tenant_id, name, db_type, db_url, db_driver, db_extend, db_username, db_password, remark)"
+        + " values (?,?,?,?,?,?,?,?,?)";
+
+    private static final String SQL_UPDATE_DATASOURCE = "update sys_tenant_datasource"
+        + " set name=?,db_type=?,db_url=?,db_driver=?,db_extend=?,db_username=?,db_password=?,remark=?"
+        + " where tenant_id = ?";
+
+    private static final String SQL_UPDATE_DATASOURCE_STATUS =
+        "update sys_tenant_datasource set status=? where tenant_id = ?";
+
+    private static final String SQL_DELETE_DATASOURCE = "delete from sys_tenant_datasource where tenant_id = ?";
+
+    private static final String SQL_INSERT_RELATION =
+        "insert into sys_tenant_relation (relation_id, tenant_id, package_name) values (?,?,?)";
+
+    private static final String SQL_UPDATE_RELATION =
+        "update sys_tenant_relation set relation_id=?,package_name=? where id = ?";
+
+    private static final String SQL_DELETE_RELATION = "delete from sys_tenant_relation where id = ?";
+
+    private static final String STATUS_ENABLE = "1";
+
+    private static final String STATUS_DISABLE = "0";
+
+    private static final RowMapper<TenantRelationModel> RELATION_ROW_MAPPER = (rs, rowNum) -> {
+        TenantRelationModel model = new TenantRelationModel();
+        model.setId(getInteger(rs, "id"));
+        model.setRelationId(rs.getString("relation_id"));
+        model.setTenantId(rs.getString("tenant_id"));
+        model.setPackageName(rs.getString("package_name"));
+        return model;
+    };
+
+    private static final RowMapper<TenantDataSourceModel> DATASOURCE_SUMMARY_ROW_MAPPER = (rs, rowNum) -> {
+        TenantDataSourceModel model = new TenantDataSourceModel();
+        model.setTenantId(rs.getString("tenant_id"));
+        model.setName(rs.getString("name"));
+        model.setDbType(rs.getString("db_type"));
+        model.setDbUrl(rs.getString("db_url"));
+        model.setDbDriver(rs.getString("db_driver"));
+        model.setDbExtend(rs.getString("db_extend"));
+        model.setDbUsername(rs.getString("db_username"));
+        model.setRemark(rs.getString("remark"));
+        model.setStatus(toStatus(rs.getString("status")));
+        return model;
+    };
+
+    private static final RowMapper<TenantDataSourceModel> DATASOURCE_ROW_MAPPER = (rs, rowNum) -> {
+        TenantDataSourceModel model = DATASOURCE_SUMMARY_ROW_MAPPER.mapRow(rs, rowNum);
+        model.setDbPassword(rs.getString("db_password"));
+        return model;
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public TenantRepositoryCustom(MultiTenantProperties multiTenantProperties,
+        @Qualifier("multiTenantDataSources") Map<String, DataSource> multiTenantDataSources) {
+        String controlTenantId = multiTenantProperties.resolveControlTenantId();
+        DataSource controlDataSource = controlTenantId == null ? null : multiTenantDataSources.get(controlTenantId);
+        Assert.state(controlDataSource != null, "No control datasource for tenant registry (controlTenantId: "
+            + controlTenantId + "), configure 'multitenant.controlTenantId' or a default tenant");
+        this.jdbcTemplate = new JdbcTemplate(controlDataSource);
     }
 
-    public TenantRelationModel findTenantRation(String relationId, String packageName) {
+    public List<TenantRelationModel> findTenantRelation(String relationId) {
+        return this.jdbcTemplate.query(SQL_FIND_RELATION, RELATION_ROW_MAPPER, relationId);
+    }
 
-        Map<String, Object> map = new HashMap<String, Object>(16);
-        map.put("relationId", relationId);
-        StringBuilder sql = new StringBuilder();
-        sql.append(" select ").append("   str.relation_id as \"relationId\" ")
-        .append("  ,str.tenant_id as \"tenantId\" ").append("  ,str.package_name as \"packageName\" ")
-        .append(" from ").append("   sys_tenant_relation str ").append(" where str.relation_id = :relationId ");
+    public TenantRelationModel findTenantRelationById(Integer id) {
+        return getFirstRowIfPresent(this.jdbcTemplate.query(SQL_FIND_RELATION_BY_ID, RELATION_ROW_MAPPER, id));
+    }
 
+    /**
+     * Find the relation of a relation id and package name, by an index lookup on
+     * <code>(relation_id, package_name)</code>.
+     *
+     * @param relationId the relation id
+     * @param packageName the exact package name, or empty for the relation without package
+     * @return the relation, or null
+     */
+    public TenantRelationModel findTenantRation(String relationId, String packageName) {
         if (StringUtils.isEmpty(packageName)) {
-            sql.append(" and (str.package_name is null or str.package_name = '' )");
-        } else {
-            sql.append(" and str.package_name like :packageName ");
-            map.put("packageName", "%" + packageName + "%");
+            return getFirstRowIfPresent(
+                this.jdbcTemplate.query(SQL_FIND_RELATION_WITHOUT_PACKAGE, RELATION_ROW_MAPPER, relationId));
         }
+        return getFirstRowIfPresent(this.jdbcTemplate.query(SQL_FIND_RELATION_BY_PACKAGE, RELATION_ROW_MAPPER,
+            relationId, packageName));
+    }
 
-        return this.queryForSingle(sql.toString(), map, TenantRelationModel.class);
+    /**
+     * Find the relations of a relation id whose package name starts with <code>packagePrefix</code>, by an index
+     * range scan on <code>(relation_id, package_name)</code>.
+     *
+     * @param relationId the relation id
+     * @param packagePrefix the package name prefix, e.g. <code>com.example.</code>
+     * @return the relations ordered by package name
+     */
+    public List<TenantRelationModel> findTenantRelationsByPackagePrefix(String relationId, String packagePrefix) {
+        return this.jdbcTemplate.query(SQL_FIND_RELATION_BY_PACKAGE_PREFIX, RELATION_ROW_MAPPER, relationId,
+            prefixPattern(StringUtils.orDefault(packagePrefix, "")));
     }
 
     public List<TenantDataSourceModel> findTenantDataSourceList() {
-        Map<String, Object> map = new HashMap<String, Object>(16);
-        StringBuilder sql = new StringBuilder();
-        sql.append(" select ").append("   td.tenant_id as \"tenantId\" ").append("  ,td.name as \"name\" ")
-        .append("  ,td.db_type as \"dbType\" ").append("  ,td.db_url as \"dbUrl\" ")
-        .append("  ,td.db_driver as \"dbDriver\" ").append("  ,td.db_extend as \"dbExtend\" ")
-        .append("  ,td.db_username as \"dbUsername\" ").append("  ,td.db_password as \"dbPassword\" ")
-        .append("  ,td.remark as \"remark\" ").append("  ,td.status as \"status\" ").append(" from ")
-        .append("   sys_tenant_datasource td order by td.tenant_id");
-        return this.queryForList(sql.toString(), map, TenantDataSourceModel.class);
+        return this.jdbcTemplate.query(SQL_FIND_DATASOURCE_LIST, DATASOURCE_ROW_MAPPER);
     }
 
+    /**
+     * Find the datasources whose tenant id contains <code>keyword</code>.
+     *
+     * @param dbType the datasource type, or empty for all
+     * @param keyword the text the tenant id contains
+     * @return the datasources
+     * @deprecated it scans the whole table, search with
+     * {@link com.leon.solid.multitenant.service.TenantRegistryIndex#findDataSources(String, String)}
+     */
+    @Deprecated
     public List<TenantDataSourceModel> findByDbTypeAndTenantIdLike(String dbType, String keyword) {
-        Map<String, Object> map = new HashMap<>(16);
-        StringBuilder sql = new StringBuilder();
-        sql.append(" select ").append("   td.tenant_id as \"tenantId\" ").append("  ,td.name as \"name\" ")
-        .append("  ,td.db_type as \"dbType\" ").append("  ,td.db_url as \"dbUrl\" ")
-        .append("  ,td.db_driver as \"dbDriver\" ").append("  ,td.db_extend as \"dbExtend\" ")
-        .append("  ,td.db_username as \"dbUsername\" ").append("  ,td.db_password as \"dbPassword\" ")
-        .append("  ,td.remark as \"remark\" ").append("  ,td.status as \"status\" ").append(" from ")
-        .append("   sys_tenant_datasource td ").append("   where  td.tenant_id like :keyword");
-
-        map.put("keyword", "%" + keyword + "%");
+        String pattern = "%" + StringUtils.orDefault(keyword, "") + "%";
+        if (StringUtils.isEmpty(dbType)) {
+            return this.jdbcTemplate.query(SQL_FIND_DATASOURCE_BY_KEYWORD, DATASOURCE_ROW_MAPPER, pattern);
+        }
+        return this.jdbcTemplate.query(SQL_FIND_DATASOURCE_BY_TYPE_AND_KEYWORD, DATASOURCE_ROW_MAPPER, pattern,
+            dbType);
+    }
 
+    /**
+     * Find a page of datasources ordered by tenant id, without their passwords.
+     *
+     * @param dbType the datasource type, or empty for all
+     * @param status the status, or null for all
+     * @param tenantIdPrefix the prefix of the tenant ids, or empty for all
+     * @param pageable the page number and size, the order is fixed
+     * @return the page
+     */
+    public Page<TenantDataSourceModel> findTenantDataSourcePage(String dbType, Boolean status, String tenantIdPrefix,
+        Pageable pageable) {
+        List<Object> args = new ArrayList<>(5);
+        int filters = 0;
         if (!StringUtils.isEmpty(dbType)) {
-            sql.append(" and td.db_type = :dbType");
-            map.put("dbType", dbType);
+            args.add(dbType);
+            filters |= 1;
         }
+        if (status != null) {
+            args.add(status ? STATUS_ENABLE : STATUS_DISABLE);
+            filters |= 2;
+        }
+        if (!StringUtils.isEmpty(tenantIdPrefix)) {
+            args.add(prefixPattern(tenantIdPrefix));
+            filters |= 4;
+        }
+        return page(SQL_PAGE_DATASOURCES[filters], SQL_COUNT_DATASOURCES[filters], args, DATASOURCE_SUMMARY_ROW_MAPPER,
+            pageable);
+    }
 
-        return this.queryForList(sql.toString(), map, TenantDataSourceModel.class);
+    /**
+     * Find a page of relations ordered by relation id, package name and tenant id.
+     *
+     * @param relationId the relation id, or empty for all
+     * @param tenantId the tenant id, or empty for all
+     * @param pageable the page number and size, the order is fixed
+     * @return the page
+     */
+    public Page<TenantRelationModel> findTenantRelationPage(String relationId, String tenantId, Pageable pageable) {
+        List<Object> args = new ArrayList<>(4);
+        int filters = 0;
+        if (!StringUtils.isEmpty(relationId)) {
+            args.add(relationId);
+            filters |= 1;
+        }
+        if (!StringUtils.isEmpty(tenantId)) {
+            args.add(tenantId);
+            filters |= 2;
+        }
+        return page(SQL_PAGE_RELATIONS[filters], SQL_COUNT_RELATIONS[filters], args, RELATION_ROW_MAPPER, pageable);
+    }
+
+    /**
+     * Find the next page of enabled datasources ordered by tenant id, by an index range scan on the primary key from
+     * the last tenant id of the previous page, so the registry is read page by page without an offset.
+     *
+     * @param afterTenantId the last tenant id of the previous page, or null for the first page
+     * @param size the page size
+     * @return the datasources, fewer than <code>size</code> on the last page
+     */
+    public List<TenantDataSourceModel> findEnabledTenantDataSourcePage(String afterTenantId, int size) {
+        if (afterTenantId == null) {
+            return this.jdbcTemplate.query(SQL_FIND_ENABLED_DATASOURCES_FIRST, DATASOURCE_ROW_MAPPER, STATUS_ENABLE,
+                size);
+        }
+        return this.jdbcTemplate.query(SQL_FIND_ENABLED_DATASOURCES_AFTER, DATASOURCE_ROW_MAPPER, STATUS_ENABLE,
+            afterTenantId, size);
+    }
+
+    /**
+     * Read the relations that have a package name one at a time and pass each to <code>action</code>.
+     *
+     * @param action the action for each relation
+     * @return the number of relations
+     */
+    public int forEachTenantPackageRelation(Consumer<TenantRelationModel> action) {
+        return stream(SQL_FIND_PACKAGE_RELATIONS, RELATION_ROW_MAPPER, action);
     }
 
     public int insertTenantDataSource(TenantDataSourceModel dataSourceModel) {
-        StringBuilder sql = new StringBuilder();
-        sql.append(" insert into sys_tenant_datasource")
-        .append(" (tenant_id, name, db_type, db_url, db_driver, db_extend, db_username, db_password, remark)")
-        .append(" values (?,?,?,?,?,?,?,?,?)");
-        return this.getEntityManager().createNativeQuery(sql.toString()).setParameter(1, dataSourceModel.getTenantId())
-            .setParameter(2, dataSourceModel.getName()).setParameter(3, dataSourceModel.getDbType())
-            .setParameter(4, dataSourceModel.getDbUrl()).setParameter(5, dataSourceModel.getDbDriver())
-            .setParameter(6, dataSourceModel.getDbExtend()).setParameter(7, dataSourceModel.getDbUsername())
-            .setParameter(8, dataSourceModel.getDbPassword()).setParameter(9, dataSourceModel.getRemark())
-            .executeUpdate();
+        return this.jdbcTemplate.update(SQL_INSERT_DATASOURCE, dataSourceModel.getTenantId(),
+            dataSourceModel.getName(), dataSourceModel.getDbType(), dataSourceModel.getDbUrl(),
+            dataSourceModel.getDbDriver(), dataSourceModel.getDbExtend(), dataSourceModel.getDbUsername(),
+            dataSourceModel.getDbPassword(), dataSourceModel.getRemark());
     }
 
     public int updateTenantDataSource(TenantDataSourceModel dataSourceModel) {
-        StringBuilder sql = new StringBuilder();
-        sql.append("update sys_tenant_datasource ")
-        .append(" set name=?,db_type=?,db_url=?,db_driver=?,db_extend=?,db_username=?,db_password=?,remark=?")
-        .append(" where tenant_id = ?");
-        return this.getEntityManager().createNativeQuery(sql.toString()).setParameter(1, dataSourceModel.getName())
-            .setParameter(2, dataSourceModel.getDbType()).setParameter(3, dataSourceModel.getDbUrl())
-            .setParameter(4, dataSourceModel.getDbDriver()).setParameter(5, dataSourceModel.getDbExtend())
-            .setParameter(6, dataSourceModel.getDbUsername()).setParameter(7, dataSourceModel.getDbPassword())
-            .setParameter(8, dataSourceModel.getRemark()).setParameter(9, dataSourceModel.getTenantId())
-            .executeUpdate();
+        return this.jdbcTemplate.update(SQL_UPDATE_DATASOURCE, dataSourceModel.getName(),
+            dataSourceModel.getDbType(), dataSourceModel.getDbUrl(), dataSourceModel.getDbDriver(),
+            dataSourceModel.getDbExtend(), dataSourceModel.getDbUsername(), dataSourceModel.getDbPassword(),
+            dataSourceModel.getRemark(), dataSourceModel.getTenantId());
     }
 
     public int updateTenantRelation(TenantRelationModel tenantRelation) {
-        StringBuilder sql = new StringBuilder();
-        sql.append("update sys_tenant_relation ").append(" set relation_id=?,package_name=?").append(" where id = ?");
-        return this.getEntityManager().createNativeQuery(sql.toString()).setParameter(1, tenantRelation.getRelationId())
-            .setParameter(2, tenantRelation.getPackageName()).setParameter(3, tenantRelation.getId()).executeUpdate();
+        return this.jdbcTemplate.update(SQL_UPDATE_RELATION, tenantRelation.getRelationId(),
+            tenantRelation.getPackageName(), tenantRelation.getId());
     }
 
     public int updateTenantDataSourceStatus(String tenantId, Boolean status) {
-        StringBuilder sql = new StringBuilder();
-        sql.append("update sys_tenant_datasource ").append(" set status=?").append(" where tenant_id = ?");
-        return this.getEntityManager().createNativeQuery(sql.toString()).setParameter(1, status)
-            .setParameter(2, tenantId).executeUpdate();
+        return this.jdbcTemplate.update(SQL_UPDATE_DATASOURCE_STATUS,
+            Boolean.TRUE.equals(status) ? STATUS_ENABLE : STATUS_DISABLE, tenantId);
     }
 
     public int deleteTenantDataSource(TenantDataSourceModel tenantDataSourceModel) {
-        StringBuilder sql = new StringBuilder();
-        sql.append(" delete from sys_tenant_datasource").append(" where tenant_id = ?");
-        return this.getEntityManager().createNativeQuery(sql.toString())
-            .setParameter(1, tenantDataSourceModel.getTenantId()).executeUpdate();
+        return this.jdbcTemplate.update(SQL_DELETE_DATASOURCE, tenantDataSourceModel.getTenantId());
     }
 
     public List<TenantRelationModel> findTenantRelationModelList() {
-        Map<String, Object> map = new HashMap<String, Object>(16);
-        StringBuilder sql = new StringBuilder();
-        sql.append(" select ").append("   str.relation_id as \"relationId\" ")
-        .append("  ,str.tenant_id as \"tenantId\" ").append("  ,str.package_name as \"packageName\" ")
-        .append(" from ")
-        .append("   sys_tenant_relation str order by str.relation_id,str.package_name,str.tenant_id");
-        return this.queryForList(sql.toString(), map, TenantRelationModel.class);
+        return this.jdbcTemplate.query(SQL_FIND_RELATION_LIST, RELATION_ROW_MAPPER);
     }
 
+    /**
+     * Find the relations whose package name and relation id contain the ones of <code>tenantRelation</code>.
+     *
+     * @param tenantRelation the criteria, the tenant id is matched exactly
+     * @return the relations
+     * @deprecated it scans the whole table, search with
+     * {@link com.leon.solid.multitenant.service.TenantRegistryIndex#findRelations(String, String, String)}
+     */
+    @Deprecated
     public List<TenantRelationModel> findTenantRelations(TenantRelationModel tenantRelation) {
-        String packageName = StringUtils.orDefault(tenantRelation.getPackageName(), "");
+        boolean byTenantId = !StringUtils.isEmpty(tenantRelation.getTenantId());
+        boolean byRelationId = !StringUtils.isEmpty(tenantRelation.getRelationId());
 
-        Map<String, Object> map = new HashMap<String, Object>(16);
-        StringBuilder sql = new StringBuilder();
-        sql.append(" select ").append("   str.id as \"id\" ").append("  ,str.relation_id as \"relationId\" ")
-        .append("  ,str.tenant_id as \"tenantId\" ").append("  ,str.package_name as \"packageName\" ")
-        .append(" from ").append("   sys_tenant_relation str ").append(" where str.package_name like :packageName");
-
-        map.put("packageName", "%" + packageName + "%");
-
-        if (!StringUtils.isEmpty(tenantRelation.getTenantId())) {
-            sql.append(" and str.tenant_id = :tenantId");
-            map.put("tenantId", tenantRelation.getTenantId());
+        List<Object> args = new ArrayList<>(3);
+        args.add("%" + StringUtils.orDefault(tenantRelation.getPackageName(), "") + "%");
+        if (byTenantId) {
+            args.add(tenantRelation.getTenantId());
         }
-
-        if (!StringUtils.isEmpty(tenantRelation.getRelationId())) {
-            sql.append(" and str.relation_id like :relationId");
-            map.put("relationId", "%" + tenantRelation.getRelationId() + "%");
+        if (byRelationId) {
+            args.add("%" + tenantRelation.getRelationId() + "%");
         }
 
-        sql.append(" order by  str.relation_id,str.package_name,str.tenant_id");
-
-        return this.queryForList(sql.toString(), map, TenantRelationModel.class);
+        String sql = SQL_FIND_RELATIONS[(byTenantId ? 1 : 0) + (byRelationId ? 2 : 0)];
+        return this.jdbcTemplate.query(sql, RELATION_ROW_MAPPER, args.toArray());
     }
 
     public boolean existsTenantId(String tenantId) {// primary
-        StringBuilder sql = new StringBuilder();
-        sql.append(" select count(1) from sys_tenant_datasource where tenant_id = ?");
-        Query nativeQuery = this.getEntityManager().createNativeQuery(sql.toString());
-        int count = ((Number)nativeQuery.setParameter(1, tenantId).getSingleResult()).intValue();
-        return count > 0;
+        Long count = this.jdbcTemplate.queryForObject(SQL_EXISTS_TENANT_ID, Long.class, tenantId);
+        return count != null && count > 0;
     }
 
     public TenantDataSourceModel findByTenantId(String tenantId) {
-        StringBuilder sql = new StringBuilder();
-        sql.append("select ").append("   tenant_id as \"tenantId\" ").append("  ,name as \"name\" ")
-        .append("  ,db_type as \"dbType\" ").append("  ,db_url as \"dbUrl\" ")
-        .append("  ,db_driver as \"dbDriver\" ").append("  ,db_extend as \"dbExtend\" ")
-        .append("  ,db_username as \"dbUsername\" ").append("  ,db_password as \"dbPassword\" ")
-        .append("  ,remark as \"remark\" ").append("  ,status as \"status\" ").append(" from sys_tenant_datasource")
-        .append(" where tenant_id = '" + tenantId + "'");
-        return this.queryForSingle(sql.toString(), TenantDataSourceModel.class);
+        return getFirstRowIfPresent(
+            this.jdbcTemplate.query(SQL_FIND_DATASOURCE_BY_TENANT_ID, DATASOURCE_ROW_MAPPER, tenantId));
     }
 
     public int insertRelation(TenantRelationModel tenantRelationModel) {
-        StringBuilder sql = new StringBuilder();
-        sql.append(" insert into sys_tenant_relation").append(" (relation_id, tenant_id, package_name)")
-        .append(" values (?,?,?)");
-        return this.getEntityManager().createNativeQuery(sql.toString())
-            .setParameter(1, tenantRelationModel.getRelationId()).setParameter(2, tenantRelationModel.getTenantId())
-            .setParameter(3, tenantRelationModel.getPackageName()).executeUpdate();
+        return this.jdbcTemplate.update(SQL_INSERT_RELATION, tenantRelationModel.getRelationId(),
+            tenantRelationModel.getTenantId(), tenantRelationModel.getPackageName());
     }
 
     public int deleteRelation(Integer id) {
-        StringBuilder sql = new StringBuilder();
-        sql.append(" delete from sys_tenant_relation").append(" where id = ?");
-        return this.getEntityManager().createNativeQuery(sql.toString()).setParameter(1, id).executeUpdate();
+        return this.jdbcTemplate.update(SQL_DELETE_RELATION, id);
+    }
+
+    /**
+     * Get the {@link JdbcTemplate} bound to the control datasource.
+     *
+     * @return the control-plane {@link JdbcTemplate}
+     */
+    protected JdbcTemplate getJdbcTemplate() {
+        return this.jdbcTemplate;
+    }
+
+    private <T> Page<T> page(String sql, String countSql, List<Object> args, RowMapper<T> rowMapper,
+        Pageable pageable) {
+        Assert.isTrue(pageable != null && pageable.isPaged(), "The page is required!");
+        Object[] filterArgs = args.toArray();
+        args.add(pageable.getPageSize());
+        args.add(pageable.getOffset());
+        List<T> content = this.jdbcTemplate.query(sql, rowMapper, args.toArray());
+        return PageableExecutionUtils.getPage(content, pageable, () -> {
+            Long count = this.jdbcTemplate.queryForObject(countSql, Long.class, filterArgs);
+            return count == null ? 0L : count;
+        });
+    }
+
+    private <T> int stream(String sql, RowMapper<T> rowMapper, Consumer<T> action) {
+        int[] rows = new int[1];
+        this.jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            return ps;
+        }, rs -> {
+            action.accept(rowMapper.mapRow(rs, rows[0]++));
+        });
+        return rows[0];
+    }
+
+    private static String where(int filters, String... conditions) {
+        StringBuilder where = new StringBuilder();
+        for (int i = 0; i < conditions.length; i++) {
+            if ((filters & (1 << i)) != 0) {
+                where.append(where.length() == 0 ? " where " : " and ").append(conditions[i]);
+            }
+        }
+        return where.toString();
+    }
+
+    private static String prefixPattern(String prefix) {
+        return prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+    }
+
+    private static Integer getInteger(ResultSet rs, String column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * The status column is {@code varchar(1)} ('0' disable, '1' enable), boolean columns are accepted as well.
+     */
+    private static Boolean toStatus(String status) {
+        if (status == null) {
+            return null;
+        }
+        return STATUS_ENABLE.equals(status) || "t".equalsIgnoreCase(status) || "true".equalsIgnoreCase(status);
+    }
+
+    private static <T> T getFirstRowIfPresent(List<T> result) {
+        return (result != null && !result.isEmpty()) ? result.get(0) : null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,18 @@
+package com.leon.solid.multitenant.repository.support;
+
+/**
+ * Receives the progress of a bulk load, see {@link CsvBulkLoader}.
+ *
+ * @author Leon.Tang
+ */
+@FunctionalInterface
+public interface BulkLoadListener {
+
+    /**
+     * Called periodically on the loading thread while the rows are sent to the database, and once when the load is
+     * complete.
+     *
+     * @param rows the number of rows sent so far
+     */
+    void loaded(long rows);
+}
@@ -0,0 +1,181 @@
+package com.leon.solid.multitenant.repository.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.regex.Pattern;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Loads UTF-8 CSV rows (the format of {@link CsvResultSetExporter}) into a table with the fastest mechanism of the
+ * database. On PostgreSQL the stream is sent as is to <code>COPY ... FROM STDIN</code> through the driver's copy
+ * API, without parsing it on the client. On other databases, or when the PostgreSQL connection cannot be unwrapped
+ * from the pool, the records are parsed with {@link CsvRecordReader} and inserted in JDBC batches, bound as strings
+ * for the database to convert. MySQL needs <code>rewriteBatchedStatements=true</code> for fast batches.
+ * <p>
+ * The input is streamed in fixed size buffers, so a load runs in constant memory. The table and column names are
+ * part of the statement, they must be plain identifiers.
+ *
+ * @author Leon.Tang
+ */
+public final class CsvBulkLoader {
+
+    private static final boolean POSTGRESQL_PRESENT =
+        ClassUtils.isPresent("org.postgresql.PGConnection", CsvBulkLoader.class.getClassLoader());
+
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][\\w$]*(\\.[A-Za-z_][\\w$]*)?");
+
+    private static final Pattern COLUMN_NAME = Pattern.compile("[A-Za-z_][\\w$]*");
+
+    private CsvBulkLoader() {
+    }
+
+    /**
+     * Build the insert statement of a load, it is also the statement the load is recorded and invalidated with.
+     *
+     * @param table the target table, optionally qualified by its schema
+     * @param columns the target columns in the order of the CSV fields
+     * @return the insert statement with positional parameters
+     * @throws IllegalArgumentException if a name is not a plain identifier
+     */
+    public static String insertStatement(String table, String[] columns) {
+        Assert.isTrue(table != null && TABLE_NAME.matcher(table).matches(), "Invalid table name: " + table);
+        Assert.notEmpty(columns, "The columns are required!");
+        StringBuilder sql = new StringBuilder("insert into ").append(table).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            Assert.isTrue(columns[i] != null && COLUMN_NAME.matcher(columns[i]).matches(),
+                "Invalid column name: " + columns[i]);
+            sql.append(i > 0 ? ", " : "").append(columns[i]);
+        }
+        sql.append(") values (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * Load all rows of <code>in</code> into <code>table</code> on <code>connection</code>. The stream is not closed,
+     * the connection is neither committed nor closed.
+     *
+     * @param connection the connection of the current transaction
+     * @param table the target table, optionally qualified by its schema
+     * @param columns the target columns in the order of the CSV fields
+     * @param in the UTF-8 CSV rows
+     * @param header true if the first line is a header line to skip
+     * @param batchSize the number of rows per JDBC batch, and between two progress reports
+     * @param listener the progress listener, or null
+     * @return the number of loaded rows
+     * @throws SQLException if the rows cannot be loaded
+     * @throws IOException if the stream cannot be read or is not valid CSV
+     */
+    public static long load(Connection connection, String table, String[] columns, InputStream in, boolean header,
+        int batchSize, BulkLoadListener listener) throws SQLException, IOException {
+        Assert.notNull(in, "The input stream is required!");
+        Assert.isTrue(batchSize > 0, "The batch size must be positive!");
+        String insertSql = insertStatement(table, columns);
+        BulkLoadListener progress = listener != null ? listener : rows -> { };
+        if (POSTGRESQL_PRESENT && PostgresCopy.isSupported(connection)) {
+            return PostgresCopy.copyIn(connection, table, columns, in, header, batchSize, progress);
+        }
+        return insertBatches(connection, insertSql, columns.length, in, header, batchSize, progress);
+    }
+
+    private static long insertBatches(Connection connection, String insertSql, int columnCount, InputStream in,
+        boolean header, int batchSize, BulkLoadListener progress) throws SQLException, IOException {
+        CsvRecordReader reader = new CsvRecordReader(new InputStreamReader(in, StandardCharsets.UTF_8), ',');
+        if (header) {
+            reader.next();
+        }
+        long rows = 0L;
+        try (PreparedStatement ps = connection.prepareStatement(insertSql)) {
+            int pending = 0;
+            String[] record;
+            while ((record = reader.next()) != null) {
+                if (record.length != columnCount) {
+                    throw new InvalidDataAccessApiUsageException("Record " + reader.getRecordCount() + " has "
+                        + record.length + " fields, expected " + columnCount);
+                }
+                for (int i = 0; i < record.length; i++) {
+                    StatementCreatorUtils.setParameterValue(ps, i + 1, SqlTypeValue.TYPE_UNKNOWN, record[i]);
+                }
+                ps.addBatch();
+                rows++;
+                if (++pending == batchSize) {
+                    ps.executeBatch();
+                    ps.clearBatch();
+                    pending = 0;
+                    progress.loaded(rows);
+                }
+            }
+            if (pending > 0) {
+                ps.executeBatch();
+            }
+        }
+        progress.loaded(rows);
+        return rows;
+    }
+
+    /**
+     * The PostgreSQL copy path, in its own class so the driver is only loaded when it is present.
+     */
+    private static final class PostgresCopy {
+
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        static boolean isSupported(Connection connection) {
+            try {
+                return connection.isWrapperFor(PGConnection.class);
+            } catch (SQLException | AbstractMethodError ex) {
+                return false;
+            }
+        }
+
+        static long copyIn(Connection connection, String table, String[] columns, InputStream in, boolean header,
+            int reportInterval, BulkLoadListener progress) throws SQLException, IOException {
+            String sql = "COPY " + table + " (" + String.join(", ", columns) + ") FROM STDIN WITH (FORMAT csv, HEADER "
+                + header + ")";
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                boolean quoted = false;
+                long lines = 0L;
+                long reported = 0L;
+                int count;
+                while ((count = in.read(buffer)) >= 0) {
+                    for (int i = 0; i < count; i++) {
+                        if (buffer[i] == '"') {
+                            quoted = !quoted;
+                        } else if (buffer[i] == '\n' && !quoted) {
+                            lines++;
+                        }
+                    }
+                    copyIn.writeToCopy(buffer, 0, count);
+                    long rows = header ? Math.max(lines - 1, 0L) : lines;
+                    if (rows - reported >= reportInterval) {
+                        progress.loaded(rows);
+                        reported = rows;
+                    }
+                }
+                long rows = copyIn.endCopy();
+                progress.loaded(rows);
+                return rows;
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        }
+    }
+}
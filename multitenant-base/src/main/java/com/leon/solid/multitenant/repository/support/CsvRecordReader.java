@@ -0,0 +1,139 @@
+package com.leon.solid.multitenant.repository.support;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.util.Assert;
+
+/**
+ * Reads the records of a CSV (RFC 4180) stream one at a time, the format written by {@link CsvResultSetExporter}.
+ * Quoted fields may contain the delimiter, doubled quotes and line breaks, lines end with LF or CRLF. Like
+ * PostgreSQL <code>COPY ... CSV</code>, an unquoted empty field is null and a quoted empty field is an empty string.
+ *
+ * @author Leon.Tang
+ */
+public class CsvRecordReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final Reader reader;
+
+    private final char delimiter;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    private int position;
+
+    private int limit;
+
+    private final StringBuilder field = new StringBuilder();
+
+    private final List<String> fields = new ArrayList<>();
+
+    private long records;
+
+    /**
+     * Create a reader.
+     *
+     * @param reader the CSV text
+     * @param delimiter the field delimiter
+     */
+    public CsvRecordReader(Reader reader, char delimiter) {
+        Assert.notNull(reader, "The reader is required!");
+        Assert.isTrue(delimiter != '"' && delimiter != '\r' && delimiter != '\n', "Invalid CSV delimiter!");
+        this.reader = reader;
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @return the fields of the record, or null at the end of the stream
+     * @throws IOException if the stream cannot be read or a quoted field is malformed
+     */
+    public String[] next() throws IOException {
+        int c = read();
+        if (c < 0) {
+            return null;
+        }
+        this.fields.clear();
+        while (true) {
+            this.field.setLength(0);
+            if (c == '"') {
+                c = readQuoted();
+                if (c >= 0 && c != this.delimiter && c != '\r' && c != '\n') {
+                    throw new IOException("Unexpected character after the closing quote in record "
+                        + (this.records + 1));
+                }
+                this.fields.add(this.field.toString());
+            } else {
+                while (c >= 0 && c != this.delimiter && c != '\r' && c != '\n') {
+                    this.field.append((char)c);
+                    c = read();
+                }
+                this.fields.add(this.field.length() == 0 ? null : this.field.toString());
+            }
+            if (c != this.delimiter) {
+                break;
+            }
+            c = read();
+        }
+        if (c == '\r' && read() != '\n' && this.limit > 0) {
+            this.position--;
+        }
+        this.records++;
+        return this.fields.toArray(new String[this.fields.size()]);
+    }
+
+    /**
+     * Get the number of records read.
+     *
+     * @return the number of records
+     */
+    public long getRecordCount() {
+        return this.records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.reader.close();
+    }
+
+    /**
+     * Read a quoted field into {@link #field}, the opening quote has been read.
+     *
+     * @return the character after the closing quote
+     */
+    private int readQuoted() throws IOException {
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                throw new IOException("Unterminated quoted field in record " + (this.records + 1));
+            }
+            if (c == '"') {
+                c = read();
+                if (c != '"') {
+                    return c;
+                }
+            }
+            this.field.append((char)c);
+        }
+    }
+
+    private int read() throws IOException {
+        if (this.position == this.limit) {
+            int count = this.reader.read(this.buffer, 0, this.buffer.length);
+            if (count <= 0) {
+                this.position = 0;
+                this.limit = 0;
+                return -1;
+            }
+            this.position = 0;
+            this.limit = count;
+        }
+        return this.buffer[this.position++];
+    }
+}
@@ -0,0 +1,218 @@
+package com.leon.solid.multitenant.repository.support;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import org.springframework.util.Assert;
+
+/**
+ * Exports a result set as CSV (RFC 4180): a header line of the column labels, fields separated by the delimiter,
+ * fields that contain the delimiter, a quote or a line break are quoted, and lines end with CRLF. Other values are
+ * written as returned by {@link ResultSet#getString(int)}.
+ * <p>
+ * Null values are empty fields and empty strings are quoted empty fields (<code>""</code>), as in PostgreSQL
+ * <code>COPY ... CSV</code>. {@link CsvRecordReader} reads them back the same way, so an export loaded with
+ * {@link CsvBulkLoader} keeps nulls and empty strings apart.
+ * <p>
+ * Values are encoded through a char buffer into a direct byte buffer that is written to the channel when it is
+ * full. The buffers are allocated once per thread and reused by all exports of the thread, no object is kept per
+ * row. An exporter is immutable and can be shared.
+ *
+ * @author Leon.Tang
+ */
+public class CsvResultSetExporter implements ResultSetExporter {
+
+    private static final int CHAR_BUFFER_SIZE = 8 * 1024;
+
+    private static final int BYTE_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<CharBuffer> CHAR_BUFFERS =
+        ThreadLocal.withInitial(() -> CharBuffer.allocate(CHAR_BUFFER_SIZE));
+
+    private static final ThreadLocal<ByteBuffer> BYTE_BUFFERS =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BYTE_BUFFER_SIZE));
+
+    private final char delimiter;
+
+    private final boolean header;
+
+    private final Charset charset;
+
+    /**
+     * Create a UTF-8 comma separated exporter with a header line.
+     */
+    public CsvResultSetExporter() {
+        this(',', true, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create an exporter.
+     *
+     * @param delimiter the field delimiter, e.g. <code>;</code> or a tab
+     * @param header true to write a header line of the column labels
+     * @param charset the charset of the file
+     */
+    public CsvResultSetExporter(char delimiter, boolean header, Charset charset) {
+        Assert.isTrue(delimiter != '"' && delimiter != '\r' && delimiter != '\n', "Invalid CSV delimiter!");
+        Assert.notNull(charset, "The charset is required!");
+        this.delimiter = delimiter;
+        this.header = header;
+        this.charset = charset;
+    }
+
+    @Override
+    public long export(ResultSet rs, WritableByteChannel channel) throws SQLException, IOException {
+        Writer writer = new Writer(channel, this.charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE));
+        try {
+            ResultSetMetaData metaData = rs.getMetaData();
+            int columnCount = metaData.getColumnCount();
+            if (this.header) {
+                for (int i = 1; i <= columnCount; i++) {
+                    writeField(writer, i, columnLabel(metaData, i));
+                }
+                writer.append('\r').append('\n');
+            }
+            long rows = 0L;
+            while (rs.next()) {
+                for (int i = 1; i <= columnCount; i++) {
+                    writeField(writer, i, rs.getString(i));
+                }
+                writer.append('\r').append('\n');
+                rows++;
+            }
+            writer.finish();
+            return rows;
+        } finally {
+            writer.reset();
+        }
+    }
+
+    private void writeField(Writer writer, int column, String value) throws IOException {
+        if (column > 1) {
+            writer.append(this.delimiter);
+        }
+        if (value == null) {
+            return;
+        }
+        if (value.isEmpty()) {
+            writer.append('"').append('"');
+            return;
+        }
+        if (!needsQuotes(value)) {
+            writer.append(value);
+            return;
+        }
+        writer.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                writer.append('"');
+            }
+            writer.append(c);
+        }
+        writer.append('"');
+    }
+
+    private boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == this.delimiter || c == '"' || c == '\r' || c == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String columnLabel(ResultSetMetaData metaData, int column) throws SQLException {
+        String label = metaData.getColumnLabel(column);
+        return label == null || label.isEmpty() ? metaData.getColumnName(column) : label;
+    }
+
+    /**
+     * Encodes chars into the byte buffer of the thread and writes it to the channel when it is full.
+     */
+    private static final class Writer {
+        private final WritableByteChannel channel;
+        private final CharsetEncoder encoder;
+        private final CharBuffer chars = CHAR_BUFFERS.get();
+        private final ByteBuffer bytes = BYTE_BUFFERS.get();
+
+        Writer(WritableByteChannel channel, CharsetEncoder encoder) {
+            this.channel = channel;
+            this.encoder = encoder;
+            reset();
+        }
+
+        Writer append(char c) throws IOException {
+            if (!this.chars.hasRemaining()) {
+                encode(false);
+            }
+            this.chars.put(c);
+            return this;
+        }
+
+        Writer append(String value) throws IOException {
+            int offset = 0;
+            while (offset < value.length()) {
+                if (!this.chars.hasRemaining()) {
+                    encode(false);
+                }
+                int length = Math.min(this.chars.remaining(), value.length() - offset);
+                this.chars.put(value, offset, offset + length);
+                offset += length;
+            }
+            return this;
+        }
+
+        void finish() throws IOException {
+            encode(true);
+            CoderResult result;
+            while ((result = this.encoder.flush(this.bytes)).isOverflow()) {
+                drain();
+            }
+            check(result);
+            drain();
+        }
+
+        void reset() {
+            this.chars.clear();
+            this.bytes.clear();
+        }
+
+        private void encode(boolean endOfInput) throws IOException {
+            this.chars.flip();
+            CoderResult result;
+            while ((result = this.encoder.encode(this.chars, this.bytes, endOfInput)).isOverflow()) {
+                drain();
+            }
+            check(result);
+            this.chars.compact();
+        }
+
+        private void drain() throws IOException {
+            this.bytes.flip();
+            while (this.bytes.hasRemaining()) {
+                this.channel.write(this.bytes);
+            }
+            this.bytes.clear();
+        }
+
+        private static void check(CoderResult result) throws CharacterCodingException {
+            if (result.isError()) {
+                result.throwException();
+            }
+        }
+    }
+}
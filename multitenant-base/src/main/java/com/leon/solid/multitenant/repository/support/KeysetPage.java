@@ -0,0 +1,65 @@
+package com.leon.solid.multitenant.repository.support;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a keyset (seek) paginated query.
+ * <p>
+ * The next page is read by passing {@link #getNextToken()} back to the query. The token is opaque, it carries the
+ * ordering key values of the last row of this page, so the next page starts right after it instead of skipping
+ * <code>OFFSET</code> rows.
+ *
+ * @param <T> the row type
+ * @author Leon.Tang
+ * @see KeysetToken
+ */
+public class KeysetPage<T> {
+
+    private final List<T> content;
+
+    private final String nextToken;
+
+    /**
+     * Create a page.
+     *
+     * @param content the rows of the page
+     * @param nextToken the continuation token of the next page, or null if this is the last page
+     */
+    public KeysetPage(List<T> content, String nextToken) {
+        this.content = content == null ? Collections.emptyList() : Collections.unmodifiableList(content);
+        this.nextToken = nextToken;
+    }
+
+    /**
+     * Get the rows of the page.
+     *
+     * @return the rows in key order, never null
+     */
+    public List<T> getContent() {
+        return this.content;
+    }
+
+    /**
+     * Get the continuation token of the next page.
+     *
+     * @return the token, or null if this is the last page
+     */
+    public String getNextToken() {
+        return this.nextToken;
+    }
+
+    /**
+     * Check if there is a next page.
+     *
+     * @return {@code true} if {@link #getNextToken()} is present
+     */
+    public boolean hasNext() {
+        return this.nextToken != null;
+    }
+
+    @Override
+    public String toString() {
+        return "KeysetPage [size=" + this.content.size() + ", hasNext=" + hasNext() + "]";
+    }
+}
@@ -0,0 +1,218 @@
+package com.leon.solid.multitenant.repository.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Encodes the ordering key values of a row into the opaque continuation token of a {@link KeysetPage}, and back.
+ * <p>
+ * The token is URL-safe Base64 of a small typed binary form (no Java serialization), so the decoded values keep
+ * their JDBC types when they are bound to the seek predicate of the next page. It also carries a fingerprint of the
+ * query and its ordering keys, a token of another query is rejected.
+ *
+ * @author Leon.Tang
+ */
+public final class KeysetToken {
+
+    private static final byte VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte LONG = 1;
+    private static final byte INTEGER = 2;
+    private static final byte SHORT = 3;
+    private static final byte BYTE = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte FLOAT = 6;
+    private static final byte BIG_DECIMAL = 7;
+    private static final byte BIG_INTEGER = 8;
+    private static final byte BOOLEAN = 9;
+    private static final byte STRING = 10;
+    private static final byte TIMESTAMP = 11;
+    private static final byte DATE = 12;
+    private static final byte TIME = 13;
+    private static final byte LOCAL_DATE = 14;
+    private static final byte LOCAL_DATE_TIME = 15;
+    private static final byte LOCAL_TIME = 16;
+    private static final byte INSTANT = 17;
+    private static final byte UUID_TYPE = 18;
+
+    private KeysetToken() {
+    }
+
+    /**
+     * Encode the key values of a row.
+     *
+     * @param fingerprint the fingerprint of the query and its ordering keys
+     * @param values the key values in key order
+     * @return the token
+     * @throws IllegalArgumentException if a value has a type that cannot be encoded
+     */
+    public static String encode(int fingerprint, Object[] values) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + values.length * 12);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeInt(fingerprint);
+            out.writeByte(values.length);
+            for (Object value : values) {
+                writeValue(out, value);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Decode the key values of a token.
+     *
+     * @param token the token of a previous page
+     * @param fingerprint the fingerprint of the query and its ordering keys
+     * @param keyCount the number of ordering keys
+     * @return the key values in key order
+     * @throws IllegalArgumentException if the token is malformed or belongs to another query
+     */
+    public static Object[] decode(String token, int fingerprint, int keyCount) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(token);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid keyset token: " + token, ex);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readByte() != VERSION || in.readInt() != fingerprint || in.readByte() != keyCount) {
+                throw new IllegalArgumentException("The keyset token does not belong to this query: " + token);
+            }
+            Object[] values = new Object[keyCount];
+            for (int i = 0; i < keyCount; i++) {
+                values[i] = readValue(in);
+            }
+            if (in.available() > 0) {
+                throw new IllegalArgumentException("Invalid keyset token: " + token);
+            }
+            return values;
+        } catch (IOException | DateTimeException ex) {
+            throw new IllegalArgumentException("Invalid keyset token: " + token, ex);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long)value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer)value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short)value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte)value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double)value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float)value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(BIG_DECIMAL);
+            out.writeUTF(((BigDecimal)value).toString());
+        } else if (value instanceof BigInteger) {
+            out.writeByte(BIG_INTEGER);
+            out.writeUTF(value.toString());
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean)value);
+        } else if (value instanceof String || value instanceof Character) {
+            out.writeByte(STRING);
+            out.writeUTF(value.toString());
+        } else if (value instanceof Timestamp) {
+            out.writeByte(TIMESTAMP);
+            out.writeLong(((Timestamp)value).getTime());
+            out.writeInt(((Timestamp)value).getNanos());
+        } else if (value instanceof java.sql.Date) {
+            out.writeByte(DATE);
+            out.writeUTF(value.toString());
+        } else if (value instanceof Time) {
+            out.writeByte(TIME);
+            out.writeUTF(value.toString());
+        } else if (value instanceof java.util.Date) {
+            writeValue(out, new Timestamp(((java.util.Date)value).getTime()));
+        } else if (value instanceof LocalDate || value instanceof LocalDateTime || value instanceof LocalTime
+            || value instanceof Instant) {
+            out.writeByte(value instanceof LocalDate ? LOCAL_DATE
+                : value instanceof LocalDateTime ? LOCAL_DATE_TIME : value instanceof LocalTime ? LOCAL_TIME : INSTANT);
+            out.writeUTF(value.toString());
+        } else if (value instanceof UUID) {
+            out.writeByte(UUID_TYPE);
+            out.writeLong(((UUID)value).getMostSignificantBits());
+            out.writeLong(((UUID)value).getLeastSignificantBits());
+        } else {
+            throw new IllegalArgumentException("Unsupported keyset key type: " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case LONG:
+                return in.readLong();
+            case INTEGER:
+                return in.readInt();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case BIG_DECIMAL:
+                return new BigDecimal(in.readUTF());
+            case BIG_INTEGER:
+                return new BigInteger(in.readUTF());
+            case BOOLEAN:
+                return in.readBoolean();
+            case STRING:
+                return in.readUTF();
+            case TIMESTAMP:
+                Timestamp timestamp = new Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                return timestamp;
+            case DATE:
+                return java.sql.Date.valueOf(in.readUTF());
+            case TIME:
+                return Time.valueOf(in.readUTF());
+            case LOCAL_DATE:
+                return LocalDate.parse(in.readUTF());
+            case LOCAL_DATE_TIME:
+                return LocalDateTime.parse(in.readUTF());
+            case LOCAL_TIME:
+                return LocalTime.parse(in.readUTF());
+            case INSTANT:
+                return Instant.parse(in.readUTF());
+            case UUID_TYPE:
+                return new UUID(in.readLong(), in.readLong());
+            default:
+                throw new IllegalArgumentException("Unknown keyset key type: " + type);
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package com.leon.solid.multitenant.repository.support;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.util.Assert;
+
+/**
+ * A native SQL statement parsed once into its literal segments and parameter placeholders, so that repeated
+ * executions only bind values.
+ * <p>
+ * Both parameter styles are supported, but not mixed in one statement:
+ * <ul>
+ * <li>named: <code>:name</code>, bound from a {@link Map};</li>
+ * <li>positional: JDBC style <code>?</code> (numbered by occurrence) or JPA style <code>?1</code>, bound from an
+ * array.</li>
+ * </ul>
+ * Placeholders inside string literals, quoted identifiers and comments, and PostgreSQL <code>::</code> casts are
+ * left untouched.
+ * <p>
+ * A {@link Collection} or array value (other than <code>byte[]</code>/<code>char[]</code>) is expanded into a list
+ * of placeholders for <code>IN (...)</code> clauses. The list is padded to the next power of two by repeating its
+ * last element, so a statement has only a handful of shapes and the database and Hibernate plan caches are not
+ * flooded with one statement per list size. An empty list binds a single <code>null</code>, which matches nothing.
+ * <p>
+ * Parsed statements are cached per SQL string, see {@link #parse(String)}.
+ *
+ * @author Leon.Tang
+ */
+public final class ParsedNativeSql {
+
+    /**
+     * The maximum number of cached statements, further statements are parsed on every call.
+     */
+    private static final int CACHE_LIMIT = 2048;
+
+    /**
+     * The maximum number of expanded shapes cached per statement.
+     */
+    private static final int SHAPE_CACHE_LIMIT = 32;
+
+    private static final Map<String, ParsedNativeSql> CACHE = new ConcurrentHashMap<>(256);
+
+    private final String sql;
+
+    /** The literal SQL before each placeholder, plus the tail after the last one. */
+    private final String[] segments;
+
+    /** The parameter name of each placeholder, or null for a positional one. */
+    private final String[] names;
+
+    /** The zero-based parameter index of each positional placeholder. */
+    private final int[] positions;
+
+    private final boolean named;
+
+    private final boolean positional;
+
+    private final int positionalCount;
+
+    /** The statement without list expansion, with JPA and JDBC placeholders. */
+    private final String[] plainSql;
+
+    private final Map<String, String[]> shapes = new ConcurrentHashMap<>(8);
+
+    private ParsedNativeSql(String sql, List<String> segments, List<String> names, List<Integer> positions) {
+        this.sql = sql;
+        this.segments = segments.toArray(new String[0]);
+        this.names = names.toArray(new String[0]);
+        this.positions = new int[positions.size()];
+        boolean hasNamed = false;
+        boolean hasPositional = false;
+        int count = 0;
+        for (int i = 0; i < this.positions.length; i++) {
+            this.positions[i] = positions.get(i);
+            if (this.names[i] != null) {
+                hasNamed = true;
+            } else {
+                hasPositional = true;
+                count = Math.max(count, this.positions[i] + 1);
+            }
+        }
+        this.named = hasNamed;
+        this.positional = hasPositional;
+        this.positionalCount = count;
+        this.plainSql = render(null);
+    }
+
+    /**
+     * Parse the <code>sql</code>, or get the cached result of an earlier parse.
+     *
+     * @param sql the native SQL statement
+     * @return the parsed statement
+     */
+    public static ParsedNativeSql parse(String sql) {
+        Assert.hasText(sql, "The SQL clause is required!");
+        ParsedNativeSql parsed = CACHE.get(sql);
+        if (parsed == null) {
+            parsed = doParse(sql);
+            if (CACHE.size() < CACHE_LIMIT) {
+                CACHE.putIfAbsent(sql, parsed);
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Get the original SQL statement.
+     *
+     * @return the SQL statement as parsed
+     */
+    public String getSql() {
+        return this.sql;
+    }
+
+    /**
+     * Check if the statement uses named parameters.
+     *
+     * @return {@code true} if it contains a <code>:name</code> placeholder
+     */
+    public boolean isNamed() {
+        return this.named;
+    }
+
+    /**
+     * Get the number of placeholders before list expansion.
+     *
+     * @return the number of placeholders
+     */
+    public int getPlaceholderCount() {
+        return this.names.length;
+    }
+
+    /**
+     * Bind the parameter values.
+     *
+     * @param parameters a {@link Map} of named parameter values, an array of positional values, or null if the
+     *        statement has no parameters
+     * @return the statement with its shape and the values in placeholder order
+     * @throws IllegalArgumentException if the parameters do not match the placeholders
+     */
+    public BoundSql bind(Object parameters) {
+        if (this.names.length == 0) {
+            Assert.isTrue(parameters == null || isEmpty(parameters),
+                "The SQL clause has no parameters, but parameters are given: " + this.sql);
+            return new BoundSql(this.plainSql[0], this.plainSql[1], new Object[0]);
+        }
+        Object[] values = new Object[this.names.length];
+        if (parameters instanceof Map) {
+            Assert.isTrue(!this.positional, "Positional placeholders cannot be bound by name: " + this.sql);
+            Map<?, ?> map = (Map<?, ?>)parameters;
+            for (int i = 0; i < values.length; i++) {
+                if (!map.containsKey(this.names[i])) {
+                    throw new IllegalArgumentException("No value for parameter '" + this.names[i] + "': " + this.sql);
+                }
+                values[i] = map.get(this.names[i]);
+            }
+        } else if (parameters instanceof Object[]) {
+            Assert.isTrue(!this.named, "Named placeholders cannot be bound by position: " + this.sql);
+            Object[] args = (Object[])parameters;
+            Assert.isTrue(args.length == this.positionalCount, "Expected " + this.positionalCount
+                + " positional parameters but got " + args.length + ": " + this.sql);
+            for (int i = 0; i < values.length; i++) {
+                values[i] = args[this.positions[i]];
+            }
+        } else {
+            throw new IllegalArgumentException("Parameters must be a Map or an array: " + this.sql);
+        }
+        return expand(values);
+    }
+
+    private BoundSql expand(Object[] values) {
+        int[] listSizes = null;
+        int total = 0;
+        for (int i = 0; i < values.length; i++) {
+            int size = listSize(values[i]);
+            if (size >= 0) {
+                if (listSizes == null) {
+                    listSizes = new int[values.length];
+                }
+                listSizes[i] = bucket(size);
+                total += listSizes[i];
+            } else {
+                total++;
+            }
+        }
+        if (listSizes == null) {
+            return new BoundSql(this.plainSql[0], this.plainSql[1], values);
+        }
+        Object[] expanded = new Object[total];
+        int index = 0;
+        StringBuilder shapeKey = new StringBuilder(listSizes.length * 3);
+        for (int i = 0; i < values.length; i++) {
+            int size = listSizes[i];
+            if (size > 0) {
+                index = copyPadded(values[i], expanded, index, size);
+            } else {
+                expanded[index++] = values[i];
+            }
+            shapeKey.append(size).append(',');
+        }
+        String key = shapeKey.toString();
+        String[] shape = this.shapes.get(key);
+        if (shape == null) {
+            shape = render(listSizes);
+            if (this.shapes.size() < SHAPE_CACHE_LIMIT) {
+                this.shapes.putIfAbsent(key, shape);
+            }
+        }
+        return new BoundSql(shape[0], shape[1], expanded);
+    }
+
+    /**
+     * Render the statement with JPA (<code>?1</code>) and JDBC (<code>?</code>) placeholders.
+     *
+     * @param listSizes the expanded size of each placeholder, 0 for a single value, or null for no expansion
+     */
+    private String[] render(int[] listSizes) {
+        StringBuilder jpa = new StringBuilder(this.sql.length() + 16);
+        StringBuilder jdbc = new StringBuilder(this.sql.length() + 16);
+        int ordinal = 1;
+        for (int i = 0; i < this.names.length; i++) {
+            jpa.append(this.segments[i]);
+            jdbc.append(this.segments[i]);
+            int size = listSizes == null ? 0 : listSizes[i];
+            for (int j = 0; j < Math.max(size, 1); j++) {
+                if (j > 0) {
+                    jpa.append(", ");
+                    jdbc.append(", ");
+                }
+                jpa.append('?').append(ordinal++);
+                jdbc.append('?');
+            }
+        }
+        jpa.append(this.segments[this.names.length]);
+        jdbc.append(this.segments[this.names.length]);
+        return new String[] {jpa.toString(), jdbc.toString()};
+    }
+
+    /**
+     * Get the size of a list value, or -1 if the value is bound as a single value.
+     */
+    private static int listSize(Object value) {
+        if (value instanceof Collection) {
+            return ((Collection<?>)value).size();
+        }
+        if (value != null && value.getClass().isArray() && !(value instanceof byte[])
+            && !(value instanceof char[])) {
+            return Array.getLength(value);
+        }
+        return -1;
+    }
+
+    /**
+     * Round a list size up to its bucket: the next power of two, at least 1.
+     */
+    static int bucket(int size) {
+        if (size <= 1) {
+            return 1;
+        }
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
+    private static int copyPadded(Object list, Object[] target, int index, int size) {
+        Object last = null;
+        int copied = 0;
+        if (list instanceof Collection) {
+            Iterator<?> iterator = ((Collection<?>)list).iterator();
+            while (iterator.hasNext()) {
+                last = iterator.next();
+                target[index + copied++] = last;
+            }
+        } else {
+            int length = Array.getLength(list);
+            for (; copied < length; copied++) {
+                last = Array.get(list, copied);
+                target[index + copied] = last;
+            }
+        }
+        for (; copied < size; copied++) {
+            target[index + copied] = last;
+        }
+        return index + size;
+    }
+
+    private static boolean isEmpty(Object parameters) {
+        if (parameters instanceof Map) {
+            return ((Map<?, ?>)parameters).isEmpty();
+        }
+        return parameters instanceof Object[] && ((Object[])parameters).length == 0;
+    }
+
+    private static ParsedNativeSql doParse(String sql) {
+        List<String> segments = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        int length = sql.length();
+        int segmentStart = 0;
+        int nextPosition = 0;
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                i = skipQuoted(sql, i, c);
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i + 2);
+                i = end < 0 ? length : end + 1;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else if (c == ':' && i + 1 < length && sql.charAt(i + 1) == ':') {
+                i += 2;
+            } else if (c == ':' && i + 1 < length && Character.isJavaIdentifierStart(sql.charAt(i + 1))) {
+                int end = i + 2;
+                while (end < length && isNameChar(sql.charAt(end))) {
+                    end++;
+                }
+                segments.add(sql.substring(segmentStart, i));
+                names.add(sql.substring(i + 1, end));
+                positions.add(-1);
+                segmentStart = end;
+                i = end;
+            } else if (c == '?') {
+                int end = i + 1;
+                while (end < length && Character.isDigit(sql.charAt(end))) {
+                    end++;
+                }
+                int position = end > i + 1 ? Integer.parseInt(sql.substring(i + 1, end)) - 1 : nextPosition++;
+                Assert.isTrue(position >= 0, "Positional parameters start at ?1: " + sql);
+                segments.add(sql.substring(segmentStart, i));
+                names.add(null);
+                positions.add(position);
+                segmentStart = end;
+                i = end;
+            } else {
+                i++;
+            }
+        }
+        segments.add(sql.substring(segmentStart));
+        return new ParsedNativeSql(sql, segments, names, positions);
+    }
+
+    private static int skipQuoted(String sql, int start, char quote) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            if (sql.charAt(i) == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isJavaIdentifierPart(c) || c == '.';
+    }
+
+    /**
+     * A statement with its values bound, ready to execute.
+     */
+    public static final class BoundSql {
+        private final String jpaSql;
+        private final String jdbcSql;
+        private final Object[] values;
+
+        BoundSql(String jpaSql, String jdbcSql, Object[] values) {
+            this.jpaSql = jpaSql;
+            this.jdbcSql = jdbcSql;
+            this.values = values;
+        }
+
+        /**
+         * Get the statement with JPA ordinal placeholders (<code>?1</code>, <code>?2</code>, ...) for
+         * {@link javax.persistence.EntityManager#createNativeQuery(String)}.
+         *
+         * @return the statement for JPA
+         */
+        public String getJpaSql() {
+            return this.jpaSql;
+        }
+
+        /**
+         * Get the statement with JDBC placeholders (<code>?</code>) for
+         * {@link java.sql.Connection#prepareStatement(String)}.
+         *
+         * @return the statement for JDBC
+         */
+        public String getJdbcSql() {
+            return this.jdbcSql;
+        }
+
+        /**
+         * Get the values in placeholder order, ordinal <code>n</code> is at index <code>n - 1</code>.
+         *
+         * @return the values
+         */
+        public Object[] getValues() {
+            return this.values;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.leon.solid.multitenant.repository.support;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Writes the rows of a result set to a channel in a file format, row by row as the cursor advances, so the size of
+ * an export does not depend on the number of rows.
+ *
+ * @author Leon.Tang
+ * @see CsvResultSetExporter
+ */
+public interface ResultSetExporter {
+
+    /**
+     * Write all remaining rows of <code>rs</code> to <code>channel</code>. The channel is not closed.
+     *
+     * @param rs the result set, positioned before the first row
+     * @param channel the target channel
+     * @return the number of rows written
+     * @throws SQLException if the rows cannot be read
+     * @throws IOException if the channel cannot be written
+     */
+    long export(ResultSet rs, WritableByteChannel channel) throws SQLException, IOException;
+}
@@ -0,0 +1,268 @@
+package com.leon.solid.multitenant.repository.support;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the tables a native SQL statement reads or writes, for the invalidation of cached query results.
+ * <p>
+ * It is a light tokenizer, not a SQL parser: tables are the names after <code>FROM</code> and <code>JOIN</code>
+ * (including comma separated lists) for reads, and the target of <code>INSERT</code>, <code>UPDATE</code>,
+ * <code>DELETE</code>, <code>MERGE</code>, <code>TRUNCATE</code> and table DDL for writes. Names are returned in
+ * lower case without schema and quotes. When the written tables cannot be determined, {@link #writtenTables(String)}
+ * returns null and the caller should invalidate everything.
+ *
+ * @author Leon.Tang
+ */
+public final class SqlTables {
+
+    private static final int CACHE_LIMIT = 2048;
+
+    private static final Set<String> KEYWORDS = new LinkedHashSet<>(Arrays.asList("select", "where",
+        "on", "using", "join", "inner", "left", "right", "full", "outer", "cross", "natural", "lateral", "group",
+        "order", "having", "limit", "offset", "union", "except", "intersect", "window", "for", "fetch", "set",
+        "values", "as", "returning", "with", "unnest"));
+
+    private static final Map<String, Set<String>> READ_CACHE = new ConcurrentHashMap<>(256);
+
+    private static final Map<String, Set<String>> WRITE_CACHE = new ConcurrentHashMap<>(256);
+
+    /**
+     * The marker of statements whose written tables are unknown, it is never returned.
+     */
+    private static final Set<String> UNKNOWN = Collections.unmodifiableSet(new LinkedHashSet<>());
+
+    private SqlTables() {
+    }
+
+    /**
+     * Find the tables a query reads.
+     *
+     * @param sql the SQL statement
+     * @return the table names, empty if there are none (e.g. <code>select 1</code>)
+     */
+    public static Set<String> readTables(String sql) {
+        Set<String> tables = READ_CACHE.get(sql);
+        if (tables == null) {
+            tables = Collections.unmodifiableSet(findReadTables(tokenize(sql)));
+            if (READ_CACHE.size() < CACHE_LIMIT) {
+                READ_CACHE.putIfAbsent(sql, tables);
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Find the tables a statement writes.
+     *
+     * @param sql the SQL statement
+     * @return the table names, or null if they cannot be determined
+     */
+    public static Set<String> writtenTables(String sql) {
+        Set<String> tables = WRITE_CACHE.get(sql);
+        if (tables == null) {
+            Set<String> found = findWrittenTables(tokenize(sql));
+            tables = found == null ? UNKNOWN : Collections.unmodifiableSet(found);
+            if (WRITE_CACHE.size() < CACHE_LIMIT) {
+                WRITE_CACHE.putIfAbsent(sql, tables);
+            }
+        }
+        return tables == UNKNOWN ? null : tables;
+    }
+
+    private static Set<String> findReadTables(List<String> tokens) {
+        Set<String> tables = new LinkedHashSet<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if ("from".equals(token) || "join".equals(token)) {
+                i = addTableList(tokens, i + 1, tables, "from".equals(token));
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Add the table at <code>start</code>, and the following comma separated tables of a <code>FROM</code> list.
+     *
+     * @return the index of the last consumed token
+     */
+    private static int addTableList(List<String> tokens, int start, Set<String> tables, boolean list) {
+        int i = start;
+        while (i < tokens.size() && isName(tokens.get(i))) {
+            tables.add(tableName(tokens.get(i++)));
+            if (!list) {
+                break;
+            }
+            i = skip(tokens, i, "as");
+            if (i < tokens.size() && isName(tokens.get(i))) {
+                i++;
+            }
+            if (!",".equals(at(tokens, i))) {
+                break;
+            }
+            i++;
+        }
+        return i - 1;
+    }
+
+    private static Set<String> findWrittenTables(List<String> tokens) {
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        int i = 0;
+        String verb = tokens.get(i++);
+        String target = null;
+        switch (verb) {
+            case "insert":
+            case "merge":
+                i = skip(tokens, i, "into");
+                target = at(tokens, i);
+                break;
+            case "update":
+                i = skip(tokens, i, "only");
+                target = at(tokens, i);
+                break;
+            case "delete":
+                i = skip(tokens, i, "from");
+                i = skip(tokens, i, "only");
+                target = at(tokens, i);
+                break;
+            case "truncate":
+                i = skip(tokens, i, "table");
+                target = at(tokens, i);
+                break;
+            case "alter":
+            case "drop":
+            case "create":
+                if (!"table".equals(at(tokens, i))) {
+                    return null;
+                }
+                i = skip(tokens, i + 1, "if");
+                i = skip(tokens, i, "not");
+                i = skip(tokens, i, "exists");
+                target = at(tokens, i);
+                break;
+            default:
+                return null;
+        }
+        if (target == null || !isName(target)) {
+            return null;
+        }
+        Set<String> tables = new LinkedHashSet<>();
+        tables.add(tableName(target));
+        return tables;
+    }
+
+    private static int skip(List<String> tokens, int i, String keyword) {
+        return keyword.equals(at(tokens, i)) ? i + 1 : i;
+    }
+
+    private static String at(List<String> tokens, int i) {
+        return i < tokens.size() ? tokens.get(i) : null;
+    }
+
+    private static boolean isName(String token) {
+        if (token.isEmpty() || "(".equals(token) || ")".equals(token) || ",".equals(token)) {
+            return false;
+        }
+        char first = token.charAt(0);
+        if (first == '"' || first == '`' || first == '[') {
+            return true;
+        }
+        return Character.isJavaIdentifierStart(first) && !KEYWORDS.contains(token);
+    }
+
+    private static String tableName(String token) {
+        String name = token;
+        int dot = lastDotOutsideQuotes(name);
+        if (dot >= 0) {
+            name = name.substring(dot + 1);
+        }
+        if (name.length() >= 2 && (name.charAt(0) == '"' || name.charAt(0) == '`' || name.charAt(0) == '[')) {
+            name = name.substring(1, name.length() - 1);
+        }
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static int lastDotOutsideQuotes(String name) {
+        boolean quoted = false;
+        int dot = -1;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '"' || c == '`' || c == '[' || c == ']') {
+                quoted = c == '[' || (c != ']' && !quoted);
+            } else if (c == '.' && !quoted) {
+                dot = i;
+            }
+        }
+        return dot;
+    }
+
+    /**
+     * Split the statement into lower case words (with their qualifiers and quoted parts), parentheses and commas,
+     * skipping string literals and comments.
+     */
+    private static List<String> tokenize(String sql) {
+        List<String> tokens = new ArrayList<>();
+        int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                i = skipQuoted(sql, i, '\'');
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i + 2);
+                i = end < 0 ? length : end + 1;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else if (c == '(' || c == ')' || c == ',') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (Character.isJavaIdentifierStart(c) || c == '"' || c == '`' || c == '[') {
+                int start = i;
+                while (i < length) {
+                    char d = sql.charAt(i);
+                    if (d == '"' || d == '`') {
+                        i = skipQuoted(sql, i, d);
+                    } else if (d == '[') {
+                        int end = sql.indexOf(']', i + 1);
+                        i = end < 0 ? length : end + 1;
+                    } else if (Character.isJavaIdentifierPart(d) || d == '.') {
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                String word = sql.substring(start, i);
+                tokens.add(word.indexOf('"') < 0 && word.indexOf('`') < 0 && word.indexOf('[') < 0
+                    ? word.toLowerCase(Locale.ROOT) : word);
+            } else {
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static int skipQuoted(String sql, int start, char quote) {
+        int i = start + 1;
+        while (i < sql.length()) {
+            if (sql.charAt(i) == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        return i;
+    }
+}
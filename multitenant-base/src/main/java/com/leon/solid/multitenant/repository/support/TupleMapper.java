@@ -0,0 +1,23 @@
+package com.leon.solid.multitenant.repository.support;
+
+/**
+ * Maps one row of a native query result, given as the tuple of column values in select order, to an instance of the
+ * target type.
+ * <p>
+ * Instances are built once per (target type, column aliases) pair by {@link TupleMappers} and are thread-safe.
+ *
+ * @param <T> the target type that rows are mapped to
+ * @author Leon.Tang
+ * @see TupleMappers
+ */
+@FunctionalInterface
+public interface TupleMapper<T> {
+
+    /**
+     * Map the tuple of one row.
+     *
+     * @param tuple the column values of the row in select order
+     * @return the mapped row
+     */
+    T map(Object[] tuple);
+}
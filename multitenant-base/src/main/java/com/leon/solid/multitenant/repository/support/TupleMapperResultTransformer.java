@@ -0,0 +1,82 @@
+package com.leon.solid.multitenant.repository.support;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.hibernate.transform.ResultTransformer;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link ResultTransformer} that maps each tuple with the cached {@link TupleMapper} of the result class, as a
+ * drop-in replacement of {@link org.hibernate.transform.Transformers#aliasToBean(Class)}.
+ * <p>
+ * The mapper is looked up once per result set (Hibernate passes the same aliases array for every row), so mapping a
+ * row costs only the generated constructor and setter calls.
+ *
+ * @param <T> the result class
+ * @author Leon.Tang
+ * @see TupleMappers
+ */
+public class TupleMapperResultTransformer<T> implements ResultTransformer {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Class<T> resultClass;
+
+    private transient volatile MapperHolder<T> holder;
+
+    /**
+     * Create a transformer for the <code>resultClass</code>.
+     *
+     * @param resultClass the type rows are mapped to
+     */
+    public TupleMapperResultTransformer(Class<T> resultClass) {
+        Assert.notNull(resultClass, "resultClass cannot be null");
+        this.resultClass = resultClass;
+    }
+
+    @Override
+    public Object transformTuple(Object[] tuple, String[] aliases) {
+        return getMapper(aliases).map(tuple);
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public List transformList(List collection) {
+        return collection;
+    }
+
+    /**
+     * Get the mapper for the result set shape described by <code>aliases</code>.
+     *
+     * @param aliases the column aliases in select order
+     * @return the mapper of the result class
+     */
+    public TupleMapper<T> getMapper(String[] aliases) {
+        MapperHolder<T> current = this.holder;
+        if (current == null || (current.aliases != aliases && !Arrays.equals(current.aliases, aliases))) {
+            current = new MapperHolder<>(aliases, TupleMappers.forType(this.resultClass, aliases));
+            this.holder = current;
+        }
+        return current.mapper;
+    }
+
+    /**
+     * The result class of this transformer.
+     *
+     * @return the result class
+     */
+    public Class<T> getResultClass() {
+        return this.resultClass;
+    }
+
+    private static final class MapperHolder<T> {
+        private final String[] aliases;
+        private final TupleMapper<T> mapper;
+
+        MapperHolder(String[] aliases, TupleMapper<T> mapper) {
+            this.aliases = aliases;
+            this.mapper = mapper;
+        }
+    }
+}
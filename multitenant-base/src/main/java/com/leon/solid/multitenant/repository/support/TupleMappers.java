@@ -0,0 +1,402 @@
+package com.leon.solid.multitenant.repository.support;
+
+import java.beans.ConstructorProperties;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Parameter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.hibernate.HibernateException;
+import org.hibernate.PropertyNotFoundException;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Factory and cache of {@link TupleMapper row mappers}, keyed by (target type, column aliases).
+ * <p>
+ * A mapper is built once per key and then reused for every row of every result set with the same shape, which
+ * replaces the per-query reflection of {@link org.hibernate.transform.AliasToBeanResultTransformer}:
+ * <ul>
+ * <li>a type with a no-argument constructor is mapped through its setters (or fields, like the alias-to-bean
+ * transformer), invoked through {@link LambdaMetafactory} generated accessors when the type is public, otherwise
+ * through {@link MethodHandle method handles};</li>
+ * <li>a type without one (an immutable value class or a record) is mapped through the constructor that takes one
+ * argument per column, matched by parameter name when the names are available (compiled with {@code -parameters},
+ * annotated with {@link ConstructorProperties}, or a record) and by position otherwise;</li>
+ * <li>a {@link TypeCoercions#isSimpleType(Class) simple type} is mapped from a single column.</li>
+ * </ul>
+ * Column values are converted to the property types with {@link TypeCoercions}.
+ *
+ * @author Leon.Tang
+ */
+public final class TupleMappers {
+
+    private static final Map<MapperKey, TupleMapper<?>> MAPPERS = new ConcurrentHashMap<>(64);
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private TupleMappers() {
+    }
+
+    /**
+     * Get the mapper of <code>type</code> for the result set shape described by <code>aliases</code>, building it on
+     * first use.
+     *
+     * @param <T> the target type
+     * @param type the type rows are mapped to
+     * @param aliases the column aliases in select order
+     * @return the cached mapper
+     * @throws PropertyNotFoundException if a column alias matches no property of the type
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> TupleMapper<T> forType(Class<T> type, String[] aliases) {
+        MapperKey key = new MapperKey(type, aliases);
+        TupleMapper<?> mapper = MAPPERS.get(key);
+        if (mapper == null) {
+            mapper = MAPPERS.computeIfAbsent(new MapperKey(type, aliases.clone()), k -> build(type, k.aliases));
+        }
+        return (TupleMapper<T>)mapper;
+    }
+
+    /**
+     * Drop all cached mappers, e.g. after the classes of mapped types were reloaded.
+     */
+    public static void clear() {
+        MAPPERS.clear();
+    }
+
+    private static <T> TupleMapper<T> build(Class<T> type, String[] aliases) {
+        if (TypeCoercions.isSimpleType(type)) {
+            return buildScalarMapper(type, aliases);
+        }
+        Constructor<T> defaultConstructor = ClassUtils.getConstructorIfAvailable(type);
+        if (defaultConstructor == null) {
+            defaultConstructor = findDeclaredDefaultConstructor(type);
+        }
+        if (defaultConstructor != null) {
+            return new BeanTupleMapper<>(type, aliases, defaultConstructor);
+        }
+        return new ConstructorTupleMapper<>(type, aliases);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> TupleMapper<T> buildScalarMapper(Class<T> type, String[] aliases) {
+        if (aliases.length != 1) {
+            throw new HibernateException("Cannot map " + aliases.length + " columns " + Arrays.toString(aliases)
+                + " to single value type " + type.getName());
+        }
+        final Function<Object, Object> coercion = TypeCoercions.forType(type);
+        return tuple -> tuple[0] == null ? null : (T)coercion.apply(tuple[0]);
+    }
+
+    private static <T> Constructor<T> findDeclaredDefaultConstructor(Class<T> type) {
+        try {
+            Constructor<T> constructor = type.getDeclaredConstructor();
+            ReflectionUtils.makeAccessible(constructor);
+            return constructor;
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Check if a generated lambda can call the member directly: it must be public in a public class that is visible
+     * from the class loader of this library.
+     */
+    private static boolean isLambdaAccessible(Class<?> type, int modifiers) {
+        return Modifier.isPublic(modifiers) && Modifier.isPublic(type.getModifiers())
+            && ClassUtils.isVisible(type, TupleMappers.class.getClassLoader());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Supplier<Object> buildFactory(Class<?> type, Constructor<?> constructor) {
+        try {
+            MethodHandle handle = LOOKUP.unreflectConstructor(constructor);
+            if (isLambdaAccessible(type, constructor.getModifiers())) {
+                try {
+                    CallSite site = LambdaMetafactory.metafactory(LOOKUP, "get", MethodType.methodType(Supplier.class),
+                        MethodType.methodType(Object.class), handle, MethodType.methodType(type));
+                    return (Supplier<Object>)site.getTarget().invokeExact();
+                } catch (Throwable ex) {
+                    // fall through to the method handle
+                }
+            }
+            final MethodHandle factory = handle.asType(MethodType.methodType(Object.class));
+            return () -> {
+                try {
+                    return factory.invokeExact();
+                } catch (Throwable ex) {
+                    throw new HibernateException("Could not instantiate result class: " + type.getName(), ex);
+                }
+            };
+        } catch (IllegalAccessException ex) {
+            throw new HibernateException("Could not access constructor of result class: " + type.getName(), ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> buildSetter(Class<?> type, String alias) {
+        Method setter = findSetter(type, alias);
+        try {
+            MethodHandle handle;
+            if (setter != null) {
+                handle = LOOKUP.unreflect(setter);
+                if (isLambdaAccessible(setter.getDeclaringClass(), setter.getModifiers())) {
+                    try {
+                        CallSite site = LambdaMetafactory.metafactory(LOOKUP, "accept",
+                            MethodType.methodType(BiConsumer.class), SETTER_TYPE, handle,
+                            MethodType.methodType(void.class, setter.getDeclaringClass(),
+                                ClassUtils.resolvePrimitiveIfNecessary(setter.getParameterTypes()[0])));
+                        return (BiConsumer<Object, Object>)site.getTarget().invokeExact();
+                    } catch (Throwable ex) {
+                        // fall through to the method handle
+                    }
+                }
+                handle = handle.asType(handle.type().changeReturnType(void.class));
+            } else {
+                Field field = ReflectionUtils.findField(type, alias);
+                if (field == null || Modifier.isStatic(field.getModifiers())) {
+                    throw new PropertyNotFoundException(
+                        "Could not resolve PropertyAccess for " + alias + " on " + type.getName());
+                }
+                ReflectionUtils.makeAccessible(field);
+                handle = LOOKUP.unreflectSetter(field);
+            }
+            final MethodHandle writer = handle.asType(SETTER_TYPE);
+            return (bean, value) -> {
+                try {
+                    writer.invokeExact(bean, value);
+                } catch (RuntimeException ex) {
+                    throw ex;
+                } catch (Throwable ex) {
+                    throw new HibernateException("Could not set property " + alias + " of " + type.getName(), ex);
+                }
+            };
+        } catch (IllegalAccessException ex) {
+            throw new HibernateException("Could not access property " + alias + " of " + type.getName(), ex);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object>[] newSetters(int length) {
+        return (BiConsumer<Object, Object>[])new BiConsumer<?, ?>[length];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object>[] newCoercions(int length) {
+        return (Function<Object, Object>[])new Function<?, ?>[length];
+    }
+
+    private static Method findSetter(Class<?> type, String alias) {
+        String setterName = "set" + StringUtils.capitalize(alias);
+        for (Class<?> current = type; current != null && current != Object.class; current =
+            current.getSuperclass()) {
+            for (Method method : current.getDeclaredMethods()) {
+                if (method.getParameterCount() == 1 && !Modifier.isStatic(method.getModifiers())
+                    && (setterName.equals(method.getName()) || ("set" + alias).equals(method.getName()))) {
+                    ReflectionUtils.makeAccessible(method);
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Class<?> propertyType(Class<?> type, String alias) {
+        Method setter = findSetter(type, alias);
+        if (setter != null) {
+            return setter.getParameterTypes()[0];
+        }
+        Field field = ReflectionUtils.findField(type, alias);
+        return field != null ? field.getType() : Object.class;
+    }
+
+    /**
+     * Maps rows through the no-argument constructor and one setter per column.
+     */
+    private static final class BeanTupleMapper<T> implements TupleMapper<T> {
+        private final Class<T> type;
+        private final String[] aliases;
+        private final Supplier<Object> factory;
+        private final BiConsumer<Object, Object>[] setters;
+        private final Function<Object, Object>[] coercions;
+        private final boolean[] primitives;
+
+        BeanTupleMapper(Class<T> type, String[] aliases, Constructor<T> constructor) {
+            this.type = type;
+            this.aliases = aliases;
+            this.factory = buildFactory(type, constructor);
+            this.setters = newSetters(aliases.length);
+            this.coercions = newCoercions(aliases.length);
+            this.primitives = new boolean[aliases.length];
+            for (int i = 0; i < aliases.length; i++) {
+                Class<?> propertyType = propertyType(type, aliases[i]);
+                this.setters[i] = buildSetter(type, aliases[i]);
+                this.coercions[i] = TypeCoercions.forType(propertyType);
+                this.primitives[i] = propertyType.isPrimitive();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T map(Object[] tuple) {
+            Object bean = this.factory.get();
+            for (int i = 0; i < this.setters.length; i++) {
+                Object value = tuple[i];
+                if (value == null) {
+                    if (this.primitives[i]) {
+                        continue;
+                    }
+                } else {
+                    value = coerce(i, value);
+                }
+                this.setters[i].accept(bean, value);
+            }
+            return (T)bean;
+        }
+
+        private Object coerce(int index, Object value) {
+            try {
+                return this.coercions[index].apply(value);
+            } catch (RuntimeException ex) {
+                throw new HibernateException(
+                    "Could not map column " + this.aliases[index] + " of result class " + this.type.getName(), ex);
+            }
+        }
+    }
+
+    /**
+     * Maps rows through a constructor taking one argument per column.
+     */
+    private static final class ConstructorTupleMapper<T> implements TupleMapper<T> {
+        private final Class<T> type;
+        private final MethodHandle constructor;
+        private final int[] argumentColumns;
+        private final Function<Object, Object>[] coercions;
+        private final Object[] defaults;
+
+        ConstructorTupleMapper(Class<T> type, String[] aliases) {
+            this.type = type;
+            Constructor<?> target = null;
+            for (Constructor<?> candidate : type.getDeclaredConstructors()) {
+                if (candidate.getParameterCount() == aliases.length) {
+                    if (target != null) {
+                        throw new HibernateException("Ambiguous constructors with " + aliases.length
+                            + " parameters on result class " + type.getName());
+                    }
+                    target = candidate;
+                }
+            }
+            if (target == null) {
+                throw new HibernateException("No default constructor or constructor with " + aliases.length
+                    + " parameters on result class " + type.getName());
+            }
+            ReflectionUtils.makeAccessible(target);
+
+            String[] names = parameterNames(target);
+            Class<?>[] parameterTypes = target.getParameterTypes();
+            this.argumentColumns = new int[parameterTypes.length];
+            this.coercions = newCoercions(parameterTypes.length);
+            this.defaults = new Object[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                this.argumentColumns[i] = names == null ? i : indexOf(aliases, names[i], type);
+                this.coercions[i] = TypeCoercions.forType(parameterTypes[i]);
+                this.defaults[i] = TypeCoercions.defaultValue(parameterTypes[i]);
+            }
+            try {
+                this.constructor = LOOKUP.unreflectConstructor(target).asSpreader(Object[].class,
+                    parameterTypes.length).asType(MethodType.methodType(Object.class, Object[].class));
+            } catch (IllegalAccessException ex) {
+                throw new HibernateException("Could not access constructor of result class: " + type.getName(), ex);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T map(Object[] tuple) {
+            Object[] arguments = new Object[this.argumentColumns.length];
+            for (int i = 0; i < arguments.length; i++) {
+                Object value = tuple[this.argumentColumns[i]];
+                arguments[i] = value == null ? this.defaults[i] : this.coercions[i].apply(value);
+            }
+            try {
+                return (T)this.constructor.invokeExact(arguments);
+            } catch (Throwable ex) {
+                throw new HibernateException("Could not instantiate result class: " + this.type.getName(), ex);
+            }
+        }
+
+        private static String[] parameterNames(Constructor<?> constructor) {
+            ConstructorProperties properties = constructor.getAnnotation(ConstructorProperties.class);
+            if (properties != null) {
+                return properties.value();
+            }
+            Parameter[] parameters = constructor.getParameters();
+            if (parameters.length == 0 || !parameters[0].isNamePresent()) {
+                return null;
+            }
+            String[] names = new String[parameters.length];
+            for (int i = 0; i < parameters.length; i++) {
+                names[i] = parameters[i].getName();
+            }
+            return names;
+        }
+
+        private static int indexOf(String[] aliases, String name, Class<?> type) {
+            for (int i = 0; i < aliases.length; i++) {
+                if (aliases[i].equalsIgnoreCase(name)) {
+                    return i;
+                }
+            }
+            throw new PropertyNotFoundException(
+                "No column alias for constructor parameter " + name + " of " + type.getName());
+        }
+    }
+
+    /**
+     * The cache key, the aliases array is never modified after the key is stored.
+     */
+    private static final class MapperKey {
+        private final Class<?> type;
+        private final String[] aliases;
+        private final int hash;
+
+        MapperKey(Class<?> type, String[] aliases) {
+            this.type = type;
+            this.aliases = aliases;
+            this.hash = 31 * type.hashCode() + Arrays.hashCode(aliases);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MapperKey)) {
+                return false;
+            }
+            MapperKey other = (MapperKey)obj;
+            return this.type == other.type && Arrays.equals(this.aliases, other.aliases);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.leon.solid.multitenant.repository.support;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.springframework.util.ClassUtils;
+
+/**
+ * Conversions from the values returned by JDBC drivers to the property types of mapped rows.
+ * <p>
+ * The converter for a target type is resolved once by {@link #forType(Class)} and then applied per value. A value
+ * that already is an instance of the target type is passed through unchanged, so the common case costs a single
+ * {@code instanceof} check.
+ * <p>
+ * Conversions to the integral types are exact: a value with a fractional part or out of the range of the target type
+ * is rejected rather than truncated.
+ *
+ * @author Leon.Tang
+ */
+public final class TypeCoercions {
+
+    private static final Map<Class<?>, Function<Object, Object>> CONVERTERS;
+
+    static {
+        Map<Class<?>, Function<Object, Object>> converters = new HashMap<>(32);
+        converters.put(Long.class, v -> toIntegral(v, Long.class, Long.MIN_VALUE, Long.MAX_VALUE));
+        converters.put(Integer.class, v -> (int)toIntegral(v, Integer.class, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        converters.put(Short.class, v -> (short)toIntegral(v, Short.class, Short.MIN_VALUE, Short.MAX_VALUE));
+        converters.put(Byte.class, v -> (byte)toIntegral(v, Byte.class, Byte.MIN_VALUE, Byte.MAX_VALUE));
+        converters.put(Double.class, v -> toNumber(v).doubleValue());
+        converters.put(Float.class, v -> toNumber(v).floatValue());
+        converters.put(BigDecimal.class, TypeCoercions::toBigDecimal);
+        converters.put(BigInteger.class, v -> toBigDecimal(v).toBigInteger());
+        converters.put(Boolean.class, TypeCoercions::toBoolean);
+        converters.put(Character.class, TypeCoercions::toCharacter);
+        converters.put(String.class, TypeCoercions::toText);
+        converters.put(LocalDate.class, TypeCoercions::toLocalDate);
+        converters.put(LocalDateTime.class, TypeCoercions::toLocalDateTime);
+        converters.put(LocalTime.class, TypeCoercions::toLocalTime);
+        converters.put(Instant.class, v -> toTimestamp(v).toInstant());
+        converters.put(java.util.Date.class, v -> new java.util.Date(toTimestamp(v).getTime()));
+        converters.put(java.sql.Date.class, v -> java.sql.Date.valueOf(toLocalDate(v)));
+        converters.put(Timestamp.class, TypeCoercions::toTimestamp);
+        converters.put(UUID.class, v -> UUID.fromString(v.toString()));
+        converters.put(byte[].class, TypeCoercions::toBytes);
+        CONVERTERS = Collections.unmodifiableMap(converters);
+    }
+
+    private TypeCoercions() {
+    }
+
+    /**
+     * Resolve the converter for the <code>targetType</code>. Primitive types are handled as their wrapper types, a
+     * {@code null} value is never passed to the converter.
+     *
+     * @param targetType the type to convert to
+     * @return the converter, it returns values that are already instances of the target type unchanged
+     * @throws IllegalArgumentException (at conversion time) if a value cannot be converted
+     */
+    public static Function<Object, Object> forType(Class<?> targetType) {
+        final Class<?> type = ClassUtils.resolvePrimitiveIfNecessary(targetType);
+        if (type == Object.class) {
+            return Function.identity();
+        }
+        Function<Object, Object> converter = CONVERTERS.get(type);
+        if (converter == null && type.isEnum()) {
+            converter = v -> toEnum(type, v);
+        }
+        if (converter == null) {
+            return v -> {
+                if (type.isInstance(v)) {
+                    return v;
+                }
+                throw cannotConvert(v, type);
+            };
+        }
+        final Function<Object, Object> conversion = converter;
+        return v -> type.isInstance(v) ? v : conversion.apply(v);
+    }
+
+    /**
+     * Check if the type is a single-column value type (numbers, text, temporal values, ...) rather than a bean.
+     *
+     * @param type the type to check
+     * @return {@code true} if a column value can be converted to the type directly
+     */
+    public static boolean isSimpleType(Class<?> type) {
+        Class<?> resolved = ClassUtils.resolvePrimitiveIfNecessary(type);
+        return CONVERTERS.containsKey(resolved) || resolved.isEnum() || Number.class.isAssignableFrom(resolved);
+    }
+
+    /**
+     * Get the default value of a primitive type, or {@code null} for a reference type.
+     *
+     * @param type the type
+     * @return the value an uninitialized field of the type has
+     */
+    public static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        }
+        if (type == char.class) {
+            return Character.valueOf('\0');
+        }
+        return forType(type).apply(0);
+    }
+
+    private static Number toNumber(Object value) {
+        if (value instanceof Number) {
+            return (Number)value;
+        }
+        if (value instanceof Boolean) {
+            return ((Boolean)value) ? 1 : 0;
+        }
+        if (value instanceof Character) {
+            return (int)((Character)value).charValue();
+        }
+        if (value instanceof CharSequence) {
+            return new BigDecimal(value.toString().trim());
+        }
+        throw cannotConvert(value, Number.class);
+    }
+
+    private static long toIntegral(Object value, Class<?> targetType, long min, long max) {
+        Number number = toNumber(value);
+        long result;
+        if (number instanceof Long || number instanceof Integer || number instanceof Short
+            || number instanceof Byte) {
+            result = number.longValue();
+        } else {
+            try {
+                result = toBigDecimal(number).longValueExact();
+            } catch (ArithmeticException | NumberFormatException ex) {
+                throw cannotConvert(value, targetType);
+            }
+        }
+        if (result < min || result > max) {
+            throw cannotConvert(value, targetType);
+        }
+        return result;
+    }
+
+    private static BigDecimal toBigDecimal(Object value) {
+        Number number = toNumber(value);
+        if (number instanceof BigDecimal) {
+            return (BigDecimal)number;
+        }
+        if (number instanceof BigInteger) {
+            return new BigDecimal((BigInteger)number);
+        }
+        if (number instanceof Double || number instanceof Float) {
+            return BigDecimal.valueOf(number.doubleValue());
+        }
+        return BigDecimal.valueOf(number.longValue());
+    }
+
+    private static Boolean toBoolean(Object value) {
+        if (value instanceof Number) {
+            return ((Number)value).intValue() != 0;
+        }
+        String text = value.toString().trim();
+        if ("1".equals(text) || "t".equalsIgnoreCase(text) || "y".equalsIgnoreCase(text)
+            || "true".equalsIgnoreCase(text) || "yes".equalsIgnoreCase(text)) {
+            return Boolean.TRUE;
+        }
+        if ("0".equals(text) || "f".equalsIgnoreCase(text) || "n".equalsIgnoreCase(text)
+            || "false".equalsIgnoreCase(text) || "no".equalsIgnoreCase(text)) {
+            return Boolean.FALSE;
+        }
+        throw cannotConvert(value, Boolean.class);
+    }
+
+    private static Character toCharacter(Object value) {
+        String text = toText(value);
+        if (text.length() != 1) {
+            throw cannotConvert(value, Character.class);
+        }
+        return text.charAt(0);
+    }
+
+    private static String toText(Object value) {
+        if (value instanceof Clob) {
+            Clob clob = (Clob)value;
+            try (Reader reader = clob.getCharacterStream()) {
+                StringBuilder text = new StringBuilder();
+                char[] buffer = new char[4096];
+                int read;
+                while ((read = reader.read(buffer)) != -1) {
+                    text.append(buffer, 0, read);
+                }
+                return text.toString();
+            } catch (SQLException | IOException ex) {
+                throw new IllegalArgumentException("Could not read CLOB value", ex);
+            }
+        }
+        return value.toString();
+    }
+
+    private static byte[] toBytes(Object value) {
+        if (value instanceof Blob) {
+            Blob blob = (Blob)value;
+            try {
+                return blob.getBytes(1, (int)blob.length());
+            } catch (SQLException ex) {
+                throw new IllegalArgumentException("Could not read BLOB value", ex);
+            }
+        }
+        throw cannotConvert(value, byte[].class);
+    }
+
+    private static Timestamp toTimestamp(Object value) {
+        if (value instanceof Timestamp) {
+            return (Timestamp)value;
+        }
+        if (value instanceof java.util.Date) {
+            return new Timestamp(((java.util.Date)value).getTime());
+        }
+        if (value instanceof LocalDateTime) {
+            return Timestamp.valueOf((LocalDateTime)value);
+        }
+        if (value instanceof LocalDate) {
+            return Timestamp.valueOf(((LocalDate)value).atStartOfDay());
+        }
+        if (value instanceof Instant) {
+            return Timestamp.from((Instant)value);
+        }
+        if (value instanceof Number) {
+            return new Timestamp(((Number)value).longValue());
+        }
+        throw cannotConvert(value, Timestamp.class);
+    }
+
+    private static LocalDate toLocalDate(Object value) {
+        if (value instanceof java.sql.Date) {
+            return ((java.sql.Date)value).toLocalDate();
+        }
+        if (value instanceof CharSequence) {
+            return LocalDate.parse(value.toString().trim());
+        }
+        return toTimestamp(value).toLocalDateTime().toLocalDate();
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof CharSequence) {
+            return Timestamp.valueOf(value.toString().trim()).toLocalDateTime();
+        }
+        return toTimestamp(value).toLocalDateTime();
+    }
+
+    private static LocalTime toLocalTime(Object value) {
+        if (value instanceof Time) {
+            return ((Time)value).toLocalTime();
+        }
+        if (value instanceof CharSequence) {
+            return LocalTime.parse(value.toString().trim());
+        }
+        return toTimestamp(value).toLocalDateTime().toLocalTime();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object toEnum(Class<?> enumType, Object value) {
+        if (value instanceof Number) {
+            Object[] constants = enumType.getEnumConstants();
+            int ordinal = ((Number)value).intValue();
+            if (ordinal < 0 || ordinal >= constants.length) {
+                throw cannotConvert(value, enumType);
+            }
+            return constants[ordinal];
+        }
+        return Enum.valueOf((Class<Enum>)enumType, value.toString().trim());
+    }
+
+    private static IllegalArgumentException cannotConvert(Object value, Class<?> targetType) {
+        return new IllegalArgumentException("Cannot convert value of type [" + value.getClass().getName()
+            + "] to required type [" + targetType.getName() + "]");
+    }
+}
@@ -0,0 +1,121 @@
+package com.leon.solid.multitenant.service;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * An immutable trigram index of one text field of a list of items, for substring search without scanning every
+ * value. A search intersects the posting lists of the trigrams of the searched text and checks the candidates with
+ * {@link String#contains(CharSequence)}, so the result is exact. Texts shorter than a trigram are searched by
+ * scanning. The search is case sensitive, like <code>LIKE</code>.
+ *
+ * @author Leon.Tang
+ */
+final class NGramIndex<T> {
+
+    private static final int N = 3;
+
+    private static final int[] NO_POSTINGS = new int[0];
+
+    private final String[] values;
+
+    private final Map<String, int[]> postings;
+
+    /**
+     * Index the field of the items.
+     *
+     * @param items the items, a search returns their positions
+     * @param field the indexed field, null values match only an empty search
+     */
+    NGramIndex(List<T> items, Function<T, String> field) {
+        this.values = new String[items.size()];
+        Map<String, Postings> lists = new HashMap<>();
+        for (int i = 0; i < this.values.length; i++) {
+            String value = field.apply(items.get(i));
+            this.values[i] = value;
+            if (value == null) {
+                continue;
+            }
+            for (int j = 0; j + N <= value.length(); j++) {
+                lists.computeIfAbsent(value.substring(j, j + N), gram -> new Postings()).add(i);
+            }
+        }
+        this.postings = new HashMap<>(lists.size() * 4 / 3 + 1);
+        lists.forEach((gram, list) -> this.postings.put(gram, Arrays.copyOf(list.positions, list.size)));
+    }
+
+    /**
+     * Find the items whose field contains <code>text</code>.
+     *
+     * @param text the searched text, null or empty matches all items
+     * @return the positions of the matching items
+     */
+    BitSet search(String text) {
+        BitSet matches = new BitSet(this.values.length);
+        if (text == null || text.isEmpty()) {
+            matches.set(0, this.values.length);
+            return matches;
+        }
+        if (text.length() < N) {
+            for (int i = 0; i < this.values.length; i++) {
+                if (this.values[i] != null && this.values[i].contains(text)) {
+                    matches.set(i);
+                }
+            }
+            return matches;
+        }
+        int[] candidates = null;
+        for (int j = 0; j + N <= text.length(); j++) {
+            int[] list = this.postings.getOrDefault(text.substring(j, j + N), NO_POSTINGS);
+            candidates = candidates == null ? list : intersect(candidates, list);
+            if (candidates.length == 0) {
+                return matches;
+            }
+        }
+        for (int i : candidates) {
+            if (this.values[i].contains(text)) {
+                matches.set(i);
+            }
+        }
+        return matches;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * The growing posting list of a trigram while the index is built.
+     */
+    private static final class Postings {
+        private int[] positions = new int[4];
+        private int size;
+
+        void add(int position) {
+            if (this.size > 0 && this.positions[this.size - 1] == position) {
+                return;
+            }
+            if (this.size == this.positions.length) {
+                this.positions = Arrays.copyOf(this.positions, this.size << 1);
+            }
+            this.positions[this.size++] = position;
+        }
+    }
+}
@@ -3,13 +3,17 @@ package com.leon.solid.multitenant.service;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import javax.inject.Inject;
 import javax.sql.DataSource;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.leon.solid.multitenant.config.TenantBuilder;
@@ -22,6 +26,10 @@ import com.leon.solid.multitenant.utils.StringUtils;
 
 /**
  * The Class TenantDataSourceService.
+ * <p>
+ * The finders ending with <code>ReadOnly</code> are read-only and only join a transaction that is in progress, so
+ * the lookups do not begin and enlist a JTA transaction of their own. The registry is on the control tenant, whose
+ * pool runs them on local connections.
  *
  * @author Leon.Tang
  * @date Aug 28, 2019
@@ -40,6 +48,9 @@ public class TenantDataSourceService {
     @Qualifier("tenantBuilder")
     private TenantBuilder tenantBuilder;
 
+    @Autowired
+    private TenantRegistryIndex tenantRegistryIndex;
+
     public List<TenantDataSourceModel> getAllTenantDataSources() {
         return tenantRepositoryCustom.findTenantDataSourceList();
     }
@@ -96,7 +107,7 @@ public class TenantDataSourceService {
         if (StringUtils.isEmpty(dbType) && StringUtils.isEmpty(keyword)) {
             return findAllTenantDataSource();
         }
-        return tenantRepositoryCustom.findByDbTypeAndTenantIdLike(dbType, keyword);
+        return tenantRegistryIndex.findDataSources(dbType, keyword);
     }
 
     public List<TenantDataSourceModel> findAllTenantDataSource() {
@@ -111,10 +122,12 @@ public class TenantDataSourceService {
     }
 
     public int insertTenantDataSource(TenantDataSourceModel dataSourceModel) {
+        tenantRegistryIndex.invalidate();
         return tenantRepositoryCustom.insertTenantDataSource(dataSourceModel);
     }
 
     public int updateTenantDataSource(TenantDataSourceModel model) {
+        tenantRegistryIndex.invalidate();
         return tenantRepositoryCustom.updateTenantDataSource(model);
     }
 
@@ -123,8 +136,8 @@ public class TenantDataSourceService {
     }
 
     public int deleteAndDestroyTenantDataSource(TenantDataSourceModel tenantDataSourceModel) {
-        multiTenantDataSources.remove(tenantDataSourceModel.getTenantId());
         tenantBuilder.destory(tenantDataSourceModel);
+        tenantRegistryIndex.invalidate();
         return tenantRepositoryCustom.deleteTenantDataSource(tenantDataSourceModel);
     }
 
@@ -132,6 +145,54 @@ public class TenantDataSourceService {
         return tenantRepositoryCustom.findTenantRelationModelList();
     }
 
+    /**
+     * Find a page of datasources ordered by tenant id, without their passwords.
+     *
+     * @param dbType the datasource type, or empty for all
+     * @param status the status, or null for all
+     * @param tenantIdPrefix the prefix of the tenant ids, or empty for all
+     * @param pageable the page number and size
+     * @return the page
+     */
+    public Page<TenantDataSourceModel> findTenantDataSourcePage(String dbType, Boolean status, String tenantIdPrefix,
+        Pageable pageable) {
+        return tenantRepositoryCustom.findTenantDataSourcePage(dbType, status, tenantIdPrefix, pageable);
+    }
+
+    /**
+     * Find a page of relations ordered by relation id, package name and tenant id.
+     *
+     * @param relationId the relation id, or empty for all
+     * @param tenantId the tenant id, or empty for all
+     * @param pageable the page number and size
+     * @return the page
+     */
+    public Page<TenantRelationModel> findTenantRelationPage(String relationId, String tenantId, Pageable pageable) {
+        return tenantRepositoryCustom.findTenantRelationPage(relationId, tenantId, pageable);
+    }
+
+    /**
+     * Find the next page of enabled datasources ordered by tenant id. Each page is read in a transaction of its own,
+     * so no connection is held between the pages.
+     *
+     * @param afterTenantId the last tenant id of the previous page, or null for the first page
+     * @param size the page size
+     * @return the datasources, fewer than <code>size</code> on the last page
+     */
+    public List<TenantDataSourceModel> findEnabledTenantDataSourcePage(String afterTenantId, int size) {
+        return tenantRepositoryCustom.findEnabledTenantDataSourcePage(afterTenantId, size);
+    }
+
+    /**
+     * Pass each relation that has a package name to <code>action</code> as it is read from the registry.
+     *
+     * @param action the action for each relation
+     * @return the number of relations
+     */
+    public int forEachTenantPackageRelation(Consumer<TenantRelationModel> action) {
+        return tenantRepositoryCustom.forEachTenantPackageRelation(action);
+    }
+
     public boolean existsTenantId(String tenantId) {
         return tenantRepositoryCustom.existsTenantId(tenantId);
     }
@@ -140,23 +201,73 @@ public class TenantDataSourceService {
         return tenantRepositoryCustom.findByTenantId(tenantId);
     }
 
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public DataSource getDataSourceByRelationIdReadOnly(String relationId) {
+        return getDataSourceByRelationId(relationId);
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public String getTenantIdByRelationIdReadOnly(String relationId) {
+        return getTenantIdByRelationId(relationId);
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public List<TenantDataSourceModel> findAllTenantDataSourceReadOnly() {
+        return findAllTenantDataSource();
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public List<TenantRelationModel> findAllTenantRelationReadOnly() {
+        return findAllTenantRelation();
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public Page<TenantDataSourceModel> findTenantDataSourcePageReadOnly(String dbType, Boolean status,
+        String tenantIdPrefix, Pageable pageable) {
+        return findTenantDataSourcePage(dbType, status, tenantIdPrefix, pageable);
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public Page<TenantRelationModel> findTenantRelationPageReadOnly(String relationId, String tenantId,
+        Pageable pageable) {
+        return findTenantRelationPage(relationId, tenantId, pageable);
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public boolean existsTenantIdReadOnly(String tenantId) {
+        return existsTenantId(tenantId);
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public TenantDataSourceModel findByTenantIdReadOnly(String tenantId) {
+        return findByTenantId(tenantId);
+    }
+
+    @Transactional(readOnly = true, propagation = Propagation.SUPPORTS)
+    public boolean existsRelationIdAndPackageNameReadOnly(TenantRelationModel tenantRelationModel) {
+        return existsRelationIdAndPackageName(tenantRelationModel);
+    }
+
     public int updateTenantDataSourceStatus(TenantDataSourceModel tenantDataSourceModel) {
         if (!tenantDataSourceModel.getStatus()) {
             tenantBuilder.destory(tenantDataSourceModel);
         } else {
             publishTenantDataSource(tenantDataSourceModel);
         }
+        tenantRegistryIndex.invalidate();
         return tenantRepositoryCustom.updateTenantDataSourceStatus(tenantDataSourceModel.getTenantId(),
             tenantDataSourceModel.getStatus());
     }
 
     public int insertRelation(TenantRelationModel tenantRelationModel) {
         insertPackageRelation(tenantRelationModel);
+        tenantRegistryIndex.invalidate();
         return tenantRepositoryCustom.insertRelation(tenantRelationModel);
     }
 
     public List<TenantRelationModel> findTenantRelations(TenantRelationModel tenantRelationModel) {
-        return tenantRepositoryCustom.findTenantRelations(tenantRelationModel);
+        return tenantRegistryIndex.findRelations(tenantRelationModel.getRelationId(),
+            tenantRelationModel.getPackageName(), tenantRelationModel.getTenantId());
     }
 
     public boolean existsRelationIdAndPackageName(TenantRelationModel tenantRelationModel) {
@@ -172,6 +283,7 @@ public class TenantDataSourceService {
     public int deleteRelation(Integer id) {
         TenantRelationModel relationModel = tenantRepositoryCustom.findTenantRelationById(id);
         removePackageRelation(relationModel);
+        tenantRegistryIndex.invalidate();
         return tenantRepositoryCustom.deleteRelation(id);
     }
 
@@ -179,6 +291,7 @@ public class TenantDataSourceService {
         TenantRelationModel dbRelation = tenantRepositoryCustom.findTenantRelationById(tenantRelation.getId());
         removePackageRelation(dbRelation);
         insertPackageRelation(tenantRelation);
+        tenantRegistryIndex.invalidate();
 
         return tenantRepositoryCustom.updateTenantRelation(tenantRelation);
     }
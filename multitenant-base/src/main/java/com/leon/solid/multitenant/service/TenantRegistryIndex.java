@@ -0,0 +1,173 @@
+package com.leon.solid.multitenant.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import com.leon.solid.multitenant.config.MultiTenantProperties;
+import com.leon.solid.multitenant.model.TenantDataSourceModel;
+import com.leon.solid.multitenant.model.TenantRelationModel;
+import com.leon.solid.multitenant.repository.TenantRepositoryCustom;
+import com.leon.solid.multitenant.utils.StringUtils;
+
+/**
+ * The substring search of the tenant registry for the admin screens. The registry tables are small and change
+ * rarely, so they are cached in memory with a trigram index of the searched columns (relation id, package name and
+ * tenant id), instead of running <code>LIKE '%keyword%'</code> scans on the control database.
+ * <p>
+ * The cache is reloaded on the first search after {@link #invalidate()}, which {@link TenantDataSourceService} calls
+ * on every registry change (again when the transaction completes), or after
+ * {@code multitenant.registrySearch.refreshInterval} for changes made by other applications. The search returns
+ * copies of the cached models.
+ *
+ * @author Leon.Tang
+ */
+@Component
+public class TenantRegistryIndex {
+
+    private final TenantRepositoryCustom tenantRepositoryCustom;
+
+    private final long refreshIntervalNanos;
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final Object loadLock = new Object();
+
+    private volatile Snapshot snapshot;
+
+    @Autowired
+    public TenantRegistryIndex(TenantRepositoryCustom tenantRepositoryCustom,
+        MultiTenantProperties multiTenantProperties) {
+        Duration refreshInterval = multiTenantProperties.getRegistrySearch().getRefreshInterval();
+        Assert.isTrue(refreshInterval != null && !refreshInterval.isNegative() && !refreshInterval.isZero(),
+            "multitenant.registrySearch.refreshInterval must be positive!");
+        this.tenantRepositoryCustom = tenantRepositoryCustom;
+        this.refreshIntervalNanos = refreshInterval.toNanos();
+    }
+
+    /**
+     * Find the relations whose relation id and package name contain the given texts.
+     *
+     * @param relationId the text the relation id contains, or empty for all
+     * @param packageName the text the package name contains, or empty for all that have a package name
+     * @param tenantId the tenant id of the relations, or empty for all
+     * @return the relations ordered by relation id, package name and tenant id
+     */
+    public List<TenantRelationModel> findRelations(String relationId, String packageName, String tenantId) {
+        Snapshot current = snapshot();
+        BitSet matches = current.relationIds.search(relationId);
+        if (!StringUtils.isEmpty(packageName)) {
+            matches.and(current.packageNames.search(packageName));
+        } else {
+            // like the former "package_name like '%%'", which never matched a null package name
+            matches.andNot(current.nullPackageNames);
+        }
+        List<TenantRelationModel> result = new ArrayList<>();
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            TenantRelationModel relation = current.relations.get(i);
+            if (StringUtils.isEmpty(tenantId) || tenantId.equals(relation.getTenantId())) {
+                result.add(copy(relation, TenantRelationModel::new));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the datasources whose tenant id contains <code>tenantId</code>.
+     *
+     * @param dbType the datasource type (jdbc, jndi, bean), or empty for all
+     * @param tenantId the text the tenant id contains, or empty for all
+     * @return the datasources ordered by tenant id
+     */
+    public List<TenantDataSourceModel> findDataSources(String dbType, String tenantId) {
+        Snapshot current = snapshot();
+        BitSet matches = current.tenantIds.search(tenantId);
+        List<TenantDataSourceModel> result = new ArrayList<>();
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            TenantDataSourceModel dataSource = current.dataSources.get(i);
+            if (StringUtils.isEmpty(dbType) || dbType.equals(dataSource.getDbType())) {
+                result.add(copy(dataSource, TenantDataSourceModel::new));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reload the registry on the next search. Inside a transaction, it is invalidated again when the transaction
+     * completes, so a search running meanwhile cannot cache the registry before the change is committed.
+     */
+    public void invalidate() {
+        this.version.incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    version.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = this.snapshot;
+        if (isValid(current)) {
+            return current;
+        }
+        synchronized (this.loadLock) {
+            current = this.snapshot;
+            if (!isValid(current)) {
+                long loadVersion = this.version.get();
+                current = new Snapshot(loadVersion, this.tenantRepositoryCustom.findTenantRelationModelList(),
+                    this.tenantRepositoryCustom.findTenantDataSourceList());
+                this.snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    private boolean isValid(Snapshot current) {
+        return current != null && current.version == this.version.get()
+            && System.nanoTime() - current.loadTime < this.refreshIntervalNanos;
+    }
+
+    private static <T> T copy(T source, Supplier<T> target) {
+        T copy = target.get();
+        BeanUtils.copyProperties(source, copy);
+        return copy;
+    }
+
+    private static final class Snapshot {
+        private final long version;
+        private final long loadTime = System.nanoTime();
+        private final List<TenantRelationModel> relations;
+        private final NGramIndex<TenantRelationModel> relationIds;
+        private final NGramIndex<TenantRelationModel> packageNames;
+        private final BitSet nullPackageNames = new BitSet();
+        private final List<TenantDataSourceModel> dataSources;
+        private final NGramIndex<TenantDataSourceModel> tenantIds;
+
+        Snapshot(long version, List<TenantRelationModel> relations, List<TenantDataSourceModel> dataSources) {
+            this.version = version;
+            this.relations = relations;
+            this.relationIds = new NGramIndex<>(relations, TenantRelationModel::getRelationId);
+            this.packageNames = new NGramIndex<>(relations, TenantRelationModel::getPackageName);
+            for (int i = 0; i < relations.size(); i++) {
+                if (relations.get(i).getPackageName() == null) {
+                    this.nullPackageNames.set(i);
+                }
+            }
+            this.dataSources = dataSources;
+            this.tenantIds = new NGramIndex<>(dataSources, TenantDataSourceModel::getTenantId);
+        }
+    }
+}
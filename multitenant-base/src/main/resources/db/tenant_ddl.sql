@@ -5,6 +5,11 @@ CREATE TABLE sys_tenant_relation
     tenant_id    varchar(64) NOT NULL DEFAULT ' '::character varying,
     package_name varchar(255)
 );
+-- exact and prefix lookups of the routing paths (package_name like 'prefix%')
+create index sys_tenant_relation_relation_package_idx
+    on sys_tenant_relation (relation_id, package_name varchar_pattern_ops);
+create index sys_tenant_relation_tenant_idx
+    on sys_tenant_relation (tenant_id);
 
 create table sys_tenant_datasource
 (
@@ -23,4 +28,33 @@ create table sys_tenant_datasource
 );
 comment on column sys_tenant_datasource.status is '0-disable 1-enable';
 alter table sys_tenant_datasource
-    owner to polarwind;
\ No newline at end of file
+    owner to polarwind;
+
+create table sys_tenant_task_checkpoint
+(
+    job_name   varchar(64) not null,
+    run_key    varchar(64) not null,
+    tenant_id  varchar(64) not null,
+    status     varchar(1)  not null,
+    message    varchar(255),
+    updated_at timestamp   not null,
+    constraint sys_tenant_task_checkpoint_pk
+        primary key (job_name, run_key, tenant_id)
+);
+comment on column sys_tenant_task_checkpoint.status is '0-failed 1-completed';
+
+create table sys_tenant_usage
+(
+    tenant_id          varchar(64) not null,
+    window_start       timestamp   not null,
+    window_end         timestamp   not null,
+    db_time_ms         bigint      not null,
+    statements         bigint      not null,
+    rows_read          bigint      not null,
+    rows_written       bigint      not null,
+    connection_hold_ms bigint      not null,
+    transactions       bigint      not null
+);
+create index sys_tenant_usage_tenant_window_idx
+    on sys_tenant_usage (tenant_id, window_start);
+comment on table sys_tenant_usage is 'resource usage of the tenants per node and window';
\ No newline at end of file
@@ -0,0 +1,87 @@
+package com.leon.solid.multitenant.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.boot.jta.bitronix.PoolingDataSourceBean;
+
+import com.leon.solid.multitenant.config.MultiTenantProperties.DataSourceProperties;
+import com.leon.solid.multitenant.datasource.PoolingDataSourceFactory;
+import com.leon.solid.multitenant.utils.PropertiesBuilder;
+import com.leon.solid.multitenant.utils.StringUtils;
+
+/**
+ * The helpers on the tenant build path: the driver properties of a pooled datasource and the string helpers.
+ *
+ * @author Leon.Tang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BuildPathBenchmark {
+
+    private final PoolingDataSourceFactory poolingDataSourceFactory = new PoolingDataSourceFactory();
+
+    private DataSourceProperties dataSourceProperties;
+
+    private Map<String, String> xaProperties;
+
+    private Properties base;
+
+    private Properties additional;
+
+    private Object[] elements;
+
+    @Setup
+    public void setUp() {
+        String tenantId = H2Tenants.tenantId(0);
+        this.dataSourceProperties = new DataSourceProperties();
+        this.dataSourceProperties.setTenantId(tenantId);
+        this.dataSourceProperties.setUrl("jdbc:h2:mem:" + tenantId + ";DB_CLOSE_DELAY=-1");
+        this.dataSourceProperties.setUsername("sa");
+        this.dataSourceProperties.setPassword("");
+        this.dataSourceProperties.getXa().setDataSourceClassName("org.h2.jdbcx.JdbcDataSource");
+
+        this.xaProperties = new LinkedHashMap<>(16);
+        for (int i = 0; i < 8; i++) {
+            this.xaProperties.put("property" + i, "value" + i);
+        }
+        this.base = new PropertiesBuilder().putAll(this.xaProperties).build();
+        this.additional = new PropertiesBuilder().put("property0", "").put("property8", "value8").build();
+        this.elements = new Object[] {tenantId, null, 1, "EntityManagerFactory"};
+    }
+
+    @Benchmark
+    public PoolingDataSourceBean poolingDataSource() {
+        return this.poolingDataSourceFactory.build(this.dataSourceProperties);
+    }
+
+    @Benchmark
+    public Properties putAll() {
+        return new PropertiesBuilder().putAll(this.xaProperties).build();
+    }
+
+    @Benchmark
+    public Properties merge() {
+        return PropertiesBuilder.merge(this.base, this.additional);
+    }
+
+    @Benchmark
+    public String join() {
+        return StringUtils.join(",", this.elements);
+    }
+
+    @Benchmark
+    public boolean hasText() {
+        return StringUtils.hasText(this.dataSourceProperties.getUrl());
+    }
+}
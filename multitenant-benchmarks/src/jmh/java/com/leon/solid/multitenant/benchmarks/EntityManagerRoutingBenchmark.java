@@ -0,0 +1,89 @@
+package com.leon.solid.multitenant.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+
+import com.leon.solid.multitenant.config.MultiTenantJpaConfiguration;
+import com.leon.solid.multitenant.config.TenantHolder;
+import com.leon.solid.multitenant.monitor.TenantUsageMeter;
+
+/**
+ * The overhead of the routing <code>entityManagerFactory</code> proxy on <code>createEntityManager</code>, against
+ * the factory of the tenant called directly.
+ *
+ * @author Leon.Tang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EntityManagerRoutingBenchmark {
+
+    @Param({"1", "16"})
+    private int tenants;
+
+    private Map<String, LocalContainerEntityManagerFactoryBean> factories;
+
+    private EntityManagerFactory routing;
+
+    private EntityManagerFactory direct;
+
+    private String tenantId;
+
+    @Setup
+    public void setUp() {
+        this.factories = H2Tenants.entityManagerFactories(this.tenants);
+        this.routing = new MultiTenantJpaConfiguration().entityManagerFactory(this.factories, null,
+            new StaticListableBeanFactory().getBeanProvider(TenantUsageMeter.class));
+        this.tenantId = H2Tenants.tenantId(this.tenants - 1);
+        this.direct = this.factories.get(this.tenantId).getObject();
+    }
+
+    @TearDown
+    public void tearDown() {
+        H2Tenants.close(this.factories);
+    }
+
+    /**
+     * The tenant of the benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class CurrentTenant {
+
+        @Setup
+        public void setUp(EntityManagerRoutingBenchmark benchmark) {
+            TenantHolder.setTenant(benchmark.tenantId);
+        }
+
+        @TearDown
+        public void tearDown() {
+            TenantHolder.cleanupTenant();
+        }
+    }
+
+    @Benchmark
+    public void direct() {
+        EntityManager entityManager = this.direct.createEntityManager();
+        entityManager.close();
+    }
+
+    @Benchmark
+    public void routed(CurrentTenant currentTenant) {
+        EntityManager entityManager = this.routing.createEntityManager();
+        entityManager.close();
+    }
+}
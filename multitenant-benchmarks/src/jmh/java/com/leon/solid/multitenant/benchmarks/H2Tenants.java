@@ -0,0 +1,79 @@
+package com.leon.solid.multitenant.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+/**
+ * In-memory H2 tenants for the benchmarks, so they run offline and without a transaction manager. Each tenant is a
+ * named in-memory database that lives until the JVM exits.
+ *
+ * @author Leon.Tang
+ */
+final class H2Tenants {
+
+    private H2Tenants() {
+    }
+
+    /**
+     * Get the id of a benchmark tenant.
+     *
+     * @param index the index of the tenant
+     * @return the tenant id
+     */
+    static String tenantId(int index) {
+        return "tenant" + index;
+    }
+
+    /**
+     * Get the datasource of an in-memory tenant database.
+     *
+     * @param tenantId the tenant id
+     * @return the datasource
+     */
+    static DataSource dataSource(String tenantId) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + tenantId + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        return dataSource;
+    }
+
+    /**
+     * Build resource-local entity manager factories like {@code TenantBuilder} does, one per tenant.
+     *
+     * @param tenants the number of tenants
+     * @return the factories by tenant id
+     */
+    static Map<String, LocalContainerEntityManagerFactoryBean> entityManagerFactories(int tenants) {
+        Map<String, LocalContainerEntityManagerFactoryBean> factories = new ConcurrentHashMap<>(16);
+        for (int i = 0; i < tenants; i++) {
+            String tenantId = tenantId(i);
+            LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+            factory.setPersistenceUnitName(tenantId);
+            factory.setDataSource(dataSource(tenantId));
+            factory.setPackagesToScan(H2Tenants.class.getPackage().getName());
+            factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+            Map<String, Object> jpaPropertyMap = new HashMap<>(4);
+            jpaPropertyMap.put("hibernate.hbm2ddl.auto", "none");
+            factory.setJpaPropertyMap(jpaPropertyMap);
+            factory.afterPropertiesSet();
+            factories.put(tenantId, factory);
+        }
+        return factories;
+    }
+
+    /**
+     * Close entity manager factories built by {@link #entityManagerFactories(int)}.
+     *
+     * @param factories the factories
+     */
+    static void close(Map<String, LocalContainerEntityManagerFactoryBean> factories) {
+        factories.values().forEach(LocalContainerEntityManagerFactoryBean::destroy);
+    }
+}
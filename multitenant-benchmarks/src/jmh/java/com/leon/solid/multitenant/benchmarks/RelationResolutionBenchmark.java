@@ -0,0 +1,130 @@
+package com.leon.solid.multitenant.benchmarks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import com.leon.solid.multitenant.config.MultiTenantProperties;
+import com.leon.solid.multitenant.model.TenantRelationModel;
+import com.leon.solid.multitenant.repository.TenantRepositoryCustom;
+
+/**
+ * Resolving a relation id to its tenant: the registry query behind
+ * <code>TenantDataSourceService.changeDataSourceByRelationId</code> on an H2 control database, and the in-memory
+ * package relation map of <code>TenantBuilder</code>.
+ *
+ * @author Leon.Tang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RelationResolutionBenchmark {
+
+    private static final String CONTROL_TENANT_ID = "control";
+
+    private static final int TENANTS = 16;
+
+    @Param({"100", "10000"})
+    private int relations;
+
+    private TenantRepositoryCustom tenantRepositoryCustom;
+
+    private Map<String, HashMap<String, String>> tenantPackageRelation;
+
+    private String[] relationIds;
+
+    private String[] packageNames;
+
+    private int next;
+
+    private SingleConnectionDataSource dataSource;
+
+    @Setup
+    public void setUp() throws SQLException {
+        // One reused connection stands in for the pool, so the query is measured rather than opening connections
+        this.dataSource = new SingleConnectionDataSource(
+            H2Tenants.dataSource(CONTROL_TENANT_ID + this.relations).getConnection(), true);
+        this.relationIds = new String[this.relations];
+        this.packageNames = new String[this.relations];
+        this.tenantPackageRelation = new HashMap<>(16);
+        try (Connection connection = this.dataSource.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("drop table if exists sys_tenant_relation");
+                statement.execute("create table sys_tenant_relation (id int auto_increment primary key,"
+                    + " relation_id varchar(64) not null, tenant_id varchar(64) not null, package_name varchar(255))");
+                statement.execute("create index idx_sys_tenant_relation on sys_tenant_relation"
+                    + " (relation_id, package_name)");
+            }
+            try (PreparedStatement ps = connection.prepareStatement(
+                "insert into sys_tenant_relation (relation_id, tenant_id, package_name) values (?, ?, ?)")) {
+                for (int i = 0; i < this.relations; i++) {
+                    String relationId = "relation" + i;
+                    String tenantId = H2Tenants.tenantId(i % TENANTS);
+                    String packageName = "com.example.module" + (i % 8);
+                    this.relationIds[i] = relationId;
+                    this.packageNames[i] = packageName;
+                    ps.setString(1, relationId);
+                    ps.setString(2, tenantId);
+                    ps.setString(3, null);
+                    ps.addBatch();
+                    ps.setString(3, packageName);
+                    ps.addBatch();
+                    this.tenantPackageRelation.computeIfAbsent(relationId, key -> new HashMap<>(16))
+                        .put(packageName, tenantId);
+                }
+                ps.executeBatch();
+            }
+        }
+        MultiTenantProperties multiTenantProperties = new MultiTenantProperties();
+        multiTenantProperties.setControlTenantId(CONTROL_TENANT_ID);
+        this.tenantRepositoryCustom = new TenantRepositoryCustom(multiTenantProperties,
+            Collections.singletonMap(CONTROL_TENANT_ID, this.dataSource));
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.dataSource.destroy();
+    }
+
+    @Benchmark
+    public String registryQuery() {
+        TenantRelationModel relation = this.tenantRepositoryCustom.findTenantRation(this.relationIds[next()], null);
+        return relation.getTenantId();
+    }
+
+    @Benchmark
+    public String registryQueryByPackage() {
+        int index = next();
+        TenantRelationModel relation =
+            this.tenantRepositoryCustom.findTenantRation(this.relationIds[index], this.packageNames[index]);
+        return relation.getTenantId();
+    }
+
+    @Benchmark
+    public String packageRelationMap() {
+        int index = next();
+        return this.tenantPackageRelation.get(this.relationIds[index]).get(this.packageNames[index]);
+    }
+
+    private int next() {
+        int index = this.next;
+        this.next = index + 1 == this.relations ? 0 : index + 1;
+        return index;
+    }
+}
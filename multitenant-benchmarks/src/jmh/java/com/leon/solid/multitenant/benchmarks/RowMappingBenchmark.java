@@ -0,0 +1,241 @@
+package com.leon.solid.multitenant.benchmarks;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.transform.ResultTransformer;
+import org.hibernate.transform.Transformers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.leon.solid.multitenant.repository.support.TupleMapperResultTransformer;
+
+/**
+ * Mapping native query rows to beans with Hibernate's <code>Transformers.aliasToBean</code>, against the
+ * {@link TupleMapperResultTransformer} the repository binds. Each invocation maps one result set the way Hibernate
+ * does, with a new transformer and the same aliases array for every row.
+ *
+ * @author Leon.Tang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RowMappingBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int rows;
+
+    @Param({"4", "16"})
+    private int columns;
+
+    private String[] aliases;
+
+    private Object[][] tuples;
+
+    @Setup
+    public void setUp() {
+        this.aliases = new String[this.columns];
+        for (int i = 0; i < this.columns; i++) {
+            this.aliases[i] = "c" + i;
+        }
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        this.tuples = new Object[this.rows][];
+        for (int row = 0; row < this.rows; row++) {
+            Object[] tuple = new Object[this.columns];
+            for (int i = 0; i < this.columns; i++) {
+                switch (i % 4) {
+                    case 0:
+                        tuple[i] = Long.valueOf(row);
+                        break;
+                    case 1:
+                        tuple[i] = "name" + row;
+                        break;
+                    case 2:
+                        tuple[i] = BigDecimal.valueOf(row, 2);
+                        break;
+                    default:
+                        tuple[i] = now;
+                        break;
+                }
+            }
+            this.tuples[row] = tuple;
+        }
+    }
+
+    @Benchmark
+    public List<?> aliasToBean() {
+        return map(Transformers.aliasToBean(Row.class));
+    }
+
+    @Benchmark
+    public List<?> tupleMapper() {
+        return map(new TupleMapperResultTransformer<>(Row.class));
+    }
+
+    private List<?> map(ResultTransformer transformer) {
+        List<Object> result = new ArrayList<>(this.rows);
+        for (Object[] tuple : this.tuples) {
+            result.add(transformer.transformTuple(tuple, this.aliases));
+        }
+        return transformer.transformList(result);
+    }
+
+    /**
+     * The mapped bean, the columns cycle through the common column types.
+     */
+    public static class Row {
+        private Long c0;
+        private String c1;
+        private BigDecimal c2;
+        private Timestamp c3;
+        private Long c4;
+        private String c5;
+        private BigDecimal c6;
+        private Timestamp c7;
+        private Long c8;
+        private String c9;
+        private BigDecimal c10;
+        private Timestamp c11;
+        private Long c12;
+        private String c13;
+        private BigDecimal c14;
+        private Timestamp c15;
+
+        public Long getC0() {
+            return c0;
+        }
+
+        public void setC0(Long c0) {
+            this.c0 = c0;
+        }
+
+        public String getC1() {
+            return c1;
+        }
+
+        public void setC1(String c1) {
+            this.c1 = c1;
+        }
+
+        public BigDecimal getC2() {
+            return c2;
+        }
+
+        public void setC2(BigDecimal c2) {
+            this.c2 = c2;
+        }
+
+        public Timestamp getC3() {
+            return c3;
+        }
+
+        public void setC3(Timestamp c3) {
+            this.c3 = c3;
+        }
+
+        public Long getC4() {
+            return c4;
+        }
+
+        public void setC4(Long c4) {
+            this.c4 = c4;
+        }
+
+        public String getC5() {
+            return c5;
+        }
+
+        public void setC5(String c5) {
+            this.c5 = c5;
+        }
+
+        public BigDecimal getC6() {
+            return c6;
+        }
+
+        public void setC6(BigDecimal c6) {
+            this.c6 = c6;
+        }
+
+        public Timestamp getC7() {
+            return c7;
+        }
+
+        public void setC7(Timestamp c7) {
+            this.c7 = c7;
+        }
+
+        public Long getC8() {
+            return c8;
+        }
+
+        public void setC8(Long c8) {
+            this.c8 = c8;
+        }
+
+        public String getC9() {
+            return c9;
+        }
+
+        public void setC9(String c9) {
+            this.c9 = c9;
+        }
+
+        public BigDecimal getC10() {
+            return c10;
+        }
+
+        public void setC10(BigDecimal c10) {
+            this.c10 = c10;
+        }
+
+        public Timestamp getC11() {
+            return c11;
+        }
+
+        public void setC11(Timestamp c11) {
+            this.c11 = c11;
+        }
+
+        public Long getC12() {
+            return c12;
+        }
+
+        public void setC12(Long c12) {
+            this.c12 = c12;
+        }
+
+        public String getC13() {
+            return c13;
+        }
+
+        public void setC13(String c13) {
+            this.c13 = c13;
+        }
+
+        public BigDecimal getC14() {
+            return c14;
+        }
+
+        public void setC14(BigDecimal c14) {
+            this.c14 = c14;
+        }
+
+        public Timestamp getC15() {
+            return c15;
+        }
+
+        public void setC15(Timestamp c15) {
+            this.c15 = c15;
+        }
+    }
+}
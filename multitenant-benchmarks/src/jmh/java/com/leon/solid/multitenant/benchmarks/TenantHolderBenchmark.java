@@ -0,0 +1,74 @@
+package com.leon.solid.multitenant.benchmarks;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.leon.solid.multitenant.config.TenantHolder;
+
+/**
+ * The cost of the tenant thread local, and of handing the tenant over to a pooled thread the way the tenant
+ * executors do: capture it on the caller, run the task with {@link TenantHolder#callWithTenant}.
+ *
+ * @author Leon.Tang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TenantHolderBenchmark {
+
+    private static final String TENANT_ID = H2Tenants.tenantId(0);
+
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() {
+        this.executor = Executors.newSingleThreadExecutor();
+        TenantHolder.setTenant(TENANT_ID);
+    }
+
+    @TearDown
+    public void tearDown() {
+        TenantHolder.cleanupTenant();
+        this.executor.shutdownNow();
+    }
+
+    @Benchmark
+    public String get() {
+        return TenantHolder.getCurrentTenant();
+    }
+
+    @Benchmark
+    public String setGetCleanup() {
+        TenantHolder.setTenant(TENANT_ID);
+        String tenantId = TenantHolder.getCurrentTenant();
+        TenantHolder.cleanupTenant();
+        return tenantId;
+    }
+
+    @Benchmark
+    public String callWithTenant() throws Exception {
+        return TenantHolder.callWithTenant(TENANT_ID, TenantHolder::getCurrentTenant);
+    }
+
+    @Benchmark
+    public String submit() throws InterruptedException, ExecutionException {
+        return this.executor.submit(() -> TENANT_ID).get();
+    }
+
+    @Benchmark
+    public String submitWithTenant() throws InterruptedException, ExecutionException {
+        String tenantId = TenantHolder.getCurrentTenant();
+        return this.executor.submit(() -> TenantHolder.callWithTenant(tenantId, TenantHolder::getCurrentTenant)).get();
+    }
+}
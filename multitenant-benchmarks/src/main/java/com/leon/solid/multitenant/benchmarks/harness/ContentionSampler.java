@@ -0,0 +1,106 @@
+package com.leon.solid.multitenant.benchmarks.harness;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Samples the states of the load threads to find the locks they queue on: the monitors they are blocked on and the
+ * locks or conditions they park on, counted by lock. With thread contention monitoring, the total time the threads
+ * were blocked on monitors is reported as well.
+ *
+ * @author Leon.Tang
+ */
+final class ContentionSampler implements Runnable {
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private final long[] threadIds;
+
+    private final long[] blockedTimes;
+
+    private final long intervalMillis;
+
+    private final Map<String, Long> samplesByLock = new HashMap<>(64);
+
+    private volatile boolean running = true;
+
+    private long samples;
+
+    ContentionSampler(List<Thread> threads, long intervalMillis) {
+        this.threadIds = new long[threads.size()];
+        for (int i = 0; i < this.threadIds.length; i++) {
+            this.threadIds[i] = threads.get(i).getId();
+        }
+        this.blockedTimes = new long[this.threadIds.length];
+        this.intervalMillis = intervalMillis;
+        if (this.threadBean.isThreadContentionMonitoringSupported()) {
+            this.threadBean.setThreadContentionMonitoringEnabled(true);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            ThreadInfo[] infos = this.threadBean.getThreadInfo(this.threadIds, 0);
+            for (int i = 0; i < infos.length; i++) {
+                ThreadInfo info = infos[i];
+                if (info == null) {
+                    continue;
+                }
+                this.blockedTimes[i] = Math.max(this.blockedTimes[i], info.getBlockedTime());
+                if (info.getLockName() == null) {
+                    continue;
+                }
+                this.samples++;
+                this.samplesByLock.merge(info.getThreadState() + " " + info.getLockName(), 1L, Long::sum);
+            }
+            try {
+                Thread.sleep(this.intervalMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    void stop() {
+        this.running = false;
+    }
+
+    /**
+     * Get the total time the load threads were blocked on monitors, as of the last sample.
+     *
+     * @return the time in milliseconds, -1 without thread contention monitoring
+     */
+    long blockedMillis() {
+        if (!this.threadBean.isThreadContentionMonitoringEnabled()) {
+            return -1L;
+        }
+        long total = 0L;
+        for (long blockedTime : this.blockedTimes) {
+            total += blockedTime;
+        }
+        return total;
+    }
+
+    /**
+     * Get the locks the load threads were most often found waiting on, call it after the sampler has stopped.
+     *
+     * @param limit the maximum number of locks
+     * @return the thread state and lock, with the share of the waiting samples, the most contended first
+     */
+    List<String> topLocks(int limit) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(this.samplesByLock.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        List<String> result = new ArrayList<>(limit);
+        for (int i = 0; i < entries.size() && i < limit; i++) {
+            result.add(entries.get(i).getKey() + " " + (entries.get(i).getValue() * 100 / this.samples) + "%");
+        }
+        return result;
+    }
+}
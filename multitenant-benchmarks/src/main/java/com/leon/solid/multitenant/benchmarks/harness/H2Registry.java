@@ -0,0 +1,169 @@
+package com.leon.solid.multitenant.benchmarks.harness;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.leon.solid.multitenant.model.TenantDataSourceModel;
+
+/**
+ * The H2 control database of a harness run: the registry tables of <code>tenant_ddl.sql</code> in H2 syntax, and
+ * the tenant rows the application builds its tenants from.
+ *
+ * @author Leon.Tang
+ */
+public final class H2Registry {
+
+    /**
+     * The id of the control tenant, the default tenant of the harness application.
+     */
+    public static final String CONTROL_TENANT_ID = "control";
+
+    private static final String DRIVER_CLASS_NAME = "org.h2.Driver";
+
+    private static final String XA_DATASOURCE_CLASS_NAME = "org.h2.jdbcx.JdbcDataSource";
+
+    private static final String USERNAME = "sa";
+
+    private final Path directory;
+
+    /**
+     * Create the registry of in-memory tenant databases, or of file databases in <code>directory</code>.
+     *
+     * @param directory the directory of the file databases, or null for in-memory databases
+     */
+    public H2Registry(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Create the registry tables in the control database.
+     *
+     * @throws SQLException if the tables cannot be created
+     */
+    public void createTables() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url(CONTROL_TENANT_ID), USERNAME, "");
+            Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists sys_tenant_relation");
+            statement.execute("drop table if exists sys_tenant_datasource");
+            statement.execute("create table sys_tenant_relation (id int auto_increment primary key,"
+                + " relation_id varchar(64) not null default ' ', tenant_id varchar(64) not null default ' ',"
+                + " package_name varchar(255))");
+            statement.execute("create index sys_tenant_relation_relation_package_idx"
+                + " on sys_tenant_relation (relation_id, package_name)");
+            statement.execute("create table sys_tenant_datasource (tenant_id varchar(64) not null primary key,"
+                + " db_type varchar(20) not null, name varchar(64), db_url varchar(255), db_driver varchar(64),"
+                + " db_extend varchar(255), db_username varchar(64), db_password varchar(64), remark varchar(64),"
+                + " status varchar(1) default '1')");
+        }
+    }
+
+    /**
+     * Insert the enabled jdbc tenants <code>tenant0</code> to <code>tenant{count - 1}</code>.
+     *
+     * @param count the number of tenants
+     * @throws SQLException if the tenants cannot be inserted
+     */
+    public void insertTenants(int count) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url(CONTROL_TENANT_ID), USERNAME, "");
+            PreparedStatement ps = connection.prepareStatement("insert into sys_tenant_datasource (tenant_id,"
+                + " db_type, db_url, db_driver, db_extend, db_username, db_password, status)"
+                + " values (?, 'jdbc', ?, ?, ?, ?, '', '1')")) {
+            for (int i = 0; i < count; i++) {
+                TenantDataSourceModel model = tenant(tenantId(i));
+                ps.setString(1, model.getTenantId());
+                ps.setString(2, model.getDbUrl());
+                ps.setString(3, model.getDbDriver());
+                ps.setString(4, model.getDbExtend());
+                ps.setString(5, model.getDbUsername());
+                ps.addBatch();
+                if ((i + 1) % 500 == 0) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Create the marker table of a tenant database, its only row holds the tenant id, so a query can tell which
+     * tenant database it ran on.
+     *
+     * @param tenantId the tenant id
+     * @throws SQLException if the table cannot be created
+     */
+    public void markTenant(String tenantId) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url(tenantId), USERNAME, "");
+            Statement statement = connection.createStatement()) {
+            statement.execute("drop table if exists tenant_marker");
+            statement.execute("create table tenant_marker (tenant_id varchar(64) not null)");
+            statement.execute("insert into tenant_marker (tenant_id) values ('" + tenantId + "')");
+        }
+    }
+
+    /**
+     * Get the id of a harness tenant.
+     *
+     * @param index the index of the tenant
+     * @return the tenant id
+     */
+    public static String tenantId(int index) {
+        return "tenant" + index;
+    }
+
+    /**
+     * Build the registry row of a jdbc tenant on its own H2 database.
+     *
+     * @param tenantId the tenant id
+     * @return the enabled tenant
+     */
+    public TenantDataSourceModel tenant(String tenantId) {
+        TenantDataSourceModel model = new TenantDataSourceModel();
+        model.setTenantId(tenantId);
+        model.setDbType("jdbc");
+        model.setDbUrl(url(tenantId));
+        model.setDbDriver(DRIVER_CLASS_NAME);
+        model.setDbExtend(XA_DATASOURCE_CLASS_NAME);
+        model.setDbUsername(USERNAME);
+        model.setDbPassword("");
+        model.setStatus(true);
+        return model;
+    }
+
+    /**
+     * Get the JDBC URL of a tenant database.
+     *
+     * @param tenantId the tenant id
+     * @return the URL
+     */
+    public String url(String tenantId) {
+        if (this.directory == null) {
+            return "jdbc:h2:mem:" + tenantId + ";DB_CLOSE_DELAY=-1";
+        }
+        return "jdbc:h2:file:" + this.directory.resolve(tenantId).toAbsolutePath();
+    }
+
+    /**
+     * Get the application properties of the control tenant, the only configured tenant.
+     *
+     * @return the properties
+     */
+    public Map<String, Object> applicationProperties() {
+        String prefix = "multitenant.dataSources[0].";
+        Map<String, Object> properties = new HashMap<>(16);
+        properties.put(prefix + "tenantId", CONTROL_TENANT_ID);
+        properties.put(prefix + "defaultTenant", true);
+        properties.put(prefix + "url", url(CONTROL_TENANT_ID));
+        properties.put(prefix + "driverClassName", DRIVER_CLASS_NAME);
+        properties.put(prefix + "username", USERNAME);
+        properties.put(prefix + "password", "");
+        properties.put(prefix + "xa.dataSourceClassName", XA_DATASOURCE_CLASS_NAME);
+        properties.put("multitenant.entityScanPackages", HarnessApplication.class.getPackage().getName());
+        return properties;
+    }
+}
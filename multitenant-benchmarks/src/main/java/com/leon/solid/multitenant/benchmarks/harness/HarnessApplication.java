@@ -0,0 +1,47 @@
+package com.leon.solid.multitenant.benchmarks.harness;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.springframework.boot.Banner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.leon.solid.multitenant.annotation.EnableMultiTenantDataSource;
+
+/**
+ * The application the harnesses boot: the multitenant configuration with Bitronix and no application beans. It is
+ * not a <code>@Configuration</code>, so the component scan of the library does not pick it up.
+ *
+ * @author Leon.Tang
+ */
+@EnableAutoConfiguration(exclude = DataSourceAutoConfiguration.class)
+@EnableMultiTenantDataSource
+public class HarnessApplication {
+
+    /**
+     * Boot the application on the control database of <code>registry</code>.
+     *
+     * @param registry the registry, its tables must exist
+     * @param workDirectory the directory of the transaction logs
+     * @param properties additional application properties
+     * @param components additional bean classes
+     * @return the running application
+     */
+    public static ConfigurableApplicationContext run(H2Registry registry, Path workDirectory,
+        Map<String, Object> properties, Class<?>... components) {
+        Map<String, Object> defaults = registry.applicationProperties();
+        defaults.put("spring.jta.log-dir", workDirectory.resolve("tx-logs").toString());
+        defaults.put("spring.jpa.open-in-view", false);
+        defaults.put("logging.level.root", "WARN");
+        defaults.putAll(properties);
+        SpringApplication application = new SpringApplication(HarnessApplication.class);
+        application.addPrimarySources(Arrays.asList(components));
+        application.setBannerMode(Banner.Mode.OFF);
+        application.setDefaultProperties(defaults);
+        return application.run();
+    }
+}
@@ -0,0 +1,70 @@
+package com.leon.solid.multitenant.benchmarks.harness;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free log-linear latency histogram in microseconds: exact below 16 us, then 16 sub-buckets per power of two,
+ * so a quantile is within 1/16 of the recorded value.
+ *
+ * @author Leon.Tang
+ */
+final class LatencyRecorder {
+
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS * (64 - SUB_BUCKET_BITS + 1));
+
+    void record(long nanos) {
+        this.counts.incrementAndGet(index(Math.max(0L, nanos / 1000L)));
+    }
+
+    long count() {
+        long total = 0L;
+        for (int i = 0; i < this.counts.length(); i++) {
+            total += this.counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Get the upper bound of the bucket that holds the <code>quantile</code> of the recorded latencies.
+     *
+     * @param quantile the quantile, from 0 to 1
+     * @return the latency in microseconds, 0 if nothing is recorded
+     */
+    long quantileMicros(double quantile) {
+        long total = count();
+        if (total == 0L) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long)Math.ceil(quantile * total));
+        long seen = 0L;
+        for (int i = 0; i < this.counts.length(); i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(this.counts.length() - 1);
+    }
+
+    private static int index(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int)micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int)(micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
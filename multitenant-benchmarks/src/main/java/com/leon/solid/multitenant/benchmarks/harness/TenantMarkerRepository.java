@@ -0,0 +1,21 @@
+package com.leon.solid.multitenant.benchmarks.harness;
+
+import com.leon.solid.multitenant.repository.JpaNativeQuerySupportRepository;
+
+/**
+ * Reads the marker row of the tenant database the current entity manager is bound to, see
+ * {@link H2Registry#markTenant(String)}.
+ *
+ * @author Leon.Tang
+ */
+public class TenantMarkerRepository extends JpaNativeQuerySupportRepository {
+
+    /**
+     * Read the id of the tenant whose database the query ran on.
+     *
+     * @return the tenant id of the marker row
+     */
+    public String findMarkedTenantId() {
+        return queryForObject("select tenant_id from tenant_marker", String.class);
+    }
+}
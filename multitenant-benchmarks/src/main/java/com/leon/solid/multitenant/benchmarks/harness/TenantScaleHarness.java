@@ -0,0 +1,141 @@
+package com.leon.solid.multitenant.benchmarks.harness;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.FileSystemUtils;
+
+/**
+ * Measures how the boot time and footprint of an application with <code>@EnableMultiTenantDataSource</code> grow
+ * with the number of tenants in <code>sys_tenant_datasource</code>. Each tenant count is booted by
+ * {@link TenantScaleProbe} in a fresh JVM, the results of a run are written to
+ * <code>tenant-scale-{version}.json</code> and <code>.csv</code> in the report directory, so the reports of two
+ * versions can be compared side by side. The heap per tenant is the marginal heap over the smallest tenant count,
+ * which leaves out the cost of the application itself.
+ * <p>
+ * Options: <code>--tenants=10,100,1000</code>, <code>--storage=memory|file</code>, <code>--report-dir=dir</code>,
+ * <code>--version=v</code>, <code>--max-heap=4g</code>.
+ *
+ * @author Leon.Tang
+ */
+public final class TenantScaleHarness {
+
+    private TenantScaleHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("tenants", "10,100,1000");
+        options.put("storage", "memory");
+        options.put("report-dir", "build/reports/tenant-scale");
+        options.put("version", "dev");
+        options.put("max-heap", "4g");
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Invalid option: " + arg);
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        Path reportDirectory = Paths.get(options.get("report-dir"));
+        Files.createDirectories(reportDirectory);
+
+        List<Map<String, String>> results = new ArrayList<>();
+        for (String count : options.get("tenants").split(",")) {
+            int tenants = Integer.parseInt(count.trim());
+            Path workDirectory = Files.createTempDirectory(reportDirectory, "work-");
+            try {
+                Map<String, String> result = probe(tenants, workDirectory, options);
+                results.add(result);
+                System.out.println(result);
+            } finally {
+                FileSystemUtils.deleteRecursively(workDirectory);
+            }
+        }
+        addHeapPerTenant(results);
+        write(reportDirectory, options.get("version"), options.get("storage"), results);
+    }
+
+    private static Map<String, String> probe(int tenants, Path workDirectory, Map<String, String> options)
+        throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Xmx" + options.get("max-heap"));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(TenantScaleProbe.class.getName());
+        command.add(String.valueOf(tenants));
+        command.add(workDirectory.toString());
+        command.add(options.get("storage"));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        Map<String, String> result = null;
+        try (BufferedReader reader =
+            new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(TenantScaleProbe.RESULT_PREFIX)) {
+                    result = new LinkedHashMap<>();
+                    for (String field : line.substring(TenantScaleProbe.RESULT_PREFIX.length()).trim().split(" ")) {
+                        int separator = field.indexOf('=');
+                        result.put(field.substring(0, separator), field.substring(separator + 1));
+                    }
+                } else if (line.contains("ERROR") || line.contains("Exception")) {
+                    System.err.println(line);
+                }
+            }
+        }
+        int exitCode = process.waitFor();
+        if (result == null) {
+            throw new IllegalStateException("The probe of " + tenants + " tenants failed (exit code " + exitCode
+                + ")");
+        }
+        return result;
+    }
+
+    private static void addHeapPerTenant(List<Map<String, String>> results) {
+        Map<String, String> smallest = results.get(0);
+        for (Map<String, String> result : results) {
+            long tenants = Long.parseLong(result.get("tenants")) - Long.parseLong(smallest.get("tenants"));
+            long heap = Long.parseLong(result.get("retainedHeapBytes"))
+                - Long.parseLong(smallest.get("retainedHeapBytes"));
+            result.put("heapBytesPerTenant", tenants > 0 ? String.valueOf(heap / tenants) : "");
+        }
+    }
+
+    private static void write(Path reportDirectory, String version, String storage, List<Map<String, String>> results)
+        throws IOException {
+        Path json = reportDirectory.resolve("tenant-scale-" + version + ".json");
+        try (Writer writer = Files.newBufferedWriter(json, StandardCharsets.UTF_8)) {
+            writer.write("{\"version\":\"" + version + "\",\"storage\":\"" + storage + "\",\"java\":\""
+                + System.getProperty("java.version") + "\",\"results\":[");
+            for (int i = 0; i < results.size(); i++) {
+                writer.write(i > 0 ? ",\n  {" : "\n  {");
+                int field = 0;
+                for (Map.Entry<String, String> entry : results.get(i).entrySet()) {
+                    String value = entry.getValue().isEmpty() ? "null" : entry.getValue();
+                    writer.write((field++ > 0 ? "," : "") + "\"" + entry.getKey() + "\":" + value);
+                }
+                writer.write("}");
+            }
+            writer.write("\n]}\n");
+        }
+        Path csv = reportDirectory.resolve("tenant-scale-" + version + ".csv");
+        try (Writer writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            writer.write("version,storage," + String.join(",", results.get(0).keySet()) + "\n");
+            for (Map<String, String> result : results) {
+                writer.write(version + "," + storage + "," + String.join(",", result.values()) + "\n");
+            }
+        }
+        System.out.println("Report written to " + json.toAbsolutePath() + " and " + csv.getFileName());
+    }
+}
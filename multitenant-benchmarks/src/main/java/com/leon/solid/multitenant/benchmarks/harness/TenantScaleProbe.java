@@ -0,0 +1,73 @@
+package com.leon.solid.multitenant.benchmarks.harness;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.context.ConfigurableApplicationContext;
+
+import bitronix.tm.resource.jdbc.PoolingDataSource;
+
+/**
+ * Boots the harness application once with N tenants in a fresh JVM and prints one result line for
+ * {@link TenantScaleHarness}: the time from the start of the boot to the ready application, the heap retained by the
+ * application after a full collection, the live threads and the open pooled connections.
+ * <p>
+ * Arguments: the number of tenants, the work directory, and <code>file</code> to put the tenants in H2 files
+ * instead of memory.
+ *
+ * @author Leon.Tang
+ */
+public final class TenantScaleProbe {
+
+    static final String RESULT_PREFIX = "TENANT_SCALE_RESULT";
+
+    private TenantScaleProbe() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tenants = Integer.parseInt(args[0]);
+        Path workDirectory = Paths.get(args[1]);
+        boolean file = args.length > 2 && "file".equals(args[2]);
+        H2Registry registry = new H2Registry(file ? workDirectory.resolve("h2-" + tenants) : null);
+        registry.createTables();
+        registry.insertTenants(tenants);
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long heapBefore = usedHeapAfterGc(memory);
+        long start = System.nanoTime();
+        try (ConfigurableApplicationContext context =
+            HarnessApplication.run(registry, workDirectory, Collections.emptyMap())) {
+            long readyMillis = (System.nanoTime() - start) / 1_000_000L;
+            long retainedHeap = usedHeapAfterGc(memory) - heapBefore;
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            @SuppressWarnings("unchecked")
+            Map<String, DataSource> dataSources = context.getBean("multiTenantDataSources", Map.class);
+            long connections = 0L;
+            for (DataSource dataSource : dataSources.values()) {
+                if (dataSource instanceof PoolingDataSource) {
+                    connections += ((PoolingDataSource)dataSource).getTotalPoolSize();
+                }
+            }
+            System.out.println(RESULT_PREFIX + " tenants=" + tenants + " readyMillis=" + readyMillis
+                + " retainedHeapBytes=" + retainedHeap + " threads=" + threads.getThreadCount() + " peakThreads="
+                + threads.getPeakThreadCount() + " connections=" + connections + " builtTenants="
+                + (dataSources.size() - 1));
+        }
+        System.exit(0);
+    }
+
+    private static long usedHeapAfterGc(MemoryMXBean memory) throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100L);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,304 @@
+package com.leon.solid.multitenant.benchmarks.harness;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import com.leon.solid.multitenant.config.TenantHolder;
+import com.leon.solid.multitenant.model.TenantDataSourceModel;
+import com.leon.solid.multitenant.service.TenantDataSourceService;
+
+/**
+ * A soak test of tenant switching under concurrent tenant changes, against in-memory H2 tenants. Hundreds of load
+ * threads switch to a random tenant with {@link TenantHolder}, and read the marker row of the tenant database through
+ * the routing entity manager and a {@link TenantMarkerRepository} in a transaction. Meanwhile churn threads add and
+ * remove a second set of tenants with <code>insertAndPublishTenantDataSource</code> and
+ * <code>deleteAndDestroyTenantDataSource</code>.
+ * <p>
+ * It reports the throughput and latency quantiles of the reads, and flags:
+ * <ul>
+ * <li>leaks, a marker read from another tenant's database than the current tenant,</li>
+ * <li>a <code>ConcurrentModificationException</code> anywhere in a read or a tenant change,</li>
+ * <li>failures on tenants that are never removed,</li>
+ * <li>the locks the load threads queue on.</li>
+ * </ul>
+ * Reads of a removed tenant are expected to fail and only counted. The exit code is 1 when a leak, a concurrent
+ * modification or an unexpected failure was seen. The summary is written to <code>tenant-soak.json</code> in the
+ * report directory.
+ * <p>
+ * Options: <code>--threads=200</code>, <code>--tenants=20</code> (stable), <code>--churn-tenants=10</code>,
+ * <code>--churn-threads=4</code>, <code>--duration=PT60S</code>, <code>--report-dir=dir</code>.
+ *
+ * @author Leon.Tang
+ */
+public final class TenantSwitchingSoak {
+
+    private static final int MAX_FAILURE_SAMPLES = 20;
+
+    private final LatencyRecorder latency = new LatencyRecorder();
+
+    private final LongAdder reads = new LongAdder();
+
+    private final LongAdder leaks = new LongAdder();
+
+    private final LongAdder concurrentModifications = new LongAdder();
+
+    private final LongAdder unexpectedFailures = new LongAdder();
+
+    private final LongAdder removedTenantFailures = new LongAdder();
+
+    private final LongAdder published = new LongAdder();
+
+    private final LongAdder destroyed = new LongAdder();
+
+    private final Queue<String> failureSamples = new ConcurrentLinkedQueue<>();
+
+    private final H2Registry registry;
+
+    private final int stableTenants;
+
+    private final int churnTenants;
+
+    private final AtomicBoolean[] churnLocks;
+
+    private final boolean[] churnPublished;
+
+    private TenantDataSourceService tenantDataSourceService;
+
+    private TenantMarkerRepository repository;
+
+    private TransactionTemplate transactionTemplate;
+
+    private volatile boolean running = true;
+
+    private TenantSwitchingSoak(H2Registry registry, int stableTenants, int churnTenants) {
+        this.registry = registry;
+        this.stableTenants = stableTenants;
+        this.churnTenants = churnTenants;
+        this.churnLocks = new AtomicBoolean[churnTenants];
+        this.churnPublished = new boolean[churnTenants];
+        for (int i = 0; i < churnTenants; i++) {
+            this.churnLocks[i] = new AtomicBoolean();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("threads", "200");
+        options.put("tenants", "20");
+        options.put("churn-tenants", "10");
+        options.put("churn-threads", "4");
+        options.put("duration", "PT60S");
+        options.put("report-dir", "build/reports/tenant-soak");
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Invalid option: " + arg);
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        Path reportDirectory = Paths.get(options.get("report-dir"));
+        Files.createDirectories(reportDirectory);
+        Path workDirectory = Files.createTempDirectory(reportDirectory, "work-");
+
+        H2Registry registry = new H2Registry(null);
+        int stableTenants = Integer.parseInt(options.get("tenants"));
+        int churnTenants = Integer.parseInt(options.get("churn-tenants"));
+        registry.createTables();
+        registry.insertTenants(stableTenants);
+        for (int i = 0; i < stableTenants + churnTenants; i++) {
+            registry.markTenant(H2Registry.tenantId(i));
+        }
+        TenantSwitchingSoak soak = new TenantSwitchingSoak(registry, stableTenants, churnTenants);
+        Map<String, Object> summary;
+        try (ConfigurableApplicationContext context = HarnessApplication.run(registry, workDirectory,
+            Collections.emptyMap(), TenantMarkerRepository.class)) {
+            soak.tenantDataSourceService = context.getBean(TenantDataSourceService.class);
+            soak.repository = context.getBean(TenantMarkerRepository.class);
+            soak.transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+            summary = soak.run(Integer.parseInt(options.get("threads")),
+                Integer.parseInt(options.get("churn-threads")), Duration.parse(options.get("duration")));
+        } finally {
+            FileSystemUtils.deleteRecursively(workDirectory);
+        }
+        summary.forEach((key, value) -> System.out.println(key + ": " + value));
+        write(reportDirectory.resolve("tenant-soak.json"), summary);
+        boolean failed = soak.leaks.sum() > 0 || soak.concurrentModifications.sum() > 0
+            || soak.unexpectedFailures.sum() > 0;
+        System.exit(failed ? 1 : 0);
+    }
+
+    private Map<String, Object> run(int threadCount, int churnThreadCount, Duration duration)
+        throws InterruptedException {
+        List<Thread> threads = new ArrayList<>(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            threads.add(new Thread(this::read, "soak-read-" + i));
+        }
+        List<Thread> churnThreads = new ArrayList<>(churnThreadCount);
+        for (int i = 0; i < churnThreadCount; i++) {
+            churnThreads.add(new Thread(this::churn, "soak-churn-" + i));
+        }
+        ContentionSampler sampler = new ContentionSampler(threads, 10L);
+        Thread samplerThread = new Thread(sampler, "soak-sampler");
+
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        churnThreads.forEach(Thread::start);
+        samplerThread.start();
+        Thread.sleep(duration.toMillis());
+        this.running = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Thread thread : churnThreads) {
+            thread.join();
+        }
+        sampler.stop();
+        samplerThread.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("threads", threadCount);
+        summary.put("stableTenants", this.stableTenants);
+        summary.put("churnTenants", this.churnTenants);
+        summary.put("seconds", Math.round(seconds));
+        summary.put("reads", this.reads.sum());
+        summary.put("readsPerSecond", Math.round(this.reads.sum() / seconds));
+        summary.put("p50Micros", this.latency.quantileMicros(0.50));
+        summary.put("p99Micros", this.latency.quantileMicros(0.99));
+        summary.put("p999Micros", this.latency.quantileMicros(0.999));
+        summary.put("maxMicros", this.latency.quantileMicros(1.0));
+        summary.put("published", this.published.sum());
+        summary.put("destroyed", this.destroyed.sum());
+        summary.put("removedTenantFailures", this.removedTenantFailures.sum());
+        summary.put("leaks", this.leaks.sum());
+        summary.put("concurrentModifications", this.concurrentModifications.sum());
+        summary.put("unexpectedFailures", this.unexpectedFailures.sum());
+        summary.put("blockedMillis", sampler.blockedMillis());
+        summary.put("topLocks", sampler.topLocks(5));
+        summary.put("failureSamples", new ArrayList<>(this.failureSamples));
+        return summary;
+    }
+
+    private void read() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (this.running) {
+            int index = random.nextInt(this.stableTenants + this.churnTenants);
+            String tenantId = H2Registry.tenantId(index);
+            long start = System.nanoTime();
+            TenantHolder.setTenant(tenantId);
+            try {
+                String markedTenantId = this.transactionTemplate.execute(status -> this.repository.findMarkedTenantId());
+                this.latency.record(System.nanoTime() - start);
+                this.reads.increment();
+                if (!tenantId.equals(markedTenantId)) {
+                    this.leaks.increment();
+                    sample("Leak: " + tenantId + " read the marker of " + markedTenantId);
+                }
+            } catch (RuntimeException ex) {
+                if (isConcurrentModification(ex)) {
+                    this.concurrentModifications.increment();
+                    sample("Read of " + tenantId + ": " + ex);
+                } else if (index >= this.stableTenants) {
+                    this.removedTenantFailures.increment();
+                } else {
+                    this.unexpectedFailures.increment();
+                    sample("Read of " + tenantId + ": " + ex);
+                }
+            } finally {
+                TenantHolder.cleanupTenant();
+            }
+        }
+    }
+
+    private void churn() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (this.running) {
+            int churnIndex = random.nextInt(this.churnTenants);
+            if (!this.churnLocks[churnIndex].compareAndSet(false, true)) {
+                continue;
+            }
+            TenantDataSourceModel tenant = this.registry.tenant(H2Registry.tenantId(this.stableTenants + churnIndex));
+            try {
+                if (this.churnPublished[churnIndex]) {
+                    this.tenantDataSourceService.deleteAndDestroyTenantDataSource(tenant);
+                    this.churnPublished[churnIndex] = false;
+                    this.destroyed.increment();
+                } else {
+                    this.tenantDataSourceService.insertAndPublishTenantDataSource(tenant);
+                    this.churnPublished[churnIndex] = true;
+                    this.published.increment();
+                }
+            } catch (RuntimeException ex) {
+                if (isConcurrentModification(ex)) {
+                    this.concurrentModifications.increment();
+                } else {
+                    this.unexpectedFailures.increment();
+                }
+                sample("Change of " + tenant.getTenantId() + ": " + ex);
+            } finally {
+                this.churnLocks[churnIndex].set(false);
+            }
+        }
+    }
+
+    private void sample(String failure) {
+        if (this.failureSamples.size() < MAX_FAILURE_SAMPLES) {
+            this.failureSamples.add(failure);
+        }
+    }
+
+    private static boolean isConcurrentModification(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConcurrentModificationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void write(Path file, Map<String, Object> summary) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("{");
+            int field = 0;
+            for (Map.Entry<String, Object> entry : summary.entrySet()) {
+                writer.write((field++ > 0 ? ",\n \"" : "\n \"") + entry.getKey() + "\":" + toJson(entry.getValue()));
+            }
+            writer.write("\n}\n");
+        }
+    }
+
+    private static String toJson(Object value) {
+        if (value instanceof List) {
+            List<String> items = new ArrayList<>();
+            for (Object item : (List<?>)value) {
+                items.add(toJson(item));
+            }
+            return "[" + String.join(",", items) + "]";
+        }
+        if (value instanceof String) {
+            return "\"" + ((String)value).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+        }
+        return String.valueOf(value);
+    }
+}